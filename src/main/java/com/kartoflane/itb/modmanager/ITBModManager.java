@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,6 +18,7 @@ import com.kartoflane.itb.modmanager.core.ITBConfig;
 import com.kartoflane.itb.modmanager.core.ModPatchThread;
 import com.kartoflane.itb.modmanager.core.ModdedDatInfo;
 import com.kartoflane.itb.modmanager.core.ModsScanner;
+import com.kartoflane.itb.modmanager.core.StartupOrchestrator;
 import com.kartoflane.itb.modmanager.ui.ManagerWindow;
 import com.kartoflane.itb.modmanager.util.ITBUtilities;
 
@@ -47,6 +49,7 @@ public class ITBModManager extends Application
 
 	private final File modsTableStateFile = new File( modsDir, "modorder.txt" );
 	private final File metadataFile = new File( backupDir, "cached_metadata.lua" );
+	private final File metadataCacheFile = new File( backupDir, "cached_metadata.bin" );
 
 	private final File appUpdateFile = new File( backupDir, "auto_update.lua" );
 	private final File appUpdateETagFile = new File( backupDir, "auto_update_etag.txt" );
@@ -92,6 +95,8 @@ public class ITBModManager extends Application
 	@Override
 	public void start( Stage primaryStage )
 	{
+		StartupOrchestrator startup = new StartupOrchestrator();
+
 		config = new ITBConfig( configFile );
 		try {
 			if ( configFile.exists() ) {
@@ -106,6 +111,13 @@ public class ITBModManager extends Application
 			backupDir.mkdirs();
 		if ( !modsDir.exists() )
 			modsDir.mkdirs();
+		startup.mark( "Config read" );
+
+		ModsScanner modsScanner = new ModsScanner(
+			config, modsDir, modsTableStateFile, metadataFile, metadataCacheFile
+		);
+		// Only needs the config, so it can load while any prompts below are answered.
+		CompletableFuture<Void> metadataLoaded = startup.run( "Load cached metadata", modsScanner::loadCachedModMetadata );
 
 		Path gameDirPath = findGamePath( config );
 
@@ -123,14 +135,12 @@ public class ITBModManager extends Application
 		else {
 			gameDir = gameDirPath.toFile();
 		}
+		startup.mark( "Game dir found" );
 
 		try {
 			AppVersionChecker appVersionChecker = new AppVersionChecker(
 				config, APP_VERSION, appUpdateFile, appUpdateETagFile
 			);
-			ModsScanner modsScanner = new ModsScanner(
-				config, modsDir, modsTableStateFile, metadataFile
-			);
 
 			File resourcesDir = new File( gameDir, "resources" );
 			File scriptsDir = new File( gameDir, "scripts" );
@@ -143,8 +153,13 @@ public class ITBModManager extends Application
 			File musicBankFile = new File( resourcesDir, "music.bank" );
 			File sfxBankFile = new File( resourcesDir, "sfx.bank" );
 
+			CompletableFuture<ModdedDatInfo> datInfoLoaded = startup.supply(
+				"Read installed mods", () -> readModdedDatInfo( resourceDatFile )
+			);
+
 			BackupManager backupManager = new BackupManager(
 				backupDir,
+				config.getPropertyAsInt( ITBConfig.BACKUP_CONCURRENCY, BackupManager.DEFAULT_CONCURRENCY ),
 				scriptsDir, mapsDir,
 				resourceDatFile,
 				ambienceBankFile, masterBankFile, masterStringsBankFile, musicBankFile, sfxBankFile
@@ -153,35 +168,45 @@ public class ITBModManager extends Application
 			ManagerWindow managerWindow = new ManagerWindow( config, modsScanner, backupManager, gameDir );
 			appVersionChecker.updateAvailableEvent().addListener( managerWindow::onUpdateAvailable );
 			managerWindow.show();
+			startup.mark( "Window shown" );
 
-			Thread initThread = new Thread(
+			CompletableFuture<Void> installedModsSelected = startup.run(
+				"Select installed mods",
 				() -> {
-					try {
-						if ( config.getPropertyAsBoolean( ITBConfig.LOAD_PREV_MODS, true ) ) {
-							try {
-								ModdedDatInfo datInfo = ModdedDatInfo.build( resourceDatFile, ModPatchThread.MODDED_INFO_INNERPATH );
-								managerWindow.onInstalledModsLoaded( datInfo.listInstalledMods() );
-							}
-							catch ( IOException e ) {
-								// resource.dat did not contain modded.info, *shrug*
-							}
-						}
-
-						modsScanner.loadCachedModMetadata();
-						appVersionChecker.checkUpdateInfo();
+					ModdedDatInfo datInfo = datInfoLoaded.join();
+					if ( datInfo != null ) {
+						managerWindow.onInstalledModsLoaded( datInfo.listInstalledMods() );
 					}
-					catch ( Exception e ) {
-						log.error( "Error during ManagerWindow init.", e );
-					}
-				}
+				},
+				datInfoLoaded
 			);
-			initThread.setDaemon( true );
-			initThread.setPriority( Thread.MIN_PRIORITY );
-			initThread.start();
+
+			// The selection waits for the scan's results, so it has to be in place first.
+			startup.run( "Scan mods", modsScanner::scanModsAndWait, metadataLoaded, installedModsSelected );
+			startup.run( "Check for updates", appVersionChecker::checkUpdateInfo );
 		}
 		catch ( IOException e ) {
 			log.error( "Error while creating ManagerWindow.", e );
 		}
+
+		startup.finish();
+	}
+
+	/**
+	 * Returns info about mods installed in resource.dat, or null if it has
+	 * none (or they shouldn't be restored).
+	 */
+	private ModdedDatInfo readModdedDatInfo( File resourceDatFile )
+	{
+		if ( gameDir == null || !config.getPropertyAsBoolean( ITBConfig.LOAD_PREV_MODS, true ) ) return null;
+
+		try {
+			return ModdedDatInfo.build( resourceDatFile, ModPatchThread.MODDED_INFO_INNERPATH );
+		}
+		catch ( IOException e ) {
+			// resource.dat did not contain modded.info, *shrug*
+			return null;
+		}
 	}
 
 	// ----------------------------------------------------------------------------
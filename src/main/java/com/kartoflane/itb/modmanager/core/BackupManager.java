@@ -7,8 +7,24 @@ import java.nio.file.Files;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -25,6 +41,7 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
 import net.vhati.ftldat.AbstractPack;
 import net.vhati.ftldat.FTLPack;
+import net.vhati.ftldat.PackJournal;
 import net.vhati.ftldat.PackUtilities;
 
 
@@ -32,13 +49,31 @@ public class BackupManager
 {
 	private static final Logger log = LogManager.getLogger();
 
+	/** Default number of files that are backed up or restored at the same time. */
+	public static final int DEFAULT_CONCURRENCY = 2;
+
+	/** How often progress of copies in flight is passed on to listeners. */
+	private static final long PROGRESS_INTERVAL_MS = 100;
+
 	private final File backupDir;
 	private final List<BackedUpFile> backedUpFiles;
+	private final int concurrency;
 
 
 	public BackupManager( File backupDir, File... filesToBackUp )
+	{
+		this( backupDir, DEFAULT_CONCURRENCY, filesToBackUp );
+	}
+
+	/**
+	 * @param concurrency
+	 *            max number of files that will be copied at the same time
+	 *            when backing up or restoring
+	 */
+	public BackupManager( File backupDir, int concurrency, File... filesToBackUp )
 	{
 		this.backupDir = backupDir;
+		this.concurrency = Math.max( 1, concurrency );
 		this.backedUpFiles = Arrays.stream( filesToBackUp )
 			.map( this::toBackedUpFile )
 			.collect( Collectors.toList() );
@@ -54,6 +89,11 @@ public class BackupManager
 		return backedUpFiles;
 	}
 
+	public int getConcurrency()
+	{
+		return concurrency;
+	}
+
 	public BackedUpFile getBackupForFile( File f )
 	{
 		return backedUpFiles.stream()
@@ -247,6 +287,222 @@ public class BackupManager
 		}
 	}
 
+	/**
+	 * Copies the specified game files to their backup locations.
+	 * 
+	 * Up to {@link #getConcurrency()} files are copied at the same time.
+	 * Listeners are only ever notified on the calling thread.
+	 * 
+	 * If a copy fails, or the backup is stopped, any temporary files the
+	 * copies left behind are deleted.
+	 * 
+	 * @param buds
+	 *            list of files to back up
+	 * @param startListener
+	 *            notified when a file starts being copied, or null
+	 * @param progressListener
+	 *            notified with (bytes copied, total bytes) as the copy progresses, or null.
+	 * @param keepRunning
+	 *            checked before each file is copied; if it returns false, no more files are copied
+	 * @return true if all files were copied, false if it was told to stop by keepRunning
+	 */
+	public boolean backUpFiles(
+		List<BackedUpFile> buds,
+		Consumer<BackedUpFile> startListener,
+		BiConsumer<Long, Long> progressListener,
+		BooleanSupplier keepRunning
+	) throws IOException
+	{
+		return transferFiles( buds, true, startListener, progressListener, keepRunning );
+	}
+
+	/**
+	 * Copies the backups of the specified game files back over the game files.
+	 * 
+	 * Up to {@link #getConcurrency()} files are copied at the same time.
+	 * 
+	 * @see #backUpFiles(List, Consumer, BiConsumer, BooleanSupplier)
+	 */
+	public boolean restoreFiles(
+		List<BackedUpFile> buds,
+		Consumer<BackedUpFile> startListener,
+		BiConsumer<Long, Long> progressListener,
+		BooleanSupplier keepRunning
+	) throws IOException
+	{
+		return transferFiles( buds, false, startListener, progressListener, keepRunning );
+	}
+
+	private boolean transferFiles(
+		List<BackedUpFile> buds, boolean backup,
+		Consumer<BackedUpFile> startListener,
+		BiConsumer<Long, Long> progressListener,
+		BooleanSupplier keepRunning
+	) throws IOException
+	{
+		if ( buds.isEmpty() ) return true;
+
+		// Start with the biggest files, so that a large file isn't left
+		// copying on its own after all the small ones are done.
+		List<Sized> tasks = new ArrayList<>( buds.size() );
+		long totalBytesCalc = 0;
+		for ( BackedUpFile bud : buds ) {
+			long size = calcTransferSize( bud, backup );
+			tasks.add( new Sized( bud, size ) );
+			totalBytesCalc += size;
+		}
+		tasks.sort( Comparator.comparingLong( ( Sized t ) -> t.size ).reversed() );
+
+		final TransferProgress progress = new TransferProgress( totalBytesCalc, startListener, progressListener );
+		final AtomicInteger threadCount = new AtomicInteger( 0 );
+		final AtomicBoolean failed = new AtomicBoolean( false );
+		boolean success = false;
+
+		progress.relay();
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+			Math.min( concurrency, tasks.size() ),
+			r -> {
+				Thread t = new Thread( r, ( backup ? "backup-" : "restore-" ) + threadCount.incrementAndGet() );
+				t.setDaemon( true );
+				return t;
+			}
+		);
+
+		try {
+			List<Future<Boolean>> futures = new ArrayList<>( tasks.size() );
+			for ( Sized task : tasks ) {
+				futures.add(
+					executor.submit(
+						() -> {
+							// Don't start any more copies once one has failed.
+							if ( failed.get() || !keepRunning.getAsBoolean() ) return false;
+
+							progress.startedBuds.add( task.bud );
+
+							try {
+								transferFile( task.bud, backup, progress.bytesDone::addAndGet );
+							}
+							catch ( IOException | RuntimeException e ) {
+								failed.set( true );
+								throw e;
+							}
+							return true;
+						}
+					)
+				);
+			}
+
+			boolean result = true;
+			for ( Future<Boolean> f : futures ) {
+				try {
+					while ( true ) {
+						try {
+							result &= f.get( PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS );
+							break;
+						}
+						catch ( TimeoutException e ) {
+							progress.relay();
+						}
+					}
+					progress.relay();
+				}
+				catch ( ExecutionException e ) {
+					Throwable cause = e.getCause();
+					if ( cause instanceof IOException ) throw (IOException)cause;
+					if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+					throw new IOException( cause );
+				}
+				catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new IOException( "Interrupted while waiting for file copies to finish.", e );
+				}
+			}
+
+			success = result;
+			return result;
+		}
+		finally {
+			// Skip copies that haven't started, but let those in progress finish,
+			// rather than interrupt them. An interrupt closes their channels
+			// mid-transfer.
+			failed.set( true );
+			executor.shutdown();
+			awaitTerminationUninterruptibly( executor );
+
+			if ( !success ) {
+				// Nothing is copying anymore, so any temporary file is a leftover.
+				for ( Sized task : tasks ) {
+					PackUtilities.deleteTempSiblings( backup ? task.bud.bakFile : task.bud.srcFile );
+				}
+			}
+		}
+	}
+
+	private static void awaitTerminationUninterruptibly( ExecutorService executor )
+	{
+		boolean interrupted = false;
+		try {
+			while ( true ) {
+				try {
+					if ( executor.awaitTermination( 1, TimeUnit.SECONDS ) ) return;
+				}
+				catch ( InterruptedException e ) {
+					interrupted = true;
+				}
+			}
+		}
+		finally {
+			if ( interrupted ) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that will be reported as progress while transferring the file.
+	 */
+	private long calcTransferSize( BackedUpFile bud, boolean backup ) throws IOException
+	{
+		if ( backup || !bud.srcFile.isDirectory() ) {
+			return PackUtilities.calcDiskSize( backup ? bud.srcFile : bud.bakFile );
+		}
+
+		// Directories are backed up as packs; count their contents, not the pack's index.
+		long result = 0;
+		try ( AbstractPack pack = new FTLPack( bud.bakFile, "r" ) ) {
+			for ( AbstractPack.PathAndSize pas : pack.listSizes() ) {
+				result += pas.size;
+			}
+		}
+		return result;
+	}
+
+	private void transferFile( BackedUpFile bud, boolean backup, LongConsumer progressListener )
+		throws IOException
+	{
+		if ( backup ) {
+			log.info( String.format( "Backing up \"%s\".", bud.srcFile.getName() ) );
+
+			if ( bud.srcFile.isDirectory() ) {
+				PackUtilities.backUpDirAsPack( bud.srcFile, bud.bakFile, progressListener );
+			}
+			else {
+				PackUtilities.copyFile( bud.srcFile, bud.bakFile, progressListener );
+			}
+		}
+		else {
+			log.info( String.format( "Restoring vanilla \"%s\"...", bud.srcFile.getName() ) );
+
+			if ( bud.srcFile.isDirectory() ) {
+				PackUtilities.restorePackAsDir( bud.bakFile, bud.srcFile, progressListener );
+			}
+			else {
+				PackUtilities.copyFile( bud.bakFile, bud.srcFile, progressListener );
+				// Whatever an interrupted patch left behind no longer applies.
+				PackJournal.discardJournal( bud.srcFile );
+			}
+		}
+	}
+
 	private BackedUpFile toBackedUpFile( File f )
 	{
 		if ( !f.exists() )
@@ -264,4 +520,59 @@ public class BackupManager
 		public File srcFile = null;
 		public File bakFile = null;
 	}
+
+
+	/**
+	 * Progress of a transfer, collected from the copying threads, and
+	 * passed on to listeners by the thread that started the transfer.
+	 */
+	private static class TransferProgress
+	{
+		public final Queue<BackedUpFile> startedBuds = new ConcurrentLinkedQueue<>();
+		public final AtomicLong bytesDone = new AtomicLong( 0 );
+
+		private final long totalBytes;
+		private final Consumer<BackedUpFile> startListener;
+		private final BiConsumer<Long, Long> progressListener;
+		private long reportedBytes = -1;
+
+
+		public TransferProgress( long totalBytes, Consumer<BackedUpFile> startListener, BiConsumer<Long, Long> progressListener )
+		{
+			this.totalBytes = totalBytes;
+			this.startListener = startListener;
+			this.progressListener = progressListener;
+		}
+
+		/**
+		 * Notifies listeners of whatever happened since the last call.
+		 */
+		public void relay()
+		{
+			BackedUpFile bud;
+			while ( ( bud = startedBuds.poll() ) != null ) {
+				if ( startListener != null ) startListener.accept( bud );
+			}
+
+			long done = bytesDone.get();
+			if ( done != reportedBytes ) {
+				reportedBytes = done;
+				if ( progressListener != null ) progressListener.accept( done, totalBytes );
+			}
+		}
+	}
+
+
+	private static class Sized
+	{
+		public final BackedUpFile bud;
+		public final long size;
+
+
+		public Sized( BackedUpFile bud, long size )
+		{
+			this.bud = bud;
+			this.size = size;
+		}
+	}
 }
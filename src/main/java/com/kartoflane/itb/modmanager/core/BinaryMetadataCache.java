@@ -0,0 +1,258 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import net.vhati.modmanager.core.ModDB;
+import net.vhati.modmanager.core.ModInfo;
+
+
+/**
+ * A compact binary cache of local mods' metadata, and of their files' hashes.
+ *
+ * It holds the same metadata as "cached_metadata.lua", which remains as an
+ * export, but loads without parsing any text.
+ *
+ * Layout (big-endian):
+ *   int    magic ("ITBC")
+ *   int    version
+ *   int    count, then that many mod records
+ *   int    count, then that many thread hash records
+ *   int    count, then that many file hash records
+ *
+ * Each record begins with its length in bytes, so fields added to the end
+ * of a record in the future can be skipped by older readers. Strings are a
+ * byte count (-1 for null), followed by that many UTF-8 bytes.
+ *
+ * Mod record:         fileHash, title, author, url, description, version
+ * Thread hash record: url, threadHash
+ * File hash record:   path, long length, long lastModified, hash
+ */
+public class BinaryMetadataCache
+{
+	private static final int MAGIC = 0x49544243;  // "ITBC"
+	private static final int VERSION = 1;
+
+	public ModDB modDB = null;
+	public FileHashCache fileHashCache = null;
+
+
+	public BinaryMetadataCache()
+	{
+	}
+
+	public BinaryMetadataCache( ModDB modDB, FileHashCache fileHashCache )
+	{
+		this.modDB = modDB;
+		this.fileHashCache = fileHashCache;
+	}
+
+	/**
+	 * Reads a cache file, with a single read into memory.
+	 *
+	 * Returns null if the file was written in another format version.
+	 *
+	 * @throws IOException
+	 *             if the file couldn't be read, or is corrupt
+	 */
+	public static BinaryMetadataCache read( File srcFile ) throws IOException
+	{
+		ByteBuffer buf;
+		try ( FileChannel channel = FileChannel.open( srcFile.toPath(), StandardOpenOption.READ ) ) {
+			long size = channel.size();
+			if ( size > Integer.MAX_VALUE ) {
+				throw new IOException( "Metadata cache is too large: " + srcFile.getName() );
+			}
+
+			buf = ByteBuffer.allocate( (int)size );
+			while ( buf.hasRemaining() ) {
+				if ( channel.read( buf ) < 0 ) {
+					throw new EOFException( "EOF prematurely reached reading metadata cache: " + srcFile.getName() );
+				}
+			}
+			buf.flip();
+		}
+
+		try {
+			if ( buf.remaining() < 8 || buf.getInt() != MAGIC ) {
+				throw new IOException( "Not a metadata cache: " + srcFile.getName() );
+			}
+			if ( buf.getInt() != VERSION ) return null;
+
+			BinaryMetadataCache result = new BinaryMetadataCache( new ModDB(), new FileHashCache() );
+
+			int modCount = readCount( buf );
+			for ( int i = 0; i < modCount; i++ ) {
+				int end = beginRecord( buf );
+				ModInfo modInfo = new ModInfo();
+				modInfo.setFileHash( readString( buf ) );
+				modInfo.setTitle( readString( buf ) );
+				modInfo.setAuthor( readString( buf ) );
+				modInfo.setURL( readString( buf ) );
+				modInfo.setDescription( readString( buf ) );
+				modInfo.setVersion( readString( buf ) );
+				endRecord( buf, end );
+
+				result.modDB.addMod( modInfo );
+			}
+
+			int threadHashCount = readCount( buf );
+			for ( int i = 0; i < threadHashCount; i++ ) {
+				int end = beginRecord( buf );
+				String url = readString( buf );
+				String threadHash = readString( buf );
+				endRecord( buf, end );
+
+				result.modDB.putThreadHash( url, threadHash );
+			}
+
+			int fileCount = readCount( buf );
+			for ( int i = 0; i < fileCount; i++ ) {
+				int end = beginRecord( buf );
+				String path = readString( buf );
+				long length = buf.getLong();
+				long lastModified = buf.getLong();
+				String hash = readString( buf );
+				endRecord( buf, end );
+
+				if ( path != null && hash != null ) {
+					result.fileHashCache.put( new FileHashCache.Entry( path, length, lastModified, hash ) );
+				}
+			}
+
+			return result;
+		}
+		catch ( BufferUnderflowException | IllegalArgumentException e ) {
+			throw new IOException( "Corrupt metadata cache: " + srcFile.getName(), e );
+		}
+	}
+
+	/**
+	 * Writes a cache file.
+	 *
+	 * The file is written under a temporary name first, then moved into
+	 * place, so a failed write won't leave a partial cache behind.
+	 */
+	public static void write( File dstFile, ModDB modDB, FileHashCache fileHashCache ) throws IOException
+	{
+		File tmpFile = new File( dstFile.getPath() + ".tmp" );
+
+		try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmpFile ) ) ) ) {
+			ByteArrayOutputStream recordBuf = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream( recordBuf );
+
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+
+			out.writeInt( modDB.getCatalog().size() );
+			for ( ModInfo modInfo : modDB.getCatalog() ) {
+				writeString( record, modInfo.getFileHash() );
+				writeString( record, modInfo.getTitle() );
+				writeString( record, modInfo.getAuthor() );
+				writeString( record, modInfo.getURL() );
+				writeString( record, modInfo.getDescription() );
+				writeString( record, modInfo.getVersion() );
+				writeRecord( out, recordBuf );
+			}
+
+			Map<String, String> threadHashMap = modDB.getThreadHashMap();
+			out.writeInt( threadHashMap.size() );
+			for ( Map.Entry<String, String> entry : threadHashMap.entrySet() ) {
+				writeString( record, entry.getKey() );
+				writeString( record, entry.getValue() );
+				writeRecord( out, recordBuf );
+			}
+
+			out.writeInt( fileHashCache.size() );
+			for ( FileHashCache.Entry entry : fileHashCache.getEntries() ) {
+				writeString( record, entry.path );
+				record.writeLong( entry.length );
+				record.writeLong( entry.lastModified );
+				writeString( record, entry.hash );
+				writeRecord( out, recordBuf );
+			}
+		}
+
+		Files.move( tmpFile.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+	}
+
+	// ------------------------------------------------------------------------------
+
+	private static int readCount( ByteBuffer buf )
+	{
+		int count = buf.getInt();
+		if ( count < 0 ) throw new IllegalArgumentException( "Negative count: " + count );
+		return count;
+	}
+
+	/**
+	 * Reads a record's length, and returns the position where it ends.
+	 */
+	private static int beginRecord( ByteBuffer buf )
+	{
+		int length = buf.getInt();
+		if ( length < 0 || length > buf.remaining() ) {
+			throw new IllegalArgumentException( "Bad record length: " + length );
+		}
+		return buf.position() + length;
+	}
+
+	/**
+	 * Skips whatever remains of a record (fields this version doesn't know).
+	 */
+	private static void endRecord( ByteBuffer buf, int end )
+	{
+		if ( buf.position() > end ) {
+			throw new IllegalArgumentException( "Record overran its length" );
+		}
+		buf.position( end );
+	}
+
+	private static String readString( ByteBuffer buf )
+	{
+		int length = buf.getInt();
+		if ( length == -1 ) return null;
+		if ( length < 0 || length > buf.remaining() ) {
+			throw new IllegalArgumentException( "Bad string length: " + length );
+		}
+
+		String result = new String( buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8 );
+		buf.position( buf.position() + length );
+		return result;
+	}
+
+	private static void writeString( DataOutputStream out, String s ) throws IOException
+	{
+		if ( s == null ) {
+			out.writeInt( -1 );
+			return;
+		}
+
+		byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	/**
+	 * Writes a buffered record, prefixed by its length, and clears the buffer.
+	 */
+	private static void writeRecord( DataOutputStream out, ByteArrayOutputStream recordBuf ) throws IOException
+	{
+		out.writeInt( recordBuf.size() );
+		recordBuf.writeTo( out );
+		recordBuf.reset();
+	}
+}
@@ -0,0 +1,99 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * MD5 hashes of files, remembered along with each file's size and modification
+ * time when it was hashed, so that unchanged files needn't be hashed again.
+ */
+public class FileHashCache
+{
+	/** Entries, by absolute path. */
+	private final Map<String, Entry> entryMap = new HashMap<>();
+
+
+	public FileHashCache()
+	{
+	}
+
+	/**
+	 * Copy constructor.
+	 */
+	public FileHashCache( FileHashCache src )
+	{
+		entryMap.putAll( src.entryMap );
+	}
+
+	/**
+	 * Returns the remembered hash of a file, or null if the file was never
+	 * hashed, or has changed since.
+	 */
+	public String getHash( File f, long length, long lastModified )
+	{
+		Entry entry = entryMap.get( f.getAbsolutePath() );
+		if ( entry == null || lastModified == 0 ) return null;
+
+		if ( entry.length != length || entry.lastModified != lastModified ) return null;
+		return entry.hash;
+	}
+
+	/**
+	 * Remembers a file's hash.
+	 *
+	 * The length and lastModified should be read before hashing, so that
+	 * changes made while hashing won't go unnoticed.
+	 */
+	public void putHash( File f, long length, long lastModified, String hash )
+	{
+		put( new Entry( f.getAbsolutePath(), length, lastModified, hash ) );
+	}
+
+	public void put( Entry entry )
+	{
+		entryMap.put( entry.path, entry );
+	}
+
+	/**
+	 * Forgets a file's hash.
+	 */
+	public void remove( File f )
+	{
+		entryMap.remove( f.getAbsolutePath() );
+	}
+
+	public Collection<Entry> getEntries()
+	{
+		return Collections.unmodifiableCollection( entryMap.values() );
+	}
+
+	public int size()
+	{
+		return entryMap.size();
+	}
+
+
+	/**
+	 * A file's hash, and the file's state when it was hashed.
+	 */
+	public static class Entry
+	{
+		public final String path;
+		public final long length;
+		public final long lastModified;
+		public final String hash;
+
+
+		public Entry( String path, long length, long lastModified, String hash )
+		{
+			this.path = path;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+}
@@ -36,6 +36,8 @@ public class ITBConfig extends Properties
 	public static final String RUN_STEAM_ITB =          "runSteamITB";
 	public static final String NEVER_RUN_ITB =          "neverRunITB";
 	public static final String REMEMBER_GEOMETRY =      "rememberGeometry";
+	public static final String BACKUP_CONCURRENCY =     "backupConcurrency";
+	public static final String METADATA_CACHE =         "metadataCache";
 	public static final String MANAGER_GEOMETRY =       "managerGeometry";
 	// @formatter:on
 
@@ -96,6 +98,8 @@ public class ITBConfig extends Properties
 			userFieldsMap.put( RUN_STEAM_ITB,       "If true, the manager will use Steam to launch Into the Breach, if possible." );
 			userFieldsMap.put( NEVER_RUN_ITB,       "If true, there will be no offer to run the game after patching. Default: false." );
 			userFieldsMap.put( REMEMBER_GEOMETRY,   "If true, window geometry will be saved on exit and restored on startup." );
+			userFieldsMap.put( BACKUP_CONCURRENCY,  "Max number of game files to back up or restore at the same time. Default: 2." );
+			userFieldsMap.put( METADATA_CACHE,      "If true, mod metadata and file hashes are also cached in a faster binary format. Default: true." );
 
 			appFieldsMap.put( MANAGER_GEOMETRY,     "Last saved position/size/etc of the main window." );
 			// @formatter:on
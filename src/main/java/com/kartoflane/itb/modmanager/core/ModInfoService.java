@@ -0,0 +1,152 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import net.vhati.ftldat.PackUtilities;
+import net.vhati.modmanager.core.ModUtilities;
+
+
+/**
+ * Looks up details about mod files that may need reading them from disk,
+ * on a background thread, so callers on the FX thread never wait for it.
+ *
+ * Results are returned as futures. Whatever is already known comes back in
+ * an already completed future, so callers can tell whether to show a
+ * placeholder while they wait.
+ */
+public class ModInfoService
+{
+	private static final Logger log = LogManager.getLogger();
+
+	private final ModRegistry registry;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+		r -> {
+			Thread t = new Thread( r, "mod-info" );
+			t.setDaemon( true );
+			return t;
+		}
+	);
+
+	/** Release dates, by mod hash. Dates that couldn't be determined are dropped once known, to be tried again. */
+	private final Map<String, CompletableFuture<Date>> releaseDateMap = new ConcurrentHashMap<>();
+
+
+	public ModInfoService( ModRegistry registry )
+	{
+		this.registry = registry;
+	}
+
+	/**
+	 * Returns a mod file's hash.
+	 *
+	 * If the file hasn't been hashed yet, it is hashed in the background,
+	 * and the hash is remembered in the registry.
+	 *
+	 * @return a future that completes with the hash, or with null if the file
+	 *         couldn't be read
+	 */
+	public CompletableFuture<String> getHash( File modFile )
+	{
+		String hash = registry.getSnapshot().getHash( modFile );
+		if ( hash != null ) {
+			return CompletableFuture.completedFuture( hash );
+		}
+
+		return CompletableFuture.supplyAsync( () -> calcHash( modFile ), executor );
+	}
+
+	/**
+	 * Returns the time a mod was released, judging by its newest file.
+	 *
+	 * Dates are remembered by hash, so each mod is only read once. A date that
+	 * couldn't be determined isn't remembered, so the next call tries again.
+	 *
+	 * @param modHash
+	 *            the mod file's hash, or null to read it without remembering
+	 * @return a future that completes with the date, or with null if it
+	 *         couldn't be determined
+	 */
+	public CompletableFuture<Date> getReleaseDate( String modHash, File modFile )
+	{
+		if ( modHash == null ) {
+			return CompletableFuture.supplyAsync( () -> readReleaseDate( modFile ), executor );
+		}
+
+		CompletableFuture<Date> future = releaseDateMap.get( modHash );
+		if ( future != null ) {
+			return future;
+		}
+
+		CompletableFuture<Date> newFuture = new CompletableFuture<>();
+		future = releaseDateMap.putIfAbsent( modHash, newFuture );
+		if ( future != null ) {
+			// Another thread got there first.
+			return future;
+		}
+
+		executor.execute(
+			() -> {
+				Date date = null;
+				Throwable failure = null;
+				try {
+					date = readReleaseDate( modFile );
+				}
+				catch ( Throwable t ) {
+					failure = t;
+				}
+
+				// Forgotten before anyone hears of it, so a retry starts a new lookup.
+				if ( date == null ) releaseDateMap.remove( modHash, newFuture );
+
+				if ( failure != null ) {
+					newFuture.completeExceptionally( failure );
+				}
+				else {
+					newFuture.complete( date );
+				}
+			}
+		);
+		return newFuture;
+	}
+
+	private String calcHash( File modFile )
+	{
+		// It may have been hashed while this task was waiting.
+		String hash = registry.getSnapshot().getHash( modFile );
+		if ( hash != null ) return hash;
+
+		try {
+			hash = PackUtilities.calcFileMD5( modFile );
+			registry.putHashes( Collections.singletonList( new AbstractMap.SimpleImmutableEntry<>( modFile, hash ) ) );
+			return hash;
+		}
+		catch ( Exception e ) {
+			log.error( "Error while calculating hash for file: " + modFile.getPath(), e );
+			return null;
+		}
+	}
+
+	private Date readReleaseDate( File modFile )
+	{
+		try {
+			long epochTime = ModUtilities.getModFileTime( modFile );
+			return epochTime != -1 ? new Date( epochTime ) : null;
+		}
+		catch ( Exception e ) {
+			log.error( String.format( "Error while getting modified time of mod file contents for \"%s\"", modFile ), e );
+			return null;
+		}
+	}
+}
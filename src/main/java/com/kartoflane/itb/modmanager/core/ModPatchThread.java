@@ -7,12 +7,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -172,6 +173,7 @@ public class ModPatchThread extends Thread
 		patchingProgressChanged.broadcast( 0, progMax );
 
 		PackContainer packContainer = null;
+		FMODPatcher fmodPatcher = null;
 
 		try {
 			int modsInstalled = 0;
@@ -222,8 +224,7 @@ public class ModPatchThread extends Thread
 			AbstractPack datPack = new FTLPack( resourceDatFile, "r+" );
 			AbstractPack scriptsPack = new FolderPack( scriptsDir );
 			AbstractPack mapsPack = new FolderPack( mapsDir );
-			// TODO: An FMODPack that allows assigning innerPaths to specific .bank files?
-			// Or just do `setPackFor( "audio/sfx/", sfxAudioPack )`, etc. for each .bank file
+			// Whole banks are replaced in the resources dir; samples are routed to banks by FMODPatcher.
 			AbstractPack audioPack = new FolderPack( resourcesDir );
 
 			packContainer.setPackFor( "mod-appendix/", null );
@@ -234,19 +235,26 @@ public class ModPatchThread extends Thread
 			packContainer.setPackFor( "img/", datPack );
 			packContainer.setPackFor( null, null );
 
+			// Keep index changes in memory until all mods are in, so an aborted
+			// patch can be rolled back instead of leaving a half-written dat.
+			for ( AbstractPack pack : packContainer.getPacks() ) {
+				pack.beginBatch();
+			}
+
 			ModdedDatInfo datInfo = ModdedDatInfo.build( datPack, MODDED_INFO_INNERPATH );
 
 			// Track modified innerPaths in case they're clobbered.
 			List<String> moddedItems = new ArrayList<>();
 
-			List<String> knownPaths = new ArrayList<>();
+			Set<String> knownPaths = new HashSet<>();
 			for ( AbstractPack pack : packContainer.getPacks() ) {
 				knownPaths.addAll( pack.list() );
 			}
 
-			List<String> knownPathsLower = new ArrayList<>( knownPaths.size() );
+			// Lower-cased paths, mapped to the first known path with that spelling.
+			Map<String, String> knownPathsLower = new HashMap<>( knownPaths.size() * 2 );
 			for ( String innerPath : knownPaths ) {
-				knownPathsLower.add( innerPath.toLowerCase() );
+				knownPathsLower.putIfAbsent( innerPath.toLowerCase(), innerPath );
 			}
 
 			List<String> knownRoots = packContainer.getRoots();
@@ -264,15 +272,13 @@ public class ModPatchThread extends Thread
 			Map<String, ResourcePatcher> patcherMap = new LinkedHashMap<>();
 			patcherMap.put( "txt", new TxtPatcher( log, encoding, moddedItems ) );
 			patcherMap.put( "lua", new LuaPatcher( (TxtPatcher)patcherMap.get( "txt" ), moddedScriptsList ) );
-			FMODPatcher fmodPatcher = new FMODPatcher(); // TODO ????
+			fmodPatcher = new FMODPatcher( log, moddedItems, resourcesDir );
 			patcherMap.put( "bank", fmodPatcher );
+			patcherMap.put( "fsb", fmodPatcher );
 			patcherMap.put( "wav", fmodPatcher );
 			patcherMap.put( "mp3", fmodPatcher );
 			ResourcePatcher defaultPatcher = new DefaultPatcher( log, moddedItems );
 
-			// Group1: parentPath/, Group2: root/, Group3: fileName.
-			Pattern pathPtn = Pattern.compile( "^(?:(([^/]+/)(?:.*/)?))?([^./]+\\.([^/]+))$" );
-
 			for ( int i = 0; i < modFiles.size(); ++i ) {
 				if ( !keepRunning ) return false;
 
@@ -294,26 +300,28 @@ public class ModPatchThread extends Thread
 						}
 
 						String innerPath = item.getName();
-						innerPath = innerPath.replace( '\\', '/' );  // Non-standard zips.
+						if ( innerPath.indexOf( '\\' ) != -1 ) {
+							innerPath = innerPath.replace( '\\', '/' );  // Non-standard zips.
+						}
 
-						Matcher m = pathPtn.matcher( innerPath );
-						if ( !m.matches() ) {
+						PackContainer.ParsedPath parsedPath = packContainer.route( innerPath );
+						if ( parsedPath == null || parsedPath.extension == null ) {
 							log.warn( String.format( "Unexpected innerPath: %s", innerPath ) );
 							zis.closeEntry();
 							continue;
 						}
 
-						String parentPath = m.group( 1 );
-						String root = m.group( 2 );
-						String fileName = m.group( 3 );
-						String extension = m.group( 4 );
+						String parentPath = parsedPath.parentPath;
+						String root = parsedPath.root;
+						String fileName = parsedPath.fileName;
+						String extension = parsedPath.extension;
 
-						AbstractPack pack = packContainer.getPackFor( innerPath );
+						AbstractPack pack = parsedPath.pack;
 						if ( pack == null ) {
 							if ( !knownRoots.contains( root ) ) {
 								log.warn( String.format( "Unexpected innerPath: %s", innerPath ) );
 							}
-							else {
+							else if ( log.isDebugEnabled() ) {
 								log.debug( String.format( "Ignoring innerPath with known root: %s", innerPath ) );
 							}
 							zis.closeEntry();
@@ -329,7 +337,7 @@ public class ModPatchThread extends Thread
 						ResourcePatcher patcher = patcherMap.getOrDefault( extension, defaultPatcher );
 						innerPath = patcher.normalizeInnerPath( modFile, innerPath, parentPath, root, fileName );
 						innerPath = checkCase( innerPath, knownPaths, knownPathsLower );
-						patcher.patch( pack, innerPath, zis );
+						patcher.patch( pack, innerPath, zis, item.getSize() );
 
 						zis.closeEntry();
 					}
@@ -368,8 +376,15 @@ public class ModPatchThread extends Thread
 				scriptsPack.repack();
 			}
 
-			// Prune 'removed' files from dats.
 			for ( AbstractPack pack : packContainer.getPacks() ) {
+				if ( pack.isBatching() )
+					pack.commit();
+			}
+
+			// Prune 'removed' files from dats, and rebuild modified banks.
+			List<AbstractPack> packsToRepack = new ArrayList<>( packContainer.getPacks() );
+			packsToRepack.addAll( fmodPatcher.getBankPacks() );
+			for ( AbstractPack pack : packsToRepack ) {
 				patchingStatusChanged.broadcast( String.format( "Repacking \"%s\"...", pack.getName() ) );
 
 				AbstractPack.RepackResult repackResult = pack.repack();
@@ -389,6 +404,21 @@ public class ModPatchThread extends Thread
 		finally {
 			if ( packContainer != null ) {
 				for ( AbstractPack pack : packContainer.getPacks() ) {
+					try {
+						pack.rollback();  // Only has an effect if the batch wasn't committed.
+					}
+					catch ( Exception e ) {
+						log.error( String.format( "Failed to roll back changes to \"%s\"", pack.getName() ), e );
+					}
+					try {
+						pack.close();
+					}
+					catch ( Exception e ) {
+					}
+				}
+			}
+			if ( fmodPatcher != null ) {
+				for ( AbstractPack pack : fmodPatcher.getBankPacks() ) {
 					try {
 						pack.close();
 					}
@@ -413,50 +443,37 @@ public class ModPatchThread extends Thread
 	private boolean backupAndRestoreGameData( List<BackedUpFile> backedUpDats, boolean forceBackup ) throws IOException
 	{
 		// Create backup dats, if necessary.
-		int backupsCreated = 0;
-		for ( BackedUpFile bud : backedUpDats ) {
-			if ( forceBackup || !bud.bakFile.exists() ) {
-				log.info( String.format( "Backing up \"%s\".", bud.srcFile.getName() ) );
-				patchingStatusChanged.broadcast( String.format( "Backing up \"%s\".", bud.srcFile.getName() ) );
-
-				if ( bud.srcFile.isDirectory() ) {
-					PackUtilities.backUpDirAsPack( bud.srcFile, bud.bakFile );
-				}
-				else {
-					PackUtilities.copyFile( bud.srcFile, bud.bakFile );
-				}
-
-				backupsCreated++;
-				patchingProgressChanged.broadcast( progBackupMax / backedUpDats.size() * backupsCreated, progMax );
-
-				if ( !keepRunning ) return false;
-			}
-		}
+		List<BackedUpFile> budsToBackUp = backedUpDats.stream()
+			.filter( bud -> forceBackup || !bud.bakFile.exists() )
+			.collect( Collectors.toList() );
+
+		boolean backedUp = backupManager.backUpFiles(
+			budsToBackUp,
+			bud -> patchingStatusChanged.broadcast( String.format( "Backing up \"%s\".", bud.srcFile.getName() ) ),
+			( done, total ) -> patchingProgressChanged.broadcast( progMilestone + scaleProgress( done, total, progBackupMax ), progMax ),
+			() -> keepRunning
+		);
+		if ( !backedUp || !keepRunning ) return false;
 
 		progMilestone += progBackupMax;
 		patchingProgressChanged.broadcast( progMilestone, progMax );
 		patchingStatusChanged.broadcast( null );
 
-		if ( backupsCreated != backedUpDats.size() ) {
-			// Clobber current dat file with its backup.
-			// But don't bother if we made the backup just now.
-
-			int datsClobbered = 0;
-			for ( BackedUpFile bud : backedUpDats ) {
-				log.info( String.format( "Restoring vanilla \"%s\"...", bud.srcFile.getName() ) );
-				patchingStatusChanged.broadcast( String.format( "Restoring vanilla \"%s\"...", bud.srcFile.getName() ) );
-
-				if ( bud.srcFile.isDirectory() ) {
-					PackUtilities.restorePackAsDir( bud.bakFile, bud.srcFile );
-				}
-				else {
-					PackUtilities.copyFile( bud.bakFile, bud.srcFile );
-				}
-				datsClobbered++;
-				patchingProgressChanged.broadcast( progClobberMax / backedUpDats.size() * datsClobbered, progMax );
+		// Clobber current dat files with their backups.
+		// But don't bother for those we made backups of just now.
+		List<BackedUpFile> budsToRestore = backedUpDats.stream()
+			.filter( bud -> !budsToBackUp.contains( bud ) )
+			.collect( Collectors.toList() );
+
+		if ( !budsToRestore.isEmpty() ) {
+			boolean restored = backupManager.restoreFiles(
+				budsToRestore,
+				bud -> patchingStatusChanged.broadcast( String.format( "Restoring vanilla \"%s\"...", bud.srcFile.getName() ) ),
+				( done, total ) -> patchingProgressChanged.broadcast( progMilestone + scaleProgress( done, total, progClobberMax ), progMax ),
+				() -> keepRunning
+			);
+			if ( !restored || !keepRunning ) return false;
 
-				if ( !keepRunning ) return false;
-			}
 			patchingStatusChanged.broadcast( null );
 		}
 
@@ -466,6 +483,14 @@ public class ModPatchThread extends Thread
 		return true;
 	}
 
+	/**
+	 * Scales the (done / total) fraction to the range [0, max].
+	 */
+	private static int scaleProgress( long done, long total, int max )
+	{
+		return total <= 0 ? max : (int)( max * done / total );
+	}
+
 	/**
 	 * Fetches all script files declared in the specified file, and returns them as a list.
 	 * 
@@ -515,25 +540,24 @@ public class ModPatchThread extends Thread
 	 * A warning will be logged if a path with differing case exists.
 	 *
 	 * @param knownPaths
-	 *            a list of innerPaths seen so far
+	 *            a set of innerPaths seen so far
 	 * @param knownPathsLower
-	 *            a copy of knownPaths, lower-cased
+	 *            knownPaths keyed by their lower-cased form (first seen wins)
 	 * @return the existing path (if different), or innerPath
 	 */
-	private String checkCase( String innerPath, List<String> knownPaths, List<String> knownPathsLower )
+	private String checkCase( String innerPath, Set<String> knownPaths, Map<String, String> knownPathsLower )
 	{
 		if ( knownPaths.contains( innerPath ) ) return innerPath;
 
 		String lowerPath = innerPath.toLowerCase();
-		int lowerIndex = knownPathsLower.indexOf( lowerPath );
-		if ( lowerIndex != -1 ) {
-			String knownPath = knownPaths.get( lowerIndex );
+		String knownPath = knownPathsLower.get( lowerPath );
+		if ( knownPath != null ) {
 			log.warn( String.format( "Modded file's case doesn't match existing path: \"%s\" vs \"%s\"", innerPath, knownPath ) );
 			return knownPath;
 		}
 
 		knownPaths.add( innerPath );
-		knownPathsLower.add( lowerPath );
+		knownPathsLower.put( lowerPath, innerPath );
 		return innerPath;
 	}
 
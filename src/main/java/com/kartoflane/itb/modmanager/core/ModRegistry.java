@@ -0,0 +1,201 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import net.vhati.modmanager.core.ModDB;
+import net.vhati.modmanager.core.ModInfo;
+
+
+/**
+ * What's known about local mod files: their hashes, and metadata. (thread-safe)
+ *
+ * The registry publishes immutable snapshots. Readers on any thread get a
+ * consistent view from {@link #getSnapshot()}, without locking. Each update
+ * builds a new snapshot from the current one and swaps it in, retrying if
+ * another update got there first.
+ *
+ * ModDBs and FileHashCaches handed to the registry belong to it, and must
+ * not be modified afterward.
+ */
+public class ModRegistry
+{
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>( new Snapshot() );
+
+
+	public ModRegistry()
+	{
+	}
+
+	public Snapshot getSnapshot()
+	{
+		return snapshot.get();
+	}
+
+	/**
+	 * Remembers the hashes of some files.
+	 */
+	public void putHashes( Collection<Map.Entry<File, String>> hashes )
+	{
+		update( s -> s.withHashes( hashes ) );
+	}
+
+	/**
+	 * Forgets a file's hash, wherever it's remembered.
+	 */
+	public void removeFile( File f )
+	{
+		update( s -> s.withoutFile( f ) );
+	}
+
+	/**
+	 * Forgets all files' hashes, except those in the FileHashCache.
+	 */
+	public void clearHashes()
+	{
+		update( s -> new Snapshot( Collections.emptyMap(), Collections.emptyMap(), s.modDB, s.modInfoMap, s.fileHashCache ) );
+	}
+
+	public void setModDB( ModDB modDB )
+	{
+		Map<String, ModInfo> modInfoMap = indexModInfos( modDB );
+		update( s -> new Snapshot( s.hashMap, s.fileMap, modDB, modInfoMap, s.fileHashCache ) );
+	}
+
+	public void setFileHashCache( FileHashCache fileHashCache )
+	{
+		update( s -> new Snapshot( s.hashMap, s.fileMap, s.modDB, s.modInfoMap, fileHashCache ) );
+	}
+
+	private void update( UnaryOperator<Snapshot> op )
+	{
+		snapshot.updateAndGet( op );
+	}
+
+	private static Map<String, ModInfo> indexModInfos( ModDB modDB )
+	{
+		Map<String, ModInfo> result = new HashMap<String, ModInfo>();
+		for ( ModInfo modInfo : modDB.getCatalog() ) {
+			// Like ModDB.getModInfo(), the first of any duplicates wins.
+			result.putIfAbsent( modInfo.getFileHash(), modInfo );
+		}
+		return Collections.unmodifiableMap( result );
+	}
+
+
+	/**
+	 * An immutable view of the registry, at some point in time.
+	 */
+	public static class Snapshot
+	{
+		private final Map<File, String> hashMap;
+		private final Map<String, File> fileMap;
+		private final ModDB modDB;
+		private final Map<String, ModInfo> modInfoMap;
+		private final FileHashCache fileHashCache;
+
+
+		private Snapshot()
+		{
+			this( Collections.emptyMap(), Collections.emptyMap(), new ModDB(), Collections.emptyMap(), new FileHashCache() );
+		}
+
+		private Snapshot(
+			Map<File, String> hashMap,
+			Map<String, File> fileMap,
+			ModDB modDB,
+			Map<String, ModInfo> modInfoMap,
+			FileHashCache fileHashCache
+		)
+		{
+			this.hashMap = hashMap;
+			this.fileMap = fileMap;
+			this.modDB = modDB;
+			this.modInfoMap = modInfoMap;
+			this.fileHashCache = fileHashCache;
+		}
+
+		/**
+		 * Wraps a new map of file hashes in a snapshot, along with its reverse index.
+		 */
+		private Snapshot withHashMap( Map<File, String> newHashMap, FileHashCache newCache )
+		{
+			Map<String, File> newFileMap = new HashMap<String, File>();
+			for ( Map.Entry<File, String> entry : newHashMap.entrySet() ) {
+				newFileMap.putIfAbsent( entry.getValue(), entry.getKey() );
+			}
+
+			return new Snapshot(
+				Collections.unmodifiableMap( newHashMap ),
+				Collections.unmodifiableMap( newFileMap ),
+				modDB, modInfoMap, newCache
+			);
+		}
+
+		private Snapshot withHashes( Collection<Map.Entry<File, String>> hashes )
+		{
+			Map<File, String> newHashMap = new HashMap<File, String>( hashMap );
+			for ( Map.Entry<File, String> entry : hashes ) {
+				newHashMap.put( entry.getKey(), entry.getValue() );
+			}
+			return withHashMap( newHashMap, fileHashCache );
+		}
+
+		private Snapshot withoutFile( File f )
+		{
+			Map<File, String> newHashMap = new HashMap<File, String>( hashMap );
+			newHashMap.remove( f );
+
+			FileHashCache newCache = new FileHashCache( fileHashCache );
+			newCache.remove( f );
+
+			return withHashMap( newHashMap, newCache );
+		}
+
+		/**
+		 * Returns the hash of a file, or null if it hasn't been hashed.
+		 */
+		public String getHash( File f )
+		{
+			return hashMap.get( f );
+		}
+
+		/**
+		 * Returns a file with the given hash, or null if there's none.
+		 */
+		public File getFile( String hash )
+		{
+			return fileMap.get( hash );
+		}
+
+		/**
+		 * Returns metadata for a given file hash, or null.
+		 */
+		public ModInfo getModInfo( String hash )
+		{
+			if ( hash == null ) return null;
+			return modInfoMap.get( hash );
+		}
+
+		/**
+		 * Returns the metadata of all known mods. (Don't modify it.)
+		 */
+		public ModDB getModDB()
+		{
+			return modDB;
+		}
+
+		/**
+		 * Returns the known file hashes. (Don't modify it.)
+		 */
+		public FileHashCache getFileHashCache()
+		{
+			return fileHashCache;
+		}
+	}
+}
@@ -3,11 +3,11 @@ package com.kartoflane.itb.modmanager.core;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -86,23 +86,30 @@ public class ModdedDatInfo
 	 */
 	public String toLuaString()
 	{
-		Map<String, Object> root = new LinkedHashMap<>();
-
-		Map<String, Object> v1 = new LinkedHashMap<>();
-		v1.put( "original_hash", originalHash );
+		StringWriter sw = new StringWriter();
+		try {
+			LuaWriter lw = new LuaWriter( sw );
+
+			lw.beginTable();
+			lw.key( "v1" ).beginTable();
+			lw.key( "original_hash" ).value( originalHash );
+
+			lw.key( "installed_mods" ).beginTable();
+			for ( int i = 0; i < installedModFileNames.size(); i++ ) {
+				lw.beginTable();
+				lw.key( "file_name" ).value( installedModFileNames.get( i ) );
+				lw.key( "file_hash" ).value( installedModHashes.get( i ) );
+				lw.endTable();
+			}
+			lw.endTable();
 
-		List<Map<String, String>> installedMods = new ArrayList<>( installedModFileNames.size() );
-		for ( int i = 0; i < installedModFileNames.size(); i++ ) {
-			Map<String, String> modInfo = new LinkedHashMap<>();
-			modInfo.put( "file_name", installedModFileNames.get( i ) );
-			modInfo.put( "file_hash", installedModHashes.get( i ) );
-			installedMods.add( modInfo );
+			lw.endTable();
+			lw.endTable();
 		}
-		v1.put( "installed_mods", installedMods );
-
-		root.put( "v1", v1 );
-
-		return LuaWriter.toLuaString( root );
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );  // StringWriter doesn't throw.
+		}
+		return sw.toString();
 	}
 
 	/**
@@ -0,0 +1,154 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.kartoflane.itb.modmanager.event.AsyncEventSingle;
+import com.kartoflane.itb.modmanager.event.Event;
+
+
+/**
+ * A thread that watches a directory, and reports which of its files were
+ * created, modified or deleted.
+ *
+ * Changes are collected until the directory has been quiet for a moment (so
+ * a file still being copied is reported once it's done, rather than once
+ * for every write), then reported together, on the event executor.
+ *
+ * If the system loses track of changes, null is reported instead of a set,
+ * meaning any file may have changed.
+ */
+public class ModsFolderWatcher extends Thread
+{
+	private static final Logger log = LogManager.getLogger();
+
+	/** How long the directory must be quiet before changes are reported. */
+	private static final long QUIET_MILLIS = 500;
+
+	private final AsyncEventSingle<Set<File>> filesChanged;
+
+	private final File dir;
+	private final WatchService watchService;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param eventExecutor
+	 *            runs notifications, one at a time, in order (eg. Platform::runLater)
+	 * @throws IOException
+	 *             if the directory can't be watched
+	 */
+	public ModsFolderWatcher( File dir, Executor eventExecutor ) throws IOException
+	{
+		super( "watch" );
+		this.dir = dir;
+		this.filesChanged = new AsyncEventSingle<>( eventExecutor );
+
+		watchService = FileSystems.getDefault().newWatchService();
+		try {
+			dir.toPath().register(
+				watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE
+			);
+		}
+		catch ( IOException e ) {
+			watchService.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Fired with files in the directory that changed, or null if unknown.
+	 */
+	public Event.Single<Set<File>> filesChangedEvent()
+	{
+		return filesChanged;
+	}
+
+	/**
+	 * Stops watching. The thread will exit shortly.
+	 */
+	public void close()
+	{
+		try {
+			watchService.close();
+		}
+		catch ( IOException e ) {
+			log.error( String.format( "Error while closing watch service for \"%s\"", dir.getPath() ), e );
+		}
+	}
+
+	public void run()
+	{
+		try {
+			while ( true ) {
+				// Wait for a change, then gather more until things settle down.
+				Set<File> changedFiles = new HashSet<File>();
+				boolean overflowed = collectChanges( watchService.take(), changedFiles );
+
+				WatchKey key;
+				while ( ( key = watchService.poll( QUIET_MILLIS, TimeUnit.MILLISECONDS ) ) != null ) {
+					overflowed |= collectChanges( key, changedFiles );
+				}
+
+				if ( overflowed ) {
+					log.info( String.format( "Lost track of changes in \"%s\"", dir.getName() ) );
+					filesChanged.broadcast( null );
+				}
+				else {
+					filesChanged.broadcast( changedFiles );
+				}
+			}
+		}
+		catch ( ClosedWatchServiceException | InterruptedException e ) {
+			// Stopped.
+		}
+		finally {
+			filesChanged.clearListeners();
+		}
+	}
+
+	/**
+	 * Adds files named by a key's events to a set, and resets the key.
+	 *
+	 * @return true if some events were lost, false otherwise
+	 */
+	private boolean collectChanges( WatchKey key, Set<File> changedFiles )
+	{
+		boolean overflowed = false;
+
+		for ( WatchEvent<?> event : key.pollEvents() ) {
+			if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+				overflowed = true;
+			}
+			else {
+				Path name = (Path)event.context();
+				changedFiles.add( new File( dir, name.toString() ) );
+			}
+		}
+
+		if ( !key.reset() ) {
+			// The directory itself is gone.
+			log.warn( String.format( "No longer able to watch \"%s\"", dir.getPath() ) );
+			close();
+		}
+		return overflowed;
+	}
+}
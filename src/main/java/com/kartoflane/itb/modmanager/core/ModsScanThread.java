@@ -1,19 +1,21 @@
 package com.kartoflane.itb.modmanager.core;
 
 import java.io.File;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.kartoflane.itb.modmanager.event.BatchingEvent;
 import com.kartoflane.itb.modmanager.event.Event;
 import com.kartoflane.itb.modmanager.event.EventCallback;
-import com.kartoflane.itb.modmanager.event.EventDouble;
 import com.kartoflane.itb.modmanager.event.EventSingle;
 import com.kartoflane.itb.modmanager.lua.LuaModMetadataReader;
 
@@ -25,29 +27,71 @@ import net.vhati.modmanager.core.ModInfo;
 /**
  * A thread to calculate MD5 hashes of files in the background.
  *
- * As each file is hashed, a class implementing HashObserver is notified.
- * Note: The callback on that class needs to be thread-safe.
+ * Files that haven't changed since they were last hashed reuse their
+ * remembered hashes.
+ *
+ * A full scan is given every mod file, and forgets hashes and metadata of
+ * files it wasn't given. A partial scan is given only files that changed,
+ * and keeps everything else it was told.
+ *
+ * As files are hashed, listeners are notified in batches, on the event
+ * executor, so the scan doesn't wait on them. Other events are broadcast on
+ * the scanning thread, and their listeners need to be thread-safe.
  */
 public class ModsScanThread extends Thread
 {
 	private static final Logger log = LogManager.getLogger();
 
-	private final EventDouble<File, String> hashCalculated = new EventDouble<>();
+	private final BatchingEvent<Map.Entry<File, String>> hashCalculated;
 	private final EventSingle<ModDB> localModDBUpdated = new EventSingle<>();
+	private final EventSingle<FileHashCache> fileHashCacheUpdated = new EventSingle<>();
 	private final EventCallback scanEnded = new EventCallback();
 
 	private List<File> fileList = new ArrayList<File>();
 	private ModDB newDB;
+	private FileHashCache knownHashes;
+	private boolean fullScan = true;
 
 
 	public ModsScanThread( File[] files, ModDB knownDB )
+	{
+		this( files, knownDB, new FileHashCache() );
+	}
+
+	public ModsScanThread( File[] files, ModDB knownDB, FileHashCache knownHashes )
+	{
+		this( files, knownDB, knownHashes, Runnable::run );
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param eventExecutor
+	 *            runs batched hash notifications, one at a time, in order
+	 *            (eg. Platform::runLater)
+	 */
+	public ModsScanThread( File[] files, ModDB knownDB, FileHashCache knownHashes, Executor eventExecutor )
 	{
 		super( "scan" );
+		this.hashCalculated = new BatchingEvent<>( eventExecutor );
 		this.fileList.addAll( Arrays.asList( files ) );
 		this.newDB = new ModDB( knownDB );
+		this.knownHashes = new FileHashCache( knownHashes );
 	}
 
-	public Event.Double<File, String> hashCalculatedEvent()
+	/**
+	 * Toggles whether the files given are all there are (the default), or
+	 * only those that changed.
+	 */
+	public void setFullScan( boolean b )
+	{
+		fullScan = b;
+	}
+
+	/**
+	 * Fired with files and their hashes, in batches, as hashing progresses.
+	 */
+	public Event.Single<List<Map.Entry<File, String>>> hashCalculatedEvent()
 	{
 		return hashCalculated;
 	}
@@ -57,6 +101,14 @@ public class ModsScanThread extends Thread
 		return localModDBUpdated;
 	}
 
+	/**
+	 * Fired with the hashes of all scanned files, once hashing has finished.
+	 */
+	public Event.Single<FileHashCache> fileHashCacheUpdatedEvent()
+	{
+		return fileHashCacheUpdated;
+	}
+
 	public Event.Callback scanEndedEvent()
 	{
 		return scanEnded;
@@ -65,14 +117,23 @@ public class ModsScanThread extends Thread
 	public void run()
 	{
 		Map<File, String> hashMap = new HashMap<File, String>();
+		FileHashCache newHashes = fullScan ? new FileHashCache() : new FileHashCache( knownHashes );
 
 		for ( File f : fileList ) {
-			String hash = calcFileMD5( f );
+			long length = f.length();
+			long lastModified = f.lastModified();
+
+			String hash = knownHashes.getHash( f, length, lastModified );
+			if ( hash == null ) {
+				hash = calcFileMD5( f );
+			}
 			if ( hash != null ) {
+				newHashes.putHash( f, length, lastModified, hash );
 				hashMap.put( f, hash );
-				hashCalculated.broadcast( f, hash );
+				hashCalculated.post( new AbstractMap.SimpleImmutableEntry<>( f, hash ) );
 			}
 		}
+		fileHashCacheUpdated.broadcast( newHashes );
 		log.info( "Background hashing finished." );
 
 		// Cache info about new files.
@@ -89,10 +150,12 @@ public class ModsScanThread extends Thread
 		}
 
 		// Prune info about absent files.
-		for ( Iterator<ModInfo> it = newDB.getCatalog().iterator(); it.hasNext(); ) {
-			ModInfo modInfo = it.next();
-			if ( !hashMap.containsValue( modInfo.getFileHash() ) )
-				it.remove();
+		if ( fullScan ) {
+			for ( Iterator<ModInfo> it = newDB.getCatalog().iterator(); it.hasNext(); ) {
+				ModInfo modInfo = it.next();
+				if ( !hashMap.containsValue( modInfo.getFileHash() ) )
+					it.remove();
+			}
 		}
 
 		localModDBUpdated.broadcast( new ModDB( newDB ) );
@@ -103,6 +166,7 @@ public class ModsScanThread extends Thread
 		// Cleanup listeners
 		hashCalculated.clearListeners();
 		localModDBUpdated.clearListeners();
+		fileHashCacheUpdated.clearListeners();
 		scanEnded.clearListeners();
 	}
 
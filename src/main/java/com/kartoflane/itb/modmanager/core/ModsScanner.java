@@ -10,14 +10,21 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,7 +45,6 @@ import net.vhati.ftldat.PackUtilities;
 import net.vhati.modmanager.core.ModDB;
 import net.vhati.modmanager.core.ModFileInfo;
 import net.vhati.modmanager.core.ModInfo;
-import net.vhati.modmanager.core.ModUtilities;
 import net.vhati.modmanager.ui.table.ListState;
 
 
@@ -53,27 +59,51 @@ public class ModsScanner
 	private final File modsDir;
 	private final File modsTableStateFile;
 	private final File modsMetadataFile;
+	private final File modsMetadataCacheFile;
 
-	private boolean scanning;
+	private volatile boolean scanning;
 	private final Lock managerLock = new ReentrantLock();
 	private final Condition scanEndedCond = managerLock.newCondition();
 
-	private Map<File, String> modFileHashes = new HashMap<File, String>();
-	private Map<String, Date> modFileDates = new HashMap<String, Date>();
-	private ModDB localModDB = new ModDB();
+	// Scans requested while another was running. (rescan: under managerLock, changed files: FX thread only)
+	private ListState<ModFileInfo> pendingRescanState = null;
+	private Set<File> pendingChangedFiles = new HashSet<File>();
 
+	private ModsFolderWatcher watcher = null;
+	private Supplier<ListState<ModFileInfo>> tableStateSupplier = null;
 
+	private final ModRegistry registry = new ModRegistry();
+	private final ModInfoService modInfoService = new ModInfoService( registry );
+
+	/** Applies scan results to the registry, in order, without holding up the scan. */
+	private final ExecutorService registryExecutor = Executors.newSingleThreadExecutor(
+		r -> {
+			Thread t = new Thread( r, "mod-registry" );
+			t.setDaemon( true );
+			return t;
+		}
+	);
+
+
+	/**
+	 * @param modMetadataFile
+	 *            lua file to export metadata to (and load it from, lacking a usable cache)
+	 * @param modMetadataCacheFile
+	 *            binary file to cache metadata and file hashes in, if enabled in the config
+	 */
 	public ModsScanner(
 		ITBConfig config,
 		File modsDir,
 		File modsTableStateFile,
-		File modMetadataFile
+		File modMetadataFile,
+		File modMetadataCacheFile
 	)
 	{
 		this.config = config;
 		this.modsDir = modsDir;
 		this.modsTableStateFile = modsTableStateFile;
 		this.modsMetadataFile = modMetadataFile;
+		this.modsMetadataCacheFile = modMetadataCacheFile;
 	}
 
 	public Event.Single<Boolean> scanningStateChangedEvent()
@@ -87,8 +117,12 @@ public class ModsScanner
 	}
 
 	/**
-	 * Constructs and returns a info panel for the specified mod, to be inserted in
-	 * {@link ManagerFWindow}'s rightContentPane.
+	 * Constructs an info panel for the specified mod, to be inserted in
+	 * ManagerWindow's rightContentPane. (FX thread only)
+	 * 
+	 * Anything that has to be read from the mod file is read in the background.
+	 * If nothing had to be, the returned future is already complete. Otherwise
+	 * it completes later, on the FX thread.
 	 * 
 	 * @param modFileInfo
 	 *            the mod file to construct info pane for
@@ -96,92 +130,115 @@ public class ModsScanner
 	 *            width property of the container the pane will be inserted into, allowing
 	 *            the pane to layout its children accordingly.
 	 */
-	public Region buildModInfoPane( ModFileInfo modFileInfo, ObservableValue<? extends Number> widthProperty )
+	public CompletableFuture<Region> buildModInfoPane( ModFileInfo modFileInfo, ObservableValue<? extends Number> widthProperty )
 	{
 		// TODO: Should probably move this method somewhere else
-		String modHash = modFileHashes.get( modFileInfo.getFile() );
-		ModInfo modInfo = localModDB.getModInfo( modHash );
+		File modFile = modFileInfo.getFile();
 
-		if ( modInfo == null || modInfo.isBlank() ) {
-			// NOTE: If we ever decide to bring over the catalog from SMM
-			// modInfo = catalogModDB.getModInfo( modHash );
-		}
+		CompletableFuture<Supplier<Region>> paneFactory = modInfoService.getHash( modFile ).thenCompose(
+			modHash -> {
+				ModInfo modInfo = registry.getSnapshot().getModInfo( modHash );
 
-		if ( modInfo != null && !modInfo.isBlank() ) {
-			Text title = new Text( modInfo.getTitle() );
-			title.setStyle( "-fx-font-weight: bold;" + "-fx-font-size: 20;" );
-			Text authorVersion = new Text(
-				String.format( "%nCreated by %s (version %s)", modInfo.getAuthor(), modInfo.getVersion() )
-			);
-			Text website = new Text( "\nWebsite:" );
-			Hyperlink hyperlink = UIUtilities.createHyperlink( "Link", modInfo.getURL() );
-			Text description = new Text( "\n\n" + modInfo.getDescription() );
+				if ( modInfo == null || modInfo.isBlank() ) {
+					// NOTE: If we ever decide to bring over the catalog from SMM
+					// modInfo = catalogModDB.getModInfo( modHash );
+				}
+
+				if ( modInfo != null && !modInfo.isBlank() ) {
+					return paneFactory( () -> buildModInfoText( modInfo, widthProperty ) );
+				}
+				else if ( scanning ) {
+					return paneFactory( () -> buildNotYetScannedText( widthProperty ) );
+				}
+				else {
+					return modInfoService.getReleaseDate( modHash, modFile )
+						.thenApply( modDate -> () -> buildNoInfoText( modDate, widthProperty ) );
+				}
+			}
+		);
 
-			return UIUtilities.wrappingTextFlow( widthProperty, title, authorVersion, website, hyperlink, description );
+		if ( paneFactory.isDone() ) {
+			return CompletableFuture.completedFuture( paneFactory.join().get() );
 		}
-		else {
-			boolean notYetReady = scanning;
+		return paneFactory.thenApplyAsync( Supplier::get, Platform::runLater );
+	}
 
-			if ( notYetReady ) {
-				String body = ""
-					+ "No info is currently available for the selected mod\n\n."
-					+ "But the mod manager has not yet finished scanning the mods/ folder. "
-					+ "Try clicking on this mod again after waiting a few seconds.";
+	private static CompletableFuture<Supplier<Region>> paneFactory( Supplier<Region> factory )
+	{
+		return CompletableFuture.completedFuture( factory );
+	}
 
-				return StyledTextBuilder.build( body, widthProperty );
-			}
-			else {
-				Date modDate = modFileDates.get( modHash );
-				if ( modDate == null ) {
-					long epochTime = -1;
-					try {
-						epochTime = ModUtilities.getModFileTime( modFileInfo.getFile() );
-					}
-					catch ( IOException e ) {
-						log.error( String.format( "Error while getting modified time of mod file contents for \"%s\"", modFileInfo.getFile() ), e );
-					}
-					if ( epochTime != -1 ) {
-						modDate = new Date( epochTime );
-						modFileDates.put( modHash, modDate );
-					}
-				}
+	private Region buildModInfoText( ModInfo modInfo, ObservableValue<? extends Number> widthProperty )
+	{
+		Text title = new Text( modInfo.getTitle() );
+		title.setStyle( "-fx-font-weight: bold;" + "-fx-font-size: 20;" );
+		Text authorVersion = new Text(
+			String.format( "%nCreated by %s (version %s)", modInfo.getAuthor(), modInfo.getVersion() )
+		);
+		Text website = new Text( "\nWebsite:" );
+		Hyperlink hyperlink = UIUtilities.createHyperlink( "Link", modInfo.getURL() );
+		Text description = new Text( "\n\n" + modInfo.getDescription() );
 
-				StringBuilder bodyBuf = new StringBuilder();
-				bodyBuf.append( "No info is available for the selected mod.\n\n" );
+		return UIUtilities.wrappingTextFlow( widthProperty, title, authorVersion, website, hyperlink, description );
+	}
 
-				if ( modDate != null ) {
-					SimpleDateFormat dateFormat = new SimpleDateFormat( "yyyy-MM-dd" );
-					bodyBuf.append( String.format( "It was released some time after %s.\n\n", dateFormat.format( modDate ) ) );
-				}
-				else {
-					bodyBuf.append( "The date of its release could not be determined.\n\n" );
-				}
+	private Region buildNotYetScannedText( ObservableValue<? extends Number> widthProperty )
+	{
+		String body = ""
+			+ "No info is currently available for the selected mod\n\n."
+			+ "But the mod manager has not yet finished scanning the mods/ folder. "
+			+ "Try clicking on this mod again after waiting a few seconds.";
 
-				bodyBuf.append( "Mods can include an embedded description, but this one did not.\n" );
+		return StyledTextBuilder.build( body, widthProperty );
+	}
 
-				return StyledTextBuilder.build( bodyBuf.toString(), widthProperty );
-			}
+	private Region buildNoInfoText( Date modDate, ObservableValue<? extends Number> widthProperty )
+	{
+		StringBuilder bodyBuf = new StringBuilder();
+		bodyBuf.append( "No info is available for the selected mod.\n\n" );
+
+		if ( modDate != null ) {
+			SimpleDateFormat dateFormat = new SimpleDateFormat( "yyyy-MM-dd" );
+			bodyBuf.append( String.format( "It was released some time after %s.\n\n", dateFormat.format( modDate ) ) );
+		}
+		else {
+			bodyBuf.append( "The date of its release could not be determined.\n\n" );
 		}
+
+		bodyBuf.append( "Mods can include an embedded description, but this one did not.\n" );
+
+		return StyledTextBuilder.build( bodyBuf.toString(), widthProperty );
 	}
 
 	/**
-	 * Returns ModInfo for the specified file.
+	 * Returns ModInfos for the specified files, in the same order. (thread-safe)
 	 * 
+	 * Files that haven't been hashed yet are hashed in the background.
+	 * 
+	 * @return a future that completes with the ModInfos, or fails with an
+	 *         IllegalArgumentException if no ModInfo could be found for some file
+	 */
+	public CompletableFuture<List<ModInfo>> getModInfos( List<File> modFiles )
+	{
+		List<CompletableFuture<ModInfo>> futures = modFiles.stream()
+			.map( modFile -> modInfoService.getHash( modFile ).thenApply( hash -> getModInfo( modFile, hash ) ) )
+			.collect( Collectors.toList() );
+
+		return CompletableFuture.allOf( futures.toArray( new CompletableFuture<?>[futures.size()] ) )
+			.thenApply(
+				v -> futures.stream()
+					.map( CompletableFuture::join )
+					.collect( Collectors.toList() )
+			);
+	}
+
+	/**
 	 * @throws IllegalArgumentException
 	 *             if no ModInfo could be found for the specified file
 	 */
-	public ModInfo getModInfo( File modFile )
+	private ModInfo getModInfo( File modFile, String hash )
 	{
-		String hash = modFileHashes.get( modFile );
-		if ( hash == null ) {
-			try {
-				hash = PackUtilities.calcFileMD5( modFile );
-			}
-			catch ( Exception e ) {
-			}
-		}
-
-		ModInfo modInfo = localModDB.getModInfo( hash );
+		ModInfo modInfo = registry.getSnapshot().getModInfo( hash );
 
 		if ( modInfo == null ) {
 			if ( scanning ) {
@@ -197,45 +254,174 @@ public class ModsScanner
 	}
 
 	/**
-	 * Returns a File instance that matches the specified hash.
+	 * Returns a File instance that matches the specified hash. (thread-safe)
 	 * Returns null if no matching file could be found.
 	 * 
-	 * Important: this method simply iterates over the ModsScanner's
-	 * internal Map of files-to-hashes, which is built on a separate
-	 * thread when the mod manager is started. Depending on the number
-	 * and size of mod files, this Map may not hold all the values
-	 * yet by the time you want to call this method.
+	 * Important: files' hashes are calculated on a separate thread when
+	 * the mod manager is started. Depending on the number and size of mod
+	 * files, not all of them may be known yet by the time you want to call
+	 * this method.
 	 */
 	public File getFileForHash( String hash )
 	{
-		return modFileHashes.entrySet().stream()
-			.filter( entry -> entry.getValue().equals( hash ) )
-			.map( entry -> entry.getKey() )
-			.findFirst()
-			.orElse( null );
+		return registry.getSnapshot().getFile( hash );
 	}
 
-	public void addModFiles( List<File> modsToAdd )
+	/**
+	 * Copies mod files into the mods/ dir.
+	 *
+	 * @return the copies that were made
+	 */
+	public List<File> addModFiles( List<File> modsToAdd )
 	{
+		List<File> result = new ArrayList<File>();
+
 		for ( File file : modsToAdd ) {
 			try {
 				File dstFile = new File( modsDir, file.getName() );
 				PackUtilities.copyFile( file, dstFile );
+				result.add( dstFile );
 			}
 			catch ( IOException e ) {
 				log.error( "Error occurred while copying mod " + file.getName(), e );
 			}
 		}
+
+		return result;
+	}
+
+	/**
+	 * Sets where to get the mods list from, to amend it when individual mod files
+	 * change. (The list's owner should be listening to modsTableStateAmendedEvent.)
+	 */
+	public void setTableStateSupplier( Supplier<ListState<ModFileInfo>> supplier )
+	{
+		tableStateSupplier = supplier;
+	}
+
+	/**
+	 * Starts watching the mods/ dir, and scanning mod files as they're added,
+	 * changed or removed.
+	 *
+	 * @see #scanChangedMods(Collection)
+	 */
+	public void startWatching()
+	{
+		if ( watcher != null ) return;
+
+		try {
+			watcher = new ModsFolderWatcher( modsDir, Platform::runLater );
+			watcher.setDaemon( true );
+			watcher.setPriority( Thread.MIN_PRIORITY );
+			watcher.filesChangedEvent().addListener( this::scanChangedMods );
+			watcher.start();
+		}
+		catch ( IOException e ) {
+			log.error( String.format( "Unable to watch \"%s\" for changes", modsDir.getName() ), e );
+			watcher = null;
+		}
+	}
+
+	public void stopWatching()
+	{
+		if ( watcher == null ) return;
+
+		watcher.close();
+		watcher = null;
 	}
 
 	/**
 	 * Clears and syncs the mods list with mods/ dir, then starts a new hash thread.
+	 *
+	 * If a scan is already running, this one starts when it ends.
 	 */
 	public void rescanMods( ListState<ModFileInfo> tableState )
 	{
+		if ( claimRescan( tableState ) ) {
+			scanningStateChanged.broadcast( true );
+			startFullScan( tableState );
+		}
+	}
+
+	/**
+	 * Marks a full rescan as running, or as pending if a scan is already running.
+	 *
+	 * @return true if the caller should start the rescan, false if it will start
+	 *         when the running scan ends
+	 */
+	private boolean claimRescan( ListState<ModFileInfo> tableState )
+	{
+		managerLock.lock();
+		try {
+			if ( scanning ) {
+				pendingRescanState = tableState;
+				return false;
+			}
+			scanning = true;
+			return true;
+		}
+		finally {
+			managerLock.unlock();
+		}
+	}
+
+	/**
+	 * Syncs the mods list with some files in the mods/ dir, then hashes (and
+	 * reads metadata from) just those files, in a new hash thread. (FX thread only)
+	 *
+	 * Files that no longer exist, or aren't mods, are removed from the list.
+	 * Metadata of removed files is kept until the next full rescan.
+	 *
+	 * If a scan is already running, this one starts when it ends.
+	 *
+	 * @param changedFiles
+	 *            files in the mods/ dir, or null to rescan everything
+	 */
+	public void scanChangedMods( Collection<File> changedFiles )
+	{
+		if ( tableStateSupplier == null ) {
+			throw new IllegalStateException( "No table state supplier has been set." );
+		}
+		if ( changedFiles == null ) {
+			rescanMods( tableStateSupplier.get() );
+			return;
+		}
+
+		managerLock.lock();
+		try {
+			if ( scanning ) {
+				pendingChangedFiles.addAll( changedFiles );
+				return;
+			}
+		}
+		finally {
+			managerLock.unlock();
+		}
+
+		boolean allowZip = config.getPropertyAsBoolean( ITBConfig.ALLOW_ZIP, false );
+		ModFileFilter filter = new ModFileFilter( allowZip );
+
+		ListState<ModFileInfo> tableState = tableStateSupplier.get();
+		List<File> filesToScan = new ArrayList<File>();
+
+		for ( File f : changedFiles ) {
+			ModFileInfo modFileInfo = new ModFileInfo( f );
+
+			if ( filter.accept( f ) ) {
+				filesToScan.add( f );
+				tableState.addItem( modFileInfo );
+			}
+			else {
+				tableState.removeItem( modFileInfo );
+				registry.removeFile( f );
+			}
+		}
+		modsTableStateAmended.broadcast( tableState );
+
+		if ( filesToScan.isEmpty() ) return;
+
 		managerLock.lock();
 		try {
-			if ( scanning ) return;
 			scanning = true;
 		}
 		finally {
@@ -243,7 +429,21 @@ public class ModsScanner
 		}
 
 		scanningStateChanged.broadcast( true );
-		modFileHashes.clear();
+		log.info( String.format( "Scanning %d changed mod file(s).", filesToScan.size() ) );
+
+		ModRegistry.Snapshot snapshot = registry.getSnapshot();
+		ModsScanThread scanThread = new ModsScanThread(
+			filesToScan.toArray( new File[filesToScan.size()] ), snapshot.getModDB(), snapshot.getFileHashCache(), registryExecutor
+		);
+		scanThread.setFullScan( false );
+		startScanThread( scanThread );
+	}
+
+	private void startFullScan( ListState<ModFileInfo> tableState )
+	{
+		// This scan covers any changes still waiting.
+		pendingChangedFiles.clear();
+		registry.clearHashes();
 
 		boolean allowZip = config.getPropertyAsBoolean( ITBConfig.ALLOW_ZIP, false );
 		File[] modFiles = modsDir.listFiles( new ModFileFilter( allowZip ) );
@@ -257,7 +457,13 @@ public class ModsScanner
 		amendModsTableState( tableState, unsortedMods );
 		modsTableStateAmended.broadcast( tableState );
 
-		ModsScanThread scanThread = new ModsScanThread( modFiles, localModDB );
+		ModRegistry.Snapshot snapshot = registry.getSnapshot();
+		ModsScanThread scanThread = new ModsScanThread( modFiles, snapshot.getModDB(), snapshot.getFileHashCache(), registryExecutor );
+		startScanThread( scanThread );
+	}
+
+	private void startScanThread( ModsScanThread scanThread )
+	{
 		scanThread.setDaemon( true );
 		scanThread.setPriority( Thread.MIN_PRIORITY );
 
@@ -265,6 +471,7 @@ public class ModsScanner
 		// unregistaring listeners on our end.
 		scanThread.hashCalculatedEvent().addListener( this::onHashCalculated );
 		scanThread.localModDBUpdatedEvent().addListener( this::onLocalModDBUpdated );
+		scanThread.fileHashCacheUpdatedEvent().addListener( this::onFileHashCacheUpdated );
 		scanThread.scanEndedEvent().addListener( this::onModsScanEnded );
 
 		scanThread.start();
@@ -306,7 +513,7 @@ public class ModsScanner
 				new OutputStreamWriter( new FileOutputStream( modsTableStateFile ), StandardCharsets.UTF_8 )
 			)
 		) {
-			for ( ModFileInfo modFileInfo : tableState.getItems() ) {
+			for ( ModFileInfo modFileInfo : tableState.getItemsView() ) {
 				bw.write( modFileInfo.getFile().getName() );
 				bw.write( "\r\n" );
 			}
@@ -317,21 +524,42 @@ public class ModsScanner
 		}
 	}
 
-	public void loadCachedModMetadata() throws InterruptedException
+	/**
+	 * Loads metadata cached by a previous run. (thread-safe)
+	 *
+	 * Call this before the first scan, so that only new mods need to be read.
+	 */
+	public void loadCachedModMetadata()
 	{
-		if ( modsMetadataFile.exists() ) {
-			// Load cached metadata first, before scanning for new info.
+		if ( !loadBinaryMetadataCache() && modsMetadataFile.exists() ) {
 			ModDB cachedDB = LuaCatalogReader.parse( modsMetadataFile );
 			if ( cachedDB != null ) {
-				setLocalModDB( cachedDB );
+				registry.setModDB( cachedDB );
 			}
 		}
+	}
 
+	/**
+	 * Syncs the mods list with the mods/ dir, in the order saved by a previous run,
+	 * and waits until the scan is done.
+	 */
+	public void scanModsAndWait() throws InterruptedException
+	{
 		final ListState<ModFileInfo> tableState = loadModsTableState();
 
 		managerLock.lock();
 		try {
-			Platform.runLater( () -> rescanMods( tableState ) );
+			// Claimed here rather than on the FX thread, so the wait below can't miss the scan.
+			final boolean startRescan = claimRescan( tableState );
+			Platform.runLater(
+				() -> {
+					if ( startRescan ) {
+						scanningStateChanged.broadcast( true );
+						startFullScan( tableState );
+					}
+					startWatching();
+				}
+			);
 
 			// Wait until notified that "mods/" has been scanned.
 			while ( scanning ) {
@@ -345,24 +573,60 @@ public class ModsScanner
 
 	public void saveCachedModMetadata()
 	{
+		ModRegistry.Snapshot snapshot = registry.getSnapshot();
+
 		try {
-			LuaCatalogWriter.write( localModDB.getCollatedModInfo(), modsMetadataFile );
+			LuaCatalogWriter.write( snapshot.getModDB(), modsMetadataFile );
 		}
 		catch ( IOException e ) {
 			log.error( String.format( "Error writing metadata from local mods to \"%s\"", modsMetadataFile.getName() ), e );
 		}
-	}
 
-	// --------------------------------------------------------------------------------------
+		if ( config.getPropertyAsBoolean( ITBConfig.METADATA_CACHE, true ) ) {
+			try {
+				BinaryMetadataCache.write( modsMetadataCacheFile, snapshot.getModDB(), snapshot.getFileHashCache() );
+			}
+			catch ( IOException e ) {
+				log.error( String.format( "Error writing metadata cache to \"%s\"", modsMetadataCacheFile.getName() ), e );
+			}
+		}
+		else if ( modsMetadataCacheFile.exists() && !modsMetadataCacheFile.delete() ) {
+			// Remove it, rather than let it go stale.
+			log.warn( String.format( "Could not delete disabled metadata cache \"%s\"", modsMetadataCacheFile.getName() ) );
+		}
+	}
 
 	/**
-	 * Sets the ModDB for local metadata. (thread-safe)
+	 * Loads metadata and file hashes from the binary cache, if it's enabled, and
+	 * at least as recent as the lua file.
+	 *
+	 * @return true if the cache was loaded, false otherwise
 	 */
-	private void setLocalModDB( final ModDB newDB )
+	private boolean loadBinaryMetadataCache()
 	{
-		UIUtilities.runNowOrLater( () -> localModDB = newDB );
+		if ( !config.getPropertyAsBoolean( ITBConfig.METADATA_CACHE, true ) ) return false;
+		if ( !modsMetadataCacheFile.exists() ) return false;
+		if ( modsMetadataFile.lastModified() > modsMetadataCacheFile.lastModified() ) return false;
+
+		try {
+			BinaryMetadataCache cache = BinaryMetadataCache.read( modsMetadataCacheFile );
+			if ( cache == null ) {
+				log.info( String.format( "Ignoring metadata cache from another version: \"%s\"", modsMetadataCacheFile.getName() ) );
+				return false;
+			}
+
+			registry.setModDB( cache.modDB );
+			registry.setFileHashCache( cache.fileHashCache );
+			return true;
+		}
+		catch ( IOException e ) {
+			log.warn( String.format( "Error reading metadata cache \"%s\", falling back to lua", modsMetadataCacheFile.getName() ), e );
+			return false;
+		}
 	}
 
+	// --------------------------------------------------------------------------------------
+
 	private void amendModsTableState( ListState<ModFileInfo> tableState, List<ModFileInfo> unsortedMods )
 	{
 		List<ModFileInfo> availableMods = new ArrayList<ModFileInfo>( unsortedMods );
@@ -373,41 +637,66 @@ public class ModsScanner
 				tableState.addItem( modFileInfo );
 			}
 		}
-		for ( ModFileInfo modFileInfo : tableState.getItems() ) {
-			if ( !availableMods.contains( modFileInfo ) ) {
-				tableState.removeItem( modFileInfo );
-			}
-		}
+		tableState.retainItems( new HashSet<ModFileInfo>( unsortedMods ) );
 	}
 
 	// --------------------------------------------------------------------------------------
 
-	private void onHashCalculated( File f, String hash )
+	// Scan results are applied on the registry executor, in the order the scan
+	// produced them, so hashes arrive in batches while the scan carries on.
+
+	private void onHashCalculated( List<Map.Entry<File, String>> hashes )
 	{
-		UIUtilities.runNowOrLater( () -> modFileHashes.put( f, hash ) );
+		registry.putHashes( hashes );
 	}
 
 	private void onLocalModDBUpdated( ModDB newDB )
 	{
-		setLocalModDB( newDB );
+		registryExecutor.execute( () -> registry.setModDB( newDB ) );
+	}
+
+	private void onFileHashCacheUpdated( FileHashCache newCache )
+	{
+		registryExecutor.execute( () -> registry.setFileHashCache( newCache ) );
 	}
 
 	private void onModsScanEnded()
 	{
-		UIUtilities.runNowOrLater(
-			() -> {
-				managerLock.lock();
-				try {
-					scanning = false;
-					scanEndedCond.signalAll();
-				}
-				finally {
-					managerLock.unlock();
-				}
+		// Queued behind the scan's results, so they're all in the registry by the time it runs.
+		registryExecutor.execute( () -> Platform.runLater( this::finishScan ) );
+	}
+
+	private void finishScan()
+	{
+		ListState<ModFileInfo> tableState;
 
-				scanningStateChanged.broadcast( false );
+		managerLock.lock();
+		try {
+			tableState = pendingRescanState;
+			pendingRescanState = null;
+
+			if ( tableState == null ) {
+				scanning = false;
+				scanEndedCond.signalAll();
 			}
-		);
+		}
+		finally {
+			managerLock.unlock();
+		}
+
+		if ( tableState != null ) {
+			// Still scanning, as far as anyone waiting is concerned.
+			startFullScan( tableState );
+			return;
+		}
+
+		scanningStateChanged.broadcast( false );
+
+		if ( !pendingChangedFiles.isEmpty() ) {
+			Set<File> changedFiles = pendingChangedFiles;
+			pendingChangedFiles = new HashSet<File>();
+			scanChangedMods( changedFiles );
+		}
 	}
 
 
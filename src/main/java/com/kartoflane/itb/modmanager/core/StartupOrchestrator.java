@@ -0,0 +1,182 @@
+package com.kartoflane.itb.modmanager.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Runs the manager's startup tasks in the background, each as soon as the
+ * tasks it depends on have finished, and logs a timeline of them.
+ *
+ * Dependencies only order tasks. A task that fails is logged, and its
+ * dependents still run (any that need its result will fail in turn).
+ *
+ * Steps taken on the calling thread can be put on the timeline with mark().
+ */
+public class StartupOrchestrator
+{
+	private static final Logger log = LogManager.getLogger();
+
+	private final long startNanos = System.nanoTime();
+	private final ExecutorService executor;
+
+	private final List<TimelineEntry> timeline = Collections.synchronizedList( new ArrayList<>() );
+	private final List<CompletableFuture<?>> tasks = new ArrayList<>();
+
+
+	public StartupOrchestrator()
+	{
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(
+			r -> {
+				Thread t = new Thread( r, "startup-" + threadCount.incrementAndGet() );
+				t.setDaemon( true );
+				return t;
+			}
+		);
+	}
+
+	/**
+	 * Schedules a task that returns a result.
+	 *
+	 * @param dependencies
+	 *            tasks that must finish before this one starts
+	 */
+	public <T> CompletableFuture<T> supply( String name, Callable<T> task, CompletableFuture<?>... dependencies )
+	{
+		CompletableFuture<T> result = CompletableFuture.allOf( dependencies )
+			.handle( ( v, e ) -> null )  // Wait for dependencies, whether or not they succeeded.
+			.thenApplyAsync( v -> call( name, task ), executor );
+
+		synchronized ( tasks ) {
+			tasks.add( result );
+		}
+		return result;
+	}
+
+	/**
+	 * Schedules a task.
+	 *
+	 * @param dependencies
+	 *            tasks that must finish before this one starts
+	 */
+	public CompletableFuture<Void> run( String name, Action task, CompletableFuture<?>... dependencies )
+	{
+		return supply(
+			name,
+			() -> {
+				task.run();
+				return null;
+			},
+			dependencies
+		);
+	}
+
+	/**
+	 * Puts a point in time on the timeline (eg. when the window was shown).
+	 */
+	public void mark( String name )
+	{
+		long now = System.nanoTime();
+		timeline.add( new TimelineEntry( name, Thread.currentThread().getName(), now, now ) );
+	}
+
+	/**
+	 * Logs the timeline once every task scheduled so far has finished, then
+	 * releases the background threads.
+	 *
+	 * No tasks should be scheduled afterward.
+	 */
+	public void finish()
+	{
+		CompletableFuture<?>[] pending;
+		synchronized ( tasks ) {
+			pending = tasks.toArray( new CompletableFuture<?>[tasks.size()] );
+		}
+
+		CompletableFuture.allOf( pending ).whenComplete(
+			( v, e ) -> {
+				logTimeline();
+				executor.shutdown();
+			}
+		);
+	}
+
+	private <T> T call( String name, Callable<T> task )
+	{
+		long start = System.nanoTime();
+		try {
+			return task.call();
+		}
+		catch ( Exception e ) {
+			log.error( String.format( "Startup task \"%s\" failed.", name ), e );
+			throw new CompletionException( e );
+		}
+		finally {
+			timeline.add( new TimelineEntry( name, Thread.currentThread().getName(), start, System.nanoTime() ) );
+		}
+	}
+
+	private void logTimeline()
+	{
+		List<TimelineEntry> entries;
+		synchronized ( timeline ) {
+			entries = new ArrayList<>( timeline );
+		}
+		entries.sort( Comparator.comparingLong( entry -> entry.startNanos ) );
+
+		StringBuilder buf = new StringBuilder( "Startup timeline (ms since start):" );
+		for ( TimelineEntry entry : entries ) {
+			long start = TimeUnit.NANOSECONDS.toMillis( entry.startNanos - startNanos );
+			long end = TimeUnit.NANOSECONDS.toMillis( entry.endNanos - startNanos );
+
+			if ( entry.startNanos == entry.endNanos ) {
+				buf.append( String.format( "%n  %6d          %s [%s]", start, entry.name, entry.threadName ) );
+			}
+			else {
+				buf.append( String.format( "%n  %6d - %6d %s [%s]", start, end, entry.name, entry.threadName ) );
+			}
+		}
+		log.info( buf.toString() );
+	}
+
+
+	/**
+	 * A startup task's body, which may throw.
+	 */
+	@FunctionalInterface
+	public interface Action
+	{
+		public void run() throws Exception;
+	}
+
+
+	private static class TimelineEntry
+	{
+		public final String name;
+		public final String threadName;
+		public final long startNanos;
+		public final long endNanos;
+
+
+		public TimelineEntry( String name, String threadName, long startNanos, long endNanos )
+		{
+			this.name = name;
+			this.threadName = threadName;
+			this.startNanos = startNanos;
+			this.endNanos = endNanos;
+		}
+	}
+}
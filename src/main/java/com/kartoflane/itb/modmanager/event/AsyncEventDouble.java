@@ -0,0 +1,50 @@
+package com.kartoflane.itb.modmanager.event;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Variant of {@link EventDouble} which notifies listeners on an executor, so the thread
+ * calling {@link #broadcast(Object, Object)} doesn't wait for them.
+ * 
+ * The executor should run tasks one at a time, in the order they were submitted (eg. a
+ * single-threaded executor, or {@code Platform::runLater}), so listeners see events in the
+ * order they were broadcast. {@link #clearListeners()} is also run on the executor, after
+ * any broadcasts still pending.
+ * 
+ * @param <T>
+ *            type of the first argument received by listeners of this event
+ * @param <U>
+ *            type of the second argument received by listeners of this event
+ */
+public class AsyncEventDouble<T, U> extends EventDouble<T, U>
+{
+	protected final Executor executor;
+
+
+	public AsyncEventDouble( Executor executor )
+	{
+		this.executor = Objects.requireNonNull( executor );
+	}
+
+	@Override
+	public void clearListeners()
+	{
+		executor.execute( super::clearListeners );
+	}
+
+	/**
+	 * Notifies all registered listeners of this event, on the executor.
+	 * 
+	 * @param arg1
+	 *            the first event argument to pass
+	 * @param arg2
+	 *            the second event argument to pass
+	 */
+	@Override
+	public void broadcast( T arg1, U arg2 )
+	{
+		executor.execute( () -> super.broadcast( arg1, arg2 ) );
+	}
+}
@@ -0,0 +1,46 @@
+package com.kartoflane.itb.modmanager.event;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Variant of {@link EventSingle} which notifies listeners on an executor, so the thread
+ * calling {@link #broadcast(Object)} doesn't wait for them.
+ * 
+ * The executor should run tasks one at a time, in the order they were submitted (eg. a
+ * single-threaded executor, or {@code Platform::runLater}), so listeners see events in the
+ * order they were broadcast. {@link #clearListeners()} is also run on the executor, after
+ * any broadcasts still pending.
+ * 
+ * @param <T>
+ *            type of the argument received by listeners of this event
+ */
+public class AsyncEventSingle<T> extends EventSingle<T>
+{
+	protected final Executor executor;
+
+
+	public AsyncEventSingle( Executor executor )
+	{
+		this.executor = Objects.requireNonNull( executor );
+	}
+
+	@Override
+	public void clearListeners()
+	{
+		executor.execute( super::clearListeners );
+	}
+
+	/**
+	 * Notifies all registered listeners of this event, on the executor.
+	 * 
+	 * @param args
+	 *            the event arguments to pass
+	 */
+	@Override
+	public void broadcast( T args )
+	{
+		executor.execute( () -> super.broadcast( args ) );
+	}
+}
@@ -0,0 +1,115 @@
+package com.kartoflane.itb.modmanager.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Event class for high-frequency notifications, which are delivered to listeners in lists.
+ * 
+ * Items are {@link #post(Object) posted} individually. The first item posted schedules a
+ * broadcast on the executor; items posted before that broadcast runs join the same list.
+ * The posting thread never waits for listeners, and listeners are notified once per batch,
+ * rather than once per item.
+ * 
+ * The executor should run tasks one at a time, in the order they were submitted (eg. a
+ * single-threaded executor, or {@code Platform::runLater}). {@link #clearListeners()} is also
+ * run on the executor, after items posted before it have been delivered.
+ * 
+ * @param <T>
+ *            type of the items received by listeners of this event, in lists
+ */
+public class BatchingEvent<T> extends EventSingle<List<T>>
+{
+	protected final Executor executor;
+
+	private final Object batchLock = new Object();
+	private List<T> batch = null;
+
+
+	public BatchingEvent( Executor executor )
+	{
+		this.executor = Objects.requireNonNull( executor );
+	}
+
+	@Override
+	public void clearListeners()
+	{
+		List<T> items = takeBatch();
+		executor.execute(
+			() -> {
+				broadcastItems( items );
+				super.clearListeners();
+			}
+		);
+	}
+
+	/**
+	 * Adds an item to the pending batch, scheduling a broadcast of it if none is scheduled yet.
+	 * 
+	 * @param item
+	 *            the item to pass
+	 */
+	public void post( T item )
+	{
+		boolean schedule = false;
+		synchronized ( batchLock ) {
+			if ( batch == null ) {
+				batch = new ArrayList<>();
+				schedule = true;
+			}
+			batch.add( item );
+		}
+
+		if ( schedule )
+			executor.execute( this::broadcastBatch );
+	}
+
+	/**
+	 * Notifies all registered listeners of a list of items, on the executor.
+	 * 
+	 * Items posted earlier, but not yet broadcast, are delivered first.
+	 * 
+	 * @param args
+	 *            the items to pass
+	 */
+	@Override
+	public void broadcast( List<T> args )
+	{
+		List<T> items = takeBatch();
+		executor.execute(
+			() -> {
+				broadcastItems( items );
+				super.broadcast( args );
+			}
+		);
+	}
+
+	private void broadcastBatch()
+	{
+		broadcastItems( takeBatch() );
+	}
+
+	/**
+	 * Detaches the pending batch, so items posted from now on start a new one.
+	 * 
+	 * @return the pending items, or null if there were none
+	 */
+	private List<T> takeBatch()
+	{
+		synchronized ( batchLock ) {
+			List<T> items = batch;
+			batch = null;
+			return items;
+		}
+	}
+
+	private void broadcastItems( List<T> items )
+	{
+		if ( items != null )
+			super.broadcast( Collections.unmodifiableList( items ) );
+	}
+}
@@ -1,7 +1,11 @@
 package com.kartoflane.itb.modmanager.event;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 
@@ -9,6 +13,12 @@ public abstract class EventBase<L> implements Event<L>
 {
 	protected Set<L> listeners = null;
 
+	/**
+	 * Self-cleaning listeners that have unregistered themselves, but are still in the set.
+	 * They're removed all at once, so the set's array is copied once rather than once each.
+	 */
+	protected Queue<L> removedListeners = new ConcurrentLinkedQueue<>();
+
 
 	public L addListener( L listener )
 	{
@@ -28,4 +38,29 @@ public abstract class EventBase<L> implements Event<L>
 			throw new ListenerException();
 		}
 	}
+
+	/**
+	 * Marks a listener for removal the next time the event is broadcast or cleared.
+	 * The listener is expected to ignore the event in the meantime.
+	 */
+	protected void removeListenerLater( L listener )
+	{
+		removedListeners.add( listener );
+	}
+
+	/**
+	 * Removes listeners marked by {@link #removeListenerLater(Object)}, in one pass.
+	 */
+	protected void purgeRemovedListeners()
+	{
+		if ( removedListeners.isEmpty() )
+			return;
+
+		List<L> removed = new ArrayList<>();
+		for ( L listener; ( listener = removedListeners.poll() ) != null; ) {
+			removed.add( listener );
+		}
+		if ( listeners != null )
+			listeners.removeAll( removed );
+	}
 }
@@ -1,5 +1,6 @@
 package com.kartoflane.itb.modmanager.event;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BooleanSupplier;
 
 
@@ -19,6 +20,7 @@ public class EventCallback extends EventBase<Runnable> implements Event.Callback
 	{
 		if ( listeners != null )
 			listeners.clear();
+		removedListeners.clear();
 	}
 
 	/**
@@ -28,6 +30,7 @@ public class EventCallback extends EventBase<Runnable> implements Event.Callback
 	{
 		if ( listeners == null )
 			return;
+		purgeRemovedListeners();
 		// Iterates over a snapshot of the original collection
 		listeners.forEach( listener -> safeNotify( listener ) );
 	}
@@ -52,12 +55,16 @@ public class EventCallback extends EventBase<Runnable> implements Event.Callback
 	public Runnable addListenerSelfCleaning( Runnable listener, BooleanSupplier selfCleanPredicate )
 	{
 		final Runnable[] c = new Runnable[1];
+		final AtomicBoolean removed = new AtomicBoolean( false );
 
 		c[0] = () -> {
+			if ( removed.get() )
+				return;
+
 			safeNotify( listener );
 
-			if ( selfCleanPredicate == null || selfCleanPredicate.getAsBoolean() )
-				removeListener( c[0] );
+			if ( ( selfCleanPredicate == null || selfCleanPredicate.getAsBoolean() ) && removed.compareAndSet( false, true ) )
+				removeListenerLater( c[0] );
 		};
 
 		return addListener( c[0] );
@@ -1,5 +1,6 @@
 package com.kartoflane.itb.modmanager.event;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.BiPredicate;
 
@@ -25,6 +26,7 @@ public class EventDouble<T, U> extends EventBase<BiConsumer<T, U>> implements Ev
 	{
 		if ( listeners != null )
 			listeners.clear();
+		removedListeners.clear();
 	}
 
 	/**
@@ -39,6 +41,7 @@ public class EventDouble<T, U> extends EventBase<BiConsumer<T, U>> implements Ev
 	{
 		if ( listeners == null )
 			return;
+		purgeRemovedListeners();
 		// Iterates over a snapshot of the original collection
 		listeners.forEach( listener -> safeNotify( listener, arg1, arg2 ) );
 	}
@@ -66,12 +69,16 @@ public class EventDouble<T, U> extends EventBase<BiConsumer<T, U>> implements Ev
 	public BiConsumer<T, U> addListenerSelfCleaning( BiConsumer<T, U> listener, BiPredicate<T, U> selfCleanPredicate )
 	{
 		final BiConsumer<T, U>[] c = new BiConsumer[1];
+		final AtomicBoolean removed = new AtomicBoolean( false );
 
 		c[0] = ( arg1, arg2 ) -> {
+			if ( removed.get() )
+				return;
+
 			safeNotify( listener, arg1, arg2 );
 
-			if ( selfCleanPredicate == null || selfCleanPredicate.test( arg1, arg2 ) )
-				removeListener( c[0] );
+			if ( ( selfCleanPredicate == null || selfCleanPredicate.test( arg1, arg2 ) ) && removed.compareAndSet( false, true ) )
+				removeListenerLater( c[0] );
 		};
 
 		return addListener( c[0] );
@@ -1,5 +1,6 @@
 package com.kartoflane.itb.modmanager.event;
 
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -23,6 +24,7 @@ public class EventSingle<T> extends EventBase<Consumer<T>> implements Event.Sing
 	{
 		if ( listeners != null )
 			listeners.clear();
+		removedListeners.clear();
 	}
 
 	/**
@@ -35,6 +37,7 @@ public class EventSingle<T> extends EventBase<Consumer<T>> implements Event.Sing
 	{
 		if ( listeners == null )
 			return;
+		purgeRemovedListeners();
 		// Iterates over a snapshot of the original collection
 		listeners.forEach( listener -> safeNotify( listener, args ) );
 	}
@@ -62,12 +65,16 @@ public class EventSingle<T> extends EventBase<Consumer<T>> implements Event.Sing
 	public Consumer<T> addListenerSelfCleaning( Consumer<T> listener, Predicate<T> selfCleanPredicate )
 	{
 		final Consumer<T>[] c = new Consumer[1];
+		final AtomicBoolean removed = new AtomicBoolean( false );
 
 		c[0] = arg -> {
+			if ( removed.get() )
+				return;
+
 			safeNotify( listener, arg );
 
-			if ( selfCleanPredicate == null || selfCleanPredicate.test( arg ) )
-				removeListener( c[0] );
+			if ( ( selfCleanPredicate == null || selfCleanPredicate.test( arg ) ) && removed.compareAndSet( false, true ) )
+				removeListenerLater( c[0] );
 		};
 
 		return addListener( c[0] );
@@ -6,51 +6,76 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.Map;
 
+import net.vhati.modmanager.core.ModDB;
 import net.vhati.modmanager.core.ModsInfo;
 
 
 public class LuaCatalogWriter
 {
-	public static void write( List<ModsInfo> modsInfoList, File dstFile ) throws IOException
+	public static void write( ModDB modDB, File dstFile ) throws IOException
 	{
-		Map<String, Object> root = new LinkedHashMap<>();
-
-		List<Object> modsArray = new ArrayList<>( modsInfoList.size() );
-		for ( ModsInfo modsInfo : modsInfoList ) {
-			Map<String, Object> modTable = new LinkedHashMap<>();
-
-			modTable.put( "title", modsInfo.getTitle() );
-			modTable.put( "author", modsInfo.getAuthor() );
-			modTable.put( "desc", modsInfo.getDescription() );
-			modTable.put( "url", modsInfo.getThreadURL() );
-			modTable.put( "thread_hash", modsInfo.getThreadHash() );
-
-			List<Object> versionsArray = new ArrayList<>( modsInfo.getVersionsMap().size() );
-			for ( Map.Entry<String, String> entry : modsInfo.getVersionsMap().entrySet() ) {
-				Map<String, Object> versionInfo = new LinkedHashMap<>();
-				versionInfo.put( "hash", entry.getKey() );
-				versionInfo.put( "version", entry.getValue() );
-				versionsArray.add( versionInfo );
-			}
+		write( modDB.getCollatedModInfo(), dstFile );
+	}
 
-			modTable.put( "versions", versionsArray );
-			modsArray.add( modTable );
+	/**
+	 * Writes a catalog file.
+	 *
+	 * The file is written under a temporary name first, then moved into
+	 * place, so a failed write won't leave a truncated catalog behind.
+	 */
+	public static void write( List<ModsInfo> modsInfoList, File dstFile ) throws IOException
+	{
+		File tmpFile = new File( dstFile.getPath() + ".tmp" );
+		boolean success = false;
+		try {
+			writeCatalog( modsInfoList, tmpFile );
+			Files.move( tmpFile.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			success = true;
 		}
+		finally {
+			if ( !success ) tmpFile.delete();
+		}
+	}
 
-		root.put( "v1", modsArray );
-
+	private static void writeCatalog( List<ModsInfo> modsInfoList, File dstFile ) throws IOException
+	{
 		try (
 			BufferedWriter bw = new BufferedWriter(
 				new OutputStreamWriter( new FileOutputStream( dstFile ), StandardCharsets.UTF_8 )
 			)
 		) {
-			bw.write( LuaWriter.toLuaString( root ) );
-			bw.flush();
+			LuaWriter lw = new LuaWriter( bw );
+
+			lw.beginTable();
+			lw.key( "v1" ).beginTable();
+			for ( ModsInfo modsInfo : modsInfoList ) {
+				lw.beginTable();
+				lw.key( "title" ).value( modsInfo.getTitle() );
+				lw.key( "author" ).value( modsInfo.getAuthor() );
+				lw.key( "desc" ).value( modsInfo.getDescription() );
+				lw.key( "url" ).value( modsInfo.getThreadURL() );
+				lw.key( "thread_hash" ).value( modsInfo.getThreadHash() );
+
+				lw.key( "versions" ).beginTable();
+				for ( Map.Entry<String, String> entry : modsInfo.getVersionsMap().entrySet() ) {
+					lw.beginTable();
+					lw.key( "hash" ).value( entry.getKey() );
+					lw.key( "version" ).value( entry.getValue() );
+					lw.endTable();
+				}
+				lw.endTable();
+
+				lw.endTable();
+			}
+			lw.endTable();
+			lw.endTable();
+
+			lw.flush();
 		}
 	}
 }
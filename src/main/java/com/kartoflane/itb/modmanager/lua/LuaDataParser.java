@@ -0,0 +1,650 @@
+package com.kartoflane.itb.modmanager.lua;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.luaj.vm2.LuaString;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+
+
+/**
+ * A parser for lua data files, which hold nothing but a single value - usually a table constructor.
+ *
+ * Only literals are understood: nil, booleans, decimal numbers (optionally negated), strings
+ * and tables made of those. Anything else (variables, operators, function calls, ...) is code,
+ * and has to be left to the lua compiler.
+ *
+ * The values are built the way LuaJ would build them when running "return " + text, down to
+ * how tables are presized and filled, so that iterating over them yields the same order.
+ *
+ * The text is read from a Reader as parsing goes, through a small buffer, so only the
+ * values being built are held in memory. Reading stops at the first sign of code.
+ */
+public class LuaDataParser
+{
+	/** Nesting limit, past which the text is left to the compiler (which will most likely reject it). */
+	private static final int MAX_DEPTH = 200;
+
+	/** Initial size of the read buffer. It only grows to look ahead past a very long bracket. */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Number of positional items that lua stores in a table at once. */
+	private static final int LIST_FLUSH_SIZE = 50;
+
+	private static final Set<String> KEYWORDS = new HashSet<>( Arrays.asList(
+		"and", "break", "do", "else", "elseif", "end", "false", "for", "function", "goto", "if",
+		"in", "local", "nil", "not", "or", "repeat", "return", "then", "true", "until", "while"
+	) );
+
+	/** Thrown upon meeting anything that isn't plain data. Shared, since it carries no information. */
+	private static final NotDataException NOT_DATA = new NotDataException();
+
+	private final Reader reader;
+	private boolean eof = false;
+
+	/** Chars read but not yet consumed lie between pos and limit. */
+	private char[] buf = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+
+	private int depth = 0;
+
+	/** Bytes of the string being read, reused between strings. */
+	private byte[] stringBuf = new byte[64];
+	private int stringLength = 0;
+
+	/** Chars of the name or numeral being read, reused between tokens. */
+	private final StringBuilder token = new StringBuilder();
+
+
+	private LuaDataParser( Reader reader )
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * Returns the value described by the text from a Reader, or null if the text isn't
+	 * plain data. The Reader will not be closed.
+	 *
+	 * If the text isn't plain data, an unknown part of it will have been read.
+	 *
+	 * A nil literal is returned as {@link LuaValue#NIL}.
+	 */
+	public static LuaValue parse( Reader reader ) throws IOException
+	{
+		LuaDataParser parser = new LuaDataParser( reader );
+		try {
+			parser.skipSpace();
+			LuaValue result = parser.readValue();
+
+			parser.skipSpace();
+			if ( parser.peek( 0 ) == ';' ) {
+				parser.pos++;
+				parser.skipSpace();
+			}
+			return ( parser.peek( 0 ) == -1 ? result : null );
+		}
+		catch ( NotDataException e ) {
+			return null;
+		}
+	}
+
+	public static LuaValue parse( String text )
+	{
+		try {
+			return parse( new StringReader( text ) );
+		}
+		catch ( IOException e ) {
+			// StringReader won't throw, once open.
+			throw new UncheckedIOException( e );
+		}
+	}
+
+	// ------------------------------------------------------------------------------
+
+	/**
+	 * Returns the char offset chars past pos, without consuming it, or -1 if the text
+	 * ends before it.
+	 */
+	private int peek( int offset ) throws IOException
+	{
+		if ( pos + offset >= limit && !fill( offset + 1 ) ) return -1;
+		return buf[pos + offset];
+	}
+
+	/**
+	 * Reads until at least count chars past pos are buffered, or the text ends.
+	 *
+	 * Consumed chars are discarded to make room.
+	 *
+	 * @return true if count chars are available, false otherwise
+	 */
+	private boolean fill( int count ) throws IOException
+	{
+		if ( pos + count > buf.length ) {
+			char[] newBuf = ( count > buf.length ? new char[Math.max( count, buf.length * 2 )] : buf );
+			System.arraycopy( buf, pos, newBuf, 0, limit - pos );
+			buf = newBuf;
+			limit -= pos;
+			pos = 0;
+		}
+
+		while ( limit - pos < count ) {
+			if ( eof ) return false;
+
+			int n = reader.read( buf, limit, buf.length - limit );
+			if ( n == -1 ) {
+				eof = true;
+			}
+			else {
+				limit += n;
+			}
+		}
+		return true;
+	}
+
+	// ------------------------------------------------------------------------------
+
+	private LuaValue readValue() throws IOException, NotDataException
+	{
+		int c = peek( 0 );
+		if ( c == '{' ) {
+			return readTable();
+		}
+		else if ( c == '"' || c == '\'' ) {
+			return readQuotedString();
+		}
+		else if ( c == '[' ) {
+			int level = readLongBracketLevel();
+			if ( level < 0 ) throw NOT_DATA;
+			return readLongString( level );
+		}
+		else if ( c == '-' ) {
+			pos++;
+			skipSpace();
+			if ( !isNumberStart() ) throw NOT_DATA;
+			return readNumber().neg();
+		}
+		else if ( isNumberStart() ) {
+			return readNumber();
+		}
+		else if ( isNameStart( c ) ) {
+			return toLiteral( readName() );
+		}
+		throw NOT_DATA;
+	}
+
+	/**
+	 * Returns the value of a name that stands for a literal (true, false, nil).
+	 */
+	private static LuaValue toLiteral( String name ) throws NotDataException
+	{
+		if ( "true".equals( name ) ) return LuaValue.TRUE;
+		if ( "false".equals( name ) ) return LuaValue.FALSE;
+		if ( "nil".equals( name ) ) return LuaValue.NIL;
+		throw NOT_DATA;
+	}
+
+	private LuaTable readTable() throws IOException, NotDataException
+	{
+		if ( ++depth > MAX_DEPTH ) throw NOT_DATA;
+		pos++;  // Skip '{'.
+
+		// Fields in order, as key/value pairs. Positional items have a null key.
+		List<LuaValue> fields = new ArrayList<>();
+		int listCount = 0;
+		int hashCount = 0;
+
+		skipSpace();
+		while ( true ) {
+			int c = peek( 0 );
+			if ( c == -1 ) throw NOT_DATA;
+			if ( c == '}' ) {
+				pos++;
+				break;
+			}
+
+			if ( isNameStart( c ) ) {
+				String name = readName();
+				skipSpace();
+
+				if ( isAssignment() ) {
+					if ( KEYWORDS.contains( name ) ) throw NOT_DATA;
+					pos++;
+					skipSpace();
+					fields.add( LuaValue.valueOf( name ) );
+					fields.add( readValue() );
+					hashCount++;
+				}
+				else {
+					fields.add( null );
+					fields.add( toLiteral( name ) );
+					listCount++;
+				}
+			}
+			else if ( c == '[' && readLongBracketLevel() < 0 ) {
+				pos++;
+				skipSpace();
+				LuaValue key = readValue();
+				skipSpace();
+				if ( peek( 0 ) != ']' ) throw NOT_DATA;
+				pos++;
+				skipSpace();
+				if ( !isAssignment() ) throw NOT_DATA;
+				pos++;
+				skipSpace();
+				if ( key.isnil() ) throw NOT_DATA;
+				fields.add( key );
+				fields.add( readValue() );
+				hashCount++;
+			}
+			else {
+				fields.add( null );
+				fields.add( readValue() );
+				listCount++;
+			}
+
+			skipSpace();
+			c = peek( 0 );
+			if ( c == ',' || c == ';' ) {
+				pos++;
+				skipSpace();
+			}
+			else if ( c == '}' ) {
+				pos++;
+				break;
+			}
+			else {
+				throw NOT_DATA;
+			}
+		}
+		depth--;
+
+		return buildTable( fields, listCount, hashCount );
+	}
+
+	/**
+	 * Creates a table the way compiled lua would: presized to the (float byte encoded) field counts,
+	 * keyed fields set as they come, and positional items stored in batches.
+	 */
+	private static LuaTable buildTable( List<LuaValue> fields, int listCount, int hashCount )
+	{
+		LuaTable result = new LuaTable( toFloatByte( listCount ), toFloatByte( hashCount ) );
+
+		int[] pending = new int[Math.min( listCount, LIST_FLUSH_SIZE )];
+		int pendingCount = 0;
+		int storedCount = 0;
+
+		for ( int i = 0; i < fields.size(); i += 2 ) {
+			LuaValue key = fields.get( i );
+			if ( key != null ) {
+				result.set( key, fields.get( i + 1 ) );
+				continue;
+			}
+
+			pending[pendingCount++] = i + 1;
+			if ( pendingCount == LIST_FLUSH_SIZE ) {
+				storeList( result, storedCount, fields, pending, pendingCount );
+				storedCount += pendingCount;
+				pendingCount = 0;
+			}
+		}
+		if ( pendingCount > 0 ) {
+			storeList( result, storedCount, fields, pending, pendingCount );
+		}
+
+		return result;
+	}
+
+	private static void storeList( LuaTable table, int offset, List<LuaValue> fields, int[] pending, int count )
+	{
+		table.presize( offset + count );
+		for ( int i = 0; i < count; i++ ) {
+			table.set( offset + i + 1, fields.get( pending[i] ) );
+		}
+	}
+
+	/**
+	 * Encodes a size as lua's "floating point byte" (eeeeexxx), as table sizes are stored in bytecode.
+	 */
+	private static int toFloatByte( int x )
+	{
+		int e = 0;
+		if ( x < 8 ) return x;
+		while ( x >= 0x10 ) {
+			x = ( x + 1 ) >> 1;
+			e++;
+		}
+		return ( ( e + 1 ) << 3 ) | ( x - 8 );
+	}
+
+	private LuaString readQuotedString() throws IOException, NotDataException
+	{
+		int delimiter = peek( 0 );
+		pos++;
+		stringLength = 0;
+
+		while ( true ) {
+			int c = peek( 0 );
+			if ( c == -1 ) throw NOT_DATA;
+			pos++;
+
+			if ( c == delimiter ) {
+				break;
+			}
+			else if ( c == '\n' || c == '\r' ) {
+				throw NOT_DATA;  // Unfinished string.
+			}
+			else if ( c != '\\' ) {
+				appendChar( (char)c );
+				continue;
+			}
+
+			c = peek( 0 );
+			if ( c == -1 ) throw NOT_DATA;
+			pos++;
+			switch ( c ) {
+				case 'a': appendByte( 7 ); break;
+				case 'b': appendByte( '\b' ); break;
+				case 'f': appendByte( '\f' ); break;
+				case 'n': appendByte( '\n' ); break;
+				case 'r': appendByte( '\r' ); break;
+				case 't': appendByte( '\t' ); break;
+				case 'v': appendByte( 11 ); break;
+				case '\\':
+				case '"':
+				case '\'':
+					appendByte( c );
+					break;
+				case '\n':
+				case '\r':
+					appendByte( '\n' );
+					skipNewlinePartner( c );
+					break;
+				default:
+					if ( !isDigit( c ) ) throw NOT_DATA;
+
+					int value = c - '0';
+					for ( int i = 1; i < 3 && isDigit( peek( 0 ) ); i++ ) {
+						value = value * 10 + ( peek( 0 ) - '0' );
+						pos++;
+					}
+					if ( value > 255 ) throw NOT_DATA;
+					appendByte( value );
+			}
+		}
+		return LuaString.valueOf( stringBuf, 0, stringLength );
+	}
+
+	/**
+	 * Returns the number of '=' in a long bracket opening at pos, or -1 if there isn't one.
+	 * Does not move past it.
+	 */
+	private int readLongBracketLevel() throws IOException, NotDataException
+	{
+		int i = 1;
+		while ( peek( i ) == '=' ) i++;
+
+		if ( peek( i ) == '[' ) return i - 1;
+		if ( i > 1 ) throw NOT_DATA;  // Invalid long string delimiter.
+		return -1;
+	}
+
+	private LuaString readLongString( int level ) throws IOException, NotDataException
+	{
+		stringLength = 0;
+		skipLongBracket( level, true );
+		return LuaString.valueOf( stringBuf, 0, stringLength );
+	}
+
+	/**
+	 * Moves past a long bracket of the given level, opening at pos, optionally appending
+	 * its content to the string being read.
+	 */
+	private void skipLongBracket( int level, boolean save ) throws IOException, NotDataException
+	{
+		pos += level + 2;  // Already buffered, by readLongBracketLevel().
+
+		// A newline right after the opening bracket is skipped.
+		int c = peek( 0 );
+		if ( c == '\n' || c == '\r' ) {
+			pos++;
+			skipNewlinePartner( c );
+		}
+
+		while ( true ) {
+			c = peek( 0 );
+			if ( c == -1 ) throw NOT_DATA;
+			pos++;
+
+			if ( c == ']' && isLongBracketClose( level ) ) {
+				pos += level + 1;
+				break;
+			}
+			else if ( c == '[' && level == 0 && peek( 0 ) == '[' ) {
+				throw NOT_DATA;  // LuaJ rejects nested "[[".
+			}
+			else if ( c == '\n' || c == '\r' ) {
+				if ( save ) appendByte( '\n' );
+				skipNewlinePartner( c );
+			}
+			else if ( save ) {
+				appendChar( (char)c );
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the ']' just before pos is followed by level '=' and another ']'.
+	 */
+	private boolean isLongBracketClose( int level ) throws IOException
+	{
+		for ( int i = 0; i < level; i++ ) {
+			if ( peek( i ) != '=' ) return false;
+		}
+		return peek( level ) == ']';
+	}
+
+	/**
+	 * Skips the other half of a "\r\n" or "\n\r" pair, after c was read.
+	 */
+	private void skipNewlinePartner( int c ) throws IOException
+	{
+		int next = peek( 0 );
+		if ( ( next == '\n' || next == '\r' ) && next != c ) pos++;
+	}
+
+	private boolean isNumberStart() throws IOException
+	{
+		int c = peek( 0 );
+		return isDigit( c ) || ( c == '.' && isDigit( peek( 1 ) ) );
+	}
+
+	/**
+	 * Reads a decimal numeral.
+	 *
+	 * Like lua's lexer, this takes the longest run of chars that could belong to a numeral,
+	 * then insists the whole run is one.
+	 */
+	private LuaValue readNumber() throws IOException, NotDataException
+	{
+		token.setLength( 0 );
+		while ( true ) {
+			int c = peek( 0 );
+			if ( c == 'e' || c == 'E' ) {
+				token.append( (char)c );
+				pos++;
+				c = peek( 0 );
+				if ( c == '+' || c == '-' ) {
+					token.append( (char)c );
+					pos++;
+				}
+			}
+			else if ( isHexDigit( c ) || c == '.' ) {
+				token.append( (char)c );
+				pos++;
+			}
+			else {
+				break;
+			}
+		}
+
+		// Digits, an optional fraction, an optional exponent. Hex numerals are left to the compiler.
+		int end = token.length();
+		int i = 0;
+		int digits = 0;
+		while ( i < end && isDigit( token.charAt( i ) ) ) {
+			i++;
+			digits++;
+		}
+		if ( i < end && token.charAt( i ) == '.' ) {
+			i++;
+			while ( i < end && isDigit( token.charAt( i ) ) ) {
+				i++;
+				digits++;
+			}
+		}
+		if ( digits == 0 ) throw NOT_DATA;
+
+		if ( i < end && ( token.charAt( i ) == 'e' || token.charAt( i ) == 'E' ) ) {
+			i++;
+			if ( i < end && ( token.charAt( i ) == '+' || token.charAt( i ) == '-' ) ) i++;
+			int expStart = i;
+			while ( i < end && isDigit( token.charAt( i ) ) ) i++;
+			if ( i == expStart ) throw NOT_DATA;
+		}
+		if ( i != end ) throw NOT_DATA;
+
+		return LuaValue.valueOf( Double.parseDouble( token.toString() ) );
+	}
+
+	private String readName() throws IOException
+	{
+		token.setLength( 0 );
+		int c;
+		while ( isNamePart( c = peek( 0 ) ) ) {
+			token.append( (char)c );
+			pos++;
+		}
+		return token.toString();
+	}
+
+	/**
+	 * Returns true if pos is at a '=' (not "==").
+	 */
+	private boolean isAssignment() throws IOException
+	{
+		return peek( 0 ) == '=' && peek( 1 ) != '=';
+	}
+
+	/**
+	 * Skips whitespace and comments.
+	 */
+	private void skipSpace() throws IOException, NotDataException
+	{
+		while ( true ) {
+			int c = peek( 0 );
+			if ( c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 11 ) {
+				pos++;
+			}
+			else if ( c == '-' && peek( 1 ) == '-' ) {
+				pos += 2;
+				int level = ( peek( 0 ) == '[' ? readLongBracketLevelLenient() : -1 );
+				if ( level >= 0 ) {
+					skipLongBracket( level, false );
+				}
+				else {
+					while ( ( c = peek( 0 ) ) != -1 && c != '\n' && c != '\r' ) pos++;
+				}
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Like readLongBracketLevel(), but a malformed bracket just means a line comment.
+	 */
+	private int readLongBracketLevelLenient() throws IOException
+	{
+		int i = 1;
+		while ( peek( i ) == '=' ) i++;
+		return ( peek( i ) == '[' ? i - 1 : -1 );
+	}
+
+	/**
+	 * Appends a char as LuaJ encodes source text: UTF-8, one char at a time
+	 * (so surrogate pairs become two 3-byte sequences).
+	 */
+	private void appendChar( char c )
+	{
+		if ( stringLength + 3 > stringBuf.length ) {
+			stringBuf = Arrays.copyOf( stringBuf, stringBuf.length * 2 );
+		}
+
+		if ( c < 0x80 ) {
+			stringBuf[stringLength++] = (byte)c;
+		}
+		else if ( c < 0x800 ) {
+			stringBuf[stringLength++] = (byte)( 0xC0 | ( c >> 6 ) );
+			stringBuf[stringLength++] = (byte)( 0x80 | ( c & 0x3F ) );
+		}
+		else {
+			stringBuf[stringLength++] = (byte)( 0xE0 | ( c >> 12 ) );
+			stringBuf[stringLength++] = (byte)( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+			stringBuf[stringLength++] = (byte)( 0x80 | ( c & 0x3F ) );
+		}
+	}
+
+	private void appendByte( int b )
+	{
+		if ( stringLength == stringBuf.length ) {
+			stringBuf = Arrays.copyOf( stringBuf, stringBuf.length * 2 );
+		}
+		stringBuf[stringLength++] = (byte)b;
+	}
+
+	private static boolean isDigit( int c )
+	{
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isHexDigit( int c )
+	{
+		return isDigit( c ) || ( c >= 'a' && c <= 'f' ) || ( c >= 'A' && c <= 'F' );
+	}
+
+	private static boolean isNameStart( int c )
+	{
+		return ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || c == '_';
+	}
+
+	private static boolean isNamePart( int c )
+	{
+		return isNameStart( c ) || isDigit( c );
+	}
+
+
+	/**
+	 * Signals that the text isn't plain data.
+	 */
+	private static class NotDataException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+
+
+		public NotDataException()
+		{
+			super( "Not plain data", null, false, false );
+		}
+	}
+}
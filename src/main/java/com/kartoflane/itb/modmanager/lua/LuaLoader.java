@@ -4,11 +4,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Spliterator;
@@ -22,6 +26,7 @@ import org.luaj.vm2.Globals;
 import org.luaj.vm2.LuaError;
 import org.luaj.vm2.LuaTable;
 import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Prototype;
 import org.luaj.vm2.compiler.LuaC;
 import org.luaj.vm2.lib.jse.JsePlatform;
 
@@ -33,9 +38,34 @@ import net.vhati.modmanager.core.ModUtilities;
  * 
  * Using lua for such a trivial task might be a bit of an overkill, but if ITB modding
  * is going to use that language, we might as well use it here, too.
+ * 
+ * Scripts are compiled straight from a Reader, and every script runs in a fresh
+ * environment of its own. Compiled files are cached, until they're modified.
+ * 
+ * Data files loaded as tables skip the compiler altogether, unless they turn out to
+ * contain code. Files found to contain code are compiled and cached like any other,
+ * and aren't parsed again while they stay that way.
+ * 
+ * @see LuaDataParser
  */
 public class LuaLoader
 {
+	private static final String RETURN_PREFIX = "return ";
+
+	/** Number of compiled files to keep. */
+	private static final int PROTOTYPE_CACHE_SIZE = 16;
+
+	private static final LuaLoader MINIMAL_LOADER = createMinimal();
+
+	/** Compiled files, by absolute path (prefixed by how they were loaded), least recently used first. */
+	private static final Map<String, CachedPrototype> prototypeCache = new LinkedHashMap<String, CachedPrototype>( 16, 0.75f, true ) {
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<String, CachedPrototype> eldest )
+		{
+			return size() > PROTOTYPE_CACHE_SIZE;
+		}
+	};
+
 	private Globals globals;
 
 
@@ -44,13 +74,27 @@ public class LuaLoader
 		globals = new Globals();
 	}
 
-	public static LuaLoader minimal()
+	private static LuaLoader createMinimal()
 	{
 		LuaLoader loader = new LuaLoader();
 		LuaC.install( loader.globals );
 		return loader;
 	}
 
+	/**
+	 * Returns a shared loader, which can only compile scripts.
+	 * 
+	 * It's safe to use from multiple threads at once, since compiling keeps no
+	 * state between scripts, and each script runs in a new environment.
+	 */
+	public static LuaLoader minimal()
+	{
+		return MINIMAL_LOADER;
+	}
+
+	/**
+	 * Returns a new loader, with the standard libraries installed.
+	 */
 	public static LuaLoader standard()
 	{
 		LuaLoader parser = new LuaLoader();
@@ -66,41 +110,146 @@ public class LuaLoader
 		return globals;
 	}
 
-	private String readFile( File file ) throws FileNotFoundException, IOException
+	/**
+	 * Returns a file's compiled script, reusing an earlier compilation if the
+	 * file hasn't changed since.
+	 */
+	private Prototype compileFile( File file, boolean asTable ) throws FileNotFoundException, IOException, LuaError
 	{
-		return Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 ).stream()
-			.collect( Collectors.joining( "\n" ) );
+		String cacheKey = getCacheKey( file, asTable );
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		Prototype prototype = getCachedPrototype( cacheKey, lastModified, length );
+		if ( prototype != null ) {
+			return prototype;
+		}
+
+		try ( Reader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+			prototype = globals.compilePrototype( asTable ? new PrefixedReader( RETURN_PREFIX, reader ) : reader, file.getName() );
+		}
+
+		synchronized ( prototypeCache ) {
+			prototypeCache.put( cacheKey, new CachedPrototype( prototype, lastModified, length ) );
+		}
+		return prototype;
+	}
+
+	/**
+	 * Returns a file's compiled script, if it has been compiled since it last changed, or null.
+	 */
+	private static Prototype getCachedPrototype( File file, boolean asTable )
+	{
+		return getCachedPrototype( getCacheKey( file, asTable ), file.lastModified(), file.length() );
+	}
+
+	private static Prototype getCachedPrototype( String cacheKey, long lastModified, long length )
+	{
+		synchronized ( prototypeCache ) {
+			CachedPrototype cached = prototypeCache.get( cacheKey );
+			if ( cached != null && cached.lastModified == lastModified && cached.length == length ) {
+				return cached.prototype;
+			}
+		}
+		return null;
+	}
+
+	private static String getCacheKey( File file, boolean asTable )
+	{
+		return ( asTable ? "table:" : "chunk:" ) + file.getAbsolutePath();
+	}
+
+	/**
+	 * Runs a compiled script in a new environment.
+	 */
+	private LuaResult run( Prototype prototype, String chunkName ) throws LuaError
+	{
+		Globals g = new Globals();
+		try {
+			return new LuaResult( g, globals.loader.load( prototype, chunkName, g ) );
+		}
+		catch ( IOException e ) {
+			throw new LuaError( "load " + chunkName + ": " + e );
+		}
 	}
 
 	public LuaResult loadFile( File file ) throws FileNotFoundException, IOException, LuaError
 	{
-		return load( readFile( file ), file.getName() );
+		return run( compileFile( file, false ), file.getName() );
 	}
 
 	public LuaTable loadFileAsTable( File file ) throws FileNotFoundException, IOException, LuaError
 	{
-		return load( "return " + readFile( file ), file.getName() ).returnValue.checktable();
+		// A file that has been compiled before holds code, so there's no point in parsing it.
+		Prototype prototype = getCachedPrototype( file, true );
+		if ( prototype == null ) {
+			LuaValue result;
+			try ( Reader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+				result = LuaDataParser.parse( reader );
+			}
+			if ( result != null ) {
+				return result.checktable();
+			}
+			prototype = compileFile( file, true );
+		}
+		return run( prototype, file.getName() ).returnValue.checktable();
+	}
+
+	/**
+	 * Compiles and runs a script read from a Reader, which will not be closed.
+	 */
+	public LuaResult load( Reader reader, String chunkName ) throws IOException, LuaError
+	{
+		return run( globals.compilePrototype( reader, chunkName ), chunkName );
+	}
+
+	/**
+	 * Compiles and runs a script read from a Reader, as if it began with "return ".
+	 * 
+	 * Plain data is parsed directly, without compiling it. Since a Reader can't be
+	 * rewound, the text is kept while it's parsed, in case the compiler needs it.
+	 */
+	public LuaTable loadAsTable( Reader reader, String chunkName ) throws IOException, LuaError
+	{
+		RecordingReader recordingReader = new RecordingReader( reader );
+
+		LuaValue result = LuaDataParser.parse( recordingReader );
+		if ( result == null ) {
+			// Whatever the parser read, followed by whatever it didn't.
+			Reader textReader = new PrefixedReader( RETURN_PREFIX + recordingReader.getRecorded(), reader );
+			result = load( textReader, chunkName ).returnValue;
+		}
+		return result.checktable();
 	}
 
 	public LuaResult load( String script, String chunkName ) throws LuaError
 	{
-		Globals g = new Globals();
-		return new LuaResult( g, globals.load( script, chunkName, g ) );
+		try {
+			return load( new StringReader( script ), chunkName );
+		}
+		catch ( IOException e ) {
+			throw new LuaError( "load " + chunkName + ": " + e );
+		}
 	}
 
 	public LuaTable loadAsTable( String script, String chunkName ) throws LuaError
 	{
-		return load( "return " + script, chunkName ).returnValue.checktable();
+		try {
+			return loadAsTable( new StringReader( script ), chunkName );
+		}
+		catch ( IOException e ) {
+			throw new LuaError( "load " + chunkName + ": " + e );
+		}
 	}
 
 	public LuaResult load( InputStream stream, String chunkName ) throws IOException, LuaError
 	{
-		return load( ModUtilities.decodeText( stream, chunkName ).text, chunkName );
+		return load( ModUtilities.openTextReader( stream, chunkName ), chunkName );
 	}
 
 	public LuaTable loadAsTable( InputStream stream, String chunkName ) throws IOException, LuaError
 	{
-		return load( "return " + ModUtilities.decodeText( stream, chunkName ).text, chunkName ).returnValue.checktable();
+		return loadAsTable( ModUtilities.openTextReader( stream, chunkName ), chunkName );
 	}
 
 	// ------------------------------------------------------------------------------
@@ -178,4 +327,96 @@ public class LuaLoader
 			stream( table ).map( entry -> converter.apply( entry.getValue() ) ).collect( Collectors.toList() )
 		);
 	}
+
+
+	/**
+	 * A Reader that supplies a prefix, then the content of another Reader.
+	 */
+	private static class PrefixedReader extends Reader
+	{
+		private final String prefix;
+		private final Reader reader;
+		private int prefixPos = 0;
+
+
+		public PrefixedReader( String prefix, Reader reader )
+		{
+			this.prefix = prefix;
+			this.reader = reader;
+		}
+
+		@Override
+		public int read( char[] cbuf, int off, int len ) throws IOException
+		{
+			if ( len == 0 ) return 0;
+
+			if ( prefixPos < prefix.length() ) {
+				int n = Math.min( len, prefix.length() - prefixPos );
+				prefix.getChars( prefixPos, prefixPos + n, cbuf, off );
+				prefixPos += n;
+				return n;
+			}
+			return reader.read( cbuf, off, len );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * A Reader that remembers everything read through it.
+	 */
+	private static class RecordingReader extends Reader
+	{
+		private final Reader reader;
+		private final StringBuilder recorded = new StringBuilder();
+
+
+		public RecordingReader( Reader reader )
+		{
+			this.reader = reader;
+		}
+
+		public String getRecorded()
+		{
+			return recorded.toString();
+		}
+
+		@Override
+		public int read( char[] cbuf, int off, int len ) throws IOException
+		{
+			int n = reader.read( cbuf, off, len );
+			if ( n > 0 ) recorded.append( cbuf, off, n );
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * A compiled file, and the file's state when it was compiled.
+	 */
+	private static class CachedPrototype
+	{
+		public final Prototype prototype;
+		public final long lastModified;
+		public final long length;
+
+
+		public CachedPrototype( Prototype prototype, long lastModified, long length )
+		{
+			this.prototype = prototype;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
 }
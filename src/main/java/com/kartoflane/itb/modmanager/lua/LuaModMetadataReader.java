@@ -5,6 +5,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -49,8 +51,8 @@ public class LuaModMetadataReader
 				innerPath = innerPath.replace( '\\', '/' ); // Non-standard zips.
 
 				if ( innerPath.equals( METADATA_INNERPATH ) ) {
-					String metadataText = ModUtilities.decodeText( zis, modFile.getName() + ":" + METADATA_INNERPATH ).text;
-					modInfo = parse( metadataText );
+					Reader metadataReader = ModUtilities.openTextReader( zis, modFile.getName() + ":" + METADATA_INNERPATH );
+					modInfo = parse( metadataReader );
 
 					zis.closeEntry();
 					break;
@@ -84,11 +86,19 @@ public class LuaModMetadataReader
 	 * Reads a mod's metadata.lua and returns a ModInfo object.
 	 */
 	public static ModInfo parse( String metadataText ) throws IOException, LuaError
+	{
+		return parse( new StringReader( metadataText ) );
+	}
+
+	/**
+	 * Reads a mod's metadata.lua from a Reader and returns a ModInfo object.
+	 */
+	public static ModInfo parse( Reader metadataReader ) throws IOException, LuaError
 	{
 		ModInfo modInfo = new ModInfo();
 
 		LuaLoader parser = LuaLoader.minimal();
-		LuaTable root = parser.loadAsTable( metadataText, "metadata" );
+		LuaTable root = parser.loadAsTable( metadataReader, "metadata" );
 
 		String modTitle = getTableValueTrim( root, "title" );
 		if ( modTitle != null && modTitle.length() > 0 )
@@ -1,156 +1,264 @@
 package com.kartoflane.itb.modmanager.lua;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 
 /**
  * A writer that can output simple Lua objects.
  * Outputs:
  * - null values as nil
- * - integers, chars, longs, floats and doubles
+ * - integers, longs, floats and doubles
  * - boolean values
- * - strings in double quotes
+ * - strings and chars in double quotes, escaped as needed
  * - maps as tables with named values (only with string keys; strings
  * are checked whether they're valid Lua identifiers)
  * - lists and arrays as tables with unnamed values
+ *
+ * Output is written straight to a Writer as it's produced. Tables can
+ * either be written whole, from Java objects, or field by field:
+ *
+ * <pre>
+ * lw.beginTable();
+ * lw.key( "title" ).value( title );
+ * lw.key( "versions" ).beginTable();
+ * for ( String version : versions ) lw.value( version );
+ * lw.endTable();
+ * lw.endTable();
+ * </pre>
  */
 public class LuaWriter
 {
-	private static final String identifierPtn = "([a-zA-Z_][a-zA-Z0-9_]*)";
-	private static final List<String> keywords = Arrays.asList(
-		new String[] {
-			"and", "end", "in", "repeat", "break", "false", "local", "return", "do",
-			"for", "nil", "then", "else", "function", "not", "true", "elseif", "if",
-			"or", "until", "while"
-		}
-	);
+	private static final Pattern IDENTIFIER_PATTERN = Pattern.compile( "[a-zA-Z_][a-zA-Z0-9_]*" );
+	private static final Set<String> KEYWORDS = new HashSet<>( Arrays.asList(
+		"and", "end", "in", "repeat", "break", "false", "local", "return", "do",
+		"for", "nil", "then", "else", "function", "not", "true", "elseif", "if",
+		"or", "until", "while", "goto"
+	) );
+
+	private final Writer out;
+
+	/** Number of fields written so far in each open table, innermost last. */
+	private int[] fieldCounts = new int[8];
+	private int depth = 0;
+
+	/** Whether a key was written, and awaits its value. */
+	private boolean keyPending = false;
 
 
+	public LuaWriter( Writer out )
+	{
+		this.out = out;
+	}
+
 	public static String toLuaString( Object o )
 	{
-		StringBuilder buf = new StringBuilder();
+		StringWriter sw = new StringWriter();
+		try {
+			new LuaWriter( sw ).value( o );
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( e );  // StringWriter doesn't throw.
+		}
+		return sw.toString();
+	}
 
-		appendObject( buf, o, 0 );
+	/**
+	 * Opens a table, as a field of the current table, if any.
+	 */
+	public LuaWriter beginTable() throws IOException
+	{
+		beginField();
+		out.write( '{' );
+		keyPending = false;
 
-		return buf.toString();
+		if ( depth == fieldCounts.length ) {
+			fieldCounts = Arrays.copyOf( fieldCounts, depth * 2 );
+		}
+		fieldCounts[depth++] = 0;
+
+		return this;
 	}
 
-	@SuppressWarnings("unchecked")
-	private static StringBuilder appendObject( StringBuilder buf, Object o, int indent )
+	/**
+	 * Closes the innermost open table.
+	 */
+	public LuaWriter endTable() throws IOException
 	{
-		if ( o == null ) {
-			buf.append( "nil" );
+		if ( depth == 0 || keyPending ) {
+			throw new IllegalStateException( "No table to end, or a key lacks its value" );
 		}
-		else if ( o instanceof Character ) {
-			buf.append( (Character)o );
+
+		if ( fieldCounts[--depth] > 0 ) {
+			writeIndent( depth );
 		}
-		else if ( o instanceof Integer ) {
-			buf.append( (Integer)o );
+		out.write( '}' );
+		endField();
+
+		return this;
+	}
+
+	/**
+	 * Begins a named field in the current table. Its value should be written next.
+	 */
+	public LuaWriter key( String key ) throws IOException
+	{
+		if ( depth == 0 || keyPending ) {
+			throw new IllegalStateException( "Keys can only be written within tables, before values" );
 		}
-		else if ( o instanceof Long ) {
-			buf.append( (Long)o );
+		checkValidTableKey( key );
+
+		beginField();
+		out.write( key );
+		out.write( " = " );
+		keyPending = true;
+
+		return this;
+	}
+
+	/**
+	 * Writes a value, as a field of the current table, if any.
+	 *
+	 * Without a preceding key, it becomes an unnamed field.
+	 */
+	@SuppressWarnings("unchecked")
+	public LuaWriter value( Object o ) throws IOException
+	{
+		if ( o instanceof Map<?, ?> ) {
+			beginTable();
+			for ( Entry<String, ?> entry : ( (Map<String, ?>)o ).entrySet() ) {
+				key( entry.getKey() ).value( entry.getValue() );
+			}
+			return endTable();
 		}
-		else if ( o instanceof Boolean ) {
-			buf.append( (Boolean)o );
+		else if ( o instanceof Collection<?> ) {
+			beginTable();
+			for ( Object item : (Collection<?>)o ) {
+				value( item );
+			}
+			return endTable();
 		}
-		else if ( o instanceof Float ) {
-			buf.append( (Float)o );
+		else if ( o != null && o.getClass().isArray() ) {
+			return value( Arrays.asList( (Object[])o ) );
 		}
-		else if ( o instanceof Double ) {
-			buf.append( (Double)o );
+
+		beginField();
+		if ( o == null ) {
+			out.write( "nil" );
 		}
-		else if ( o instanceof String ) {
-			appendString( buf, (String)o, indent );
+		else if ( o instanceof Integer || o instanceof Long || o instanceof Boolean ) {
+			out.write( o.toString() );
 		}
-		else if ( o instanceof Map<?, ?> ) {
-			appendTable( buf, (Map<String, ?>)o, indent );
+		else if ( o instanceof Float || o instanceof Double ) {
+			writeNumber( ( (Number)o ).doubleValue(), o.toString() );
 		}
-		else if ( o instanceof Collection<?> ) {
-			appendArray( buf, (Collection<?>)o, indent );
+		else if ( o instanceof String ) {
+			writeString( (String)o );
 		}
-		else if ( o.getClass().isArray() ) {
-			appendArray( buf, Arrays.asList( (Object[])o ), indent );
+		else if ( o instanceof Character ) {
+			writeString( o.toString() );
 		}
 		else {
 			throw new IllegalArgumentException( "Don't know how to print: " + o.getClass() );
 		}
+		endField();
 
-		return buf;
+		return this;
 	}
 
-	private static StringBuilder appendTable( StringBuilder buf, Map<String, ?> table, int indent )
+	public void flush() throws IOException
 	{
-		buf.append( '{' );
+		out.flush();
+	}
 
-		if ( !table.isEmpty() ) {
-			buf.append( '\n' );
-			++indent;
-			for ( Entry<String, ?> entry : table.entrySet() ) {
-				checkValidTableKey( entry.getKey() );
+	// ------------------------------------------------------------------------------
 
-				appendIndent( buf, indent );
-				buf.append( entry.getKey() ).append( " = " );
-				appendObject( buf, entry.getValue(), indent ).append( ",\n" );
-			}
-			--indent;
+	/**
+	 * Starts a line for a new field, unless a key was already written for it.
+	 */
+	private void beginField() throws IOException
+	{
+		if ( keyPending || depth == 0 ) return;
 
-			appendIndent( buf, indent );
+		if ( fieldCounts[depth - 1]++ == 0 ) {
+			out.write( '\n' );
 		}
-
-		buf.append( '}' );
-
-		return buf;
+		writeIndent( depth );
 	}
 
-	private static StringBuilder appendArray( StringBuilder buf, Collection<?> array, int indent )
+	private void endField() throws IOException
 	{
-		buf.append( '{' );
-
-		if ( !array.isEmpty() ) {
-			buf.append( '\n' );
-			++indent;
-			for ( Object entry : array ) {
-				appendIndent( buf, indent );
-				appendObject( buf, entry, indent ).append( ",\n" );
-			}
-			--indent;
-
-			appendIndent( buf, indent );
+		keyPending = false;
+		if ( depth > 0 ) {
+			out.write( ",\n" );
 		}
+	}
 
-		buf.append( '}' );
-
-		return buf;
+	private void writeIndent( int indentLevel ) throws IOException
+	{
+		for ( int i = 0; i < indentLevel; ++i ) {
+			out.write( '\t' );
+		}
 	}
 
-	private static StringBuilder appendString( StringBuilder buf, String string, int indent )
+	private void writeNumber( double d, String text ) throws IOException
 	{
-		if ( string.indexOf( '\n' ) == -1 ) {
-			// If the string contains no linebreaks, use double quotes.
-			return buf.append( '\"' ).append( string ).append( '\"' );
+		// Lua has no literals for these, but they can be computed.
+		if ( Double.isNaN( d ) ) {
+			out.write( "(0/0)" );
+		}
+		else if ( Double.isInfinite( d ) ) {
+			out.write( d > 0 ? "(1/0)" : "(-1/0)" );
 		}
 		else {
-			// If the string has linebreaks, use double brackets -- multiline string.
-			return buf.append( "[[" ).append( string ).append( "]]" );
+			out.write( text );
 		}
 	}
 
-	private static StringBuilder appendIndent( StringBuilder buf, int indentLevel )
+	/**
+	 * Writes a string in double quotes.
+	 *
+	 * Quotes, backslashes and control chars are escaped. Anything else is
+	 * written as-is, and left for the Writer to encode.
+	 */
+	private void writeString( String string ) throws IOException
 	{
-		for ( int i = 0; i < indentLevel; ++i ) {
-			buf.append( '\t' );
+		out.write( '"' );
+
+		int start = 0;
+		for ( int i = 0; i < string.length(); i++ ) {
+			char c = string.charAt( i );
+
+			String escape;
+			if ( c == '"' ) escape = "\\\"";
+			else if ( c == '\\' ) escape = "\\\\";
+			else if ( c == '\n' ) escape = "\\n";
+			else if ( c == '\r' ) escape = "\\r";
+			else if ( c == '\t' ) escape = "\\t";
+			else if ( c < 0x20 || c == 0x7F ) escape = String.format( "\\%03d", (int)c );  // Fixed width, in case a digit follows.
+			else continue;
+
+			out.write( string, start, i - start );
+			out.write( escape );
+			start = i + 1;
 		}
+		out.write( string, start, string.length() - start );
 
-		return buf;
+		out.write( '"' );
 	}
 
 	private static void checkValidTableKey( String key )
 	{
-		if ( !key.matches( identifierPtn ) || keywords.contains( key ) ) {
+		if ( !IDENTIFIER_PATTERN.matcher( key ).matches() || KEYWORDS.contains( key ) ) {
 			throw new IllegalArgumentException( "Not a valid Lua identifier: " + key );
 		}
 	}
@@ -32,6 +32,11 @@ public class DefaultPatcher implements ResourcePatcher
 	}
 
 	public void patch( AbstractPack pack, String innerPath, InputStream is ) throws IOException
+	{
+		patch( pack, innerPath, is, -1 );
+	}
+
+	public void patch( AbstractPack pack, String innerPath, InputStream is, long length ) throws IOException
 	{
 		if ( !moddedItems.contains( innerPath ) ) {
 			moddedItems.add( innerPath );
@@ -40,8 +45,6 @@ public class DefaultPatcher implements ResourcePatcher
 			log.warn( String.format( "Clobbering earlier mods: %s", innerPath ) );
 		}
 
-		if ( pack.contains( innerPath ) )
-			pack.remove( innerPath );
-		pack.add( innerPath, is );
+		pack.replace( innerPath, is, length );
 	}
 }
@@ -3,29 +3,146 @@ package com.kartoflane.itb.modmanager.patcher;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.Logger;
+
+import com.kartoflane.itb.modmanager.util.Util;
 
 import net.vhati.ftldat.AbstractPack;
+import net.vhati.ftldat.FMODPack;
 
 
 /**
- * Handles FMOD .bank files? Or .wav / .mp3 files and includes them in the .bank somehow?
+ * Patcher for FMOD sound banks.
+ *
+ * Mods can either replace an entire bank (audio/sfx.bank), or individual
+ * samples within a bank (audio/sfx/sampleName.fsb). Sample replacements
+ * are single-sample FSB5 files, encoded with the same codec as the bank.
+ *
+ * Banks are only opened once a mod replaces one of their samples.
+ * Plain audio files (.wav, .mp3) cannot be encoded into a bank here,
+ * and are skipped.
  */
 public class FMODPatcher implements ResourcePatcher
 {
-	public FMODPatcher()
+	private final Logger log;
+	private final List<String> moddedItems;
+	private final File banksDir;
+
+	/** Lazily opened banks, keyed by bank name without extension. */
+	private final Map<String, FMODPack> bankPackMap = new LinkedHashMap<>();
+
+
+	public FMODPatcher( Logger log, List<String> moddedItems, File banksDir )
 	{
-		// TODO FMOD patcher
+		this.log = log;
+		this.moddedItems = moddedItems;
+		this.banksDir = banksDir;
 	}
 
 	public String normalizeInnerPath( File modFile, String innerPath, String parentPath, String root, String fileName )
 	{
-		// TODO FMOD patcher
-		throw new UnsupportedOperationException( "Not yet implemented" );
+		String extension = getExtension( fileName );
+
+		if ( extension.equals( "bank" ) ) {
+			// Banks sit directly in the resources dir.
+			return fileName;
+		}
+		else if ( root != null && innerPath.startsWith( root ) ) {
+			// "audio/sfx/sampleName.fsb" -> "sfx/sampleName.fsb"
+			return innerPath.substring( root.length() );
+		}
+		return innerPath;
 	}
 
 	public void patch( AbstractPack pack, String innerPath, InputStream is ) throws IOException
 	{
-		// TODO FMOD patcher
-		throw new UnsupportedOperationException( "Not yet implemented" );
+		String extension = getExtension( innerPath );
+
+		if ( extension.equals( "bank" ) ) {
+			trackModdedItem( innerPath );
+
+			FMODPack bankPack = bankPackMap.get( Util.stripExtension( innerPath ) );
+			if ( bankPack != null ) {
+				// Already opened, so replace it in place; later samples will apply on top.
+				bankPack.replaceBank( is );
+			}
+			else {
+				if ( pack.contains( innerPath ) )
+					pack.remove( innerPath );
+				pack.add( innerPath, is );
+			}
+		}
+		else if ( extension.equals( "fsb" ) ) {
+			int slashIndex = innerPath.lastIndexOf( '/' );
+			if ( slashIndex == -1 ) {
+				log.warn( String.format( "Sample is not inside a bank's directory, skipping: %s", innerPath ) );
+				return;
+			}
+
+			String bankName = innerPath.substring( 0, slashIndex );
+			String sampleName = Util.stripExtension( innerPath.substring( slashIndex + 1 ) );
+
+			FMODPack bankPack = getBankPack( bankName );
+			if ( bankPack == null ) {
+				log.warn( String.format( "Sample refers to a nonexistent bank, skipping: %s", innerPath ) );
+				return;
+			}
+			if ( !bankPack.contains( sampleName ) ) {
+				log.warn( String.format( "Sample does not exist in \"%s\", skipping: %s", bankPack.getName(), innerPath ) );
+				return;
+			}
+
+			trackModdedItem( innerPath );
+			bankPack.replaceSample( sampleName, is );
+		}
+		else {
+			log.warn( String.format( "Audio files need to be encoded as FSB5 samples (.fsb), skipping: %s", innerPath ) );
+		}
+	}
+
+	/**
+	 * Returns banks that were opened while patching, so they can be repacked and closed.
+	 */
+	public List<AbstractPack> getBankPacks()
+	{
+		return new ArrayList<AbstractPack>( bankPackMap.values() );
+	}
+
+	private FMODPack getBankPack( String bankName ) throws IOException
+	{
+		FMODPack result = bankPackMap.get( bankName );
+		if ( result == null ) {
+			File bankFile = new File( banksDir, bankName + ".bank" );
+			if ( !bankFile.isFile() )
+				return null;
+
+			result = new FMODPack( bankFile, "r+" );
+			bankPackMap.put( bankName, result );
+		}
+		return result;
+	}
+
+	private void trackModdedItem( String innerPath )
+	{
+		if ( !moddedItems.contains( innerPath ) ) {
+			moddedItems.add( innerPath );
+		}
+		else {
+			log.warn( String.format( "Clobbering earlier mods: %s", innerPath ) );
+		}
+	}
+
+	private static String getExtension( String path )
+	{
+		int dotIndex = path.lastIndexOf( '.' );
+		int slashIndex = path.lastIndexOf( '/' );
+		if ( dotIndex == -1 || dotIndex < slashIndex )
+			return "";
+		return path.substring( dotIndex + 1 ).toLowerCase();
 	}
 }
@@ -42,4 +42,19 @@ public interface ResourcePatcher
 	 *            input stream of the resource file
 	 */
 	public void patch( AbstractPack pack, String innerPath, InputStream is ) throws IOException;
+
+	/**
+	 * @param pack
+	 *            the pack the patched resource will be added to
+	 * @param innerPath
+	 *            complete innerPath of the resource within the mod file
+	 * @param is
+	 *            input stream of the resource file
+	 * @param length
+	 *            size of the resource file in bytes, or -1 if unknown
+	 */
+	public default void patch( AbstractPack pack, String innerPath, InputStream is, long length ) throws IOException
+	{
+		patch( pack, innerPath, is );
+	}
 }
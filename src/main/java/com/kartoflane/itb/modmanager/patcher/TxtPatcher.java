@@ -51,8 +51,7 @@ public class TxtPatcher implements ResourcePatcher
 			log.warn( String.format( "Clobbering earlier mods: %s", innerPath ) );
 		}
 
-		if ( pack.contains( innerPath ) )
-			pack.remove( innerPath );
-		pack.add( innerPath, fixedStream );
+		// The re-encoded text is already in memory, so its length is known.
+		pack.replace( innerPath, fixedStream, fixedStream.available() );
 	}
 }
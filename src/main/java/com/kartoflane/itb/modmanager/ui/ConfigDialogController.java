@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
+import com.kartoflane.itb.modmanager.core.BackupManager;
 import com.kartoflane.itb.modmanager.core.ITBConfig;
 import com.kartoflane.itb.modmanager.ui.FieldEditorPaneController.ContentType;
 import com.kartoflane.itb.modmanager.util.ITBUtilities;
@@ -71,10 +72,18 @@ public class ConfigDialogController
 		fieldController.addTextRow( "Save window geometry on exit." );
 		fieldController.addSeparatorRow();
 
+		fieldController.addRow( ITBConfig.METADATA_CACHE, ContentType.BOOLEAN );
+		fieldController.addTextRow( "Cache mod metadata and file hashes in a faster binary format." );
+		fieldController.addSeparatorRow();
+
 		fieldController.addRow( ITBConfig.APP_UPDATE_INTERVAL, ContentType.INTEGER );
 		fieldController.addTextRow( "Check for updates to the program every N days (0 to disable)." );
 		fieldController.addSeparatorRow();
 
+		fieldController.addRow( ITBConfig.BACKUP_CONCURRENCY, ContentType.INTEGER );
+		fieldController.addTextRow( "Max number of game files to back up or restore at the same time." );
+		fieldController.addSeparatorRow();
+
 		fieldController.addRow( ITBConfig.GAME_PATH, ContentType.CHOOSER );
 		fieldController.setChooserBrowseListener( ITBConfig.GAME_PATH, this::onBrowseGamePath );
 		fieldController.addTextRow( "Path to Into the Breach's game folder." );
@@ -90,7 +99,9 @@ public class ConfigDialogController
 		fieldController.setBoolean( ITBConfig.RUN_STEAM_ITB, config.getPropertyAsBoolean( ITBConfig.RUN_STEAM_ITB, false ) );
 		fieldController.setBoolean( ITBConfig.NEVER_RUN_ITB, config.getPropertyAsBoolean( ITBConfig.NEVER_RUN_ITB, false ) );
 		fieldController.setBoolean( ITBConfig.REMEMBER_GEOMETRY, config.getPropertyAsBoolean( ITBConfig.REMEMBER_GEOMETRY, true ) );
+		fieldController.setBoolean( ITBConfig.METADATA_CACHE, config.getPropertyAsBoolean( ITBConfig.METADATA_CACHE, true ) );
 		fieldController.setInt( ITBConfig.APP_UPDATE_INTERVAL, config.getPropertyAsInt( ITBConfig.APP_UPDATE_INTERVAL, 0 ) );
+		fieldController.setInt( ITBConfig.BACKUP_CONCURRENCY, config.getPropertyAsInt( ITBConfig.BACKUP_CONCURRENCY, BackupManager.DEFAULT_CONCURRENCY ) );
 		fieldController.setChooserPath( ITBConfig.GAME_PATH, config.getProperty( ITBConfig.GAME_PATH, "" ) );
 		fieldController.setChooserPath( ITBConfig.STEAM_EXE_PATH, config.getProperty( ITBConfig.STEAM_EXE_PATH, "" ) );
 
@@ -153,6 +164,7 @@ public class ConfigDialogController
 		config.setProperty( ITBConfig.RUN_STEAM_ITB, fieldController.getValue( ITBConfig.RUN_STEAM_ITB, ContentType.BOOLEAN ) );
 		config.setProperty( ITBConfig.NEVER_RUN_ITB, fieldController.getValue( ITBConfig.NEVER_RUN_ITB, ContentType.BOOLEAN ) );
 		config.setProperty( ITBConfig.REMEMBER_GEOMETRY, fieldController.getValue( ITBConfig.REMEMBER_GEOMETRY, ContentType.BOOLEAN ) );
+		config.setProperty( ITBConfig.METADATA_CACHE, fieldController.getValue( ITBConfig.METADATA_CACHE, ContentType.BOOLEAN ) );
 
 		tmp = fieldController.getValue( ITBConfig.APP_UPDATE_INTERVAL, ContentType.INTEGER );
 		try {
@@ -163,6 +175,15 @@ public class ConfigDialogController
 		catch ( NumberFormatException ex ) {
 		}
 
+		tmp = fieldController.getValue( ITBConfig.BACKUP_CONCURRENCY, ContentType.INTEGER );
+		try {
+			int n = Integer.parseInt( tmp );
+			n = Math.max( 1, n );
+			config.setProperty( ITBConfig.BACKUP_CONCURRENCY, Integer.toString( n ) );
+		}
+		catch ( NumberFormatException ex ) {
+		}
+
 		tmp = fieldController.getValue( ITBConfig.GAME_PATH, ContentType.CHOOSER );
 		if ( tmp.length() > 0 && ITBUtilities.isGameDirValid( Paths.get( tmp ) ) ) {
 			config.setProperty( ITBConfig.GAME_PATH, tmp );
@@ -12,6 +12,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -51,7 +53,6 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import net.vhati.modmanager.core.AutoUpdateInfo;
 import net.vhati.modmanager.core.ModFileInfo;
-import net.vhati.modmanager.core.ModInfo;
 
 
 public class ManagerWindow
@@ -83,6 +84,9 @@ public class ManagerWindow
 
 	private final File gameDir;
 
+	/** The mod whose info is being shown (or loaded), if any. */
+	private ModFileInfo shownModFileInfo = null;
+
 
 	public ManagerWindow(
 		ITBConfig config,
@@ -121,6 +125,7 @@ public class ManagerWindow
 	public void showUsageInformation()
 	{
 		removePreviousContentRight();
+		shownModFileInfo = null;
 
 		String body = ""
 			+ "- Drag to reorder mods.\n"
@@ -138,9 +143,42 @@ public class ManagerWindow
 	public void showLocalModInfo( ModFileInfo modFileInfo )
 	{
 		removePreviousContentRight();
+		shownModFileInfo = modFileInfo;
+
+		CompletableFuture<Region> pane = modsScanner.buildModInfoPane( modFileInfo, contentPaneRight.widthProperty() );
+
+		if ( pane.isDone() && !pane.isCompletedExceptionally() ) {
+			showContentRight( pane.join() );
+			return;
+		}
 
-		Region r = modsScanner.buildModInfoPane( modFileInfo, contentPaneRight.widthProperty() );
+		showContentRight( StyledTextBuilder.build( "Loading mod info...", contentPaneRight.widthProperty() ) );
 
+		// A failure may complete the future on any thread, so don't rely on the pane's own thread.
+		pane.whenCompleteAsync(
+			( r, e ) -> {
+				if ( shownModFileInfo != modFileInfo ) {
+					// Another mod was selected in the meantime.
+					return;
+				}
+
+				removePreviousContentRight();
+
+				if ( e != null ) {
+					Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+					log.error( String.format( "Error while loading info for mod \"%s\"", modFileInfo.getName() ), cause );
+					showContentRight( StyledTextBuilder.build( "Could not load info for this mod.", contentPaneRight.widthProperty() ) );
+					return;
+				}
+
+				showContentRight( r );
+			},
+			Platform::runLater
+		);
+	}
+
+	private void showContentRight( Region r )
+	{
 		r.prefWidthProperty().bind( contentPaneRight.widthProperty() );
 		contentPaneRight.getChildren().add( r );
 	}
@@ -205,6 +243,7 @@ public class ManagerWindow
 
 		// Both objects have a lifetime of the entire application - no need to unregister listeners.
 		modsScanner.modsTableStateAmendedEvent().addListener( modListController::onModsTableStateAmended );
+		modsScanner.setTableStateSupplier( modListController::getCurrentModsTableState );
 		modsScanner.scanningStateChangedEvent().addListener( menuController::onScanningStateChanged );
 
 		modListController.modSelectedEvent().addListener( this::onModSelected );
@@ -416,17 +455,26 @@ public class ManagerWindow
 					}
 				}
 
-				List<ModInfo> modInfos = modFiles.stream()
-					.map( modsScanner::getModInfo )
-					.collect( Collectors.toList() );
+				// Mods that haven't been hashed yet are hashed in the background.
+				modsScanner.getModInfos( modFiles ).whenCompleteAsync(
+					( modInfos, e ) -> {
+						if ( e != null ) {
+							Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+							log.error( "Could not look up mods to patch.", cause );
+							patchDialog.patchingEnded( false, cause instanceof Exception ? (Exception)cause : new RuntimeException( cause ) );
+							return;
+						}
 
-				ModPatchThread patchThread = new ModPatchThread( backupManager, modInfos, modFiles, gameDir );
-				patchThread.patchingProgressChangedEvent().addListener( patchDialog::patchingProgress );
-				patchThread.patchingStatusChangedEvent().addListener( patchDialog::setStatusTextLater );
-				patchThread.patchingModStartedEvent().addListener( patchDialog::patchingMod );
-				patchThread.patchingEndedEvent().addListener( patchDialog::patchingEnded );
+						ModPatchThread patchThread = new ModPatchThread( backupManager, modInfos, modFiles, gameDir );
+						patchThread.patchingProgressChangedEvent().addListener( patchDialog::patchingProgress );
+						patchThread.patchingStatusChangedEvent().addListener( patchDialog::setStatusTextLater );
+						patchThread.patchingModStartedEvent().addListener( patchDialog::patchingMod );
+						patchThread.patchingEndedEvent().addListener( patchDialog::patchingEnded );
 
-				patchThread.start();
+						patchThread.start();
+					},
+					Platform::runLater
+				);
 
 				patchDialog.show();
 			}
@@ -448,8 +496,9 @@ public class ManagerWindow
 
 	private void processAddedMods( List<File> modsToAdd )
 	{
-		modsScanner.addModFiles( modsToAdd );
-		modsScanner.rescanMods( modListController.getCurrentModsTableState() );
+		// Scan just the new copies. If the mods/ dir is being watched, it'll notice
+		// them too, but their hashes will be known by then.
+		modsScanner.scanChangedMods( modsScanner.addModFiles( modsToAdd ) );
 	}
 
 	private void onCloseRequest( WindowEvent e )
@@ -477,6 +526,7 @@ public class ManagerWindow
 			log.error( "Error while saving configuration file.", ex );
 		}
 
+		modsScanner.stopWatching();
 		modsScanner.saveModsTableState( modListController.getCurrentModsTableState() );
 		modsScanner.saveCachedModMetadata();
 
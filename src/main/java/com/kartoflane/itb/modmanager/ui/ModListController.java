@@ -2,7 +2,12 @@ package com.kartoflane.itb.modmanager.ui;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,6 +55,9 @@ public class ModListController
 
 	private final ChangeListener<Boolean> checkboxSelectionListener;
 
+	/** The tree's items, by mod. */
+	private final Map<ModFileInfo, CheckBoxTreeItem<ModFileInfo>> treeItemMap = new HashMap<>();
+
 	@FXML
 	protected TreeView<ModFileInfo> treeView;
 
@@ -127,15 +135,63 @@ public class ModListController
 		return tableState;
 	}
 
+	/**
+	 * Makes the tree match the specified state.
+	 *
+	 * Items for mods that were already listed are kept (along with their
+	 * checkboxes), so that a rescan which changes little only touches the
+	 * items that were added or removed.
+	 */
 	public void updateModel( ListState<ModFileInfo> tableState )
 	{
-		clearModel();
-
 		ObservableList<TreeItem<ModFileInfo>> rootChildren = treeView.getRoot().getChildren();
-		for ( ModFileInfo modFileInfo : tableState.getItems() ) {
-			CheckBoxTreeItem<ModFileInfo> checkBoxItem = new CheckBoxTreeItem<ModFileInfo>( modFileInfo );
-			checkBoxItem.selectedProperty().addListener( checkboxSelectionListener );
-			rootChildren.add( checkBoxItem );
+
+		// Drop items for mods that are gone
+		Set<TreeItem<ModFileInfo>> removedItems = new HashSet<>();
+		treeItemMap.values().removeIf(
+			item -> {
+				if ( tableState.containsItem( item.getValue() ) ) return false;
+				item.selectedProperty().removeListener( checkboxSelectionListener );
+				removedItems.add( item );
+				return true;
+			}
+		);
+		if ( !removedItems.isEmpty() ) {
+			rootChildren.removeIf( removedItems::contains );
+		}
+
+		// Create items for new mods, and see whether the rest are in order
+		List<TreeItem<ModFileInfo>> newChildren = new ArrayList<>( tableState.size() );
+		List<TreeItem<ModFileInfo>> addedItems = new ArrayList<>();
+		boolean inOrder = true;
+
+		for ( ModFileInfo modFileInfo : tableState.getItemsView() ) {
+			CheckBoxTreeItem<ModFileInfo> checkBoxItem = treeItemMap.get( modFileInfo );
+
+			if ( checkBoxItem == null ) {
+				checkBoxItem = new CheckBoxTreeItem<ModFileInfo>( modFileInfo );
+				checkBoxItem.selectedProperty().addListener( checkboxSelectionListener );
+				treeItemMap.put( modFileInfo, checkBoxItem );
+				addedItems.add( checkBoxItem );
+			}
+			else if ( !addedItems.isEmpty() ) {
+				inOrder = false;  // An existing item after a new one.
+			}
+			else {
+				int index = newChildren.size();
+				inOrder &= index < rootChildren.size() && rootChildren.get( index ) == checkBoxItem;
+			}
+			newChildren.add( checkBoxItem );
+		}
+
+		if ( inOrder ) {
+			// Only new items, appended at the end (as amended states do)
+			if ( !addedItems.isEmpty() ) {
+				rootChildren.addAll( addedItems );
+			}
+		}
+		else {
+			rootChildren.setAll( newChildren );
 		}
 
 		modelUpdated.broadcast( tableState );
@@ -163,16 +219,17 @@ public class ModListController
 		if ( list.isEmpty() )
 			return;
 
+		Set<T> selection = new HashSet<T>( list );
 		Stream<CheckBoxTreeItem<ModFileInfo>> stream = treeView.getRoot().getChildren().stream()
 			.map( item -> (CheckBoxTreeItem<ModFileInfo>)item );
 
 		if ( File.class.equals( type ) ) {
 			// Strict
-			stream.forEach( item -> item.setSelected( list.contains( item.getValue().getFile() ) ) );
+			stream.forEach( item -> item.setSelected( selection.contains( item.getValue().getFile() ) ) );
 		}
 		else if ( ModFileInfo.class.equals( type ) ) {
 			// Sloppy
-			stream.forEach( item -> item.setSelected( list.contains( item.getValue() ) ) );
+			stream.forEach( item -> item.setSelected( selection.contains( item.getValue() ) ) );
 		}
 		else {
 			throw new IllegalArgumentException( "Implementation error: no case defined for class " + type );
@@ -192,18 +249,6 @@ public class ModListController
 			.forEach( item -> item.setSelected( anyDeselected ) );
 	}
 
-	private void clearModel()
-	{
-		// Unregister listeners
-		ObservableList<TreeItem<ModFileInfo>> rootChildren = treeView.getRoot().getChildren();
-		rootChildren.stream()
-			.filter( item -> item instanceof CheckBoxTreeItem )
-			.map( item -> (CheckBoxTreeItem<ModFileInfo>)item )
-			.forEach( item -> item.selectedProperty().removeListener( checkboxSelectionListener ) );
-
-		rootChildren.clear();
-	}
-
 	private <T> CheckBoxTreeCell<T> modListCheckBoxTreeCellFactory( TreeView<T> treeView )
 	{
 		CheckBoxTreeCell<T> result = UIUtilities.unfocusableCheckBoxTreeCellFactory( treeView );
@@ -1,6 +1,11 @@
 package com.kartoflane.itb.modmanager.ui;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -15,8 +20,30 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 
+/**
+ * A modal dialog showing a background task's status and progress.
+ *
+ * The *Later() setters may be called from any thread, as often as the task
+ * likes. They only store the latest value and return; the dialog picks up
+ * whatever is pending at most UPDATES_PER_SECOND times a second, so a task
+ * reporting thousands of files doesn't flood the FX event queue.
+ */
 public class ProgressDialogController
 {
+	/** Maximum rate at which pending status/progress is shown. */
+	protected static final int UPDATES_PER_SECOND = 30;
+
+	private static final long UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 1 ) / UPDATES_PER_SECOND;
+
+	/** Delays updates that arrive sooner than the interval allows. */
+	private static final ScheduledExecutorService updateScheduler = Executors.newSingleThreadScheduledExecutor(
+		r -> {
+			Thread t = new Thread( r, "progress-updates" );
+			t.setDaemon( true );
+			return t;
+		}
+	);
+
 	@FXML
 	protected ProgressBar progressBar;
 	@FXML
@@ -33,6 +60,11 @@ public class ProgressDialogController
 
 	protected Stage stage = null;
 
+	private final AtomicReference<String> pendingStatusText = new AtomicReference<>();
+	private final AtomicReference<double[]> pendingProgress = new AtomicReference<>();
+	private final AtomicBoolean updateScheduled = new AtomicBoolean( false );
+	private volatile long lastUpdateNanos = System.nanoTime() - UPDATE_INTERVAL_NANOS;
+
 
 	public ProgressDialogController( Stage owner, boolean continueOnSuccess ) throws IOException
 	{
@@ -76,7 +108,8 @@ public class ProgressDialogController
 	 */
 	public void setStatusTextLater( final String message )
 	{
-		Platform.runLater( () -> setStatusText( message != null ? message : "..." ) );
+		pendingStatusText.set( message != null ? message : "..." );
+		scheduleUpdate();
 	}
 
 	protected void setStatusText( String message )
@@ -98,7 +131,7 @@ public class ProgressDialogController
 	 */
 	public void setProgressLater( final double value )
 	{
-		Platform.runLater( () -> setProgress( value, 1 ) );
+		setProgressLater( value, 1 );
 	}
 
 	/**
@@ -113,7 +146,8 @@ public class ProgressDialogController
 	 */
 	public void setProgressLater( final double value, final double max )
 	{
-		Platform.runLater( () -> setProgress( value, max ) );
+		pendingProgress.set( new double[] { value, max } );
+		scheduleUpdate();
 	}
 
 	protected void setProgress( final double value, final double max )
@@ -133,10 +167,55 @@ public class ProgressDialogController
 	 * Triggers a response to the immediate task ending. (Thread-safe)
 	 *
 	 * If anything went wrong, e may be non-null.
+	 *
+	 * Status and progress set beforehand are shown first.
 	 */
 	public void setTaskOutcomeLater( final boolean success, final Exception e )
 	{
-		Platform.runLater( () -> setTaskOutcome( success, e ) );
+		Platform.runLater(
+			() -> {
+				applyPendingUpdates();
+				setTaskOutcome( success, e );
+			}
+		);
+	}
+
+	/**
+	 * Arranges for pending values to be shown, unless that's already
+	 * arranged. Never blocks.
+	 */
+	private void scheduleUpdate()
+	{
+		if ( !updateScheduled.compareAndSet( false, true ) )
+			return;
+
+		long delay = lastUpdateNanos + UPDATE_INTERVAL_NANOS - System.nanoTime();
+		if ( delay <= 0 ) {
+			Platform.runLater( this::applyPendingUpdates );
+		}
+		else {
+			updateScheduler.schedule( () -> Platform.runLater( this::applyPendingUpdates ), delay, TimeUnit.NANOSECONDS );
+		}
+	}
+
+	/**
+	 * Shows the latest pending status and progress, if any. (FX thread only)
+	 */
+	private void applyPendingUpdates()
+	{
+		// Clear the flag first, so values set from here on schedule another update.
+		updateScheduled.set( false );
+		lastUpdateNanos = System.nanoTime();
+
+		String message = pendingStatusText.getAndSet( null );
+		if ( message != null ) {
+			setStatusText( message );
+		}
+
+		double[] progress = pendingProgress.getAndSet( null );
+		if ( progress != null ) {
+			setProgress( progress[0], progress[1] );
+		}
 	}
 
 	protected void setTaskOutcome( final boolean outcome, final Exception e )
@@ -41,6 +41,22 @@ public abstract class AbstractPack implements AutoCloseable
 		throw new UnsupportedOperationException();
 	}
 
+	/**
+	 * Adds bytes read from an InputStream to the pack, as innerPath,
+	 * replacing any existing file with that innerPath.
+	 *
+	 * Packs may reuse the existing file's space when the new data fits.
+	 *
+	 * @param length
+	 *            the number of bytes the stream will provide, or -1 if unknown
+	 */
+	public void replace( String innerPath, InputStream is, long length ) throws IOException
+	{
+		if ( contains( innerPath ) )
+			remove( innerPath );
+		add( innerPath, is );
+	}
+
 	/**
 	 * Writes the contents of the file with innerPath to dstFile.
 	 */
@@ -84,6 +100,58 @@ public abstract class AbstractPack implements AutoCloseable
 	{
 	}
 
+	/**
+	 * Starts a batch of changes.
+	 *
+	 * Until commit() or rollback() is called, index changes are only kept in
+	 * memory, and new data is appended after the existing content, leaving
+	 * the original dat readable as it was.
+	 *
+	 * Packs that write through immediately (eg. directories) ignore batches.
+	 */
+	public void beginBatch() throws IOException
+	{
+	}
+
+	/**
+	 * Returns whether a batch is in progress.
+	 */
+	public boolean isBatching()
+	{
+		return false;
+	}
+
+	/**
+	 * Writes the index changed during the current batch, ending it.
+	 *
+	 * @see #commit(boolean)
+	 */
+	public void commit() throws IOException
+	{
+		commit( false );
+	}
+
+	/**
+	 * Writes the index changed during the current batch, ending it.
+	 *
+	 * @param repack
+	 *            whether to repack() afterward
+	 * @returns the result of repacking, or null
+	 */
+	public RepackResult commit( boolean repack ) throws IOException
+	{
+		return repack ? repack() : null;
+	}
+
+	/**
+	 * Discards all changes made during the current batch, ending it.
+	 *
+	 * Does nothing if no batch is in progress.
+	 */
+	public void rollback() throws IOException
+	{
+	}
+
 	/**
 	 * Tidies up the dat before closing (possibly mandatory).
 	 *
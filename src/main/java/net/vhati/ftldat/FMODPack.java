@@ -0,0 +1,772 @@
+package net.vhati.ftldat;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * An FMOD Studio sound bank.
+ *
+ * Structure:
+ *   A RIFF file ("RIFF", size, "FEV "), made up of nested chunks.
+ *   One of the chunks, "SND ", holds an FSB5 sound bank.
+ *
+ * FSB5 structure:
+ *   Header = "FSB5" signature, version, sample count, region sizes, codec.
+ *   Sample headers = A packed 64-bit value per sample (frequency, channels,
+ *                    data offset, frame count), each optionally followed by
+ *                    a series of extra chunks (loop points, codec setup...).
+ *   Name table = A series of offsets, then null-terminated sample names.
+ *   Sample data = Encoded audio data of each sample, 32-byte aligned.
+ *
+ * InnerPaths of this pack are sample names. Samples cannot be added or
+ * removed, since events in the bank refer to them by index. Instead, they
+ * can be replaced with the sample from a single-sample FSB5 file, encoded
+ * with the same codec as the bank (eg. as built by FMOD's fsbankcl).
+ *
+ * Replacements are staged in temporary files, and applied by repack(),
+ * which streams a rebuilt bank into a new file, and then swaps it with the
+ * original. The bank is never loaded into memory as a whole.
+ */
+public class FMODPack extends AbstractPack
+{
+	private static final int FSB5_ALIGNMENT = 32;
+
+	private final int[] signature = new int[] { 0x46, 0x53, 0x42, 0x35 };  // "FSB5"
+
+	private ByteBuffer byteBuffer = null;
+
+	private File bankFile = null;
+	private boolean readOnly = false;
+
+	/** The file the index was read from; either the bankFile, or a full replacement. */
+	private File baseFile = null;
+	private RandomAccessFile raf = null;
+
+	/** Offsets of container chunks ("RIFF", "LIST") that enclose the SND chunk. */
+	private List<Long> sndAncestorOffsets = null;
+	private long sndChunkOffset = -1;
+	private long sndDataSize = 0;
+
+	private Fsb5Header fsbHeader = null;
+	private byte[] nameTable = null;
+	private List<SampleEntry> sampleList = null;
+	private Map<String, Integer> pathToIndexMap = null;
+
+	private boolean modified = false;
+	private List<File> tempFiles = new ArrayList<>();
+
+
+	/**
+	 * Opens a bank in various modes.
+	 *
+	 * The mode must be one of the following:
+	 *   r  - opens an existing bank, read-only.
+	 *   r+ - opens an existing bank, read/write.
+	 *
+	 * @param bankFile
+	 *            a file to open
+	 * @param mode
+	 *            see above
+	 */
+	public FMODPack( File bankFile, String mode ) throws IOException
+	{
+		// A reusable buffer large enough for the unsigned read methods.
+		byteBuffer = ByteBuffer.allocate( 8 );
+		byteBuffer.order( ByteOrder.LITTLE_ENDIAN );
+
+		if ( mode.equals( "r" ) ) {
+			readOnly = true;
+		}
+		else if ( mode.equals( "r+" ) ) {
+			readOnly = false;
+		}
+		else {
+			throw new IllegalArgumentException( String.format( "FMODPack constructor's mode arg was not 'r' or 'r+' (%s)", mode ) );
+		}
+
+		if ( !bankFile.exists() )
+			throw new FileNotFoundException( String.format( "The bankFile was not found: %s", bankFile.getPath() ) );
+
+		this.bankFile = bankFile;
+		openBase( bankFile );
+	}
+
+
+	/**
+	 * Reads a little-endian unsigned int.
+	 */
+	private long readLittleUInt( RandomAccessFile f ) throws IOException
+	{
+		byteBuffer.clear();
+		f.readFully( byteBuffer.array(), 0, 4 );
+
+		long result = byteBuffer.getInt( 0 );
+		result &= 0x00000000FFFFFFFFL;
+
+		return result;
+	}
+
+	/**
+	 * Reads a little-endian 64-bit value.
+	 */
+	private long readLittleLong( RandomAccessFile f ) throws IOException
+	{
+		byteBuffer.clear();
+		f.readFully( byteBuffer.array(), 0, 8 );
+		return byteBuffer.getLong( 0 );
+	}
+
+	private String readChunkId( RandomAccessFile f ) throws IOException
+	{
+		byte[] idBytes = new byte[4];
+		f.readFully( idBytes );
+		return new String( idBytes, StandardCharsets.US_ASCII );
+	}
+
+	/**
+	 * Opens a file and reads its index, making it the base of this pack.
+	 */
+	private void openBase( File f ) throws IOException
+	{
+		if ( raf != null ) raf.close();
+
+		baseFile = f;
+		raf = new RandomAccessFile( f, "r" );
+		readIndex();
+	}
+
+	/**
+	 * Reads (or re-reads) the index from the base file.
+	 */
+	private void readIndex() throws IOException
+	{
+		sndAncestorOffsets = new ArrayList<>();
+		sndChunkOffset = -1;
+		sndDataSize = 0;
+		fsbHeader = null;
+		nameTable = new byte[0];
+		sampleList = new ArrayList<>();
+		pathToIndexMap = new HashMap<>();
+
+		raf.seek( 0 );
+		if ( raf.length() < 12 || !readChunkId( raf ).equals( "RIFF" ) ) {
+			throw new IOException( String.format( "Corrupt bank file (%s): missing RIFF signature", getName() ) );
+		}
+
+		List<Long> ancestors = new ArrayList<>();
+		findSndChunk( 0, raf.length(), ancestors );
+
+		if ( sndChunkOffset == -1 ) {
+			// Some banks (eg. strings banks) hold no samples at all.
+			return;
+		}
+
+		long sndDataOffset = sndChunkOffset + 8;
+
+		// The FSB5 is preceded by padding, aligning it within the file.
+		long fsbOffset = -1;
+		long searchLimit = Math.min( sndDataSize, 256 );
+		for ( long i = 0; i + 4 <= searchLimit; i++ ) {
+			raf.seek( sndDataOffset + i );
+			if ( matchesSignature( raf ) ) {
+				fsbOffset = sndDataOffset + i;
+				break;
+			}
+		}
+		if ( fsbOffset == -1 ) {
+			throw new IOException( String.format( "Corrupt bank file (%s): SND chunk holds no FSB5 data", getName() ) );
+		}
+
+		fsbHeader = readFsb5Header( raf, fsbOffset );
+		sampleList = readSampleHeaders( raf, fsbHeader, baseFile );
+
+		nameTable = new byte[(int)fsbHeader.nameTableSize];
+		raf.seek( fsbHeader.getNameTableOffset() );
+		raf.readFully( nameTable );
+
+		for ( int i = 0; i < sampleList.size(); i++ ) {
+			SampleEntry entry = sampleList.get( i );
+			entry.innerPath = readSampleName( nameTable, i );
+
+			if ( pathToIndexMap.containsKey( entry.innerPath ) ) {
+				throw new IOException( "Sample name occurs more than once: " + entry.innerPath );
+			}
+			pathToIndexMap.put( entry.innerPath, i );
+		}
+	}
+
+	/**
+	 * Walks RIFF chunks within the specified region, looking for the SND chunk.
+	 */
+	private void findSndChunk( long start, long end, List<Long> ancestors ) throws IOException
+	{
+		long pos = start;
+		while ( pos + 8 <= end && sndChunkOffset == -1 ) {
+			raf.seek( pos );
+			String id = readChunkId( raf );
+			long size = readLittleUInt( raf );
+
+			if ( pos + 8 + size > raf.length() ) {
+				throw new IOException( String.format( "Corrupt bank file (%s): chunk \"%s\" is larger than the entire file", getName(), id ) );
+			}
+
+			if ( id.equals( "SND " ) ) {
+				sndAncestorOffsets = new ArrayList<>( ancestors );
+				sndChunkOffset = pos;
+				sndDataSize = size;
+			}
+			else if ( id.equals( "RIFF" ) || id.equals( "LIST" ) ) {
+				// Container chunks have a 4-byte form type, followed by nested chunks.
+				ancestors.add( pos );
+				findSndChunk( pos + 12, pos + 8 + size, ancestors );
+				ancestors.remove( ancestors.size() - 1 );
+			}
+
+			pos += 8 + size + ( size & 1 );  // Chunks are padded to even sizes.
+		}
+	}
+
+	private boolean matchesSignature( RandomAccessFile f ) throws IOException
+	{
+		for ( int x : signature ) {
+			if ( f.readUnsignedByte() != x ) return false;
+		}
+		return true;
+	}
+
+	private Fsb5Header readFsb5Header( RandomAccessFile f, long offset ) throws IOException
+	{
+		f.seek( offset );
+		if ( !matchesSignature( f ) ) {
+			throw new IOException( "Unexpected FSB5 signature" );
+		}
+
+		Fsb5Header header = new Fsb5Header();
+		header.offset = offset;
+		header.version = readLittleUInt( f );
+		header.sampleCount = (int)readLittleUInt( f );
+		header.sampleHeadersSize = readLittleUInt( f );
+		header.nameTableSize = readLittleUInt( f );
+		header.dataSize = readLittleUInt( f );
+		header.mode = readLittleUInt( f );
+
+		// Version 0 had an additional 4-byte field.
+		header.size = ( header.version == 0 ? 64 : 60 );
+
+		header.raw = new byte[header.size];
+		f.seek( offset );
+		f.readFully( header.raw );
+
+		if ( header.getDataOffset() + header.dataSize > f.length() ) {
+			throw new IOException( "Corrupt FSB5 data: header claims to be larger than the entire file" );
+		}
+
+		return header;
+	}
+
+	private List<SampleEntry> readSampleHeaders( RandomAccessFile f, Fsb5Header header, File dataFile ) throws IOException
+	{
+		List<SampleEntry> result = new ArrayList<>( header.sampleCount );
+
+		f.seek( header.offset + header.size );
+		for ( int i = 0; i < header.sampleCount; i++ ) {
+			SampleEntry entry = new SampleEntry();
+			entry.mode = readLittleLong( f );
+			entry.dataFile = dataFile;
+			entry.dataOffset = header.getDataOffset() + getSampleDataOffset( entry.mode );
+
+			// Extra chunks follow while the "next chunk" bit is set.
+			long chunksStart = f.getFilePointer();
+			boolean hasNext = ( entry.mode & 1 ) != 0;
+			while ( hasNext ) {
+				long chunkHeader = readLittleUInt( f );
+				hasNext = ( chunkHeader & 1 ) != 0;
+				long chunkSize = ( chunkHeader >> 1 ) & 0x00FFFFFFL;
+				f.seek( f.getFilePointer() + chunkSize );
+			}
+			entry.extraChunks = new byte[(int)( f.getFilePointer() - chunksStart )];
+			f.seek( chunksStart );
+			f.readFully( entry.extraChunks );
+
+			result.add( entry );
+		}
+
+		// Samples are stored back to back, so each one ends where the next one begins.
+		List<SampleEntry> sorted = new ArrayList<>( result );
+		sorted.sort( ( a, b ) -> Long.compare( a.dataOffset, b.dataOffset ) );
+		for ( int i = 0; i < sorted.size(); i++ ) {
+			long end = ( i + 1 < sorted.size() ) ? sorted.get( i + 1 ).dataOffset : header.getDataOffset() + header.dataSize;
+			sorted.get( i ).dataSize = end - sorted.get( i ).dataOffset;
+		}
+
+		return result;
+	}
+
+	private String readSampleName( byte[] names, int index )
+	{
+		if ( names.length < ( index + 1 ) * 4 ) {
+			return "#" + index;  // No name table. Fall back to the sample's index.
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap( names ).order( ByteOrder.LITTLE_ENDIAN );
+		int start = buf.getInt( index * 4 );
+		int end = start;
+		while ( end < names.length && names[end] != 0 ) end++;
+
+		return new String( names, start, end - start, StandardCharsets.US_ASCII );
+	}
+
+	/**
+	 * Returns the offset of a sample's data, relative to the start of the data region.
+	 *
+	 * Bits of the sample mode (LSB first):
+	 *   1 - has extra chunks
+	 *   4 - frequency
+	 *   1 - channels
+	 *  28 - data offset, in 16-byte units
+	 *  30 - frame count
+	 */
+	private static long getSampleDataOffset( long mode )
+	{
+		return ( ( mode >>> 6 ) & 0x0FFFFFFFL ) * 16;
+	}
+
+	private static long setSampleDataOffset( long mode, long dataOffset )
+	{
+		mode &= ~( 0x0FFFFFFFL << 6 );
+		return mode | ( ( ( dataOffset / 16 ) & 0x0FFFFFFFL ) << 6 );
+	}
+
+	private static long align( long n )
+	{
+		return ( n + FSB5_ALIGNMENT - 1 ) / FSB5_ALIGNMENT * FSB5_ALIGNMENT;
+	}
+
+	private void checkWritable() throws IOException
+	{
+		if ( readOnly ) throw new IOException( "Bank was opened read-only: " + getName() );
+	}
+
+	private File createTempFile() throws IOException
+	{
+		File result = File.createTempFile( bankFile.getName() + "-", ".tmp", bankFile.getAbsoluteFile().getParentFile() );
+		result.deleteOnExit();
+		tempFiles.add( result );
+		return result;
+	}
+
+	private File spoolToTempFile( InputStream is ) throws IOException
+	{
+		File tmpFile = createTempFile();
+		try ( OutputStream os = new FileOutputStream( tmpFile ) ) {
+			byte[] buf = new byte[4096];
+			int len;
+			while ( ( len = is.read( buf ) ) >= 0 ) {
+				os.write( buf, 0, len );
+			}
+		}
+		return tmpFile;
+	}
+
+	/**
+	 * Replaces the entire bank with bytes read from an InputStream.
+	 *
+	 * Any pending sample replacements are discarded. Samples replaced
+	 * afterward will be applied on top of the new bank.
+	 */
+	public void replaceBank( InputStream is ) throws IOException
+	{
+		checkWritable();
+
+		File tmpFile = spoolToTempFile( is );
+		openBase( tmpFile );
+		modified = true;
+	}
+
+	/**
+	 * Replaces a sample with the first sample of a FSB5 file read from an InputStream.
+	 *
+	 * The FSB5 must use the same codec as this bank.
+	 */
+	public void replaceSample( String innerPath, InputStream is ) throws IOException
+	{
+		checkWritable();
+		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+			throw new FileNotFoundException( "Sample does not exist: " + innerPath );
+		}
+
+		File tmpFile = spoolToTempFile( is );
+
+		try ( RandomAccessFile tmpRaf = new RandomAccessFile( tmpFile, "r" ) ) {
+			Fsb5Header srcHeader = readFsb5Header( tmpRaf, 0 );
+
+			if ( srcHeader.sampleCount < 1 ) {
+				throw new IOException( "Replacement for sample contains no samples: " + innerPath );
+			}
+			if ( srcHeader.mode != fsbHeader.mode ) {
+				throw new IOException(
+					String.format(
+						"Replacement for sample \"%s\" uses a different codec than %s (%d vs %d)",
+						innerPath, getName(), srcHeader.mode, fsbHeader.mode
+					)
+				);
+			}
+
+			SampleEntry srcEntry = readSampleHeaders( tmpRaf, srcHeader, tmpFile ).get( 0 );
+
+			SampleEntry entry = sampleList.get( pathToIndexMap.get( innerPath ) );
+			entry.mode = srcEntry.mode;
+			entry.extraChunks = srcEntry.extraChunks;
+			entry.dataFile = srcEntry.dataFile;
+			entry.dataOffset = srcEntry.dataOffset;
+			entry.dataSize = srcEntry.dataSize;
+		}
+
+		modified = true;
+	}
+
+	@Override
+	public String getName()
+	{
+		return bankFile.getName();
+	}
+
+	@Override
+	public List<String> list()
+	{
+		List<String> result = new ArrayList<>( sampleList.size() );
+		for ( SampleEntry entry : sampleList ) {
+			result.add( entry.innerPath );
+		}
+		return result;
+	}
+
+	@Override
+	public List<PathAndSize> listSizes()
+	{
+		List<PathAndSize> result = new ArrayList<>( sampleList.size() );
+		for ( SampleEntry entry : sampleList ) {
+			result.add( new PathAndSize( entry.innerPath, entry.dataSize ) );
+		}
+		return result;
+	}
+
+	@Override
+	public void extractTo( String innerPath, OutputStream os ) throws FileNotFoundException, IOException
+	{
+		try ( InputStream is = getInputStream( innerPath ) ) {
+			byte[] buf = new byte[4096];
+			int len;
+			while ( ( len = is.read( buf ) ) >= 0 ) {
+				os.write( buf, 0, len );
+			}
+		}
+	}
+
+	@Override
+	public boolean contains( String innerPath )
+	{
+		return pathToIndexMap.containsKey( innerPath );
+	}
+
+	/**
+	 * Returns an InputStream over a sample's encoded data.
+	 */
+	@Override
+	public InputStream getInputStream( String innerPath ) throws FileNotFoundException, IOException
+	{
+		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+			throw new FileNotFoundException( "Sample does not exist: " + innerPath );
+		}
+
+		SampleEntry entry = sampleList.get( pathToIndexMap.get( innerPath ) );
+
+		if ( entry.dataFile.equals( baseFile ) ) {
+			return new FileChannelRegionInputStream( raf.getChannel(), entry.dataOffset, entry.dataSize );
+		}
+		else {
+			// Replaced samples live in their own file, which needs to be closed along with the stream.
+			final FileChannel channel = FileChannel.open( entry.dataFile.toPath(), StandardOpenOption.READ );
+			return new FilterInputStream( new FileChannelRegionInputStream( channel, entry.dataOffset, entry.dataSize ) ) {
+				@Override
+				public void close() throws IOException
+				{
+					channel.close();
+				}
+			};
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		raf.close();
+
+		for ( File f : tempFiles ) {
+			f.delete();
+		}
+		tempFiles.clear();
+	}
+
+	public List<SampleEntry> listMetadata()
+	{
+		return new ArrayList<>( sampleList );
+	}
+
+	/**
+	 * Writes pending replacements to the bank file.
+	 *
+	 * The rebuilt bank is streamed into a new file, which then takes the
+	 * place of the original.
+	 *
+	 * @returns a result, or null if there was nothing to write
+	 */
+	@Override
+	public RepackResult repack() throws IOException
+	{
+		if ( !modified ) return null;
+		checkWritable();
+
+		long oldBankLength = bankFile.length();
+		File dstFile = new File( bankFile.getAbsoluteFile().getParentFile(), bankFile.getName() + ".new" );
+
+		boolean baseClosed = false;
+		boolean moved = false;
+		try {
+			try ( FileChannel dstChannel = FileChannel.open(
+				dstFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+			) ) {
+				if ( fsbHeader == null ) {
+					// No samples, so the base can be copied as-is.
+					transfer( raf.getChannel(), 0, raf.length(), dstChannel );
+				}
+				else {
+					writeRebuiltBank( dstChannel );
+				}
+			}
+
+			// The base may be the bankFile itself, which can't be replaced while open on Windows.
+			raf.close();
+			baseClosed = true;
+			Files.move( dstFile.toPath(), bankFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			moved = true;
+		}
+		finally {
+			if ( !moved ) {
+				// Leave the pack as it was, pending replacements included.
+				dstFile.delete();
+				if ( baseClosed ) raf = new RandomAccessFile( baseFile, "r" );
+			}
+		}
+
+		for ( File f : tempFiles ) {
+			f.delete();
+		}
+		tempFiles.clear();
+
+		openBase( bankFile );
+		modified = false;
+
+		long newBankLength = bankFile.length();
+		return new RepackResult( oldBankLength, newBankLength, newBankLength );
+	}
+
+	private void writeRebuiltBank( FileChannel dst ) throws IOException
+	{
+		FileChannel src = raf.getChannel();
+
+		// Lay out the new sample data region, and build the sample headers.
+		ByteBuffer sampleHeaders = ByteBuffer.allocate( calcSampleHeadersSize() ).order( ByteOrder.LITTLE_ENDIAN );
+		long[] newDataOffsets = new long[sampleList.size()];
+		long pendingDataOffset = 0;
+		for ( int i = 0; i < sampleList.size(); i++ ) {
+			SampleEntry entry = sampleList.get( i );
+			newDataOffsets[i] = pendingDataOffset;
+			pendingDataOffset = align( pendingDataOffset + entry.dataSize );
+
+			sampleHeaders.putLong( setSampleDataOffset( entry.mode, newDataOffsets[i] ) );
+			sampleHeaders.put( entry.extraChunks );
+		}
+		long newDataSize = pendingDataOffset;
+
+		ByteBuffer header = ByteBuffer.wrap( fsbHeader.raw.clone() ).order( ByteOrder.LITTLE_ENDIAN );
+		header.putInt( 12, sampleHeaders.capacity() );
+		header.putInt( 20, (int)newDataSize );
+
+		long oldFsbEnd = fsbHeader.getDataOffset() + fsbHeader.dataSize;
+		long sndDataOffset = sndChunkOffset + 8;
+		long sndDataEnd = sndDataOffset + sndDataSize;
+		long leadSize = fsbHeader.offset - sndDataOffset;
+		long trailSize = Math.max( 0, sndDataEnd - oldFsbEnd );
+
+		long newSndDataSize = leadSize + fsbHeader.size + sampleHeaders.capacity() + nameTable.length + newDataSize + trailSize;
+		long sizeDelta = ( newSndDataSize + ( newSndDataSize & 1 ) ) - ( sndDataSize + ( sndDataSize & 1 ) );
+
+		// Everything before the SND chunk's size field.
+		transfer( src, 0, sndChunkOffset + 4, dst );
+		writeLittleUInt( dst, newSndDataSize );
+
+		// Padding before the FSB5.
+		transfer( src, sndDataOffset, leadSize, dst );
+
+		header.rewind();
+		writeFully( dst, header );
+		sampleHeaders.rewind();
+		writeFully( dst, sampleHeaders );
+		writeFully( dst, ByteBuffer.wrap( nameTable ) );
+
+		// Sample data, streamed from wherever each sample currently lives.
+		long dataRegionStart = dst.position();
+		for ( int i = 0; i < sampleList.size(); i++ ) {
+			SampleEntry entry = sampleList.get( i );
+
+			writeZeros( dst, dataRegionStart + newDataOffsets[i] - dst.position() );
+
+			if ( entry.dataFile.equals( baseFile ) ) {
+				transfer( src, entry.dataOffset, entry.dataSize, dst );
+			}
+			else {
+				try ( FileChannel sampleChannel = FileChannel.open( entry.dataFile.toPath(), StandardOpenOption.READ ) ) {
+					transfer( sampleChannel, entry.dataOffset, entry.dataSize, dst );
+				}
+			}
+		}
+		writeZeros( dst, dataRegionStart + newDataSize - dst.position() );
+
+		// Whatever followed the FSB5 within the SND chunk, and the padding byte.
+		transfer( src, oldFsbEnd, trailSize, dst );
+		writeZeros( dst, newSndDataSize & 1 );
+
+		// Everything after the SND chunk.
+		long oldSndEnd = sndDataEnd + ( sndDataSize & 1 );
+		transfer( src, oldSndEnd, src.size() - oldSndEnd, dst );
+
+		// Enclosing chunks grew or shrank along with the SND chunk.
+		for ( long ancestorOffset : sndAncestorOffsets ) {
+			raf.seek( ancestorOffset + 4 );
+			long ancestorSize = readLittleUInt( raf );
+			dst.position( ancestorOffset + 4 );
+			writeLittleUInt( dst, ancestorSize + sizeDelta );
+		}
+	}
+
+	private int calcSampleHeadersSize()
+	{
+		int result = 0;
+		for ( SampleEntry entry : sampleList ) {
+			result += 8 + entry.extraChunks.length;
+		}
+		return result;
+	}
+
+	private void writeLittleUInt( FileChannel dst, long n ) throws IOException
+	{
+		byteBuffer.clear();
+		byteBuffer.putInt( (int)( n & 0x00000000FFFFFFFFL ) );
+		byteBuffer.flip();
+		writeFully( dst, byteBuffer );
+	}
+
+	private static void writeFully( FileChannel dst, ByteBuffer buf ) throws IOException
+	{
+		while ( buf.hasRemaining() ) {
+			dst.write( buf );
+		}
+	}
+
+	private static void writeZeros( FileChannel dst, long count ) throws IOException
+	{
+		if ( count > 0 ) writeFully( dst, ByteBuffer.allocate( (int)count ) );
+	}
+
+	private static void transfer( FileChannel src, long offset, long count, FileChannel dst ) throws IOException
+	{
+		long position = offset;
+		long end = offset + count;
+		while ( position < end ) {
+			long len = src.transferTo( position, end - position, dst );
+			if ( len <= 0 ) {
+				throw new IOException( "EOF prematurely reached while rebuilding bank" );
+			}
+			position += len;
+		}
+	}
+
+
+	/**
+	 * Information about the FSB5 sound bank within a bank file.
+	 */
+	private static class Fsb5Header
+	{
+		/** Offset of the "FSB5" signature. */
+		public long offset = 0;
+		public long version = 0;
+		public int sampleCount = 0;
+		public long sampleHeadersSize = 0;
+		public long nameTableSize = 0;
+		public long dataSize = 0;
+
+		/** The codec that all samples are encoded with. */
+		public long mode = 0;
+
+		/** Byte count of the header itself. */
+		public int size = 0;
+		public byte[] raw = null;
+
+
+		public long getNameTableOffset()
+		{
+			return offset + size + sampleHeadersSize;
+		}
+
+		public long getDataOffset()
+		{
+			return getNameTableOffset() + nameTableSize;
+		}
+	}
+
+
+	/**
+	 * Information about a sample within a bank.
+	 *
+	 * innerPath   = The sample's name.
+	 * mode        = The packed sample header.
+	 * extraChunks = Raw bytes of the extra chunks following the sample header.
+	 * dataFile    = The file containing the sample's data.
+	 * dataOffset  = Offset to the sample's data within dataFile.
+	 * dataSize    = Size of the sample's data.
+	 */
+	public static class SampleEntry
+	{
+		public String innerPath = null;
+		public long mode = 0;
+		public byte[] extraChunks = null;
+		public File dataFile = null;
+		public long dataOffset = 0;
+		public long dataSize = 0;
+
+
+		public SampleEntry()
+		{
+		}
+	}
+}
@@ -10,12 +10,11 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 /**
@@ -24,6 +23,12 @@ import java.util.Map;
  * Structure:
  *   Index = A count, followed by a series of offsets to entries.
  *   Entries = A series of {dataSize, innerPath, data} hunks.
+ *
+ * Batches and repacking are journaled (see PackJournal), so if either is
+ * interrupted, the dat is rolled back the next time it's opened.
+ *
+ * The index is held as parallel arrays, one element per header slot, rather
+ * than as an object per entry.
  */
 public class FTLPack extends AbstractPack
 {
@@ -32,8 +37,30 @@ public class FTLPack extends AbstractPack
 	private ByteBuffer byteBuffer = null;
 	private File datFile = null;
 	private RandomAccessFile raf = null;
-	private List<DatEntry> entryList = null;
-	private Map<String, Integer> pathToIndexMap = null;
+
+	/** Number of slots in the header, vacant or not. */
+	private int slotCount = 0;
+
+	// Per-slot entry fields. A null innerPath marks a vacant slot.
+	private long[] entryOffsets = null;
+	private long[] dataOffsets = null;
+	private long[] dataSizes = null;
+	private String[] innerPaths = null;
+
+	/** No slot before this one is vacant. */
+	private int vacancyHint = 0;
+
+	/** Slots by innerPath. Keys are the same instances held in innerPaths. */
+	private PathIndexMap pathToIndexMap = null;
+
+	private boolean batching = false;
+	private long batchDatLength = 0;
+	private int batchIndexSize = 0;
+
+	private PackJournal journal = null;
+
+	/** Gaps between entries, for replace() to reuse. Built on demand. */
+	private FreeExtentList freeExtents = null;
 
 
 	/**
@@ -55,6 +82,9 @@ public class FTLPack extends AbstractPack
 	 *   r+ - opens an existing dat, read/write.
 	 *   w+ - creates a new empty dat, read/write.
 	 *
+	 * Opening an existing dat rolls back any interrupted operation first,
+	 * even in read-only mode. Creating one discards any stale journal.
+	 *
 	 * @param datFile
 	 *            a file to open/create
 	 * @param mode
@@ -73,6 +103,12 @@ public class FTLPack extends AbstractPack
 				throw new FileNotFoundException( String.format( "The datFile was not found: %s", datFile.getPath() ) );
 
 			this.datFile = datFile;
+			if ( PackJournal.getJournalFile( datFile ).exists() ) {
+				// The index can't be trusted until the dat is rolled back.
+				try ( RandomAccessFile recoveryRaf = new RandomAccessFile( datFile, "rw" ) ) {
+					PackJournal.recover( datFile, recoveryRaf );
+				}
+			}
 			raf = new RandomAccessFile( datFile, "r" );
 			readIndex();
 		}
@@ -82,10 +118,12 @@ public class FTLPack extends AbstractPack
 
 			this.datFile = datFile;
 			raf = new RandomAccessFile( datFile, "rw" );
+			PackJournal.recover( datFile, raf );
 			readIndex();
 		}
 		else if ( mode.equals( "w+" ) ) {
 			this.datFile = datFile;
+			PackJournal.discardJournal( datFile );
 			raf = new RandomAccessFile( datFile, "rw" );
 			createIndex( indexSize );
 		}
@@ -158,19 +196,17 @@ public class FTLPack extends AbstractPack
 	 */
 	private void createIndex( int indexSize ) throws IOException
 	{
-		entryList = new ArrayList<>( indexSize );
-		for ( int i = 0; i < indexSize; i++ ) {
-			entryList.add( null );
-		}
+		resetSlots( indexSize );
+		pathToIndexMap = new PathIndexMap( indexSize );
 
-		pathToIndexMap = new HashMap<>( indexSize );
+		// The count, followed by vacant (0) indeces, in one write.
+		ByteBuffer headerBuf = ByteBuffer.allocate( (int)getHeaderIndexPosition( indexSize ) );
+		headerBuf.order( ByteOrder.LITTLE_ENDIAN );
+		headerBuf.putInt( 0, indexSize );
 
 		raf.seek( 0 );
 		raf.setLength( 0 );
-		writeLittleUInt( indexSize );
-		for ( int i = 0; i < indexSize; i++ ) {
-			writeLittleUInt( 0 );
-		}
+		raf.write( headerBuf.array() );
 	}
 
 	/**
@@ -178,44 +214,104 @@ public class FTLPack extends AbstractPack
 	 */
 	private void readIndex() throws IOException
 	{
+		freeExtents = null;
+
 		raf.seek( 0 );
 		int indexSize = (int)readLittleUInt();
 		if ( indexSize * 4 > raf.length() ) {
 			throw new IOException( String.format( "Corrupt dat file (%s): header claims to be larger than the entire file", getName() ) );
 		}
 
-		entryList = new ArrayList<>( indexSize );
+		resetSlots( indexSize );
+		pathToIndexMap = new PathIndexMap( indexSize );
+
+		// Read offsets first (zero where absent), then visit each entry.
 		for ( int i = 0; i < indexSize; i++ ) {
-			entryList.add( null );
+			entryOffsets[i] = readLittleUInt();
 		}
 
-		pathToIndexMap = new HashMap<>( indexSize );
-
-		// Store partial DatEntry objects in entryList (leaving nulls where absent).
 		for ( int i = 0; i < indexSize; i++ ) {
-			long entryOffset = readLittleUInt();
+			if ( entryOffsets[i] == 0 ) continue;
 
-			if ( entryOffset != 0 ) {
-				DatEntry entry = new DatEntry();
-				entry.entryOffset = entryOffset;
-				entryList.set( i, entry );
+			raf.seek( entryOffsets[i] );
+			dataSizes[i] = readLittleUInt();
+			String innerPath = readLittleUString();
+			dataOffsets[i] = raf.getChannel().position();
+
+			if ( pathToIndexMap.put( innerPath, i ) != -1 ) {
+				throw new IOException( "InnerPath occurs more than once: " + innerPath );
 			}
+			innerPaths[i] = innerPath;
 		}
+	}
 
-		for ( int i = 0; i < indexSize; i++ ) {
-			DatEntry entry = entryList.get( i );
-			if ( entry == null ) continue;
+	/**
+	 * Discards all slots, then allocates count vacant ones.
+	 */
+	private void resetSlots( int count )
+	{
+		entryOffsets = new long[count];
+		dataOffsets = new long[count];
+		dataSizes = new long[count];
+		innerPaths = new String[count];
+		slotCount = count;
+		vacancyHint = 0;
+	}
 
-			raf.seek( entry.entryOffset );
-			entry.dataSize = readLittleUInt();
-			entry.innerPath = readLittleUString();
-			entry.dataOffset = raf.getChannel().position();
+	/**
+	 * Appends vacant slots, growing the arrays if necessary.
+	 */
+	private void addSlots( int amount )
+	{
+		int neededCount = slotCount + amount;
+		if ( neededCount > innerPaths.length ) {
+			int newCapacity = Math.max( neededCount, innerPaths.length + innerPaths.length / 2 );
+			entryOffsets = Arrays.copyOf( entryOffsets, newCapacity );
+			dataOffsets = Arrays.copyOf( dataOffsets, newCapacity );
+			dataSizes = Arrays.copyOf( dataSizes, newCapacity );
+			innerPaths = Arrays.copyOf( innerPaths, newCapacity );
+		}
+		Arrays.fill( entryOffsets, slotCount, neededCount, 0 );
+		Arrays.fill( dataOffsets, slotCount, neededCount, 0 );
+		Arrays.fill( dataSizes, slotCount, neededCount, 0 );
+		Arrays.fill( innerPaths, slotCount, neededCount, null );
+		slotCount = neededCount;
+	}
 
-			if ( pathToIndexMap.containsKey( entry.innerPath ) ) {
-				throw new IOException( "InnerPath occurs more than once: " + entry.innerPath );
+	/**
+	 * Returns the first vacant slot, or -1.
+	 */
+	private int findVacancy()
+	{
+		for ( int i = vacancyHint; i < slotCount; i++ ) {
+			if ( innerPaths[i] == null ) {
+				vacancyHint = i;
+				return i;
 			}
-			pathToIndexMap.put( entry.innerPath, i );
 		}
+		vacancyHint = slotCount;
+		return -1;
+	}
+
+	/**
+	 * Returns occupied slots, sorted by entryOffset (asc).
+	 */
+	private int[] getSlotsByEntryOffset()
+	{
+		int[] slots = new int[pathToIndexMap.size()];
+		int count = 0;
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] != null ) slots[count++] = i;
+		}
+		return PackUtilities.sortSlotsByKey( entryOffsets, slots, count );
+	}
+
+	/**
+	 * Returns the byte count of an entry's dataSize, innerPath, and data.
+	 */
+	private long getEntryLength( int n )
+	{
+		return ( dataOffsets[n] - entryOffsets[n] ) + dataSizes[n];
 	}
 
 	/**
@@ -225,11 +321,23 @@ public class FTLPack extends AbstractPack
 	 */
 	private void moveEntryToEOF( int n ) throws IOException
 	{
-		DatEntry entry = entryList.get( n );
-		long oldOffset = entry.entryOffset;
+		copyEntryToEOF( n );
+
+		// Update the index.
+		raf.seek( getHeaderIndexPosition( n ) );
+		writeLittleUInt( entryOffsets[n] );
+	}
+
+	/**
+	 * Copies an entry to the end of the file, without updating the index.
+	 * The original bytes are left in place.
+	 */
+	private void copyEntryToEOF( int n ) throws IOException
+	{
+		long oldOffset = entryOffsets[n];
 		long newOffset = raf.length();
 
-		long totalBytes = ( entry.dataOffset - entry.entryOffset ) + entry.dataSize;
+		long totalBytes = getEntryLength( n );
 		long bytesRemaining = totalBytes;
 		byte[] buf = new byte[4096];
 		int len;
@@ -237,18 +345,15 @@ public class FTLPack extends AbstractPack
 			raf.seek( oldOffset + totalBytes - bytesRemaining );
 			len = raf.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) );
 			if ( len == -1 ) {
-				throw new IOException( "EOF prematurely reached reading innerPath: " + entry.innerPath );
+				throw new IOException( "EOF prematurely reached reading innerPath: " + innerPaths[n] );
 			}
 
 			raf.seek( newOffset + totalBytes - bytesRemaining );
 			raf.write( buf, 0, len );
 			bytesRemaining -= len;
 		}
-		// Update the index.
-		raf.seek( getHeaderIndexPosition( n ) );
-		writeLittleUInt( newOffset );
-		entry.dataOffset = ( newOffset + ( entry.dataOffset - entry.entryOffset ) );
-		entry.entryOffset = newOffset;
+		dataOffsets[n] = ( newOffset + ( dataOffsets[n] - entryOffsets[n] ) );
+		entryOffsets[n] = newOffset;
 	}
 
 	/**
@@ -260,12 +365,12 @@ public class FTLPack extends AbstractPack
 	 */
 	private void growIndex( int amount ) throws IOException
 	{
+		freeExtents = null;  // Entries are about to move.
+
 		int freeRoom = -1;
 
 		while ( true ) {
-			int vacancyCount = Collections.frequency( entryList, null );
-
-			if ( entryList.size() - vacancyCount == 0 ) {
+			if ( pathToIndexMap.size() == 0 ) {
 				// There is no innerFile after the index. We can grow
 				// as much as we like. Limit ourselves to amount.
 				freeRoom = amount;
@@ -275,15 +380,14 @@ public class FTLPack extends AbstractPack
 				// Find the used index with the lowest entryOffset.
 				int earliestUsedIndex = -1;
 				long minEntryOffset = Long.MAX_VALUE;
-				for ( int i = 0; i < entryList.size(); i++ ) {
-					DatEntry entry = entryList.get( i );
-					if ( entry.entryOffset < minEntryOffset ) {
+				for ( int i = 0; i < slotCount; i++ ) {
+					if ( innerPaths[i] != null && entryOffsets[i] < minEntryOffset ) {
 						earliestUsedIndex = i;
-						minEntryOffset = entry.entryOffset;
+						minEntryOffset = entryOffsets[i];
 					}
 				}
 				// (region between header and first innerFile entry) / (possible 4-byte ints).
-				freeRoom = (int)( ( minEntryOffset - getHeaderIndexPosition( entryList.size() ) ) / 4 );
+				freeRoom = (int)( ( minEntryOffset - getHeaderIndexPosition( slotCount ) ) / 4 );
 
 				if ( freeRoom >= amount ) {
 					freeRoom = amount;  // We don't need hundreds of thousands more.
@@ -295,12 +399,10 @@ public class FTLPack extends AbstractPack
 			}
 		}
 		// Expand the header to claim the vacated region.
-		for ( int i = 0; i < freeRoom; i++ ) {
-			entryList.add( null );
-		}
+		addSlots( freeRoom );
 		raf.seek( 0 );
-		writeLittleUInt( entryList.size() );
-		raf.seek( getHeaderIndexPosition( entryList.size() - freeRoom ) );
+		writeLittleUInt( slotCount );
+		raf.seek( getHeaderIndexPosition( slotCount - freeRoom ) );
 		for ( int i = 0; i < freeRoom; i++ ) {
 			writeLittleUInt( 0 );
 		}
@@ -315,18 +417,20 @@ public class FTLPack extends AbstractPack
 	@Override
 	public List<String> list()
 	{
-		List<String> result = new ArrayList<>();
-		result.addAll( pathToIndexMap.keySet() );
+		List<String> result = new ArrayList<>( pathToIndexMap.size() );
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] != null ) result.add( innerPaths[i] );
+		}
 		return result;
 	}
 
 	@Override
 	public List<PathAndSize> listSizes()
 	{
-		List<PathAndSize> result = new ArrayList<>();
-		for ( DatEntry entry : entryList ) {
-			if ( entry == null ) continue;
-			PathAndSize pas = new PathAndSize( entry.innerPath, entry.dataSize );
+		List<PathAndSize> result = new ArrayList<>( pathToIndexMap.size() );
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] == null ) continue;
+			PathAndSize pas = new PathAndSize( innerPaths[i], dataSizes[i] );
 			result.add( pas );
 		}
 		return result;
@@ -346,24 +450,31 @@ public class FTLPack extends AbstractPack
 		}
 
 		// Find a vacancy in the header, or create one.
-		int entryIndex = entryList.indexOf( null );
+		int entryIndex = findVacancy();
 		if ( entryIndex == -1 ) {
-			growIndex( 50 );  // Save effort for 49 future adds.
-			entryIndex = entryList.indexOf( null );
+			if ( batching ) {
+				// The header on disk will grow when the batch is committed.
+				addSlots( 1 );
+				freeExtents = null;  // The header now overlaps the earliest gap.
+				entryIndex = slotCount - 1;
+			}
+			else {
+				growIndex( 50 );  // Save effort for 49 future adds.
+				entryIndex = findVacancy();
+			}
 		}
 
-		DatEntry entry = new DatEntry();
-		entry.entryOffset = raf.length();
-		entry.innerPath = innerPath;
-		entry.dataSize = 0;  // Write this later.
+		long entryOffset = raf.length();
 
-		raf.seek( getHeaderIndexPosition( entryIndex ) );
-		writeLittleUInt( entry.entryOffset );
+		if ( !batching ) {
+			raf.seek( getHeaderIndexPosition( entryIndex ) );
+			writeLittleUInt( entryOffset );
+		}
 
-		raf.seek( entry.entryOffset );
-		writeLittleUInt( entry.dataSize );
-		writeLittleUString( entry.innerPath );
-		entry.dataOffset = raf.getChannel().position();
+		raf.seek( entryOffset );
+		writeLittleUInt( 0 );  // Write this later.
+		writeLittleUString( innerPath );
+		long dataOffset = raf.getChannel().position();
 
 		byte[] buf = new byte[4096];
 		int len;
@@ -372,37 +483,149 @@ public class FTLPack extends AbstractPack
 		}
 
 		// Go back and fill in the dataSize.
-		entry.dataSize = raf.getChannel().position() - entry.dataOffset;
-		raf.seek( entry.entryOffset );
-		writeLittleUInt( entry.dataSize );
-
-		entryList.set( entryIndex, entry );
+		long dataSize = raf.getChannel().position() - dataOffset;
+		raf.seek( entryOffset );
+		writeLittleUInt( dataSize );
+
+		entryOffsets[entryIndex] = entryOffset;
+		dataOffsets[entryIndex] = dataOffset;
+		dataSizes[entryIndex] = dataSize;
+		innerPaths[entryIndex] = innerPath;
 		pathToIndexMap.put( innerPath, entryIndex );
 	}
 
+	/**
+	 * Replaces an innerFile, reusing space within the dat when possible.
+	 *
+	 * If the new data fits in the existing entry, it's overwritten in place.
+	 * Otherwise, the smallest gap that fits is used, and the old entry
+	 * becomes a gap. Only when no gap fits is the data appended.
+	 *
+	 * During a batch, overwritten bytes are journaled, so rollback() still
+	 * restores them.
+	 */
+	@Override
+	public void replace( String innerPath, InputStream is, long length ) throws IOException
+	{
+		if ( innerPath.contains( "\\" ) ) {
+			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
+		}
+		int entryIndex = pathToIndexMap.get( innerPath );
+		if ( length < 0 || entryIndex == -1 ) {
+			super.replace( innerPath, is, length );
+			return;
+		}
+
+		if ( length <= dataSizes[entryIndex] ) {
+			long oldDataSize = dataSizes[entryIndex];
+			dataSizes[entryIndex] = writeEntry( entryOffsets[entryIndex], innerPath, is, oldDataSize );
+
+			if ( freeExtents != null ) {
+				freeExtents.add( dataOffsets[entryIndex] + dataSizes[entryIndex], oldDataSize - dataSizes[entryIndex] );
+			}
+			return;
+		}
+
+		long entryHeaderSize = dataOffsets[entryIndex] - entryOffsets[entryIndex];
+		long newEntryOffset = getFreeExtents().allocate( entryHeaderSize + length );
+		if ( newEntryOffset == -1 ) {
+			super.replace( innerPath, is, length );
+			return;
+		}
+
+		long newDataSize = writeEntry( newEntryOffset, innerPath, is, length );
+		freeExtents.add( newEntryOffset + entryHeaderSize + newDataSize, length - newDataSize );
+		freeExtents.add( entryOffsets[entryIndex], entryHeaderSize + dataSizes[entryIndex] );
+
+		if ( !batching ) {
+			raf.seek( getHeaderIndexPosition( entryIndex ) );
+			writeLittleUInt( newEntryOffset );
+		}
+
+		entryOffsets[entryIndex] = newEntryOffset;
+		dataOffsets[entryIndex] = newEntryOffset + entryHeaderSize;
+		dataSizes[entryIndex] = newDataSize;
+	}
+
+	/**
+	 * Writes a {dataSize, innerPath, data} hunk, without touching the header.
+	 *
+	 * @param maxDataSize
+	 *            the room available for data
+	 * @return the number of data bytes written
+	 * @throws IOException
+	 *             if the stream provided more than maxDataSize bytes
+	 */
+	private long writeEntry( long entryOffset, String innerPath, InputStream is, long maxDataSize ) throws IOException
+	{
+		if ( journal != null ) {
+			journal.recordRegion( entryOffset, 4 + 4 + innerPath.length() + maxDataSize );
+		}
+
+		raf.seek( entryOffset );
+		writeLittleUInt( 0 );  // Write this later.
+		writeLittleUString( innerPath );
+
+		long bytesRemaining = maxDataSize;
+		byte[] buf = new byte[4096];
+		int len;
+		while ( bytesRemaining > 0 && ( len = is.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) ) ) >= 0 ) {
+			raf.write( buf, 0, len );
+			bytesRemaining -= len;
+		}
+		if ( is.read() != -1 ) {
+			throw new IOException( "Data for innerPath was longer than expected: " + innerPath );
+		}
+
+		long dataSize = maxDataSize - bytesRemaining;
+		raf.seek( entryOffset );
+		writeLittleUInt( dataSize );
+
+		return dataSize;
+	}
+
+	/**
+	 * Returns the gaps between entries, building the list if necessary.
+	 */
+	private FreeExtentList getFreeExtents() throws IOException
+	{
+		if ( freeExtents == null ) {
+			freeExtents = new FreeExtentList();
+
+			long pendingOffset = getHeaderIndexPosition( slotCount );
+			for ( int n : getSlotsByEntryOffset() ) {
+				freeExtents.add( pendingOffset, entryOffsets[n] - pendingOffset );
+				pendingOffset = Math.max( pendingOffset, dataOffsets[n] + dataSizes[n] );
+			}
+			freeExtents.add( pendingOffset, raf.length() - pendingOffset );
+		}
+		return freeExtents;
+	}
+
 	@Override
 	public void extractTo( String innerPath, OutputStream os ) throws FileNotFoundException, IOException
 	{
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
 		}
-		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+		int entryIndex = pathToIndexMap.get( innerPath );
+		if ( entryIndex == -1 ) {
 			throw new FileNotFoundException( "InnerPath does not exist: " + innerPath );
 		}
 
-		int entryIndex = pathToIndexMap.get( innerPath ).intValue();
-		DatEntry entry = entryList.get( entryIndex );
+		long dataOffset = dataOffsets[entryIndex];
+		long dataSize = dataSizes[entryIndex];
 
-		raf.seek( entry.dataOffset );
+		raf.seek( dataOffset );
 
-		long bytesRemaining = entry.dataSize;
+		long bytesRemaining = dataSize;
 		byte[] buf = new byte[4096];
 		int len;
 		while ( bytesRemaining > 0 ) {
-			raf.seek( entry.dataOffset + entry.dataSize - bytesRemaining );
+			raf.seek( dataOffset + dataSize - bytesRemaining );
 			len = raf.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) );
 			if ( len == -1 ) {
-				throw new IOException( "EOF prematurely reached reading innerPath: " + entry.innerPath );
+				throw new IOException( "EOF prematurely reached reading innerPath: " + innerPath );
 			}
 
 			bytesRemaining -= len;
@@ -416,20 +639,33 @@ public class FTLPack extends AbstractPack
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
 		}
-		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+		int entryIndex = pathToIndexMap.remove( innerPath );
+		if ( entryIndex == -1 ) {
 			throw new FileNotFoundException( "InnerPath does not exist: " + innerPath );
 		}
 
-		int entryIndex = pathToIndexMap.get( innerPath ).intValue();
-		pathToIndexMap.remove( innerPath );
-		DatEntry removedEntry = entryList.set( entryIndex, null );
+		long removedEntryOffset = entryOffsets[entryIndex];
+		long removedDataEnd = dataOffsets[entryIndex] + dataSizes[entryIndex];
+		entryOffsets[entryIndex] = 0;
+		dataOffsets[entryIndex] = 0;
+		dataSizes[entryIndex] = 0;
+		innerPaths[entryIndex] = null;
+		vacancyHint = Math.min( vacancyHint, entryIndex );
 
-		raf.seek( getHeaderIndexPosition( entryIndex ) );
-		writeLittleUInt( 0 );
+		if ( !batching ) {
+			raf.seek( getHeaderIndexPosition( entryIndex ) );
+			writeLittleUInt( 0 );
+		}
 
 		// If data was at the end, truncate.
-		if ( removedEntry.dataOffset + removedEntry.dataSize == raf.length() ) {
-			raf.setLength( removedEntry.entryOffset );
+		// During a batch, data that predates it must survive, in case of a rollback.
+		boolean truncatable = !batching || removedEntryOffset >= batchDatLength;
+		if ( truncatable && removedDataEnd == raf.length() ) {
+			raf.setLength( removedEntryOffset );
+			if ( freeExtents != null ) freeExtents.truncate( removedEntryOffset );
+		}
+		else if ( freeExtents != null ) {
+			freeExtents.add( removedEntryOffset, removedDataEnd - removedEntryOffset );
 		}
 	}
 
@@ -448,22 +684,20 @@ public class FTLPack extends AbstractPack
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
 		}
-		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+		int entryIndex = pathToIndexMap.get( innerPath );
+		if ( entryIndex == -1 ) {
 			throw new FileNotFoundException( "InnerPath does not exist: " + innerPath );
 		}
 
-		int entryIndex = pathToIndexMap.get( innerPath ).intValue();
-		DatEntry entry = entryList.get( entryIndex );
-
 		// Create a stream that can only see this region.
 		// Multiple read-only streams can coexist (each has its own position).
-		InputStream stream = new FileChannelRegionInputStream( raf.getChannel(), entry.dataOffset, entry.dataSize );
+		InputStream stream = new FileChannelRegionInputStream( raf.getChannel(), dataOffsets[entryIndex], dataSizes[entryIndex] );
 
 		// Mapped regions may not garbage collect promptly.
 		// That would keep the file in use: bad.
 		// Closing raf doesn't affect them. :/
 		// This method has best I/O performance though.
-		// MappedByteBuffer buf = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, entry.dataOffset, entry.dataSize );
+		// MappedByteBuffer buf = raf.getChannel().map( FileChannel.MapMode.READ_ONLY, dataOffsets[entryIndex], dataSizes[entryIndex] );
 		// buf.load();
 		// InputStream stream = new ByteBufferBackedInputStream( buf );
 
@@ -473,12 +707,126 @@ public class FTLPack extends AbstractPack
 	@Override
 	public void close() throws IOException
 	{
+		if ( journal != null ) {
+			// Unfinished business. Leave the journal, to recover on the next open.
+			journal.close();
+			journal = null;
+		}
 		raf.close();
 	}
 
+	/**
+	 * Returns a read-only view of the index, with one element per slot.
+	 *
+	 * Vacant slots appear as null. Elements are built on access, so the
+	 * view follows later changes to the dat, but each DatEntry is a snapshot.
+	 */
 	public List<DatEntry> listMetadata()
 	{
-		return new ArrayList<>( entryList );
+		return new AbstractList<DatEntry>() {
+			@Override
+			public DatEntry get( int index )
+			{
+				if ( index < 0 || index >= slotCount ) {
+					throw new IndexOutOfBoundsException( String.format( "Index: %d, Size: %d", index, slotCount ) );
+				}
+				if ( innerPaths[index] == null ) return null;
+
+				DatEntry entry = new DatEntry();
+				entry.entryOffset = entryOffsets[index];
+				entry.innerPath = innerPaths[index];
+				entry.dataOffset = dataOffsets[index];
+				entry.dataSize = dataSizes[index];
+				return entry;
+			}
+
+			@Override
+			public int size()
+			{
+				return slotCount;
+			}
+		};
+	}
+
+	@Override
+	public void beginBatch() throws IOException
+	{
+		if ( batching ) {
+			throw new IllegalStateException( "A batch is already in progress: " + getName() );
+		}
+
+		batchDatLength = raf.length();
+		batchIndexSize = slotCount;
+		journal = new PackJournal( datFile, raf.getChannel() );
+		batching = true;
+	}
+
+	@Override
+	public boolean isBatching()
+	{
+		return batching;
+	}
+
+	/**
+	 * Writes the index changed during the current batch, ending it.
+	 *
+	 * If the header needs to grow, entries in the way are copied to the end
+	 * of the file first. Then the entire header is written at once.
+	 */
+	@Override
+	public RepackResult commit( boolean repack ) throws IOException
+	{
+		if ( !batching ) {
+			throw new IllegalStateException( "No batch is in progress: " + getName() );
+		}
+
+		long headerEnd = getHeaderIndexPosition( slotCount );
+
+		if ( slotCount > batchIndexSize ) {
+			// Copied entries must not land within the grown header either.
+			if ( raf.length() < headerEnd ) raf.setLength( headerEnd );
+
+			for ( int n : getSlotsByEntryOffset() ) {
+				if ( entryOffsets[n] >= headerEnd ) break;
+				copyEntryToEOF( n );
+			}
+		}
+
+		ByteBuffer headerBuf = ByteBuffer.allocate( (int)headerEnd );
+		headerBuf.order( ByteOrder.LITTLE_ENDIAN );
+		headerBuf.putInt( slotCount );
+		for ( int i = 0; i < slotCount; i++ ) {
+			headerBuf.putInt( (int)( entryOffsets[i] & 0x00000000FFFFFFFFL ) );  // Vacant slots hold 0.
+		}
+		journal.recordRegion( 0, headerEnd );
+		raf.seek( 0 );
+		raf.write( headerBuf.array(), 0, headerBuf.position() );
+
+		journal.finish();
+		journal = null;
+		freeExtents = null;
+		batching = false;
+
+		return repack ? repack() : null;
+	}
+
+	/**
+	 * Discards all changes made during the current batch, ending it.
+	 *
+	 * The header on disk was left untouched, so it's enough to undo
+	 * overwritten entries, trim off appended data, and re-read the index.
+	 */
+	@Override
+	public void rollback() throws IOException
+	{
+		if ( !batching ) return;
+		batching = false;
+
+		journal.close();
+		journal = null;
+		PackJournal.recover( datFile, raf );
+
+		readIndex();
 	}
 
 	/**
@@ -488,42 +836,85 @@ public class FTLPack extends AbstractPack
 	@Override
 	public RepackResult repack() throws IOException
 	{
-		long bytesChanged = 0;
-
-		int vacancyCount = Collections.frequency( entryList, null );
+		if ( batching ) {
+			throw new IllegalStateException( "Cannot repack while a batch is in progress: " + getName() );
+		}
 
-		// Build a list of non-null entries, sorted in the order their data appears.
+		long bytesChanged = 0;
 
-		List<DatEntry> tmpEntries = new ArrayList<>( entryList.size() - vacancyCount );
-		for ( DatEntry entry : entryList ) {
-			if ( entry != null ) tmpEntries.add( entry );
-		}
-		Collections.sort( tmpEntries, new DatEntryDataOffsetComparator() );
+		// Occupied slots, in the order their data appears.
+		int[] sortedSlots = getSlotsByEntryOffset();
+		int entryCount = sortedSlots.length;
 
-		for ( int i = 0; i < tmpEntries.size() - 1; i++ ) {
-			DatEntry a = tmpEntries.get( i );
-			DatEntry b = tmpEntries.get( i + 1 );
-			if ( a.dataOffset + a.dataSize > b.entryOffset ) {
+		for ( int i = 0; i < entryCount - 1; i++ ) {
+			int a = sortedSlots[i];
+			int b = sortedSlots[i + 1];
+			if ( dataOffsets[a] + dataSizes[a] > entryOffsets[b] ) {
 				throw new IOException(
-					String.format( "Cannot repack datfile with overlapping entries (\"%s\" and \"%s\")", a.innerPath, b.innerPath )
+					String.format( "Cannot repack datfile with overlapping entries (\"%s\" and \"%s\")", innerPaths[a], innerPaths[b] )
 				);
 			}
 		}
 
-		pathToIndexMap.clear();  // entryList gets replaced later.
+		long oldDatLength = raf.length();
+
+		// Journal the header, and the entries that will shift. Shifted entries land on
+		// each other's old bytes, or get truncated away, so all of them must be saved.
+		// Gaps between them hold nothing worth restoring, so each run of adjacent
+		// entries is saved as one record.
+		freeExtents = null;
+		journal = new PackJournal( datFile, raf.getChannel() );
+		journal.recordRegion( 0, getHeaderIndexPosition( slotCount ) );
+
+		long pendingOffset = getHeaderIndexPosition( entryCount );
+		long runStart = -1;
+		long runEnd = -1;
+		for ( int n : sortedSlots ) {
+			long entryLength = getEntryLength( n );
+			if ( runStart == -1 && pendingOffset == entryOffsets[n] ) {
+				// Stays put, like everything before it.
+				pendingOffset += entryLength;
+				continue;
+			}
+			pendingOffset += entryLength;
+
+			if ( runStart != -1 && entryOffsets[n] == runEnd ) {
+				runEnd += entryLength;
+				continue;
+			}
+			if ( runStart != -1 ) journal.recordRegion( runStart, runEnd - runStart );
+			runStart = entryOffsets[n];
+			runEnd = runStart + entryLength;
+		}
+		if ( runStart != -1 ) journal.recordRegion( runStart, runEnd - runStart );
+
+		// The repacked index, with no vacancies.
+		long[] newEntryOffsets = new long[entryCount];
+		long[] newDataOffsets = new long[entryCount];
+		long[] newDataSizes = new long[entryCount];
+		String[] newInnerPaths = new String[entryCount];
+
+		pathToIndexMap.clear();
 
 		// Write the header size.
-		if ( tmpEntries.size() != entryList.size() ) {
+		if ( entryCount != slotCount ) {
 			raf.seek( 0 );
-			writeLittleUInt( tmpEntries.size() );
+			writeLittleUInt( entryCount );
 			bytesChanged += 4;
 		}
 
-		long pendingEntryOffset = getHeaderIndexPosition( tmpEntries.size() );
+		long pendingEntryOffset = getHeaderIndexPosition( entryCount );
+
+		for ( int i = 0; i < entryCount; i++ ) {
+			int n = sortedSlots[i];
+			long entryHeaderSize = dataOffsets[n] - entryOffsets[n];
+			long totalBytes = entryHeaderSize + dataSizes[n];
 
-		for ( int i = 0; i < tmpEntries.size(); i++ ) {
-			DatEntry entry = tmpEntries.get( i );
-			pathToIndexMap.put( entry.innerPath, i );
+			newInnerPaths[i] = innerPaths[n];
+			newDataSizes[i] = dataSizes[n];
+			newEntryOffsets[i] = pendingEntryOffset;
+			newDataOffsets[i] = pendingEntryOffset + entryHeaderSize;
+			pathToIndexMap.put( innerPaths[n], i );
 
 			// Write the header index.
 			raf.seek( getHeaderIndexPosition( i ) );
@@ -531,16 +922,15 @@ public class FTLPack extends AbstractPack
 			bytesChanged += 4;
 
 			// Shift the entry toward the start of the dat.
-			if ( pendingEntryOffset != entry.entryOffset ) {
-				long totalBytes = ( entry.dataOffset - entry.entryOffset ) + entry.dataSize;
+			if ( pendingEntryOffset != entryOffsets[n] ) {
 				long bytesRemaining = totalBytes;
 				byte[] buf = new byte[4096];
 				int len;
 				while ( bytesRemaining > 0 ) {
-					raf.seek( entry.entryOffset + totalBytes - bytesRemaining );
+					raf.seek( entryOffsets[n] + totalBytes - bytesRemaining );
 					len = raf.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) );
 					if ( len == -1 ) {
-						throw new IOException( "EOF prematurely reached reading innerPath: " + entry.innerPath );
+						throw new IOException( "EOF prematurely reached reading innerPath: " + innerPaths[n] );
 					}
 
 					raf.seek( pendingEntryOffset + totalBytes - bytesRemaining );
@@ -548,20 +938,25 @@ public class FTLPack extends AbstractPack
 					bytesRemaining -= len;
 				}
 
-				entry.dataOffset = pendingEntryOffset + ( entry.dataOffset - entry.entryOffset );
-				entry.entryOffset = pendingEntryOffset;
 				bytesChanged += totalBytes;
 			}
 
-			pendingEntryOffset += ( entry.dataOffset - entry.entryOffset ) + entry.dataSize;
+			pendingEntryOffset += totalBytes;
 		}
 
-		entryList = tmpEntries;
+		entryOffsets = newEntryOffsets;
+		dataOffsets = newDataOffsets;
+		dataSizes = newDataSizes;
+		innerPaths = newInnerPaths;
+		slotCount = entryCount;
+		vacancyHint = entryCount;
 
-		long oldDatLength = raf.length();
 		long newDatLength = pendingEntryOffset;
 		raf.setLength( newDatLength );  // Trim off deallocated bytes at the end.
 
+		journal.finish();
+		journal = null;
+
 		return new RepackResult( oldDatLength, newDatLength, bytesChanged );
 	}
 
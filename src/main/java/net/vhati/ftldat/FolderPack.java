@@ -7,9 +7,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -17,7 +29,15 @@ import java.util.Stack;
  *
  * Files can be independently added/removed/altered
  * directly, so long as this class is not busy
- * at the time.
+ * at the time, and refresh() is called afterward.
+ * The tree is only walked once, to build an index of
+ * innerPaths, which add() and remove() keep current.
+ * Symlinks are followed, as they would be by File.
+ *
+ * The index is case-sensitive, but the filesystem may
+ * not be. When a lookup misses the index, the disk is
+ * checked, so a file spelled in another case is still
+ * found (eg. on Windows).
  *
  * The contains() method returns true for directories,
  * but remove() will not delete them. The list()
@@ -27,51 +47,148 @@ import java.util.Stack;
 public class FolderPack extends AbstractPack
 {
 	private File rootDir;
+	private Path rootPath;
+
+	/** Sizes of files, by innerPath. Built on demand. */
+	private Map<String, Long> fileSizeMap = null;
+
+	/** InnerPaths of directories, including "" for rootDir itself. */
+	private Set<String> dirSet = null;
 
 
 	public FolderPack( File rootDir )
 	{
 		this.rootDir = rootDir;
+		this.rootPath = rootDir.toPath().toAbsolutePath().normalize();
 	}
 
 
-	@Override
-	public String getName()
+	/**
+	 * Forgets the index, to be rebuilt on next use.
+	 *
+	 * Call this after files were altered by anything other than this class.
+	 */
+	public void refresh()
 	{
-		return rootDir.getName();
+		fileSizeMap = null;
+		dirSet = null;
 	}
 
-	@Override
-	public List<String> list()
+	/**
+	 * Walks the tree to build the index, if necessary.
+	 *
+	 * Unreadable files and directories (and symlink loops) are skipped.
+	 */
+	private void buildIndex() throws IOException
 	{
-		List<String> result = new ArrayList<>();
+		if ( fileSizeMap != null ) return;
 
-		Stack<String> pendingPaths = new Stack<>();
-		pendingPaths.push( "" );
+		final Map<String, Long> tmpFileSizeMap = new HashMap<>();
+		final Set<String> tmpDirSet = new HashSet<>();
 
-		while ( !pendingPaths.isEmpty() ) {
-			String current = pendingPaths.pop();
-			File tmpFile = new File( rootDir, current );
-			if ( tmpFile.isFile() ) {
-				result.add( current );
-			}
-			else if ( tmpFile.isDirectory() ) {
-				for ( String childName : tmpFile.list() ) {
-					pendingPaths.push( PackUtilities.ftlPathJoin( current, childName ) );
+		if ( Files.isDirectory( rootPath ) ) {
+			Files.walkFileTree(
+				rootPath, EnumSet.of( FileVisitOption.FOLLOW_LINKS ), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+					{
+						tmpDirSet.add( toInnerPath( dir ) );
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+					{
+						if ( attrs.isRegularFile() ) {
+							tmpFileSizeMap.put( toInnerPath( file ), attrs.size() );
+						}
+						return FileVisitResult.CONTINUE;
+					}
+
+					@Override
+					public FileVisitResult visitFileFailed( Path file, IOException e )
+					{
+						return FileVisitResult.CONTINUE;  // Unreadable; skip it.
+					}
+
+					@Override
+					public FileVisitResult postVisitDirectory( Path dir, IOException e )
+					{
+						return FileVisitResult.CONTINUE;  // Partly unreadable; keep what was read.
+					}
 				}
-			}
+			);
+		}
+
+		fileSizeMap = tmpFileSizeMap;
+		dirSet = tmpDirSet;
+	}
+
+	/**
+	 * Builds the index, for methods whose signatures can't throw IOException.
+	 */
+	private void buildIndexUnchecked()
+	{
+		try {
+			buildIndex();
+		}
+		catch ( IOException e ) {
+			throw new UncheckedIOException( "Failed to index FolderPack at: " + rootDir, e );
+		}
+	}
+
+	/**
+	 * Returns the innerPath of a normalized path within rootDir.
+	 */
+	private String toInnerPath( Path path )
+	{
+		String result = rootPath.relativize( path ).toString();
+		if ( File.separatorChar != '/' ) {
+			result = result.replace( File.separatorChar, '/' );
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the absolute, normalized path of an innerPath.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the innerPath is malformed, or points outside rootDir
+	 */
+	private Path resolve( String innerPath )
+	{
+		if ( innerPath.contains( "\\" ) ) {
+			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
+		}
+		Path result = rootPath.resolve( innerPath ).normalize();
+
+		if ( !result.startsWith( rootPath ) ) {
+			throw new IllegalArgumentException( String.format( "InnerPath \"%s\" is outside the FolderPack at \"%s\"", innerPath, rootDir ) );
 		}
 		return result;
 	}
 
+
+	@Override
+	public String getName()
+	{
+		return rootDir.getName();
+	}
+
+	@Override
+	public List<String> list()
+	{
+		buildIndexUnchecked();
+		return new ArrayList<>( fileSizeMap.keySet() );
+	}
+
 	@Override
 	public List<PathAndSize> listSizes()
 	{
-		List<PathAndSize> result = new ArrayList<>();
-		List<String> innerPaths = list();
-		for ( String innerPath : innerPaths ) {
-			File tmpFile = getFile( innerPath );
-			result.add( new PathAndSize( innerPath, tmpFile.length() ) );
+		buildIndexUnchecked();
+		List<PathAndSize> result = new ArrayList<>( fileSizeMap.size() );
+		for ( Map.Entry<String, Long> entry : fileSizeMap.entrySet() ) {
+			result.add( new PathAndSize( entry.getKey(), entry.getValue() ) );
 		}
 		return result;
 	}
@@ -79,18 +196,31 @@ public class FolderPack extends AbstractPack
 	@Override
 	public void add( String innerPath, InputStream is ) throws IOException
 	{
-		File dstFile = getFile( innerPath );
-		if ( dstFile.exists() ) throw new IOException( "InnerPath already exists: " + innerPath );
+		buildIndex();
+		Path dstPath = resolve( innerPath );
+		String normalizedPath = toInnerPath( dstPath );
+		if ( fileSizeMap.containsKey( normalizedPath ) || dirSet.contains( normalizedPath ) || Files.exists( dstPath ) ) {
+			// The disk check catches the same file in another case.
+			throw new IOException( "InnerPath already exists: " + innerPath );
+		}
 
+		File dstFile = dstPath.toFile();
 		dstFile.getParentFile().mkdirs();
 
+		long size = 0;
 		try ( FileOutputStream os = new FileOutputStream( dstFile ) ) {
 			byte[] buf = new byte[4096];
 			int len;
 			while ( ( len = is.read( buf ) ) >= 0 ) {
 				os.write( buf, 0, len );
+				size += len;
 			}
 		}
+
+		fileSizeMap.put( normalizedPath, size );
+		for ( Path dir = dstPath.getParent(); dir != null && dir.startsWith( rootPath ); dir = dir.getParent() ) {
+			if ( !dirSet.add( toInnerPath( dir ) ) ) break;  // Ancestors are known too.
+		}
 	}
 
 	@Override
@@ -108,19 +238,37 @@ public class FolderPack extends AbstractPack
 	}
 
 	@Override
-	public void remove( String innerPath )
+	public void remove( String innerPath ) throws IOException
 	{
-		File tmpFile = getFile( innerPath );
-		if ( tmpFile.exists() && tmpFile.isFile() ) {
-			tmpFile.delete();
+		buildIndex();
+		Path tmpPath = resolve( innerPath );
+		String normalizedPath = toInnerPath( tmpPath );
+		if ( fileSizeMap.containsKey( normalizedPath ) ) {
+			if ( tmpPath.toFile().delete() || !Files.exists( tmpPath ) ) {
+				fileSizeMap.remove( normalizedPath );
+			}
+		}
+		else if ( Files.isRegularFile( tmpPath ) && tmpPath.toFile().delete() ) {
+			// Indexed in another case. Forget whichever spelling is gone now.
+			for ( Iterator<String> it = fileSizeMap.keySet().iterator(); it.hasNext(); ) {
+				String key = it.next();
+				if ( key.equalsIgnoreCase( normalizedPath ) && !Files.exists( rootPath.resolve( key ) ) ) {
+					it.remove();
+				}
+			}
 		}
 	}
 
 	@Override
 	public boolean contains( String innerPath )
 	{
-		File tmpFile = getFile( innerPath );
-		return tmpFile.exists();
+		buildIndexUnchecked();
+		Path tmpPath = resolve( innerPath );
+		String normalizedPath = toInnerPath( tmpPath );
+		if ( fileSizeMap.containsKey( normalizedPath ) || dirSet.contains( normalizedPath ) ) return true;
+
+		// The same file in another case?
+		return Files.exists( tmpPath );
 	}
 
 	@Override
@@ -135,18 +283,6 @@ public class FolderPack extends AbstractPack
 	 */
 	public File getFile( String innerPath )
 	{
-		if ( innerPath.contains( "\\" ) ) {
-			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
-		}
-		File tmpFile = new File( rootDir, innerPath );
-
-		// Check if the file is inside rootDir.
-		File parentDir = tmpFile.getParentFile();
-		while ( parentDir != null ) {
-			if ( parentDir.equals( rootDir ) ) return tmpFile;
-			parentDir = parentDir.getParentFile();
-		}
-
-		throw new IllegalArgumentException( String.format( "InnerPath \"%s\" is outside the FolderPack at \"%s\"", innerPath, rootDir ) );
+		return resolve( innerPath ).toFile();
 	}
 }
@@ -0,0 +1,114 @@
+package net.vhati.ftldat;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+/**
+ * A set of unused regions within a dat, for reuse by new data.
+ *
+ * Adjacent regions are merged. Allocation is best-fit: the smallest region
+ * that is large enough gets used, and whatever remains of it stays free.
+ */
+public class FreeExtentList
+{
+	private final TreeMap<Long, Long> offsetToLengthMap = new TreeMap<>();
+	private final TreeMap<Long, TreeSet<Long>> lengthToOffsetsMap = new TreeMap<>();
+
+
+	public FreeExtentList()
+	{
+	}
+
+	/**
+	 * Marks a region as unused.
+	 */
+	public void add( long offset, long length )
+	{
+		if ( length <= 0 ) return;
+
+		// Merge with the preceding region, if it ends here.
+		Map.Entry<Long, Long> prev = offsetToLengthMap.floorEntry( offset );
+		if ( prev != null && prev.getKey() + prev.getValue() >= offset ) {
+			long prevEnd = prev.getKey() + prev.getValue();
+			if ( prevEnd >= offset + length ) return;  // Already free.
+
+			removeExtent( prev.getKey(), prev.getValue() );
+			length = offset + length - prev.getKey();
+			offset = prev.getKey();
+		}
+
+		// Absorb following regions that begin within this one.
+		Map.Entry<Long, Long> next = offsetToLengthMap.ceilingEntry( offset );
+		while ( next != null && next.getKey() <= offset + length ) {
+			removeExtent( next.getKey(), next.getValue() );
+			length = Math.max( offset + length, next.getKey() + next.getValue() ) - offset;
+			next = offsetToLengthMap.ceilingEntry( offset );
+		}
+
+		addExtent( offset, length );
+	}
+
+	/**
+	 * Claims the smallest unused region that can hold length bytes.
+	 *
+	 * @return the offset of the claimed bytes, or -1 if no region was large enough
+	 */
+	public long allocate( long length )
+	{
+		if ( length <= 0 ) return -1;
+
+		Map.Entry<Long, TreeSet<Long>> fit = lengthToOffsetsMap.ceilingEntry( length );
+		if ( fit == null ) return -1;
+
+		long extentLength = fit.getKey();
+		long offset = fit.getValue().first();
+		removeExtent( offset, extentLength );
+		addExtent( offset + length, extentLength - length );
+
+		return offset;
+	}
+
+	/**
+	 * Forgets all unused regions at or beyond an offset (eg. after truncating).
+	 */
+	public void truncate( long newLength )
+	{
+		while ( !offsetToLengthMap.isEmpty() ) {
+			Map.Entry<Long, Long> last = offsetToLengthMap.lastEntry();
+			if ( last.getKey() + last.getValue() <= newLength ) break;
+
+			removeExtent( last.getKey(), last.getValue() );
+			if ( last.getKey() < newLength ) {
+				addExtent( last.getKey(), newLength - last.getKey() );
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of separate unused regions.
+	 */
+	public int size()
+	{
+		return offsetToLengthMap.size();
+	}
+
+	private void addExtent( long offset, long length )
+	{
+		if ( length <= 0 ) return;
+
+		offsetToLengthMap.put( offset, length );
+		lengthToOffsetsMap.computeIfAbsent( length, k -> new TreeSet<Long>() ).add( offset );
+	}
+
+	private void removeExtent( long offset, long length )
+	{
+		offsetToLengthMap.remove( offset );
+
+		TreeSet<Long> offsets = lengthToOffsetsMap.get( length );
+		offsets.remove( offset );
+		if ( offsets.isEmpty() ) lengthToOffsetsMap.remove( length );
+	}
+}
@@ -2,10 +2,11 @@ package net.vhati.ftldat;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 
 /**
@@ -27,23 +28,21 @@ import java.util.regex.Pattern;
  * SlipStream mods may have "mod-appendix/", which should be ignored, not added
  * to packs.
  *
+ * Roots may be nested (eg. "audio/" and "audio/sfx/"), in which case the
+ * deepest matching root wins. Routing walks a trie of path segments, so
+ * innerPaths are only scanned once.
+ *
  * @see net.vhati.ftldat.FTLPack
  * @see net.vhati.ftldat.PkgPack
  */
 public class PackContainer
 {
-	/**
-	 * Regex for innerPaths.
-	 *
-	 * Group1: parentPath/ (may be null).
-	 * Group2: root/ (may be null).
-	 * Group3: fileName (never null, if innerPath is valid).
-	 */
-	protected Pattern pathPtn = Pattern.compile( "^(?:(([^/]+/)(?:.*/)?))?([^/]+)$" );
-
-	protected Map<String, AbstractPack> rootMap = new HashMap<>();
+	protected Map<String, AbstractPack> rootMap = new LinkedHashMap<>();
 	protected AbstractPack defaultPack = null;
 
+	/** Trie of root dir segments. Its own pack applies to top-level files (the null root). */
+	protected RootNode rootTrie = new RootNode();
+
 
 	public PackContainer()
 	{
@@ -68,7 +67,8 @@ public class PackContainer
 	 * Sets a pack to use for innerPaths within a given root dir, instead of
 	 * the default pack.
 	 *
-	 * The root must include a trailing forward slash.
+	 * The root must include a trailing forward slash. It may span several
+	 * dirs (eg. "audio/sfx/"), to override a shallower root.
 	 *
 	 * A null pack should be interpreted as the result when paths should be
 	 * ignored. A null root would apply to top-level files.
@@ -78,6 +78,27 @@ public class PackContainer
 		if ( root != null && !root.endsWith( "/" ) ) {
 			throw new IllegalArgumentException( "Root dir lacks a trailing forward slash:" + root );
 		}
+		if ( root != null && ( root.startsWith( "/" ) || root.contains( "//" ) ) ) {
+			throw new IllegalArgumentException( "Root dir contains an empty segment:" + root );
+		}
+
+		RootNode node = rootTrie;
+		if ( root != null ) {
+			int start = 0;
+			int slash;
+			while ( ( slash = root.indexOf( '/', start ) ) != -1 ) {
+				String segment = root.substring( start, slash );
+				RootNode child = node.children.get( segment );
+				if ( child == null ) {
+					child = new RootNode();
+					node.children.put( segment, child );
+				}
+				node = child;
+				start = slash + 1;
+			}
+		}
+		node.mapped = true;
+		node.pack = pack;
 
 		rootMap.put( root, pack );
 	}
@@ -89,21 +110,83 @@ public class PackContainer
 	 */
 	public AbstractPack getPackFor( String innerPath )
 	{
-		Matcher m = pathPtn.matcher( innerPath );
-		if ( m.matches() ) {
-			String root = m.group( 2 );
-			AbstractPack rootPack = rootMap.get( root );
+		ParsedPath parsedPath = route( innerPath );
+		return ( parsedPath != null ? parsedPath.pack : null );
+	}
+
+	/**
+	 * Splits an innerPath into its parts, and finds the pack relevant to it.
+	 *
+	 * Returns null if innerPath is malformed.
+	 *
+	 * @see #parsePath(String)
+	 */
+	public ParsedPath route( String innerPath )
+	{
+		ParsedPath result = parsePath( innerPath );
+		if ( result == null ) return null;
+
+		if ( result.root == null ) {
+			result.pack = ( rootTrie.mapped ? rootTrie.pack : defaultPack );
+			return result;
+		}
+
+		// Descend through the dirs, remembering the deepest mapped root.
+		RootNode matchedNode = null;
+		RootNode node = rootTrie;
+		int start = 0;
+		int slash;
+		while ( node != null && ( slash = innerPath.indexOf( '/', start ) ) != -1 ) {
+			node = node.children.get( innerPath.substring( start, slash ) );
+			if ( node != null && node.mapped ) matchedNode = node;
+			start = slash + 1;
+		}
+
+		result.pack = ( matchedNode != null ? matchedNode.pack : defaultPack );
+		return result;
+	}
+
+	/**
+	 * Splits an innerPath into its parts, without routing it.
+	 *
+	 * Returns null if innerPath is malformed (empty, with a leading or
+	 * trailing slash, or with line terminators in its middle dirs).
+	 */
+	public static ParsedPath parsePath( String innerPath )
+	{
+		int len = innerPath.length();
+		if ( len == 0 || innerPath.charAt( 0 ) == '/' || innerPath.charAt( len - 1 ) == '/' ) {
+			return null;
+		}
+
+		ParsedPath result = new ParsedPath();
+		result.innerPath = innerPath;
 
-			if ( rootPack != null ) return rootPack;
-			if ( !rootMap.containsKey( root ) ) return null;
+		int firstSlash = innerPath.indexOf( '/' );
+		if ( firstSlash != -1 ) {
+			int lastSlash = innerPath.lastIndexOf( '/' );
+
+			// Dirs between the root and the file name can't contain line terminators.
+			for ( int i = firstSlash + 1; i < lastSlash; i++ ) {
+				char c = innerPath.charAt( i );
+				if ( c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029' ) return null;
+			}
+
+			result.root = innerPath.substring( 0, firstSlash + 1 );
+			result.parentPath = ( lastSlash == firstSlash ? result.root : innerPath.substring( 0, lastSlash + 1 ) );
+			result.fileName = innerPath.substring( lastSlash + 1 );
 		}
 		else {
-			return null;  // Malformed.
+			result.fileName = innerPath;
 		}
 
-		if ( defaultPack != null ) return defaultPack;
+		// Everything after the first dot, unless the name begins with one.
+		int dot = result.fileName.indexOf( '.' );
+		if ( dot > 0 && dot < result.fileName.length() - 1 ) {
+			result.extension = result.fileName.substring( dot + 1 );
+		}
 
-		return null;
+		return result;
 	}
 
 	/**
@@ -121,13 +204,52 @@ public class PackContainer
 	 */
 	public List<AbstractPack> getPacks()
 	{
-		List<AbstractPack> result = new ArrayList<>( rootMap.values().size() + 1 );
+		Set<AbstractPack> result = new LinkedHashSet<>();
 
 		for ( AbstractPack pack : rootMap.values() ) {
-			if ( pack != null && !result.contains( pack ) ) result.add( pack );
+			if ( pack != null ) result.add( pack );
 		}
 		if ( defaultPack != null ) result.add( defaultPack );
 
-		return result;
+		return new ArrayList<>( result );
+	}
+
+
+	/**
+	 * The parts of an innerPath, and the pack it was routed to.
+	 *
+	 * innerPath  = The complete path ("root/dir/fileName.ext").
+	 * root       = The topmost dir ("root/"), or null for top-level files.
+	 * parentPath = The immediate parent dir ("root/dir/"), or null for top-level files.
+	 * fileName   = The last segment ("fileName.ext").
+	 * extension  = Everything after the first dot in fileName ("ext"), or null.
+	 * pack       = The relevant pack, or null.
+	 */
+	public static class ParsedPath
+	{
+		public String innerPath = null;
+		public String root = null;
+		public String parentPath = null;
+		public String fileName = null;
+		public String extension = null;
+		public AbstractPack pack = null;
+
+
+		public ParsedPath()
+		{
+		}
+	}
+
+
+	/**
+	 * A node in the trie of root dirs, one per path segment.
+	 */
+	protected static class RootNode
+	{
+		public Map<String, RootNode> children = new HashMap<>();
+
+		/** Whether a pack (possibly null) was set for the path leading here. */
+		public boolean mapped = false;
+		public AbstractPack pack = null;
 	}
 }
@@ -0,0 +1,329 @@
+package net.vhati.ftldat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+
+import net.vhati.ftldat.AbstractPack.PathAndSize;
+
+
+/**
+ * Copies every innerFile from one dat into a new dat, possibly of another
+ * format, without extracting anything to the filesystem.
+ *
+ * The source's format is detected from its signature. The destination is
+ * created with an index sized for all the entries and filled in a single
+ * batch, so its index is written once, at the end, and no data needs to
+ * move to make room for it.
+ *
+ * When creating a PKG dat with compression, entries can be deflated on
+ * several threads, while they're still written one at a time, in order.
+ */
+public class PackConverter
+{
+	/** Bytes to read from the source at a time. */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/** Deflated entries to have in flight, per thread. */
+	private static final int ENTRIES_IN_FLIGHT_PER_THREAD = 4;
+
+	private static final byte[] PKG_SIGNATURE = new byte[] { 0x50, 0x4B, 0x47, 0x0A };  // "PKG\n"
+
+	private File srcFile;
+	private File dstFile;
+	private Format dstFormat;
+
+	private boolean compress = false;
+	private int threadCount = 1;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param srcFile
+	 *            an existing dat, in either format
+	 * @param dstFile
+	 *            a dat to create (an existing file will be overwritten)
+	 * @param dstFormat
+	 *            the format to create
+	 */
+	public PackConverter( File srcFile, File dstFile, Format dstFormat )
+	{
+		this.srcFile = srcFile;
+		this.dstFile = dstFile;
+		this.dstFormat = dstFormat;
+	}
+
+	/**
+	 * Toggles whether data should be compressed, if the destination format
+	 * supports it (only PKG does).
+	 */
+	public void setCompress( boolean b )
+	{
+		compress = b;
+	}
+
+	/**
+	 * Sets how many threads may compress data at once.
+	 */
+	public void setThreadCount( int n )
+	{
+		threadCount = Math.max( 1, n );
+	}
+
+	/**
+	 * Copies all innerFiles into a newly created dstFile.
+	 *
+	 * If anything goes wrong, the partial dstFile is deleted.
+	 *
+	 * @return the number of innerFiles copied
+	 * @throws IOException
+	 *             if srcFile and dstFile are the same file (creating dstFile
+	 *             would wipe the source), or on any I/O error
+	 */
+	public int convert() throws IOException
+	{
+		// Checked before anything is opened, since a failure deletes dstFile.
+		if ( srcFile.exists() && dstFile.exists() && Files.isSameFile( srcFile.toPath(), dstFile.toPath() ) ) {
+			throw new IOException( String.format( "Cannot convert a dat into itself: %s", srcFile.getPath() ) );
+		}
+
+		boolean success = false;
+
+		try ( AbstractPack srcPack = openPack( srcFile, "r" ) ) {
+			List<PathAndSize> entries = srcPack.listSizes();
+
+			int pathsRegionSize = 0;
+			for ( PathAndSize entry : entries ) {
+				pathsRegionSize += entry.path.length() + 1;  // Null termination.
+			}
+
+			try ( AbstractPack dstPack = createPack( dstFile, dstFormat, entries.size(), pathsRegionSize ) ) {
+				dstPack.beginBatch();
+
+				if ( dstPack instanceof PkgPack && compress && threadCount > 1 ) {
+					copyDeflatingInParallel( srcPack, (PkgPack)dstPack, entries );
+				}
+				else {
+					if ( dstPack instanceof PkgPack ) {
+						( (PkgPack)dstPack ).setCompressNewAdditions( compress );
+					}
+					for ( PathAndSize entry : entries ) {
+						try ( InputStream is = new BufferedInputStream( srcPack.getInputStream( entry.path ), BUFFER_SIZE ) ) {
+							dstPack.add( entry.path, is );
+						}
+					}
+				}
+
+				dstPack.commit();
+			}
+
+			success = true;
+			return entries.size();
+		}
+		finally {
+			if ( !success ) dstFile.delete();
+		}
+	}
+
+	/**
+	 * Reads entries in order, deflates them on a pool of threads, and adds
+	 * them in order as they finish.
+	 *
+	 * Only a few entries per thread are held in memory at a time.
+	 */
+	private void copyDeflatingInParallel( AbstractPack srcPack, PkgPack dstPack, List<PathAndSize> entries ) throws IOException
+	{
+		final AtomicInteger threadNum = new AtomicInteger( 0 );
+		ExecutorService executor = Executors.newFixedThreadPool(
+			threadCount,
+			r -> {
+				Thread t = new Thread( r, "deflate-" + threadNum.incrementAndGet() );
+				t.setDaemon( true );
+				return t;
+			}
+		);
+
+		try {
+			Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+			int maxPending = threadCount * ENTRIES_IN_FLIGHT_PER_THREAD;
+
+			for ( PathAndSize entry : entries ) {
+				if ( pendingEntries.size() >= maxPending ) {
+					addPendingEntry( dstPack, pendingEntries.removeFirst() );
+				}
+
+				byte[] data = readFully( srcPack, entry.path );
+				Future<byte[]> deflated = executor.submit( () -> deflate( data ) );
+				pendingEntries.addLast( new PendingEntry( entry.path, data.length, deflated ) );
+			}
+
+			while ( !pendingEntries.isEmpty() ) {
+				addPendingEntry( dstPack, pendingEntries.removeFirst() );
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void addPendingEntry( PkgPack dstPack, PendingEntry pending ) throws IOException
+	{
+		byte[] deflated;
+		try {
+			deflated = pending.deflated.get();
+		}
+		catch ( ExecutionException e ) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof IOException ) throw (IOException)cause;
+			if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+			throw new IOException( cause );
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while waiting for data to compress.", e );
+		}
+
+		dstPack.addDeflated( pending.innerPath, new ByteArrayInputStream( deflated ), pending.unpackedSize );
+	}
+
+	private static byte[] readFully( AbstractPack srcPack, String innerPath ) throws IOException
+	{
+		try ( InputStream is = srcPack.getInputStream( innerPath ) ) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buf = new byte[BUFFER_SIZE];
+			int len;
+			while ( ( len = is.read( buf ) ) >= 0 ) {
+				bytes.write( buf, 0, len );
+			}
+			return bytes.toByteArray();
+		}
+	}
+
+	private static byte[] deflate( byte[] data ) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( data.length / 2 + 64 );
+		try ( DeflaterOutputStream os = new DeflaterOutputStream( bytes ) ) {
+			os.write( data );
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the format of an existing dat, judging by its first bytes.
+	 *
+	 * PKG dats begin with a "PKG\n" signature. Classic dats have none; they
+	 * begin with a little-endian count of index slots, which must fit
+	 * within the file.
+	 *
+	 * @throws IOException
+	 *             if the file couldn't be read, or is in neither format
+	 */
+	public static Format detectFormat( File datFile ) throws IOException
+	{
+		byte[] head = new byte[4];
+		try ( InputStream is = new FileInputStream( datFile ) ) {
+			int count = 0;
+			while ( count < head.length ) {
+				int len = is.read( head, count, head.length - count );
+				if ( len == -1 ) break;
+				count += len;
+			}
+			if ( count < head.length ) {
+				throw new IOException( String.format( "Not a dat file (%s): too small", datFile.getName() ) );
+			}
+		}
+
+		if ( Arrays.equals( head, PKG_SIGNATURE ) ) {
+			return Format.PKG;
+		}
+
+		long indexSize = ByteBuffer.wrap( head ).order( ByteOrder.LITTLE_ENDIAN ).getInt() & 0x00000000FFFFFFFFL;
+		if ( 4 + indexSize * 4 <= datFile.length() ) {
+			return Format.FTL;
+		}
+
+		throw new IOException( String.format( "Not a dat file (%s): unrecognized format", datFile.getName() ) );
+	}
+
+	/**
+	 * Opens an existing dat, in whichever format it's in.
+	 *
+	 * @param mode
+	 *            "r" or "r+" (see FTLPack and PkgPack)
+	 */
+	public static AbstractPack openPack( File datFile, String mode ) throws IOException
+	{
+		switch ( detectFormat( datFile ) ) {
+			case PKG:
+				return new PkgPack( datFile, mode );
+			case FTL:
+			default:
+				return new FTLPack( datFile, mode );
+		}
+	}
+
+	/**
+	 * Creates a new dat with room for entryCount innerFiles.
+	 *
+	 * @param pathsRegionSize
+	 *            combined byte count of the innerPaths, each + 1 (only PKG
+	 *            dats set this space aside)
+	 */
+	public static AbstractPack createPack( File datFile, Format format, int entryCount, int pathsRegionSize ) throws IOException
+	{
+		switch ( format ) {
+			case PKG:
+				return new PkgPack( datFile, "w+", entryCount, pathsRegionSize );
+			case FTL:
+			default:
+				return new FTLPack( datFile, "w+", entryCount );
+		}
+	}
+
+
+	/**
+	 * Dat formats.
+	 */
+	public enum Format
+	{
+		/** The original format, read by FTLPack. */
+		FTL,
+
+		/** The SIL PKG format, read by PkgPack. */
+		PKG
+	}
+
+
+	private static class PendingEntry
+	{
+		public final String innerPath;
+		public final long unpackedSize;
+		public final Future<byte[]> deflated;
+
+
+		public PendingEntry( String innerPath, long unpackedSize, Future<byte[]> deflated )
+		{
+			this.innerPath = innerPath;
+			this.unpackedSize = unpackedSize;
+			this.deflated = deflated;
+		}
+	}
+}
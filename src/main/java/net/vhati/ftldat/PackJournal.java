@@ -0,0 +1,318 @@
+package net.vhati.ftldat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+
+/**
+ * An undo journal, which makes multi-step writes to a dat recoverable.
+ *
+ * Before a region of the dat is overwritten, its original bytes are
+ * appended to the journal and flushed to disk. Data appended past the dat's
+ * original length needs no record, since recovery truncates it.
+ *
+ * Once the dat itself has been flushed, the journal is deleted. If it still
+ * exists when the dat is next opened, the operation was interrupted, and
+ * replaying the records in reverse brings the dat back to the state it was
+ * in before the operation began. Recovery costs O(changed bytes).
+ *
+ * Each record ends with a CRC32 of everything before it, since a crash may
+ * leave a record's length on disk without its bytes. A record that fails
+ * the check was never flushed, so neither it nor anything after it had
+ * been overwritten yet.
+ *
+ * Structure:
+ *   Header = The "JRNL" signature, and the dat's original length.
+ *   Records = A series of {offset, length, original bytes, CRC32} hunks.
+ */
+public class PackJournal implements AutoCloseable
+{
+	private static final byte[] signature = new byte[] { 0x4A, 0x52, 0x4E, 0x4C };  // "JRNL"
+
+	/** Byte count of the journal header. */
+	private static final int HEADER_SIZE = 4 + 8;
+
+	/** Byte count of a record's offset and length. */
+	private static final int RECORD_HEADER_SIZE = 8 + 8;
+
+	/** Byte count of a record's CRC32, after its original bytes. */
+	private static final int RECORD_TRAILER_SIZE = 4;
+
+	/** Bytes to copy at a time. */
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+	private final File journalFile;
+	private final FileChannel datChannel;
+	private final long originalDatLength;
+
+	private FileChannel journalChannel = null;
+	private ByteBuffer recordBuf = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+	private ByteBuffer copyBuf = null;
+	private final CRC32 crc = new CRC32();
+
+
+	/**
+	 * Starts a new journal for a dat, replacing any existing one.
+	 *
+	 * @param datFile
+	 *            the dat that is about to be modified
+	 * @param datChannel
+	 *            an open channel to the dat, used to read original bytes
+	 */
+	public PackJournal( File datFile, FileChannel datChannel ) throws IOException
+	{
+		this.journalFile = getJournalFile( datFile );
+		this.datChannel = datChannel;
+		this.originalDatLength = datChannel.size();
+
+		journalChannel = FileChannel.open(
+			journalFile.toPath(),
+			StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+		);
+
+		ByteBuffer headerBuf = ByteBuffer.allocate( HEADER_SIZE );
+		headerBuf.put( signature );
+		headerBuf.putLong( originalDatLength );
+		headerBuf.flip();
+		writeFully( journalChannel, headerBuf );
+		journalChannel.force( false );
+	}
+
+	/**
+	 * Returns the journal file that accompanies a dat.
+	 */
+	public static File getJournalFile( File datFile )
+	{
+		return new File( datFile.getAbsoluteFile().getParentFile(), datFile.getName() + ".journal" );
+	}
+
+	/**
+	 * Returns the dat's length at the time this journal was started.
+	 */
+	public long getOriginalDatLength()
+	{
+		return originalDatLength;
+	}
+
+	/**
+	 * Saves a region's original bytes, before they get overwritten.
+	 *
+	 * The parts of the region beyond the dat's original length are ignored.
+	 * Recording the same region more than once is harmless.
+	 */
+	public void recordRegion( long offset, long length ) throws IOException
+	{
+		if ( journalChannel == null ) {
+			throw new IllegalStateException( "Journal is already finished: " + journalFile.getName() );
+		}
+
+		length = Math.min( offset + length, originalDatLength ) - offset;
+		if ( length <= 0 ) return;
+
+		if ( copyBuf == null ) copyBuf = ByteBuffer.allocate( COPY_BUFFER_SIZE );
+		crc.reset();
+
+		recordBuf.clear();
+		recordBuf.putLong( offset );
+		recordBuf.putLong( length );
+		recordBuf.flip();
+		crc.update( recordBuf.array(), 0, RECORD_HEADER_SIZE );
+		writeFully( journalChannel, recordBuf );
+
+		long position = offset;
+		long end = offset + length;
+		while ( position < end ) {
+			copyBuf.clear();
+			copyBuf.limit( (int)Math.min( copyBuf.capacity(), end - position ) );
+			int len = datChannel.read( copyBuf, position );
+			if ( len <= 0 ) {
+				throw new IOException( "EOF prematurely reached while journaling: " + journalFile.getName() );
+			}
+			copyBuf.flip();
+			crc.update( copyBuf.array(), 0, len );
+			writeFully( journalChannel, copyBuf );
+			position += len;
+		}
+
+		recordBuf.clear();
+		recordBuf.putInt( (int)crc.getValue() );
+		recordBuf.flip();
+		writeFully( journalChannel, recordBuf );
+
+		journalChannel.force( false );
+	}
+
+	/**
+	 * Flushes the dat to disk, then deletes the journal.
+	 *
+	 * Call this after the journaled operation has completed.
+	 */
+	public void finish() throws IOException
+	{
+		datChannel.force( true );
+		discard();
+	}
+
+	/**
+	 * Deletes the journal, without flushing the dat.
+	 *
+	 * Call this after undoing the journaled operation some other way.
+	 */
+	public void discard() throws IOException
+	{
+		close();
+		if ( journalFile.exists() && !journalFile.delete() ) {
+			throw new IOException( "Could not delete journal: " + journalFile.getPath() );
+		}
+	}
+
+	/**
+	 * Closes the journal, leaving it on disk to be recovered later.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if ( journalChannel != null ) {
+			journalChannel.close();
+			journalChannel = null;
+		}
+	}
+
+	/**
+	 * Undoes an interrupted operation on a dat, if its journal exists.
+	 *
+	 * Records are replayed up to the first one that is incomplete or fails
+	 * its CRC32 check. That record wasn't flushed, so the region it
+	 * describes, and those of any records after it, weren't overwritten yet.
+	 *
+	 * @param datFile
+	 *            the dat to recover
+	 * @param raf
+	 *            the dat, opened for writing
+	 * @return true if a journal was found and replayed, false otherwise
+	 */
+	public static boolean recover( File datFile, RandomAccessFile raf ) throws IOException
+	{
+		File journalFile = getJournalFile( datFile );
+		if ( !journalFile.exists() ) return false;
+
+		try ( FileChannel journalChannel = FileChannel.open( journalFile.toPath(), StandardOpenOption.READ ) ) {
+			long journalLength = journalChannel.size();
+
+			ByteBuffer headerBuf = ByteBuffer.allocate( HEADER_SIZE );
+			if ( journalLength < HEADER_SIZE || readFully( journalChannel, headerBuf, 0 ) < HEADER_SIZE ) {
+				// The journal was never completed, so the dat wasn't touched yet.
+			}
+			else {
+				headerBuf.flip();
+				byte[] sigBytes = new byte[signature.length];
+				headerBuf.get( sigBytes );
+				for ( int i = 0; i < signature.length; i++ ) {
+					if ( sigBytes[i] != signature[i] ) {
+						throw new IOException( "Unexpected journal signature: " + journalFile.getPath() );
+					}
+				}
+				long originalDatLength = headerBuf.getLong();
+
+				// Collect intact records.
+				List<long[]> records = new ArrayList<>();
+				ByteBuffer recordBuf = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+				ByteBuffer copyBuf = ByteBuffer.allocate( COPY_BUFFER_SIZE );
+				CRC32 crc = new CRC32();
+				long position = HEADER_SIZE;
+				while ( position + RECORD_HEADER_SIZE <= journalLength ) {
+					recordBuf.clear();
+					readFully( journalChannel, recordBuf, position );
+					recordBuf.flip();
+					long offset = recordBuf.getLong();
+					long length = recordBuf.getLong();
+
+					long bytesStart = position + RECORD_HEADER_SIZE;
+					if ( offset < 0 || length < 0 || offset + length > originalDatLength ) break;  // Garbage.
+					if ( bytesStart + length + RECORD_TRAILER_SIZE > journalLength ) break;  // Torn record.
+
+					crc.reset();
+					crc.update( recordBuf.array(), 0, RECORD_HEADER_SIZE );
+					long done = 0;
+					while ( done < length ) {
+						copyBuf.clear();
+						copyBuf.limit( (int)Math.min( copyBuf.capacity(), length - done ) );
+						int len = readFully( journalChannel, copyBuf, bytesStart + done );
+						crc.update( copyBuf.array(), 0, len );
+						done += len;
+					}
+
+					recordBuf.clear();
+					recordBuf.limit( RECORD_TRAILER_SIZE );
+					readFully( journalChannel, recordBuf, bytesStart + length );
+					recordBuf.flip();
+					if ( recordBuf.getInt() != (int)crc.getValue() ) break;  // Never flushed.
+
+					records.add( new long[] { offset, length, bytesStart } );
+					position = bytesStart + length + RECORD_TRAILER_SIZE;
+				}
+
+				// Oldest records hold the original bytes, so they must be applied last.
+				FileChannel datChannel = raf.getChannel();
+				for ( int i = records.size() - 1; i >= 0; i-- ) {
+					long[] record = records.get( i );
+					long done = 0;
+					while ( done < record[1] ) {
+						long len = journalChannel.transferTo( record[2] + done, record[1] - done, datChannel.position( record[0] + done ) );
+						if ( len <= 0 ) {
+							throw new IOException( "EOF prematurely reached while recovering: " + journalFile.getPath() );
+						}
+						done += len;
+					}
+				}
+
+				raf.setLength( originalDatLength );
+				datChannel.force( true );
+			}
+		}
+
+		if ( !journalFile.delete() ) {
+			throw new IOException( "Could not delete journal: " + journalFile.getPath() );
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes a dat's journal, if it exists.
+	 *
+	 * Call this after replacing a dat wholesale (eg. restoring it from a
+	 * backup), since a stale journal would otherwise be replayed over it.
+	 */
+	public static void discardJournal( File datFile ) throws IOException
+	{
+		File journalFile = getJournalFile( datFile );
+		if ( journalFile.exists() && !journalFile.delete() ) {
+			throw new IOException( "Could not delete journal: " + journalFile.getPath() );
+		}
+	}
+
+	private static void writeFully( FileChannel channel, ByteBuffer buf ) throws IOException
+	{
+		while ( buf.hasRemaining() ) {
+			channel.write( buf );
+		}
+	}
+
+	private static int readFully( FileChannel channel, ByteBuffer buf, long position ) throws IOException
+	{
+		int total = 0;
+		while ( buf.hasRemaining() ) {
+			int len = channel.read( buf, position + total );
+			if ( len < 0 ) break;
+			total += len;
+		}
+		return total;
+	}
+}
@@ -5,12 +5,23 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
 
 
 public class PackUtilities
 {
+	/** Max bytes to hand to FileChannel.transferTo() at once, between progress updates. */
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+
 	/**
 	 * Returns segments of a path string, split by each "/" occurrence.
 	 */
@@ -59,28 +70,143 @@ public class PackUtilities
 	 * Copies all bytes from one file to another.
 	 */
 	public static void copyFile( File srcFile, File dstFile ) throws IOException
+	{
+		copyFile( srcFile, dstFile, null );
+	}
+
+	/**
+	 * Copies all bytes from one file to another.
+	 *
+	 * The copy is done in large chunks via FileChannel.transferTo(), which
+	 * lets the OS skip the userspace buffer where it can.
+	 *
+	 * The bytes go to a temporary file beside dstFile, which is renamed to
+	 * dstFile once the copy is complete. If the copy fails, dstFile is left
+	 * as it was, rather than truncated.
+	 *
+	 * @param progressListener
+	 *            receives the number of bytes copied after each chunk, or null
+	 */
+	public static void copyFile( File srcFile, File dstFile, LongConsumer progressListener ) throws IOException
+	{
+		File tmpFile = createTempSibling( dstFile );
+		boolean success = false;
+		try {
+			transferFile( srcFile, tmpFile, progressListener );
+			replaceFile( tmpFile, dstFile );
+			success = true;
+		}
+		finally {
+			if ( !success ) tmpFile.delete();
+		}
+	}
+
+	private static void transferFile( File srcFile, File dstFile, LongConsumer progressListener ) throws IOException
 	{
 		try (
 			FileInputStream is = new FileInputStream( srcFile );
 			FileOutputStream os = new FileOutputStream( dstFile )
 		) {
-			byte[] buf = new byte[4096];
-			int len;
-			while ( ( len = is.read( buf ) ) >= 0 ) {
-				os.write( buf, 0, len );
+			FileChannel srcChannel = is.getChannel();
+			FileChannel dstChannel = os.getChannel();
+
+			long size = srcChannel.size();
+			long position = 0;
+			while ( position < size ) {
+				long len = srcChannel.transferTo( position, Math.min( TRANSFER_CHUNK_SIZE, size - position ), dstChannel );
+				if ( len <= 0 ) {
+					throw new IOException( "EOF prematurely reached copying file: " + srcFile.getPath() );
+				}
+				position += len;
+
+				if ( progressListener != null ) progressListener.accept( len );
 			}
 		}
 	}
 
+	/**
+	 * Creates an empty temporary file in the same directory as a file, so
+	 * that one can be renamed to the other.
+	 */
+	public static File createTempSibling( File f ) throws IOException
+	{
+		File dir = f.getAbsoluteFile().getParentFile();
+		return File.createTempFile( f.getName() + ".", ".tmp", dir );
+	}
+
+	/**
+	 * Deletes temporary files that createTempSibling() made for a file.
+	 *
+	 * Only call this when nothing is writing to them anymore, eg. to clean
+	 * up after copies that were cut short.
+	 */
+	public static void deleteTempSiblings( File f )
+	{
+		File dir = f.getAbsoluteFile().getParentFile();
+		// File.createTempFile() puts a random number between the prefix and suffix.
+		Pattern tmpNamePtn = Pattern.compile( Pattern.quote( f.getName() + "." ) + "-?[0-9]+[.]tmp" );
+		File[] tmpFiles = dir.listFiles( ( d, name ) -> tmpNamePtn.matcher( name ).matches() );
+		if ( tmpFiles == null ) return;
+
+		for ( File tmpFile : tmpFiles ) {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Renames a file over another, atomically where the filesystem allows it.
+	 */
+	public static void replaceFile( File srcFile, File dstFile ) throws IOException
+	{
+		try {
+			Files.move( srcFile.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		}
+		catch ( AtomicMoveNotSupportedException e ) {
+			Files.move( srcFile.toPath(), dstFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
 	public static void backUpDirAsPack( File srcFile, File dstFile ) throws IOException
+	{
+		backUpDirAsPack( srcFile, dstFile, null );
+	}
+
+	/**
+	 * Packs the contents of a directory into a new dat.
+	 *
+	 * Like copyFile(), the dat is written under a temporary name, and only
+	 * renamed to dstFile once it's complete.
+	 *
+	 * @param progressListener
+	 *            receives the size of each file after it's been added, or null
+	 */
+	public static void backUpDirAsPack( File srcFile, File dstFile, LongConsumer progressListener ) throws IOException
+	{
+		File tmpFile = createTempSibling( dstFile );
+		boolean success = false;
+		try {
+			packDir( srcFile, tmpFile, progressListener );
+			replaceFile( tmpFile, dstFile );
+			success = true;
+		}
+		finally {
+			if ( !success ) tmpFile.delete();
+		}
+	}
+
+	private static void packDir( File srcFile, File dstFile, LongConsumer progressListener ) throws IOException
 	{
 		try (
 			AbstractPack srcPack = new FolderPack( srcFile );
 			AbstractPack dstPack = new FTLPack( dstFile, "w+" )
 		) {
 
-			for ( String innerPath : srcPack.list() ) {
-				dstPack.add( innerPath, srcPack.getInputStream( innerPath ) );
+			for ( AbstractPack.PathAndSize pas : srcPack.listSizes() ) {
+				try ( InputStream is = srcPack.getInputStream( pas.path ) ) {
+					dstPack.add( pas.path, is );
+				}
+
+				if ( progressListener != null ) progressListener.accept( pas.size );
 			}
 
 			dstPack.repack();
@@ -88,23 +214,55 @@ public class PackUtilities
 	}
 
 	public static void restorePackAsDir( File srcFile, File dstFile ) throws IOException
+	{
+		restorePackAsDir( srcFile, dstFile, null );
+	}
+
+	/**
+	 * Unpacks the contents of a dat into a directory, overwriting existing files.
+	 *
+	 * @param progressListener
+	 *            receives the size of each file after it's been extracted, or null
+	 */
+	public static void restorePackAsDir( File srcFile, File dstFile, LongConsumer progressListener ) throws IOException
 	{
 		try (
 			AbstractPack srcPack = new FTLPack( srcFile, "r" );
 			AbstractPack dstPack = new FolderPack( dstFile )
 		) {
 			// TODO: Clear all files in the destination directory?
-			
-			for ( String innerPath : srcPack.list() ) {
-				if ( dstPack.contains( innerPath ) )
-					dstPack.remove( innerPath );
-				dstPack.add( innerPath, srcPack.getInputStream( innerPath ) );
+
+			for ( AbstractPack.PathAndSize pas : srcPack.listSizes() ) {
+				if ( dstPack.contains( pas.path ) )
+					dstPack.remove( pas.path );
+				try ( InputStream is = srcPack.getInputStream( pas.path ) ) {
+					dstPack.add( pas.path, is );
+				}
+
+				if ( progressListener != null ) progressListener.accept( pas.size );
 			}
 
 			dstPack.repack(); // No-op for FolderPack, but let's call it anyway *shrug*
 		}
 	}
 
+	/**
+	 * Returns the combined size of all files within a directory (recursively),
+	 * or the length of the file, if it is not a directory.
+	 */
+	public static long calcDiskSize( File f ) throws IOException
+	{
+		if ( !f.isDirectory() ) return f.length();
+
+		long result = 0;
+		try ( AbstractPack pack = new FolderPack( f ) ) {
+			for ( AbstractPack.PathAndSize pas : pack.listSizes() ) {
+				result += pas.size;
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Calculates an MD5 hash of data from an InputStream.
 	 *
@@ -136,6 +294,38 @@ public class PackUtilities
 		return result;
 	}
 
+	/**
+	 * Sorts slot indeces by per-slot keys (asc), then by slot (asc).
+	 *
+	 * Each key is packed with its slot into a single long, so a primitive
+	 * sort does the work, without boxing or a Comparator.
+	 *
+	 * @param keys
+	 *            unsigned 32bit values (eg. offsets within a dat), by slot
+	 * @param slots
+	 *            slot indeces, sorted in place
+	 * @param count
+	 *            the number of slots to sort
+	 * @return slots
+	 */
+	public static int[] sortSlotsByKey( long[] keys, int[] slots, int count )
+	{
+		long[] packed = new long[count];
+		for ( int i = 0; i < count; i++ ) {
+			long key = keys[slots[i]];
+			if ( ( key & 0xFFFFFFFF00000000L ) != 0 ) {
+				throw new IllegalArgumentException( String.format( "Key exceeds 32 bits (slot %d): %d", slots[i], key ) );
+			}
+			packed[i] = ( key << 31 ) | slots[i];
+		}
+		Arrays.sort( packed );
+
+		for ( int i = 0; i < count; i++ ) {
+			slots[i] = (int)( packed[i] & 0x7FFFFFFFL );
+		}
+		return slots;
+	}
+
 
 	/**
 	 * Returns an approximate byte count for humans.
@@ -0,0 +1,160 @@
+package net.vhati.ftldat;
+
+import java.util.Arrays;
+
+
+/**
+ * A map of innerPaths to slot indeces within a dat's index.
+ *
+ * Keys and values live in two flat arrays (open addressing, linear probing),
+ * so there are no per-entry node objects or boxed Integers. Removal shifts
+ * later keys back into the gap, rather than leaving tombstones.
+ *
+ * Slot indeces must not be negative. Null keys are not allowed.
+ */
+public class PathIndexMap
+{
+	private static final int MIN_CAPACITY = 16;
+
+	private String[] keys;
+	private int[] values;
+	private int mask;
+	private int resizeThreshold;
+	private int size = 0;
+
+
+	public PathIndexMap()
+	{
+		this( 0 );
+	}
+
+	/**
+	 * Constructs a map that can hold expectedSize keys without resizing.
+	 */
+	public PathIndexMap( int expectedSize )
+	{
+		int capacity = MIN_CAPACITY;
+		while ( capacity * 2L / 3 < expectedSize ) {
+			capacity <<= 1;
+		}
+		allocate( capacity );
+	}
+
+	private void allocate( int capacity )
+	{
+		keys = new String[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		resizeThreshold = (int)( capacity * 2L / 3 );  // Keep probe runs short.
+	}
+
+	/**
+	 * Returns the preferred array position for a key.
+	 */
+	private int home( String key )
+	{
+		int h = key.hashCode() * 0x9E3779B9;  // Spread clustered String hashes.
+		return ( h ^ ( h >>> 16 ) ) & mask;
+	}
+
+	/**
+	 * Returns the array position holding key, or -1.
+	 */
+	private int find( String key )
+	{
+		for ( int i = home( key ); keys[i] != null; i = ( i + 1 ) & mask ) {
+			if ( keys[i].equals( key ) ) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the slot associated with key, or -1.
+	 */
+	public int get( String key )
+	{
+		int i = find( key );
+		return ( i != -1 ? values[i] : -1 );
+	}
+
+	public boolean containsKey( String key )
+	{
+		return find( key ) != -1;
+	}
+
+	/**
+	 * Associates key with a slot.
+	 *
+	 * @return the previously associated slot, or -1
+	 */
+	public int put( String key, int slot )
+	{
+		if ( key == null ) throw new NullPointerException( "Null keys are not allowed" );
+		if ( slot < 0 ) throw new IllegalArgumentException( "Negative slot: " + slot );
+
+		int i = home( key );
+		for ( ; keys[i] != null; i = ( i + 1 ) & mask ) {
+			if ( keys[i].equals( key ) ) {
+				int oldSlot = values[i];
+				values[i] = slot;
+				return oldSlot;
+			}
+		}
+		keys[i] = key;
+		values[i] = slot;
+
+		if ( ++size > resizeThreshold ) {
+			String[] oldKeys = keys;
+			int[] oldValues = values;
+			allocate( oldKeys.length * 2 );
+
+			for ( int j = 0; j < oldKeys.length; j++ ) {
+				if ( oldKeys[j] == null ) continue;
+
+				int k = home( oldKeys[j] );
+				while ( keys[k] != null ) k = ( k + 1 ) & mask;
+				keys[k] = oldKeys[j];
+				values[k] = oldValues[j];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Removes key.
+	 *
+	 * @return the slot that was associated with it, or -1
+	 */
+	public int remove( String key )
+	{
+		int gap = find( key );
+		if ( gap == -1 ) return -1;
+
+		int oldSlot = values[gap];
+		keys[gap] = null;
+		size--;
+
+		// Pull back later keys in this run that may no longer be reachable.
+		for ( int i = ( gap + 1 ) & mask; keys[i] != null; i = ( i + 1 ) & mask ) {
+			int h = home( keys[i] );
+			if ( ( ( i - h ) & mask ) >= ( ( i - gap ) & mask ) ) {
+				keys[gap] = keys[i];
+				values[gap] = values[i];
+				keys[i] = null;
+				gap = i;
+			}
+		}
+		return oldSlot;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		Arrays.fill( keys, null );
+		size = 0;
+	}
+}
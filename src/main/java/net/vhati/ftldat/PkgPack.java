@@ -7,17 +7,18 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
 import java.util.zip.DeflaterInputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -40,6 +41,13 @@ import java.util.zip.InflaterInputStream;
  * signed ints to avoid needing exotic collections. FTL won't exceed 2 billion
  * files! Even SIL does it in "package-pkg.c".
  *
+ * The index is held as parallel arrays, one element per entry slot, rather
+ * than as an object per entry.
+ *
+ * Several entries may point at the same data (same dataOffset and
+ * dataSize), if deduplication was enabled when they were added or
+ * repacked. Such data is moved as one, and kept until no entry uses it.
+ *
  * This was introduced in FTL 1.6.1.
  */
 public class PkgPack extends AbstractPack
@@ -58,18 +66,59 @@ public class PkgPack extends AbstractPack
 
 	private final int[] signature = new int[] { 0x50, 0x4B, 0x47, 0x0A };  // "PKG\n"
 
-	private CharsetEncoder asciiEncoder = Charset.forName( "US-ASCII" ).newEncoder();
-
 	private ByteBuffer bigByteBuf = null;
 	private ByteBuffer smallByteBuf = null;
 
 	private File datFile = null;
 	private RandomAccessFile raf = null;
-	private List<PkgEntry> entryList = null;
-	private Map<String, Integer> pathToIndexMap = null;
+
+	/** Number of entry slots in the index, vacant or not. */
+	private int slotCount = 0;
+
+	// Per-slot entry fields. A null innerPath marks a vacant slot, whose
+	// other fields are all 0 (as they'd be written to disk).
+	private long[] innerPathHashes = null;
+	private int[] innerPathOffsets = null;
+	private long[] dataOffsets = null;
+	private long[] dataSizes = null;
+	private long[] unpackedSizes = null;
+	private boolean[] dataDeflated = null;
+	private String[] innerPaths = null;
+
+	/** Per-slot SHA-256 of the stored data, or null if not calculated yet. */
+	private byte[][] dataDigests = null;
+
+	/** No slot before this one is vacant. */
+	private int vacancyHint = 0;
+
+	/** Slots by innerPath. Keys are the same instances held in innerPaths. */
+	private PathIndexMap pathToIndexMap = null;
+
+	/**
+	 * Occupied slots, sorted by dataOffset (then slot), or null until needed.
+	 *
+	 * A slot must be taken out before its dataOffset changes, and put back
+	 * afterward.
+	 */
+	private TreeSet<Integer> slotsByDataOffset = null;
+
+	/** Occupied slots, by dataSize, or null until needed. */
+	private Map<Long, List<Integer>> slotsByDataSize = null;
 
 	private int pathsRegionSize = 0;
+
+	/**
+	 * Offset, within the paths region, where the next innerPath will be
+	 * written: after the last innerPath's null-terminated string.
+	 *
+	 * Removing the last innerPath doesn't reclaim its bytes. Repacking does.
+	 */
+	private int nextInnerPathOffset = 0;
 	private boolean compressNewAdditions = false;
+	private boolean deduplicateData = false;
+
+	private boolean batching = false;
+	private long batchDatLength = 0;
 
 
 	/**
@@ -99,6 +148,23 @@ public class PkgPack extends AbstractPack
 	 *            size of the initial index if creating
 	 */
 	public PkgPack( File datFile, String mode, int entryCount ) throws IOException
+	{
+		this( datFile, mode, entryCount, entryCount * TYPICAL_PATH_LENGTH );
+	}
+
+	/**
+	 * Opens or creates a dat in various modes.
+	 *
+	 * When the combined length of the innerPaths to be added is known in
+	 * advance, a dat created with an exact paths region won't need to move
+	 * any data to make room for them.
+	 *
+	 * @param pathsRegionSize
+	 *            byte count of the initial paths region if creating (each
+	 *            innerPath takes its length + 1)
+	 * @see #PkgPack(File, String, int)
+	 */
+	public PkgPack( File datFile, String mode, int entryCount, int pathsRegionSize ) throws IOException
 	{
 		bigByteBuf = ByteBuffer.allocate( TYPICAL_PATH_LENGTH * 3000 );  // Arbitrary default.
 
@@ -124,7 +190,7 @@ public class PkgPack extends AbstractPack
 		else if ( mode.equals( "w+" ) ) {
 			this.datFile = datFile;
 			raf = new RandomAccessFile( datFile, "rw" );
-			createIndex( entryCount );
+			createIndex( entryCount, pathsRegionSize );
 		}
 		else {
 			throw new IllegalArgumentException( String.format( "FTLPack constructor's mode arg was not 'r', 'r+', or 'w+' (%s).", mode ) );
@@ -139,6 +205,18 @@ public class PkgPack extends AbstractPack
 		compressNewAdditions = b;
 	}
 
+	/**
+	 * Toggles whether identical data should be stored only once.
+	 *
+	 * When enabled, add() points a new entry at existing data with the same
+	 * content (and compression) instead of appending a copy, and repack()
+	 * merges existing copies before compacting.
+	 */
+	public void setDeduplicateData( boolean b )
+	{
+		deduplicateData = b;
+	}
+
 	/**
 	 * Calculates a PKG hash of a path.
 	 *
@@ -159,18 +237,103 @@ public class PkgPack extends AbstractPack
 	 */
 	public long calculatePathHash( String innerPath )
 	{
-		// Casting a character to int emulates ord(), to get the numeric ASCII value.
 		int len = innerPath.length();
-		long hash = 0;
-		if ( innerPath != null ) {
-			for ( int i = 0; i < len; i++ ) {
-				long n = (int)Character.toLowerCase( innerPath.charAt( i ) );
-				hash = hash << 27 | hash >>> 5;
-				hash ^= n;
-				hash = hash & 0x00000000FFFFFFFFL;  // Mask off bits that spilled left of a 32bit uint.
+		int hash = 0;
+		for ( int i = 0; i < len; i++ ) {
+			char c = innerPath.charAt( i );
+
+			// ASCII is folded inline. Anything else gets the general treatment,
+			// to hash non-ASCII strings as before.
+			int n;
+			if ( c >= 'A' && c <= 'Z' ) {
+				n = c | 0x20;
+			}
+			else if ( c < 0x80 ) {
+				n = c;
+			}
+			else {
+				n = Character.toLowerCase( c );
+			}
+			hash = Integer.rotateRight( hash, 5 ) ^ n;
+		}
+		return hash & 0x00000000FFFFFFFFL;  // As an unsigned 32bit value.
+	}
+
+	/**
+	 * Calculates a PKG hash of ASCII bytes (eg. an innerPath in the paths
+	 * region).
+	 *
+	 * @see #calculatePathHash(String)
+	 */
+	public long calculatePathHash( byte[] bytes, int offset, int length )
+	{
+		int hash = 0;
+		for ( int i = offset; i < offset + length; i++ ) {
+			hash = Integer.rotateRight( hash, 5 ) ^ toLowerCaseAscii( bytes[i] );
+		}
+		return hash & 0x00000000FFFFFFFFL;
+	}
+
+	/**
+	 * Calculates a PKG hash of ASCII bytes within a ByteBuffer.
+	 *
+	 * The range is absolute, and the buffer's position is left alone, so
+	 * innerPaths can be hashed in place without slicing. Heap buffers are
+	 * hashed from their backing array.
+	 *
+	 * @see #calculatePathHash(String)
+	 */
+	public long calculatePathHash( ByteBuffer buf, int offset, int length )
+	{
+		if ( buf.hasArray() ) {
+			return calculatePathHash( buf.array(), buf.arrayOffset() + offset, length );
+		}
+
+		int hash = 0;
+		for ( int i = offset; i < offset + length; i++ ) {
+			hash = Integer.rotateRight( hash, 5 ) ^ toLowerCaseAscii( buf.get( i ) );
+		}
+		return hash & 0x00000000FFFFFFFFL;
+	}
+
+	/**
+	 * Compares innerPaths ignoring case, like String.compareToIgnoreCase().
+	 *
+	 * ASCII chars, which is all innerPaths should hold, are folded inline.
+	 * Others get the general treatment, so the order is the same as before.
+	 */
+	public static int compareInnerPaths( String a, String b )
+	{
+		int len = Math.min( a.length(), b.length() );
+		for ( int i = 0; i < len; i++ ) {
+			char c1 = a.charAt( i );
+			char c2 = b.charAt( i );
+			if ( c1 == c2 ) continue;
+
+			if ( c1 < 0x80 && c2 < 0x80 ) {
+				if ( c1 >= 'A' && c1 <= 'Z' ) c1 |= 0x20;
+				if ( c2 >= 'A' && c2 <= 'Z' ) c2 |= 0x20;
+			}
+			else {
+				c1 = Character.toUpperCase( c1 );
+				c2 = Character.toUpperCase( c2 );
+				if ( c1 != c2 ) {
+					c1 = Character.toLowerCase( c1 );
+					c2 = Character.toLowerCase( c2 );
+				}
 			}
+			if ( c1 != c2 ) return c1 - c2;
 		}
-		return hash;
+		return a.length() - b.length();
+	}
+
+	/**
+	 * Returns an unsigned byte, with uppercase ASCII letters made lowercase.
+	 */
+	private static int toLowerCaseAscii( byte b )
+	{
+		int n = b & 0xFF;
+		return ( n >= 'A' && n <= 'Z' ) ? n | 0x20 : n;
 	}
 
 	/**
@@ -201,19 +364,16 @@ public class PkgPack extends AbstractPack
 
 
 	/**
-	 * Reads a big-endian unsigned int.
+	 * Gets a big-endian unsigned int at the buffer's current position.
 	 *
 	 * Java doesn't have an unsigned int primitive,
 	 * so a long holds the value instead.
 	 */
-	private long readBigUInt() throws IOException
+	private static long getBigUInt( ByteBuffer srcBuf )
 	{
-		smallByteBuf.clear();
-		raf.readFully( smallByteBuf.array(), 0, 4 );
-
-		// Read a signed int, then discard sign
+		// Get a signed int, then discard sign
 		// by casting to long and hacking off bits.
-		long result = smallByteBuf.getInt( 0 );
+		long result = srcBuf.getInt();
 		result &= 0x00000000FFFFFFFFL;
 
 		return result;
@@ -231,35 +391,21 @@ public class PkgPack extends AbstractPack
 	}
 
 	/**
-	 * Reads a big-endian unsigned short.
+	 * Gets a big-endian unsigned short at the buffer's current position.
 	 *
 	 * Java doesn't have an unsigned short primitive,
 	 * so an int holds the value instead.
 	 */
-	private int readBigUShort() throws IOException
+	private static int getBigUShort( ByteBuffer srcBuf )
 	{
-		smallByteBuf.clear();
-		raf.readFully( smallByteBuf.array(), 0, 2 );
-
-		// Read a signed short, then discard sign
+		// Get a signed short, then discard sign
 		// by casting to int and hacking off bits.
-		int result = smallByteBuf.getShort( 0 );
+		int result = srcBuf.getShort();
 		result &= 0x0000FFFF;
 
 		return result;
 	}
 
-	private void writeBigUShort( int n ) throws IOException
-	{
-		smallByteBuf.clear();
-
-		// Write a signed short, after discarding sign
-		// by casting from int and hacking off bits.
-		smallByteBuf.putShort( 0, (short)( n & 0x0000FFFF ) );
-
-		raf.write( smallByteBuf.array(), 0, 2 );
-	}
-
 	/**
 	 * Returns a null terminated string of ASCII bytes.
 	 *
@@ -268,217 +414,521 @@ public class PkgPack extends AbstractPack
 	 */
 	private String readNullTerminatedString( ByteBuffer srcBuf ) throws IOException
 	{
-		StringBuilder result = new StringBuilder();
+		int start = srcBuf.position();
+		int end = start;
 
-		while ( srcBuf.hasRemaining() ) {
-			char c = (char)srcBuf.get();
+		while ( end < srcBuf.limit() ) {
+			byte b = srcBuf.get( end );
 
-			if ( c == '\0' ) break;
-			if ( !asciiEncoder.reset().canEncode( c ) ) {
-				throw new IOException( String.format( "Unexpected non-ASCII char in null-terminated string: %X", c ) );
+			if ( b == 0 ) break;
+			if ( b < 0 ) {
+				throw new IOException( String.format( "Unexpected non-ASCII char in null-terminated string: %X", b & 0xFF ) );
 			}
-
-			result.append( c );
+			end++;
 		}
-		return result.toString();
+		srcBuf.position( Math.min( end + 1, srcBuf.limit() ) );  // Skip the null.
+
+		return new String( srcBuf.array(), srcBuf.arrayOffset() + start, end - start, StandardCharsets.US_ASCII );
 	}
 
+	/**
+	 * Puts a null-terminated string of ASCII bytes.
+	 *
+	 * Chars are copied as bytes, since PKG paths are plain ASCII.
+	 */
 	private int writeNullTerminatedString( ByteBuffer dstBuf, CharSequence s ) throws IOException
 	{
-		if ( !asciiEncoder.reset().canEncode( s ) ) {
+		if ( !isAscii( s ) ) {
 			throw new IllegalArgumentException( "The PKG format does not support non-ascii characters: " + s );
 		}
 
-		int start = dstBuf.position();
-		CharBuffer cBuf = CharBuffer.wrap( s );
-		asciiEncoder.reset();
-		CoderResult r = asciiEncoder.encode( cBuf, dstBuf, true );
-		if ( r.isOverflow() ) {
+		int len = s.length();
+		if ( dstBuf.remaining() < len + 1 ) {
 			throw new IOException( "Buffer overflow while encoding string: " + s );
 		}
-		asciiEncoder.flush( dstBuf );
-		if ( r.isOverflow() ) {
-			throw new IOException( "Buffer overflow while encoding string: " + s );
+		for ( int i = 0; i < len; i++ ) {
+			dstBuf.put( (byte)s.charAt( i ) );
 		}
 		dstBuf.put( (byte)0 );
 
-		return dstBuf.position() - start;
+		return len + 1;
 	}
 
-	private void writePkgEntry( PkgEntry entry ) throws IOException
+	private static boolean isAscii( CharSequence s )
 	{
-		if ( entry == null ) {
-			writeBigUInt( 0 );  // Hash.
-			writeBigUInt( 0 );  // pathOffsetAndFlags.
-			writeBigUInt( 0 );  // dataOffset.
-			writeBigUInt( 0 );  // dataSize.
-			writeBigUInt( 0 );  // unpackedSize.
+		for ( int i = 0; i < s.length(); i++ ) {
+			if ( s.charAt( i ) > 0x7F ) return false;
 		}
-		else {
-			long pathOffsetAndFlags = entry.innerPathOffset;
-			if ( entry.dataDeflated ) {
-				pathOffsetAndFlags |= PKGF_DEFLATED;
-			}
+		return true;
+	}
+
+	/**
+	 * Writes a range of slots' entries, where they belong in the index.
+	 *
+	 * The entries are encoded in memory, then written at once.
+	 *
+	 * @param start
+	 *            the first slot
+	 * @param end
+	 *            the slot after the last
+	 */
+	private void writePkgEntries( int start, int end ) throws IOException
+	{
+		ByteBuffer entriesBuf = ByteBuffer.allocate( ( end - start ) * ENTRY_SIZE );  // Defaults to BIG_ENDIAN.
+		for ( int i = start; i < end; i++ ) {
+			putPkgEntry( entriesBuf, i );
+		}
+
+		raf.seek( HEADER_SIZE + (long)start * ENTRY_SIZE );
+		raf.write( entriesBuf.array(), 0, entriesBuf.position() );
+	}
 
-			writeBigUInt( entry.innerPathHash );  // Hash.
-			writeBigUInt( pathOffsetAndFlags );   // pathOffsetAndFlags.
-			writeBigUInt( entry.dataOffset );	  // dataOffset.
-			writeBigUInt( entry.dataSize );       // dataSize.
-			writeBigUInt( entry.unpackedSize );   // unpackedSize.
+	private void putPkgEntry( ByteBuffer dstBuf, int n )
+	{
+		long pathOffsetAndFlags = innerPathOffsets[n];
+		if ( dataDeflated[n] ) {
+			pathOffsetAndFlags |= PKGF_DEFLATED;
 		}
+
+		dstBuf.putInt( (int)innerPathHashes[n] );  // Hash.
+		dstBuf.putInt( (int)pathOffsetAndFlags );  // pathOffsetAndFlags.
+		dstBuf.putInt( (int)dataOffsets[n] );      // dataOffset.
+		dstBuf.putInt( (int)dataSizes[n] );        // dataSize.
+		dstBuf.putInt( (int)unpackedSizes[n] );    // unpackedSize.
+	}
+
+	private void putHeader( ByteBuffer dstBuf, int entryCount, int pathsRegionSize )
+	{
+		for ( int x : signature ) {
+			dstBuf.put( (byte)x );
+		}
+		dstBuf.putShort( (short)HEADER_SIZE );
+		dstBuf.putShort( (short)ENTRY_SIZE );
+		dstBuf.putInt( entryCount );
+		dstBuf.putInt( pathsRegionSize );
 	}
 
 	/**
-	 * Returns the entry with the lowest dataOffset, or null.
+	 * Writes the current slotCount and pathsRegionSize to the header.
+	 */
+	private void writeHeaderCounts() throws IOException
+	{
+		ByteBuffer countsBuf = ByteBuffer.allocate( 4 + 4 );
+		countsBuf.putInt( slotCount );
+		countsBuf.putInt( pathsRegionSize );
+
+		raf.seek( signature.length + 2 + 2 );  // Skip HEADER_SIZE and ENTRY_SIZE.
+		raf.write( countsBuf.array(), 0, countsBuf.position() );
+	}
+
+	/**
+	 * Returns the slot with the lowest dataOffset, or -1.
 	 *
-	 * When null is returned, newly added data should be written at the end of
+	 * When -1 is returned, newly added data should be written at the end of
 	 * the file.
 	 */
-	private PkgEntry getEntryWithEarliestData()
+	private int getEntryWithEarliestData()
 	{
-		PkgEntry result = null;
-		for ( PkgEntry entry : entryList ) {
-			if ( entry != null && ( result == null || entry.dataOffset < result.dataOffset ) ) {
-				result = entry;
+		if ( slotsByDataOffset == null ) {
+			slotsByDataOffset = new TreeSet<Integer>(
+				Comparator.<Integer>comparingLong( n -> dataOffsets[n] ).thenComparingInt( n -> n )
+			);
+			for ( int i = 0; i < slotCount; i++ ) {
+				if ( innerPaths[i] != null ) slotsByDataOffset.add( i );
 			}
 		}
-		return result;
+
+		return slotsByDataOffset.isEmpty() ? -1 : slotsByDataOffset.first();
+	}
+
+	/**
+	 * Sets the nth slot's dataOffset, keeping it sorted among other slots.
+	 */
+	private void setDataOffset( int n, long dataOffset )
+	{
+		if ( slotsByDataOffset != null && innerPaths[n] != null ) {
+			slotsByDataOffset.remove( n );
+			dataOffsets[n] = dataOffset;
+			slotsByDataOffset.add( n );
+		}
+		else {
+			dataOffsets[n] = dataOffset;
+		}
+	}
+
+	/**
+	 * Discards all slots, then allocates count vacant ones.
+	 */
+	private void resetSlots( int count )
+	{
+		innerPathHashes = new long[count];
+		innerPathOffsets = new int[count];
+		dataOffsets = new long[count];
+		dataSizes = new long[count];
+		unpackedSizes = new long[count];
+		dataDeflated = new boolean[count];
+		innerPaths = new String[count];
+		dataDigests = new byte[count][];
+		slotCount = count;
+		vacancyHint = 0;
+		slotsByDataOffset = null;
+		slotsByDataSize = null;
+		nextInnerPathOffset = 0;
+	}
+
+	/**
+	 * Appends vacant slots, growing the arrays if necessary.
+	 */
+	private void addSlots( int amount )
+	{
+		int neededCount = slotCount + amount;
+		if ( neededCount > innerPaths.length ) {
+			int newCapacity = Math.max( neededCount, innerPaths.length + innerPaths.length / 2 );
+			innerPathHashes = Arrays.copyOf( innerPathHashes, newCapacity );
+			innerPathOffsets = Arrays.copyOf( innerPathOffsets, newCapacity );
+			dataOffsets = Arrays.copyOf( dataOffsets, newCapacity );
+			dataSizes = Arrays.copyOf( dataSizes, newCapacity );
+			unpackedSizes = Arrays.copyOf( unpackedSizes, newCapacity );
+			dataDeflated = Arrays.copyOf( dataDeflated, newCapacity );
+			innerPaths = Arrays.copyOf( innerPaths, newCapacity );
+			dataDigests = Arrays.copyOf( dataDigests, newCapacity );
+		}
+		for ( int i = slotCount; i < neededCount; i++ ) {
+			clearSlot( i );
+		}
+		slotCount = neededCount;
+	}
+
+	/**
+	 * Marks a slot as vacant, zeroing its fields.
+	 */
+	private void clearSlot( int n )
+	{
+		if ( slotsByDataOffset != null && innerPaths[n] != null ) {
+			slotsByDataOffset.remove( n );
+		}
+		if ( slotsByDataSize != null && innerPaths[n] != null ) {
+			List<Integer> sameSizeSlots = slotsByDataSize.get( dataSizes[n] );
+			sameSizeSlots.remove( Integer.valueOf( n ) );
+			if ( sameSizeSlots.isEmpty() ) slotsByDataSize.remove( dataSizes[n] );
+		}
+
+		innerPathHashes[n] = 0;
+		innerPathOffsets[n] = 0;
+		dataOffsets[n] = 0;
+		dataSizes[n] = 0;
+		unpackedSizes[n] = 0;
+		dataDeflated[n] = false;
+		innerPaths[n] = null;
+		dataDigests[n] = null;
 	}
 
 	/**
-	 * Returns the offset, within the paths region, where the next innerPath
-	 * would be written.
+	 * Returns the first vacant slot, or -1.
+	 */
+	private int findVacancy()
+	{
+		for ( int i = vacancyHint; i < slotCount; i++ ) {
+			if ( innerPaths[i] == null ) {
+				vacancyHint = i;
+				return i;
+			}
+		}
+		vacancyHint = slotCount;
+		return -1;
+	}
+
+	/**
+	 * Returns occupied slots, sorted by dataOffset (asc), then dataSize (asc).
 	 *
-	 * This will be after the last innerPath's null-terminated string.
+	 * Slots sharing the same data will be next to each other.
 	 */
-	private int getNextInnerPathOffset()
+	private int[] getSlotsByDataOffset()
 	{
-		int result = 0;
-		PkgEntry foundEntry = null;
-		for ( PkgEntry entry : entryList ) {
-			if ( entry != null && ( foundEntry == null || entry.innerPathOffset > foundEntry.innerPathOffset ) ) {
-				foundEntry = entry;
+		int[] slots = new int[pathToIndexMap.size()];
+		int count = 0;
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] != null ) slots[count++] = i;
+		}
+		PackUtilities.sortSlotsByKey( dataOffsets, slots, count );
+
+		// Order slots that share an offset by size. Such runs are short (eg.
+		// empty data followed by the next data), so an insertion sort will do.
+		for ( int i = 1; i < count; i++ ) {
+			int n = slots[i];
+			int j = i - 1;
+			while ( j >= 0 && dataOffsets[slots[j]] == dataOffsets[n] && dataSizes[slots[j]] > dataSizes[n] ) {
+				slots[j + 1] = slots[j];
+				j--;
 			}
+			slots[j + 1] = n;
 		}
-		if ( foundEntry != null ) {
-			result = foundEntry.innerPathOffset + foundEntry.innerPath.length() + 1; // Null termination.
+		return slots;
+	}
+
+	/**
+	 * Returns occupied slots, grouped by dataSize, building the groups if
+	 * necessary.
+	 */
+	private Map<Long, List<Integer>> getSlotsByDataSize()
+	{
+		if ( slotsByDataSize == null ) {
+			slotsByDataSize = new HashMap<>();
+			for ( int i = 0; i < slotCount; i++ ) {
+				if ( innerPaths[i] != null ) addSlotByDataSize( i );
+			}
 		}
+		return slotsByDataSize;
+	}
 
-		return result;
+	private void addSlotByDataSize( int n )
+	{
+		slotsByDataSize.computeIfAbsent( dataSizes[n], k -> new ArrayList<>( 1 ) ).add( n );
+	}
+
+	private boolean isSameData( int a, int b )
+	{
+		return ( dataOffsets[a] == dataOffsets[b] && dataSizes[a] == dataSizes[b] );
+	}
+
+	/**
+	 * Returns occupied slots pointing at the nth slot's data, including n.
+	 */
+	private int[] getSlotsSharingData( int n )
+	{
+		List<Integer> sameSizeSlots = getSlotsByDataSize().get( dataSizes[n] );
+
+		int[] result = new int[sameSizeSlots.size()];
+		int count = 0;
+		for ( int m : sameSizeSlots ) {
+			if ( isSameData( m, n ) ) result[count++] = m;
+		}
+		return Arrays.copyOf( result, count );
+	}
+
+	/**
+	 * Returns the SHA-256 of the nth slot's stored data, reading it if
+	 * necessary.
+	 */
+	private byte[] getDataDigest( int n ) throws IOException
+	{
+		if ( dataDigests[n] == null ) {
+			MessageDigest md = createDataDigest();
+			try ( InputStream is = new FileChannelRegionInputStream( raf.getChannel(), dataOffsets[n], dataSizes[n] ) ) {
+				byte[] buf = new byte[4096];
+				int len;
+				while ( ( len = is.read( buf ) ) >= 0 ) {
+					md.update( buf, 0, len );
+				}
+			}
+			dataDigests[n] = md.digest();
+		}
+		return dataDigests[n];
+	}
+
+	private MessageDigest createDataDigest() throws IOException
+	{
+		try {
+			return MessageDigest.getInstance( "SHA-256" );
+		}
+		catch ( NoSuchAlgorithmException e ) {
+			throw new IOException( "Could not hash data for deduplication", e );
+		}
 	}
 
-	private void createIndex( int entryCount ) throws IOException
+	/**
+	 * Points slots whose stored data is identical at a single copy.
+	 *
+	 * Copies that are no longer used are left in place, as gaps.
+	 */
+	private void mergeIdenticalData() throws IOException
+	{
+		for ( Map.Entry<Long, List<Integer>> entry : getSlotsByDataSize().entrySet() ) {
+			if ( entry.getKey() == 0 || entry.getValue().size() < 2 ) continue;
+
+			// The first slot seen with each content, by deflated flag and digest.
+			Map<ByteBuffer, Integer> keptSlots = new HashMap<>();
+			for ( int n : entry.getValue() ) {
+				byte[] digest = getDataDigest( n );
+				ByteBuffer contentKey = ByteBuffer.allocate( 1 + digest.length );
+				contentKey.put( (byte)( dataDeflated[n] ? 1 : 0 ) ).put( digest ).flip();
+
+				Integer keptSlot = keptSlots.putIfAbsent( contentKey, n );
+				if ( keptSlot != null ) {
+					setDataOffset( n, dataOffsets[keptSlot] );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an occupied slot, other than n, whose stored data is identical
+	 * to the nth slot's, or -1.
+	 */
+	private int findIdenticalData( int n ) throws IOException
+	{
+		if ( dataSizes[n] == 0 ) return -1;  // Nothing to save.
+
+		List<Integer> sameSizeSlots = getSlotsByDataSize().get( dataSizes[n] );
+		if ( sameSizeSlots == null ) return -1;
+
+		for ( int m : sameSizeSlots ) {
+			if ( m == n || dataDeflated[m] != dataDeflated[n] ) continue;
+			if ( dataOffsets[m] == dataOffsets[n] ) return m;  // Already shared.
+
+			if ( Arrays.equals( getDataDigest( m ), getDataDigest( n ) ) ) return m;
+		}
+		return -1;
+	}
+
+	private void createIndex( int entryCount, int neededPathsRegionSize ) throws IOException
 	{
 		pathsRegionSize = 0;
 
-		entryList = new ArrayList<>( entryCount );
+		resetSlots( 0 );
+		pathToIndexMap = new PathIndexMap( entryCount );
 
-		pathToIndexMap = new HashMap<>( entryCount );
+		ByteBuffer headerBuf = ByteBuffer.allocate( HEADER_SIZE );  // Defaults to BIG_ENDIAN.
+		putHeader( headerBuf, 0, pathsRegionSize );
 
 		raf.seek( 0 );
 		raf.setLength( 0 );
-		for ( int x : signature ) {
-			raf.writeByte( x );
-		}
-		writeBigUShort( HEADER_SIZE );
-		writeBigUShort( ENTRY_SIZE );
-		writeBigUInt( 0 );  // entryCount.
-		writeBigUInt( pathsRegionSize );
+		raf.write( headerBuf.array(), 0, headerBuf.position() );
 
-		growIndex( entryCount );
+		growIndex( entryCount, neededPathsRegionSize );
 	}
 
+	/**
+	 * Reads the header, then the entries and paths region in one read, and
+	 * decodes them in memory.
+	 */
 	private void readIndex() throws IOException
 	{
+		ByteBuffer headerBuf = ByteBuffer.allocate( HEADER_SIZE );  // Defaults to BIG_ENDIAN.
 		raf.seek( 0 );
+		raf.readFully( headerBuf.array(), 0, HEADER_SIZE );
 
 		// Check the file signature.
 		for ( int x : signature ) {
-			if ( raf.readUnsignedByte() != x ) {
+			if ( ( headerBuf.get() & 0xFF ) != x ) {
 				throw new IOException( "Unexpected file signature" );
 			}
 		}
 
 		// Other header values.
-		int headerSize = readBigUShort();
+		int headerSize = getBigUShort( headerBuf );
 		if ( headerSize != HEADER_SIZE ) {
 			throw new IOException(
 				String.format( "Corrupt dat file (%s): header claims header size is %d bytes (expected %d)", getName(), headerSize, HEADER_SIZE )
 			);
 		}
-		int entrySize = readBigUShort();
+		int entrySize = getBigUShort( headerBuf );
 		if ( entrySize != ENTRY_SIZE ) {
 			throw new IOException(
 				String.format( "Corrupt dat file (%s): header claims entries are %d bytes (expected %d)", getName(), entrySize, ENTRY_SIZE )
 			);
 		}
-		int entryCount = (int)readBigUInt();   // Risky casting to signed.
-		if ( entryCount * entrySize > raf.length() ) {
+		int entryCount = (int)getBigUInt( headerBuf );   // Risky casting to signed.
+		if ( entryCount < 0 || (long)entryCount * entrySize > raf.length() ) {
 			throw new IOException(
 				String.format( "Corrupt dat file (%s): header claims entries combined are larger than the entire file", getName() )
 			);
 		}
-		pathsRegionSize = (int)readBigUInt();  // Risky casting to signed.
-		if ( pathsRegionSize > raf.length() ) {
+		pathsRegionSize = (int)getBigUInt( headerBuf );  // Risky casting to signed.
+		if ( pathsRegionSize < 0 || pathsRegionSize > raf.length() ) {
 			throw new IOException( String.format( "Corrupt dat file (%s): header claims path strings are larger than the entire file", getName() ) );
 		}
 
-		entryList = new ArrayList<>( entryCount );
+		// The entries and the paths region that follows them.
+		int entriesSize = entryCount * ENTRY_SIZE;
+		int indexSize = entriesSize + pathsRegionSize;
+		if ( HEADER_SIZE + (long)indexSize > raf.length() ) {
+			throw new IOException( String.format( "Corrupt dat file (%s): header claims the index is larger than the entire file", getName() ) );
+		}
+
+		recycleBigByteBuffer( indexSize );
+		bigByteBuf.limit( indexSize );
+		raf.readFully( bigByteBuf.array(), 0, indexSize );
+
+		resetSlots( entryCount );
 		for ( int i = 0; i < entryCount; i++ ) {
-			PkgEntry entry = new PkgEntry();
-			entry.innerPathHash = readBigUInt();
+			getBigUInt( bigByteBuf );  // Hash, recalculated from the innerPath below.
 
 			// Top 8 bits of the path offset field were set aside to store flags.
 			// 0x00FFFFFF == 0000 0000:1111 1111 1111 1111 1111 1111 (8:24 bits).
 			// 1 << 24    == 0000 0001:0000 0000 0000 0000 0000 0000
-			long pathOffsetAndFlags = readBigUInt();
-			entry.innerPathOffset = (int)( pathOffsetAndFlags & 0x00FFFFFFL );
-			entry.dataDeflated = ( ( pathOffsetAndFlags & PKGF_DEFLATED ) != 0 );
-
-			entry.dataOffset = readBigUInt();
-			entry.dataSize = readBigUInt();
-			entry.unpackedSize = readBigUInt();
-
-			if ( entry.dataOffset == 0 ) {  // Null entry, dat wasn't repacked.
-				entryList.add( null );
-			}
-			else {
-				entryList.add( entry );
-			}
+			long pathOffsetAndFlags = getBigUInt( bigByteBuf );
+			long dataOffset = getBigUInt( bigByteBuf );
+			long dataSize = getBigUInt( bigByteBuf );
+			long unpackedSize = getBigUInt( bigByteBuf );
+
+			if ( dataOffset == 0 ) continue;  // Null entry, dat wasn't repacked.
+
+			innerPathOffsets[i] = (int)( pathOffsetAndFlags & 0x00FFFFFFL );
+			dataDeflated[i] = ( ( pathOffsetAndFlags & PKGF_DEFLATED ) != 0 );
+			dataOffsets[i] = dataOffset;
+			dataSizes[i] = dataSize;
+			unpackedSizes[i] = unpackedSize;
 		}
 
-		pathToIndexMap = new HashMap<>( entryCount );
-
-		recycleBigByteBuffer( pathsRegionSize );
-		bigByteBuf.limit( pathsRegionSize );
-		raf.readFully( bigByteBuf.array(), 0, pathsRegionSize );
+		pathToIndexMap = new PathIndexMap( entryCount );
 
 		for ( int i = 0; i < entryCount; i++ ) {
-			PkgEntry entry = entryList.get( i );
-			if ( entry == null ) continue;
+			if ( dataOffsets[i] == 0 ) continue;
+
+			if ( innerPathOffsets[i] >= pathsRegionSize ) {
+				throw new IOException( String.format( "Corrupt dat file (%s): entry %d's innerPath lies beyond the paths region", getName(), i ) );
+			}
+			int innerPathStart = entriesSize + innerPathOffsets[i];
+			bigByteBuf.position( innerPathStart );
+			innerPaths[i] = readNullTerminatedString( bigByteBuf );
 
-			bigByteBuf.position( entry.innerPathOffset );
-			entry.innerPath = readNullTerminatedString( bigByteBuf );
+			// Hashed from the stored bytes rather than trusted, so entries written
+			// back always agree with their innerPaths.
+			innerPathHashes[i] = calculatePathHash( bigByteBuf, innerPathStart, innerPaths[i].length() );
+			nextInnerPathOffset = Math.max( nextInnerPathOffset, innerPathOffsets[i] + innerPaths[i].length() + 1 );  // Null termination.
 
-			pathToIndexMap.put( entry.innerPath, i );
+			pathToIndexMap.put( innerPaths[i], i );
 		}
 	}
 
 	/**
-	 * Moves an entry's data to the end of the file.
+	 * Moves the nth slot's data to the end of the file.
 	 *
-	 * Its position within the entryList and it's innerPath within the
-	 * paths region will remain unchanged.
+	 * Its slot and its innerPath within the paths region will remain
+	 * unchanged.
 	 *
 	 * After returning, if this was the earliest dataOffset, there will be a
 	 * gap between the paths region and the new earliest data.
 	 */
-	private void moveEntryDataToEOF( PkgEntry entry ) throws IOException
+	private int[] moveEntryDataToEOF( int n ) throws IOException
+	{
+		int[] sharingSlots = copyEntryDataToEOF( n );
+
+		// Update the entries.
+		for ( int m : sharingSlots ) {
+			raf.seek( HEADER_SIZE + m * ENTRY_SIZE + 4 + 4 );  // Skip hash and pathOffsetAndFlags.
+			writeBigUInt( dataOffsets[m] );
+		}
+		return sharingSlots;
+	}
+
+	/**
+	 * Copies the nth slot's data to the end of the file, without updating
+	 * the entries on disk. The original bytes are left in place.
+	 *
+	 * Every slot that shared the data will point at the copy.
+	 *
+	 * @return the slots that were pointed at the copy
+	 */
+	private int[] copyEntryDataToEOF( int n ) throws IOException
 	{
-		long oldOffset = entry.dataOffset;
+		int[] sharingSlots = getSlotsSharingData( n );
+
+		long oldOffset = dataOffsets[n];
 		long newOffset = raf.length();
 
-		long totalBytes = entry.dataSize;
+		long totalBytes = dataSizes[n];
 		long bytesRemaining = totalBytes;
 		byte[] buf = new byte[4096];
 		int len;
@@ -486,17 +936,17 @@ public class PkgPack extends AbstractPack
 			raf.seek( oldOffset + totalBytes - bytesRemaining );
 			len = raf.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) );
 			if ( len == -1 ) {
-				throw new IOException( "EOF prematurely reached reading innerPath: " + entry.innerPath );
+				throw new IOException( "EOF prematurely reached reading innerPath: " + innerPaths[n] );
 			}
 
 			raf.seek( newOffset + totalBytes - bytesRemaining );
 			raf.write( buf, 0, len );
 			bytesRemaining -= len;
 		}
-		// Update the entry.
-		entry.dataOffset = newOffset;
-		raf.seek( HEADER_SIZE + entryList.indexOf( entry ) * ENTRY_SIZE + 4 + 4 );  // Skip hash and pathOffsetAndFlags.
-		writeBigUInt( entry.dataOffset );
+		for ( int m : sharingSlots ) {
+			setDataOffset( m, newOffset );
+		}
+		return sharingSlots;
 	}
 
 	/**
@@ -507,12 +957,20 @@ public class PkgPack extends AbstractPack
 	 * be filled with additional indeces.
 	 */
 	private void growIndex( int amount ) throws IOException
+	{
+		growIndex( amount, amount * TYPICAL_PATH_LENGTH );
+	}
+
+	/**
+	 * Ensures the index has room for at least n more entries, and the paths
+	 * region has room for neededPathsRegionGrowth more bytes.
+	 */
+	private void growIndex( int amount, int neededPathsRegionGrowth ) throws IOException
 	{
 		long neededEntriesGrowth = amount * ENTRY_SIZE;
-		int neededPathsRegionGrowth = amount * TYPICAL_PATH_LENGTH;
 
 		// Where to start writing grown entries - after existing ones.
-		long firstGrowthEntryOffset = HEADER_SIZE + entryList.size() * ENTRY_SIZE;
+		long firstGrowthEntryOffset = HEADER_SIZE + slotCount * ENTRY_SIZE;
 
 		// Where the paths region will be - after the grown entries.
 		long neededPathsRegionOffset = firstGrowthEntryOffset + neededEntriesGrowth;
@@ -526,12 +984,12 @@ public class PkgPack extends AbstractPack
 		// Even if all entries are 0-sized, ensure that they move.
 		if ( neededMinDataOffset > raf.length() ) raf.setLength( neededMinDataOffset );
 
-		PkgEntry earliestDataEntry = getEntryWithEarliestData();
+		int earliestDataSlot = getEntryWithEarliestData();
 
-		while ( earliestDataEntry != null && neededMinDataOffset > earliestDataEntry.dataOffset ) {
-			moveEntryDataToEOF( earliestDataEntry );
+		while ( earliestDataSlot != -1 && neededMinDataOffset > dataOffsets[earliestDataSlot] ) {
+			moveEntryDataToEOF( earliestDataSlot );
 
-			earliestDataEntry = getEntryWithEarliestData();  // What's earliest now?
+			earliestDataSlot = getEntryWithEarliestData();  // What's earliest now?
 		}
 		// Don't bother accepting the excess growth. Just leave a gap after the paths region.
 
@@ -543,8 +1001,9 @@ public class PkgPack extends AbstractPack
 		recycleBigByteBuffer( neededPathsRegionSize );
 		bigByteBuf.limit( neededPathsRegionSize );
 
+		raf.seek( firstGrowthEntryOffset );  // The old paths region.
 		raf.readFully( bigByteBuf.array(), 0, pathsRegionSize );
-		Arrays.fill( bigByteBuf.array(), pathsRegionSize + 1, neededPathsRegionSize, (byte)0 );
+		Arrays.fill( bigByteBuf.array(), pathsRegionSize, neededPathsRegionSize, (byte)0 );
 		bigByteBuf.rewind();  // The backing array was modified directly, so this is a NOP.
 
 		raf.seek( neededPathsRegionOffset );  // Seeking past EOF is okay; write() will grow the file.
@@ -553,18 +1012,11 @@ public class PkgPack extends AbstractPack
 		pathsRegionSize = neededPathsRegionSize;
 
 		// Add/write the grown entries.
-		for ( int i = 0; i < amount; i++ ) {
-			entryList.add( null );
-		}
-		raf.seek( firstGrowthEntryOffset );
-		for ( int i = 0; i < amount; i++ ) {
-			writePkgEntry( null );
-		}
+		addSlots( amount );
+		writePkgEntries( slotCount - amount, slotCount );
 
 		// Update the header.
-		raf.seek( signature.length + 2 + 2 );  // Skip HEADER_SIZE and ENTRY_SIZE.
-		writeBigUInt( entryList.size() );
-		writeBigUInt( pathsRegionSize );
+		writeHeaderCounts();
 	}
 
 	@Override
@@ -576,18 +1028,20 @@ public class PkgPack extends AbstractPack
 	@Override
 	public List<String> list()
 	{
-		List<String> result = new ArrayList<>();
-		result.addAll( pathToIndexMap.keySet() );
+		List<String> result = new ArrayList<>( pathToIndexMap.size() );
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] != null ) result.add( innerPaths[i] );
+		}
 		return result;
 	}
 
 	@Override
 	public List<PathAndSize> listSizes()
 	{
-		List<PathAndSize> result = new ArrayList<>();
-		for ( PkgEntry entry : entryList ) {
-			if ( entry == null ) continue;
-			PathAndSize pas = new PathAndSize( entry.innerPath, entry.dataSize );
+		List<PathAndSize> result = new ArrayList<>( pathToIndexMap.size() );
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] == null ) continue;
+			PathAndSize pas = new PathAndSize( innerPaths[i], dataSizes[i] );
 			result.add( pas );
 		}
 		return result;
@@ -598,6 +1052,44 @@ public class PkgPack extends AbstractPack
 	 */
 	@Override
 	public void add( String innerPath, InputStream is ) throws IOException
+	{
+		MeteredInputStream srcMeterStream = new MeteredInputStream( is );
+		InputStream dataStream = srcMeterStream;
+
+		if ( compressNewAdditions ) {
+			dataStream = new DeflaterInputStream( dataStream );
+		}
+
+		addData( innerPath, dataStream, compressNewAdditions, srcMeterStream::getCount );
+	}
+
+	/**
+	 * Adds bytes that were already "deflate" compressed to the pack, as
+	 * innerPath, so that compression can happen elsewhere (eg. on other
+	 * threads).
+	 *
+	 * @param deflatedStream
+	 *            zlib-wrapped deflated bytes, as a DeflaterOutputStream writes
+	 * @param unpackedSize
+	 *            byte count of the data once inflated
+	 */
+	public void addDeflated( String innerPath, InputStream deflatedStream, long unpackedSize ) throws IOException
+	{
+		addData( innerPath, deflatedStream, true, () -> unpackedSize );
+	}
+
+	/**
+	 * Writes data to the end of the file, and records it as innerPath.
+	 *
+	 * @param dataStream
+	 *            bytes to store as-is
+	 * @param deflated
+	 *            whether the bytes are deflated
+	 * @param unpackedSize
+	 *            supplies the byte count of the data once inflated, after
+	 *            the stream has been read
+	 */
+	private void addData( String innerPath, InputStream dataStream, boolean deflated, LongSupplier unpackedSize ) throws IOException
 	{
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
@@ -605,45 +1097,46 @@ public class PkgPack extends AbstractPack
 		if ( pathToIndexMap.containsKey( innerPath ) ) {
 			throw new IOException( "InnerPath already exists: " + innerPath );
 		}
-		if ( !asciiEncoder.reset().canEncode( innerPath ) ) {
+		if ( !isAscii( innerPath ) ) {
 			throw new IllegalArgumentException( "InnerPath contains non-ascii characters: " + innerPath );
 		}
 
 		// Find a vacancy in the header, or create one.
-		int entryIndex = entryList.indexOf( null );
+		int entryIndex = findVacancy();
 		if ( entryIndex == -1 ) {
-			growIndex( 50 );  // Save effort for 49 future adds.
-			entryIndex = entryList.indexOf( null );
+			if ( batching ) {
+				// The index on disk will grow when the batch is committed.
+				addSlots( 1 );
+				entryIndex = slotCount - 1;
+			}
+			else {
+				growIndex( 50 );  // Save effort for 49 future adds.
+				entryIndex = findVacancy();
+			}
 		}
 
 		// Make room for the innerPath null-terminated string.
-		int innerPathOffset = getNextInnerPathOffset();
-		while ( innerPathOffset + innerPath.length() + 1 > pathsRegionSize ) {
-			growIndex( 50 );
+		// During a batch, the paths region is laid out on commit.
+		int innerPathOffset = 0;
+		if ( !batching ) {
+			innerPathOffset = nextInnerPathOffset;
+			while ( innerPathOffset + innerPath.length() + 1 > pathsRegionSize ) {
+				growIndex( 50 );
+			}
 		}
 
-		PkgEntry entry = new PkgEntry();
-		entry.innerPathOffset = 0;  // Write this later.
-		entry.innerPath = innerPath;
-		entry.innerPathHash = calculatePathHash( innerPath );
-		entry.dataOffset = raf.length();
-		entry.dataSize = 0;         // Write this later.
-		entry.unpackedSize = 0;     // Write this later.
-		entry.dataDeflated = compressNewAdditions;
+		long dataOffset = raf.length();
 
-		MeteredInputStream srcMeterStream = new MeteredInputStream( is );
-		InputStream dataStream = srcMeterStream;
-
-		if ( compressNewAdditions ) {
-			dataStream = new DeflaterInputStream( dataStream );
-		}
+		// Hash the stored bytes as they're written, to look for a copy afterward.
+		MessageDigest md = deduplicateData ? createDataDigest() : null;
 
 		// Write data.
-		raf.seek( entry.dataOffset );
+		raf.seek( dataOffset );
 		byte[] buf = new byte[4096];
 		int len;
 		while ( ( len = dataStream.read( buf ) ) >= 0 ) {
 			raf.write( buf, 0, len );
+			if ( md != null ) md.update( buf, 0, len );
 		}
 
 		// Attempting to close the wrapper streams would cause an exception if
@@ -651,24 +1144,40 @@ public class PkgPack extends AbstractPack
 
 		// TODO: Test if compression works without closing the wrapper.
 
-		// Go back and fill in the dataSize.
-		entry.dataSize = raf.getChannel().position() - entry.dataOffset;
-		entry.unpackedSize = srcMeterStream.getCount();
+		innerPathHashes[entryIndex] = calculatePathHash( innerPath );
+		innerPathOffsets[entryIndex] = innerPathOffset;
+		dataOffsets[entryIndex] = dataOffset;
+		dataSizes[entryIndex] = raf.getChannel().position() - dataOffset;
+		unpackedSizes[entryIndex] = unpackedSize.getAsLong();
+		dataDeflated[entryIndex] = deflated;
+		innerPaths[entryIndex] = innerPath;
+		dataDigests[entryIndex] = ( md != null ? md.digest() : null );
+		pathToIndexMap.put( innerPath, entryIndex );
+		if ( slotsByDataOffset != null ) slotsByDataOffset.add( entryIndex );
+		if ( slotsByDataSize != null ) addSlotByDataSize( entryIndex );
+
+		if ( deduplicateData ) {
+			int identicalSlot = findIdenticalData( entryIndex );
+			if ( identicalSlot != -1 ) {
+				setDataOffset( entryIndex, dataOffsets[identicalSlot] );
+				raf.setLength( dataOffset );  // Discard the copy that was just written.
+			}
+		}
+
+		if ( batching ) return;
+
+		nextInnerPathOffset = innerPathOffset + innerPath.length() + 1;  // Null termination.
 
 		// Write the innerPath string.
 		recycleBigByteBuffer( innerPath.length() + 1 );
 		bigByteBuf.limit( innerPath.length() + 1 );
 		writeNullTerminatedString( bigByteBuf, innerPath );
 		bigByteBuf.rewind();
-		raf.seek( innerPathOffset );
+		raf.seek( HEADER_SIZE + slotCount * ENTRY_SIZE + innerPathOffset );
 		raf.write( bigByteBuf.array(), bigByteBuf.position(), bigByteBuf.limit() );
 
-		entryList.set( entryIndex, entry );
-		pathToIndexMap.put( innerPath, entryIndex );
-
 		// Write the entry itself.
-		raf.seek( HEADER_SIZE + entryIndex * ENTRY_SIZE );
-		writePkgEntry( entry );
+		writePkgEntries( entryIndex, entryIndex + 1 );
 	}
 
 	@Override
@@ -689,20 +1198,27 @@ public class PkgPack extends AbstractPack
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
 		}
-		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+		int entryIndex = pathToIndexMap.remove( innerPath );
+		if ( entryIndex == -1 ) {
 			throw new FileNotFoundException( "InnerPath does not exist: " + innerPath );
 		}
 
-		int entryIndex = pathToIndexMap.get( innerPath ).intValue();
-		pathToIndexMap.remove( innerPath );
-		PkgEntry removedEntry = entryList.set( entryIndex, null );
+		long removedDataOffset = dataOffsets[entryIndex];
+		long removedDataEnd = removedDataOffset + dataSizes[entryIndex];
+		boolean dataAtEnd = ( removedDataEnd == raf.length() );
+		boolean dataShared = dataAtEnd && getSlotsSharingData( entryIndex ).length > 1;
+		clearSlot( entryIndex );
+		vacancyHint = Math.min( vacancyHint, entryIndex );
 
-		raf.seek( HEADER_SIZE + entryIndex * ENTRY_SIZE );
-		writePkgEntry( null );
+		if ( !batching ) {
+			writePkgEntries( entryIndex, entryIndex + 1 );
+		}
 
-		// If data was at the end, truncate.
-		if ( removedEntry.dataOffset + removedEntry.dataSize == raf.length() ) {
-			raf.setLength( removedEntry.dataOffset );
+		// If data was at the end, and no other entry uses it, truncate.
+		// During a batch, data that predates it must survive, in case of a rollback.
+		boolean truncatable = !batching || removedDataOffset >= batchDatLength;
+		if ( truncatable && dataAtEnd && !dataShared ) {
+			raf.setLength( removedDataOffset );
 		}
 	}
 
@@ -721,18 +1237,16 @@ public class PkgPack extends AbstractPack
 		if ( innerPath.contains( "\\" ) ) {
 			throw new IllegalArgumentException( "InnerPath contains backslashes: " + innerPath );
 		}
-		if ( !pathToIndexMap.containsKey( innerPath ) ) {
+		int entryIndex = pathToIndexMap.get( innerPath );
+		if ( entryIndex == -1 ) {
 			throw new FileNotFoundException( "InnerPath does not exist: " + innerPath );
 		}
 
-		int entryIndex = pathToIndexMap.get( innerPath ).intValue();
-		PkgEntry entry = entryList.get( entryIndex );
-
 		// Create a stream that can only see this region.
 		// Multiple read-only streams can coexist (each has its own position).
-		InputStream stream = new FileChannelRegionInputStream( raf.getChannel(), entry.dataOffset, entry.dataSize );
+		InputStream stream = new FileChannelRegionInputStream( raf.getChannel(), dataOffsets[entryIndex], dataSizes[entryIndex] );
 
-		if ( entry.dataDeflated ) {
+		if ( dataDeflated[entryIndex] ) {
 			stream = new InflaterInputStream( stream );
 		}
 
@@ -745,9 +1259,127 @@ public class PkgPack extends AbstractPack
 		raf.close();
 	}
 
+	/**
+	 * Returns a read-only view of the index, with one element per slot.
+	 *
+	 * Vacant slots appear as null. Elements are built on access, so the
+	 * view follows later changes to the dat, but each PkgEntry is a snapshot.
+	 */
 	public List<PkgEntry> listMetadata()
 	{
-		return new ArrayList<>( entryList );
+		return new AbstractList<PkgEntry>() {
+			@Override
+			public PkgEntry get( int index )
+			{
+				if ( index < 0 || index >= slotCount ) {
+					throw new IndexOutOfBoundsException( String.format( "Index: %d, Size: %d", index, slotCount ) );
+				}
+				if ( innerPaths[index] == null ) return null;
+
+				PkgEntry entry = new PkgEntry();
+				entry.innerPathOffset = innerPathOffsets[index];
+				entry.innerPath = innerPaths[index];
+				entry.innerPathHash = innerPathHashes[index];
+				entry.dataOffset = dataOffsets[index];
+				entry.dataSize = dataSizes[index];
+				entry.unpackedSize = unpackedSizes[index];
+				entry.dataDeflated = dataDeflated[index];
+				return entry;
+			}
+
+			@Override
+			public int size()
+			{
+				return slotCount;
+			}
+		};
+	}
+
+	@Override
+	public void beginBatch() throws IOException
+	{
+		if ( batching ) {
+			throw new IllegalStateException( "A batch is already in progress: " + getName() );
+		}
+
+		batchDatLength = raf.length();
+		batching = true;
+	}
+
+	@Override
+	public boolean isBatching()
+	{
+		return batching;
+	}
+
+	/**
+	 * Writes the index changed during the current batch, ending it.
+	 *
+	 * The paths region is rewritten without gaps. If the index needs to
+	 * grow, data in the way is copied to the end of the file first. Then the
+	 * header, entries, and paths region are written at once.
+	 */
+	@Override
+	public RepackResult commit( boolean repack ) throws IOException
+	{
+		if ( !batching ) {
+			throw new IllegalStateException( "No batch is in progress: " + getName() );
+		}
+
+		int neededPathsRegionSize = 0;
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] == null ) continue;
+			innerPathOffsets[i] = neededPathsRegionSize;
+			neededPathsRegionSize += innerPaths[i].length() + 1;
+		}
+
+		long neededPathsRegionOffset = HEADER_SIZE + slotCount * ENTRY_SIZE;
+		long neededMinDataOffset = neededPathsRegionOffset + neededPathsRegionSize;
+
+		// Even if all entries are 0-sized, ensure that they move.
+		if ( neededMinDataOffset > raf.length() ) raf.setLength( neededMinDataOffset );
+
+		for ( int n : getSlotsByDataOffset() ) {
+			if ( dataOffsets[n] >= neededMinDataOffset ) continue;  // Out of the way, or copied along with shared data.
+			copyEntryDataToEOF( n );
+		}
+
+		ByteBuffer indexBuf = ByteBuffer.allocate( (int)neededMinDataOffset );  // Defaults to BIG_ENDIAN.
+		putHeader( indexBuf, slotCount, neededPathsRegionSize );
+
+		for ( int i = 0; i < slotCount; i++ ) {
+			putPkgEntry( indexBuf, i );
+		}
+		for ( int i = 0; i < slotCount; i++ ) {
+			if ( innerPaths[i] != null ) writeNullTerminatedString( indexBuf, innerPaths[i] );
+		}
+
+		raf.seek( 0 );
+		raf.write( indexBuf.array(), 0, indexBuf.position() );
+
+		pathsRegionSize = neededPathsRegionSize;
+		nextInnerPathOffset = neededPathsRegionSize;
+		batching = false;
+
+		return repack ? repack() : null;
+	}
+
+	/**
+	 * Discards all changes made during the current batch, ending it.
+	 *
+	 * The index on disk was left untouched, so it's enough to trim off
+	 * appended data and re-read the index.
+	 */
+	@Override
+	public void rollback() throws IOException
+	{
+		if ( !batching ) return;
+		batching = false;
+
+		if ( raf.length() != batchDatLength ) {
+			raf.setLength( batchDatLength );
+		}
+		readIndex();
 	}
 
 	/**
@@ -764,24 +1396,29 @@ public class PkgPack extends AbstractPack
 	@Override
 	public RepackResult repack() throws IOException
 	{
+		if ( batching ) {
+			throw new IllegalStateException( "Cannot repack while a batch is in progress: " + getName() );
+		}
+
 		long bytesChanged = 0;
 
-		int vacancyCount = Collections.frequency( entryList, null );
+		// Data is about to be shuffled wholesale, and the slots rebuilt.
+		slotsByDataOffset = null;
 
-		// Build a list of non-null entries, sorted in the order their data appears.
+		if ( deduplicateData ) mergeIdenticalData();
 
-		List<PkgEntry> tmpEntries = new ArrayList<>( entryList.size() - vacancyCount );
-		for ( PkgEntry entry : entryList ) {
-			if ( entry != null ) tmpEntries.add( entry );
-		}
-		Collections.sort( tmpEntries, new PkgEntryDataOffsetComparator() );
+		// Occupied slots, in the order their data appears.
+		int[] sortedSlots = getSlotsByDataOffset();
+		int entryCount = sortedSlots.length;
 
-		for ( int i = 0; i < tmpEntries.size() - 1; i++ ) {
-			PkgEntry a = tmpEntries.get( i );
-			PkgEntry b = tmpEntries.get( i + 1 );
-			if ( a.dataOffset + a.dataSize > b.dataOffset ) {
+		for ( int i = 0; i < entryCount - 1; i++ ) {
+			int a = sortedSlots[i];
+			int b = sortedSlots[i + 1];
+			if ( isSameData( a, b ) ) continue;
+
+			if ( dataOffsets[a] + dataSizes[a] > dataOffsets[b] ) {
 				throw new IOException(
-					String.format( "Cannot repack datfile with overlapping entries (\"%s\" and \"%s\")", a.innerPath, b.innerPath )
+					String.format( "Cannot repack datfile with overlapping entries (\"%s\" and \"%s\")", innerPaths[a], innerPaths[b] )
 				);
 			}
 		}
@@ -790,62 +1427,72 @@ public class PkgPack extends AbstractPack
 		// If any non-null entries somehow shared an innerPathOffset, this will
 		// make them distinct.
 		int neededPathsRegionSize = 0;
-		for ( PkgEntry entry : tmpEntries ) {
-			neededPathsRegionSize += entry.innerPath.length() + 1;
+		for ( int n : sortedSlots ) {
+			neededPathsRegionSize += innerPaths[n].length() + 1;
 		}
 
-		long neededPathsRegionOffset = HEADER_SIZE + tmpEntries.size() * ENTRY_SIZE;
+		long neededPathsRegionOffset = HEADER_SIZE + entryCount * ENTRY_SIZE;
 		long neededMinDataOffset = neededPathsRegionOffset + neededPathsRegionSize;
 
 		// If there's data, move it out of the way, to EOF.
-		if ( !tmpEntries.isEmpty() ) {
-			PkgEntry earliestDataEntry = tmpEntries.get( 0 );
-
+		if ( entryCount > 0 ) {
 			// Even if all entries are 0-sized, ensure that they move.
 			if ( neededMinDataOffset > raf.length() ) {
 				bytesChanged += neededMinDataOffset - raf.length();
 				raf.setLength( neededMinDataOffset );
 			}
 
-			while ( neededMinDataOffset > earliestDataEntry.dataOffset ) {
-				moveEntryDataToEOF( earliestDataEntry );
-				bytesChanged += earliestDataEntry.dataSize;
-
-				tmpEntries.remove( 0 );  // Move the entry to the end of the sorted list.
-				tmpEntries.add( earliestDataEntry );
-
-				earliestDataEntry = tmpEntries.get( 0 );  // What's earliest now?
+			int movedCount = 0;
+			while ( movedCount < entryCount && neededMinDataOffset > dataOffsets[sortedSlots[movedCount]] ) {
+				int n = sortedSlots[movedCount];
+				int sharedCount = moveEntryDataToEOF( n ).length;
+				bytesChanged += dataSizes[n];
+				movedCount += sharedCount;  // The others sharing the data were next, and moved along.
 			}
+
+			// Moved entries now come last, in the order they were moved.
+			int[] rotatedSlots = new int[entryCount];
+			System.arraycopy( sortedSlots, movedCount, rotatedSlots, 0, entryCount - movedCount );
+			System.arraycopy( sortedSlots, 0, rotatedSlots, entryCount - movedCount, movedCount );
+			sortedSlots = rotatedSlots;
 		}
 
 		// Write innerPath strings to paths region.
 		recycleBigByteBuffer( neededPathsRegionSize );
 		bigByteBuf.limit( neededPathsRegionSize );
-		for ( PkgEntry entry : tmpEntries ) {
-			entry.innerPathOffset = bigByteBuf.position();
-			writeNullTerminatedString( bigByteBuf, entry.innerPath );
+		for ( int n : sortedSlots ) {
+			innerPathOffsets[n] = bigByteBuf.position();
+			writeNullTerminatedString( bigByteBuf, innerPaths[n] );
 		}
 		bigByteBuf.rewind();
 		raf.seek( neededPathsRegionOffset );
 		raf.write( bigByteBuf.array(), bigByteBuf.position(), bigByteBuf.limit() );
 
 		pathsRegionSize = neededPathsRegionSize;
+		nextInnerPathOffset = neededPathsRegionSize;
 
 		// Move data toward the top.
 		long pendingDataOffset = neededMinDataOffset;
 
-		for ( PkgEntry entry : tmpEntries ) {
+		for ( int i = 0; i < entryCount; ) {
+			int n = sortedSlots[i];
 
-			if ( pendingDataOffset != entry.dataOffset ) {
-				long totalBytes = entry.dataSize;
+			// Slots sharing this data follow it.
+			int sharedEnd = i + 1;
+			while ( sharedEnd < entryCount && isSameData( n, sortedSlots[sharedEnd] ) ) {
+				sharedEnd++;
+			}
+
+			if ( pendingDataOffset != dataOffsets[n] ) {
+				long totalBytes = dataSizes[n];
 				long bytesRemaining = totalBytes;
 				byte[] buf = new byte[4096];
 				int len;
 				while ( bytesRemaining > 0 ) {
-					raf.seek( entry.dataOffset + totalBytes - bytesRemaining );
+					raf.seek( dataOffsets[n] + totalBytes - bytesRemaining );
 					len = raf.read( buf, 0, (int)Math.min( buf.length, bytesRemaining ) );
 					if ( len == -1 ) {
-						throw new IOException( "EOF prematurely reached reading innerPath: " + entry.innerPath );
+						throw new IOException( "EOF prematurely reached reading innerPath: " + innerPaths[n] );
 					}
 
 					raf.seek( pendingDataOffset + totalBytes - bytesRemaining );
@@ -853,32 +1500,60 @@ public class PkgPack extends AbstractPack
 					bytesRemaining -= len;
 				}
 
-				entry.dataOffset = pendingDataOffset;
+				for ( int j = i; j < sharedEnd; j++ ) {
+					dataOffsets[sortedSlots[j]] = pendingDataOffset;
+				}
 				bytesChanged += totalBytes;
 			}
 
-			pendingDataOffset += entry.dataSize;
+			pendingDataOffset += dataSizes[n];
+			i = sharedEnd;
 		}
 
-		// Re-sort entries, this time by hash.
-		Collections.sort( tmpEntries, new PkgEntryHashComparator() );
-		entryList = tmpEntries;
+		// Re-sort entries, this time by hash, and compact the slots.
+		sortSlotsByHash( sortedSlots );
+
+		long[] newInnerPathHashes = new long[entryCount];
+		int[] newInnerPathOffsets = new int[entryCount];
+		long[] newDataOffsets = new long[entryCount];
+		long[] newDataSizes = new long[entryCount];
+		long[] newUnpackedSizes = new long[entryCount];
+		boolean[] newDataDeflated = new boolean[entryCount];
+		String[] newInnerPaths = new String[entryCount];
+		byte[][] newDataDigests = new byte[entryCount][];
 
 		pathToIndexMap.clear();
-		for ( PkgEntry entry : entryList ) {
-			pathToIndexMap.put( entry.innerPath, pathToIndexMap.size() );
+		for ( int i = 0; i < entryCount; i++ ) {
+			int n = sortedSlots[i];
+			newInnerPathHashes[i] = innerPathHashes[n];
+			newInnerPathOffsets[i] = innerPathOffsets[n];
+			newDataOffsets[i] = dataOffsets[n];
+			newDataSizes[i] = dataSizes[n];
+			newUnpackedSizes[i] = unpackedSizes[n];
+			newDataDeflated[i] = dataDeflated[n];
+			newInnerPaths[i] = innerPaths[n];
+			newDataDigests[i] = dataDigests[n];
+			pathToIndexMap.put( innerPaths[n], i );
 		}
 
+		innerPathHashes = newInnerPathHashes;
+		innerPathOffsets = newInnerPathOffsets;
+		dataOffsets = newDataOffsets;
+		dataSizes = newDataSizes;
+		unpackedSizes = newUnpackedSizes;
+		dataDeflated = newDataDeflated;
+		innerPaths = newInnerPaths;
+		dataDigests = newDataDigests;
+		slotCount = entryCount;
+		vacancyHint = entryCount;
+		slotsByDataSize = null;
+
 		// Update the header.
-		raf.seek( signature.length + 2 + 2 );  // Skip HEADER_SIZE and ENTRY_SIZE.
-		writeBigUInt( entryList.size() );
-		writeBigUInt( pathsRegionSize );
+		writeHeaderCounts();
 		bytesChanged += 4 + 4;
 
 		// Write the entries.
-		for ( PkgEntry entry : entryList ) {
-			writePkgEntry( entry );
-		}
+		writePkgEntries( 0, slotCount );
 
 		long oldDatLength = raf.length();
 		long newDatLength = pendingDataOffset;
@@ -887,6 +1562,49 @@ public class PkgPack extends AbstractPack
 		return new RepackResult( oldDatLength, newDatLength, bytesChanged );
 	}
 
+	/**
+	 * Sorts slots by innerPathHash (asc), then by innerPath (asc) ignoring
+	 * case, keeping the existing order among equals.
+	 *
+	 * @see PkgEntryHashComparator
+	 */
+	private void sortSlotsByHash( int[] slots )
+	{
+		// Remember the existing order, since the primitive sort breaks ties by slot.
+		int count = slots.length;
+		long[] orderedHashes = new long[count];
+		int[] order = new int[count];
+		for ( int i = 0; i < count; i++ ) {
+			orderedHashes[i] = innerPathHashes[slots[i]];
+			order[i] = i;
+		}
+		PackUtilities.sortSlotsByKey( orderedHashes, order, count );
+
+		int[] sortedSlots = new int[count];
+		for ( int i = 0; i < count; i++ ) {
+			sortedSlots[i] = slots[order[i]];
+		}
+
+		// Hash collisions are rare, so an insertion sort within each run is enough.
+		int runStart = 0;
+		for ( int i = 1; i <= count; i++ ) {
+			if ( i < count && innerPathHashes[sortedSlots[i]] == innerPathHashes[sortedSlots[runStart]] ) continue;
+
+			for ( int j = runStart + 1; j < i; j++ ) {
+				int n = sortedSlots[j];
+				int k = j - 1;
+				while ( k >= runStart && compareInnerPaths( innerPaths[sortedSlots[k]], innerPaths[n] ) > 0 ) {
+					sortedSlots[k + 1] = sortedSlots[k];
+					k--;
+				}
+				sortedSlots[k + 1] = n;
+			}
+			runStart = i;
+		}
+
+		System.arraycopy( sortedSlots, 0, slots, 0, count );
+	}
+
 
 	/**
 	 * Information about an innerFile within a dat.
@@ -937,7 +1655,7 @@ public class PkgPack extends AbstractPack
 			if ( a == null ) return 1;
 			if ( a.innerPathHash < b.innerPathHash ) return -1;
 			if ( a.innerPathHash > b.innerPathHash ) return 1;
-			return a.innerPath.compareToIgnoreCase( b.innerPath );
+			return compareInnerPaths( a.innerPath, b.innerPath );
 		}
 
 		@Override
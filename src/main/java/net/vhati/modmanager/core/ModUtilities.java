@@ -6,7 +6,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
@@ -24,11 +26,6 @@ import java.util.zip.ZipInputStream;
 
 public class ModUtilities
 {
-	private static Pattern junkFilePtn = Pattern.compile(
-		"[.]DS_Store$|(?:^|/)thumbs[.]db$|(?:^|/)[.]dropbox$|(?:^|/)~|~$|(?:^|/)#.+#$"
-	);
-
-
 	/**
 	 * Encodes a string (throwing an exception on bad chars) to bytes in a stream.
 	 * Line endings will not be normalized.
@@ -144,6 +141,97 @@ public class ModUtilities
 		return new DecodeResult( result, encoding, eol, bom );
 	}
 
+	/**
+	 * Determines text encoding for an InputStream and returns a Reader to decode it.
+	 *
+	 * The encoding is chosen the same way as decodeText(), but the bytes are
+	 * only buffered once, and chars are decoded as they're read, instead of
+	 * building intermediate strings. Line endings are left as they are.
+	 *
+	 * A CharacterCodingException may be thrown while reading, if the bytes
+	 * turn out not to be valid windows-1252 either.
+	 *
+	 * @param is
+	 *            a stream to read
+	 * @param description
+	 *            how error messages should refer to the stream, or null
+	 * @see #decodeText(InputStream, String)
+	 */
+	public static Reader openTextReader( InputStream is, String description ) throws IOException
+	{
+		byte[] buf = new byte[8192];
+		int count = 0;
+		int len;
+		while ( ( len = is.read( buf, count, buf.length - count ) ) >= 0 ) {
+			count += len;
+			if ( count == buf.length ) buf = Arrays.copyOf( buf, buf.length * 2 );
+		}
+
+		String encoding = null;
+		int bomLength = 0;
+		if ( count >= 3 && buf[0] == (byte)0xEF && buf[1] == (byte)0xBB && buf[2] == (byte)0xBF ) {
+			encoding = "UTF-8";
+			bomLength = 3;
+		}
+		else if ( count >= 2 && buf[0] == (byte)0xFF && buf[1] == (byte)0xFE ) {
+			encoding = "UTF-16LE";
+			bomLength = 2;
+		}
+		else if ( count >= 2 && buf[0] == (byte)0xFE && buf[1] == (byte)0xFF ) {
+			encoding = "UTF-16BE";
+			bomLength = 2;
+		}
+		else if ( isValidUTF8( buf, 0, count ) ) {
+			encoding = "UTF-8";
+		}
+		else {
+			encoding = "windows-1252";
+		}
+
+		// The default decoder reports malformed input, rather than replacing it.
+		CharsetDecoder decoder = Charset.forName( encoding ).newDecoder();
+		return new InputStreamReader( new ByteArrayInputStream( buf, bomLength, count - bomLength ), decoder );
+	}
+
+	/**
+	 * Returns true if a range of bytes is well-formed UTF-8, false otherwise.
+	 *
+	 * Overlong forms, surrogates, and code points beyond U+10FFFF are
+	 * rejected, as Java's own decoder would.
+	 */
+	private static boolean isValidUTF8( byte[] buf, int offset, int length )
+	{
+		int end = offset + length;
+		int i = offset;
+		while ( i < end ) {
+			int b = buf[i] & 0xFF;
+			if ( b < 0x80 ) {
+				i++;
+				continue;
+			}
+
+			int trailCount;
+			if ( b >= 0xC2 && b <= 0xDF ) trailCount = 1;
+			else if ( b >= 0xE0 && b <= 0xEF ) trailCount = 2;
+			else if ( b >= 0xF0 && b <= 0xF4 ) trailCount = 3;
+			else return false;
+
+			if ( end - i <= trailCount ) return false;
+
+			int b1 = buf[i + 1] & 0xFF;
+			if ( b == 0xE0 && b1 < 0xA0 ) return false;  // Overlong.
+			if ( b == 0xED && b1 > 0x9F ) return false;  // Surrogate.
+			if ( b == 0xF0 && b1 < 0x90 ) return false;  // Overlong.
+			if ( b == 0xF4 && b1 > 0x8F ) return false;  // Beyond U+10FFFF.
+
+			for ( int j = 1; j <= trailCount; j++ ) {
+				if ( ( buf[i + j] & 0xC0 ) != 0x80 ) return false;
+			}
+			i += trailCount + 1;
+		}
+		return true;
+	}
+
 	/**
 	 * Returns true if a path matches known junk files, false otherwise.
 	 *
@@ -160,7 +248,51 @@ public class ModUtilities
 	 */
 	public static boolean isJunkFile( String innerPath )
 	{
-		return junkFilePtn.matcher( innerPath ).find();
+		// Hand-written equivalent of this regex, which was too slow for mods with many files:
+		// "[.]DS_Store$|(?:^|/)thumbs[.]db$|(?:^|/)[.]dropbox$|(?:^|/)~|~$|(?:^|/)#.+#$"
+
+		if ( innerPath.startsWith( "~" ) || innerPath.contains( "/~" ) ) return true;
+
+		// Like regex's '$', names may end just before a final line terminator.
+		int len = innerPath.length();
+		if ( isJunkFileName( innerPath, len ) ) return true;
+		if ( len >= 1 && isLineTerminator( innerPath.charAt( len - 1 ) ) ) {
+			boolean crlf = len >= 2 && innerPath.charAt( len - 2 ) == '\r' && innerPath.charAt( len - 1 ) == '\n';
+			return isJunkFileName( innerPath, crlf ? len - 2 : len - 1 );
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the innerPath, up to the end index, ends with a junk file name.
+	 */
+	private static boolean isJunkFileName( String innerPath, int end )
+	{
+		if ( innerPath.startsWith( ".DS_Store", end - 9 ) ) return true;
+		if ( endsWithSegment( innerPath, end, "thumbs.db" ) ) return true;
+		if ( endsWithSegment( innerPath, end, ".dropbox" ) ) return true;
+		if ( end >= 1 && innerPath.charAt( end - 1 ) == '~' ) return true;
+
+		// "#.+#": a segment starting with '#', with the last '#' at the end.
+		// Like regex's '.', the chars between can't be line terminators (but can be slashes).
+		if ( end >= 3 && innerPath.charAt( end - 1 ) == '#' ) {
+			for ( int i = end - 3; i >= 0; i-- ) {
+				if ( isLineTerminator( innerPath.charAt( i + 1 ) ) ) break;
+				if ( innerPath.charAt( i ) == '#' && ( i == 0 || innerPath.charAt( i - 1 ) == '/' ) ) return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean endsWithSegment( String innerPath, int end, String name )
+	{
+		int start = end - name.length();
+		return innerPath.startsWith( name, start ) && ( start == 0 || ( start > 0 && innerPath.charAt( start - 1 ) == '/' ) );
+	}
+
+	private static boolean isLineTerminator( char c )
+	{
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
 	}
 
 	/**
@@ -1,16 +1,24 @@
 package net.vhati.modmanager.ui.table;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
  * An implementation-agnostic model to pass between the GUI thread and the
  * (de)serializer.
+ *
+ * Items are kept in order, and indexed by their equals()/hashCode() (eg.
+ * ModFileInfo's file), so lookups and removals don't scan the list. Adding
+ * an item that's already present has no effect.
  */
 public class ListState<T>
 {
-	protected List<T> items = new ArrayList<>();
+	protected Set<T> items = new LinkedHashSet<>();
 
 
 	public ListState()
@@ -31,13 +39,34 @@ public class ListState<T>
 		return new ArrayList<T>( items );
 	}
 
+	/**
+	 * Returns an unmodifiable, live view of items in this state, in order.
+	 */
+	public Collection<T> getItemsView()
+	{
+		return Collections.unmodifiableCollection( items );
+	}
+
 	public void removeItem( T item )
 	{
 		items.remove( item );
 	}
 
+	/**
+	 * Removes all items that are not in the given collection.
+	 */
+	public void retainItems( Collection<? extends T> keptItems )
+	{
+		items.retainAll( keptItems );
+	}
+
 	public boolean containsItem( T item )
 	{
 		return items.contains( item );
 	}
+
+	public int size()
+	{
+		return items.size();
+	}
 }
@@ -0,0 +1,135 @@
+package com.kartoflane.itb.modmanager.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kartoflane.itb.modmanager.core.BackupManager.BackedUpFile;
+
+
+/**
+ * Checks how BackupManager reports on and cleans up after concurrent copies.
+ */
+public class BackupManagerTest
+{
+	private File tempDir;
+	private File gameDir;
+	private File backupDir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tempDir = Files.createTempDirectory( "backupmanager." ).toFile();
+		gameDir = new File( tempDir, "game" );
+		backupDir = new File( tempDir, "backup" );
+		gameDir.mkdir();
+		backupDir.mkdir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		deleteTree( tempDir );
+	}
+
+	private static void deleteTree( File f )
+	{
+		if ( f.isDirectory() ) {
+			for ( File child : f.listFiles() ) {
+				deleteTree( child );
+			}
+		}
+		f.delete();
+	}
+
+	@Test
+	public void testListenersRunOnCallingThread() throws IOException
+	{
+		List<BackedUpFile> buds = new ArrayList<>();
+		long totalBytes = 0;
+		for ( int i = 0; i < 4; i++ ) {
+			byte[] data = new byte[( i + 1 ) * 3 * 1024 * 1024 + i];
+			Arrays.fill( data, (byte)i );
+			buds.add( createFile( "file" + i + ".dat", data ) );
+			totalBytes += data.length;
+		}
+
+		Thread callingThread = Thread.currentThread();
+		List<BackedUpFile> started = new ArrayList<>();
+		List<Long> progress = new ArrayList<>();
+
+		BackupManager manager = new BackupManager( backupDir, 3 );
+		boolean result = manager.backUpFiles(
+			buds,
+			bud -> {
+				assertSame( callingThread, Thread.currentThread() );
+				started.add( bud );
+			},
+			( done, total ) -> {
+				assertSame( callingThread, Thread.currentThread() );
+				progress.add( done );
+			},
+			() -> true
+		);
+
+		assertTrue( result );
+		assertEquals( buds.size(), started.size() );
+		assertEquals( Long.valueOf( 0 ), progress.get( 0 ) );
+		assertEquals( Long.valueOf( totalBytes ), progress.get( progress.size() - 1 ) );
+		for ( int i = 1; i < progress.size(); i++ ) {
+			assertTrue( progress.get( i - 1 ) < progress.get( i ) );
+		}
+		for ( BackedUpFile bud : buds ) {
+			assertTrue( Arrays.equals( Files.readAllBytes( bud.srcFile.toPath() ), Files.readAllBytes( bud.bakFile.toPath() ) ) );
+		}
+	}
+
+	@Test
+	public void testFailureDeletesTempFiles() throws IOException
+	{
+		BackedUpFile good = createFile( "good.dat", new byte[1000] );
+		BackedUpFile bad = createFile( "bad.dat", new byte[1000] );
+
+		// A non-empty directory where the backup should go, so it can't be replaced.
+		bad.bakFile.mkdir();
+		Files.write( new File( bad.bakFile, "blocker" ).toPath(), new byte[1] );
+
+		// Left over from an earlier run that was cut short.
+		Files.write( new File( backupDir, good.bakFile.getName() + ".1234.tmp" ).toPath(), new byte[1] );
+
+		BackupManager manager = new BackupManager( backupDir, 2 );
+		try {
+			manager.backUpFiles( Arrays.asList( good, bad ), null, null, () -> true );
+			fail( "Expected the backup to fail" );
+		}
+		catch ( IOException e ) {
+			// Expected.
+		}
+
+		for ( String name : backupDir.list() ) {
+			assertTrue( name, !name.endsWith( ".tmp" ) );
+		}
+	}
+
+	private BackedUpFile createFile( String name, byte[] data ) throws IOException
+	{
+		BackedUpFile bud = new BackedUpFile();
+		bud.srcFile = new File( gameDir, name );
+		bud.bakFile = new File( backupDir, name + ".bak" );
+		Files.write( bud.srcFile.toPath(), data );
+		return bud;
+	}
+}
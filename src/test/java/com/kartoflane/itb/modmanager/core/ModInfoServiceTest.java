@@ -0,0 +1,59 @@
+package com.kartoflane.itb.modmanager.core;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+
+/**
+ * Checks which release dates ModInfoService remembers.
+ */
+public class ModInfoServiceTest
+{
+	@Test
+	public void testFailedLookupIsRetried()
+	{
+		ModInfoService service = new ModInfoService( new ModRegistry() );
+		File missingFile = new File( "no-such-mod.zip" );
+
+		CompletableFuture<Date> first = service.getReleaseDate( "hash", missingFile );
+		assertNull( first.join() );
+
+		CompletableFuture<Date> second = service.getReleaseDate( "hash", missingFile );
+		assertNotSame( first, second );
+		assertNull( second.join() );
+	}
+
+	@Test
+	public void testDateIsRemembered() throws IOException
+	{
+		File modFile = File.createTempFile( "modinfoservice.", ".zip" );
+		try {
+			try ( ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( modFile ) ) ) {
+				ZipEntry entry = new ZipEntry( "scripts/init.lua" );
+				entry.setTime( 1000000000000L );
+				zos.putNextEntry( entry );
+				zos.closeEntry();
+			}
+
+			ModInfoService service = new ModInfoService( new ModRegistry() );
+
+			CompletableFuture<Date> first = service.getReleaseDate( "hash", modFile );
+			first.join();
+			assertSame( first, service.getReleaseDate( "hash", modFile ) );
+		}
+		finally {
+			modFile.delete();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.kartoflane.itb.modmanager.lua;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.luaj.vm2.Varargs;
+
+import com.kartoflane.itb.modmanager.util.RandomFragments;
+
+
+/**
+ * Checks that data parsed from a Reader matches what the compiler makes of the same text,
+ * and that text containing code still reaches the compiler whole.
+ */
+public class LuaLoaderTest
+{
+	private static final String[] FRAGMENTS = {
+		"{", "}", ",", ";", "=", "[", "]", "[[", "]]", "[=[", "]=]", "--", "--[[", "\n", "\r", " ",
+		"\"", "'", "\\", "\\n", "\\65", "a", "k = ", "[1] = ", "true", "false", "nil", "1", "2.5", "1e5",
+		"-", ".", "0x1F", "é", "😀"
+	};
+
+
+	@Test
+	public void testKnownData() throws IOException
+	{
+		String[] texts = {
+			// Separators, keys and nesting.
+			"{}", "{1, 2; 3,}", "{ k = 1, [\"k2\"] = 2, [3] = { a = true } }",
+			// Escapes and long strings, whose brackets may straddle a read.
+			"{ \"a\\nb\\65\" }", "{ 'it\\'s' }", "{ [[\nline]], [=[ ]] ]=] }",
+			// Comments, short and long.
+			"{ -- c\n1 }", "{ --[[ c ]] 1 }", "{ --[==[ ]] ]==] 1 }",
+			// Numerals, including negative and exponent ones. Hex is left to the compiler.
+			"{ -1, 2.5, 1e5, -2E-3 }",
+			// Multi-byte chars, one of them outside the BMP.
+			"{ \"é😀\" }"
+		};
+		for ( String text : texts ) {
+			assertNotNull( text, assertParsesLikeCompiler( text, new Random( 36 ) ) );
+		}
+	}
+
+	@Test
+	public void testRandomData() throws IOException
+	{
+		Random random = new Random( 36 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			assertParsesLikeCompiler( "{" + RandomFragments.build( random, FRAGMENTS, 9 ) + "}", random );
+		}
+	}
+
+	@Test
+	public void testDataLongerThanBuffer() throws IOException
+	{
+		String text = "{ " + buildItems( 20000 ) + "}";
+		LuaValue parsed = LuaDataParser.parse( new TrickleReader( text, new Random( 36 ) ) );
+
+		assertNotNull( parsed );
+		assertEquals( describe( compile( text ) ), describe( parsed ) );
+	}
+
+	@Test
+	public void testCodeAfterLongData() throws IOException
+	{
+		String text = "{ " + buildItems( 20000 ) + "[\"sum\"] = 1 + 2 }";
+
+		assertNull( LuaDataParser.parse( text ) );
+
+		LuaTable table = LuaLoader.minimal().loadAsTable( new TrickleReader( text, new Random( 36 ) ), "test" );
+		assertEquals( 20000, table.length() );
+		assertEquals( 3, table.get( "sum" ).toint() );
+	}
+
+	@Test
+	public void testFileWithCode() throws IOException
+	{
+		File file = File.createTempFile( "lualoader.", ".lua" );
+		try {
+			Files.write( file.toPath(), "{ value = 1 + 2 }".getBytes( StandardCharsets.UTF_8 ) );
+			assertEquals( 3, LuaLoader.minimal().loadFileAsTable( file ).get( "value" ).toint() );
+			assertEquals( 3, LuaLoader.minimal().loadFileAsTable( file ).get( "value" ).toint() );
+
+			// Now plain data, and a different length, so the cached script is stale.
+			Files.write( file.toPath(), "{ value = 42 }".getBytes( StandardCharsets.UTF_8 ) );
+			assertEquals( 42, LuaLoader.minimal().loadFileAsTable( file ).get( "value" ).toint() );
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Parses text handed out a few chars at a time, and compares it with
+	 * what the compiler makes of it, unless the parser declined.
+	 *
+	 * @return the parsed value, or null if the parser declined
+	 */
+	private static LuaValue assertParsesLikeCompiler( String text, Random random ) throws IOException
+	{
+		LuaValue parsed = LuaDataParser.parse( new TrickleReader( text, random ) );
+		if ( parsed != null ) {
+			assertEquals( RandomFragments.escape( text ), describe( compile( text ) ), describe( parsed ) );
+		}
+		return parsed;
+	}
+
+	/**
+	 * Returns positional table items, each followed by a comma.
+	 */
+	private static String buildItems( int count )
+	{
+		StringBuilder buf = new StringBuilder();
+		for ( int i = 0; i < count; i++ ) {
+			buf.append( i % 7 == 0 ? "[[item\n]], " : "-- comment\n" + i + ", " );
+		}
+		return buf.toString();
+	}
+
+	private static LuaValue compile( String text ) throws IOException
+	{
+		return LuaLoader.minimal().load( new StringReader( "return " + text ), "test" ).returnValue;
+	}
+
+	/**
+	 * Returns a value's contents as a string, tables' entries in iteration order.
+	 */
+	private static String describe( LuaValue value )
+	{
+		if ( !value.istable() ) {
+			return value.typename() + ":" + value.tojstring();
+		}
+
+		StringBuilder buf = new StringBuilder( "{" );
+		LuaValue key = LuaValue.NIL;
+		while ( true ) {
+			Varargs next = value.next( key );
+			key = next.arg1();
+			if ( key.isnil() ) break;
+			buf.append( describe( key ) ).append( "=" ).append( describe( next.arg( 2 ) ) ).append( "," );
+		}
+		return buf.append( "}" ).toString();
+	}
+
+
+	/**
+	 * A Reader that hands out a few chars at a time.
+	 */
+	private static class TrickleReader extends Reader
+	{
+		private final Reader reader;
+		private final Random random;
+
+
+		public TrickleReader( String text, Random random )
+		{
+			this.reader = new StringReader( text );
+			this.random = random;
+		}
+
+		@Override
+		public int read( char[] cbuf, int off, int len ) throws IOException
+		{
+			return reader.read( cbuf, off, Math.min( len, 1 + random.nextInt( 3 ) ) );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			reader.close();
+		}
+	}
+}
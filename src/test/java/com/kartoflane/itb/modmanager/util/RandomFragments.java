@@ -0,0 +1,56 @@
+package com.kartoflane.itb.modmanager.util;
+
+import java.util.Random;
+
+
+/**
+ * Builds random strings out of fragments, for tests that compare a
+ * rewritten parser against the implementation it replaced.
+ *
+ * Fragments should be biased toward whatever the code under test treats
+ * specially; the random part only finds combinations nobody thought to
+ * list. Seeds are fixed, so a failure reproduces.
+ */
+public final class RandomFragments
+{
+	/**
+	 * Strings checked per test. Enough to mix every fragment with every
+	 * other a few times over, without slowing down the build.
+	 */
+	public static final int COUNT = 3000;
+
+
+	private RandomFragments()
+	{
+	}
+
+	/**
+	 * Returns up to maxFragments fragments, picked at random and joined.
+	 */
+	public static String build( Random random, String[] fragments, int maxFragments )
+	{
+		StringBuilder buf = new StringBuilder();
+		int count = random.nextInt( maxFragments + 1 );
+		for ( int i = 0; i < count; i++ ) {
+			buf.append( fragments[random.nextInt( fragments.length )] );
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns a string with control and non-ASCII chars escaped, for assertion messages.
+	 */
+	public static String escape( String s )
+	{
+		StringBuilder buf = new StringBuilder();
+		for ( char c : s.toCharArray() ) {
+			if ( c < 0x20 || c > 0x7E ) {
+				buf.append( String.format( "\\u%04x", (int)c ) );
+			}
+			else {
+				buf.append( c );
+			}
+		}
+		return buf.toString();
+	}
+}
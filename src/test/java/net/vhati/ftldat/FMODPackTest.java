@@ -0,0 +1,282 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Replaces a sample in a small synthetic bank, and checks the rebuilt layout.
+ *
+ * The bank is RIFF("FEV ") { "FMT ", LIST("TEST") { "SND " }, "TAIL" },
+ * where SND holds 8 bytes of padding, a three-sample FSB5, and one trailing
+ * byte, giving the chunk an odd size.
+ */
+public class FMODPackTest
+{
+	private static final long CODEC = 15;
+	private static final int SND_LEAD = 8;
+	private static final int FSB5_HEADER_SIZE = 60;
+
+	private static final String[] NAMES = new String[] { "a", "bb", "ccc" };
+
+	/** Bits of a sample mode besides the data offset, which must survive a repack. */
+	private static final long[] MODE_BITS = new long[] {
+		( 1234L << 34 ) | ( 9 << 1 ) | 1,  // Has an extra chunk.
+		( 5678L << 34 ) | ( 8 << 1 ),
+		( 42L << 34 ) | ( 1 << 5 ) | ( 9 << 1 )
+	};
+	private static final byte[] EXTRA_CHUNK = new byte[] { 2 << 1, 0, 0, 0, 7, 7 };
+
+	private File tempDir;
+	private File bankFile;
+	private byte[][] samples;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tempDir = Files.createTempDirectory( "fmodpack." ).toFile();
+		bankFile = new File( tempDir, "sfx.bank" );
+
+		// Data regions as read back include the alignment padding after each sample.
+		samples = new byte[][] { filled( 64, 40, 1 ), filled( 32, 17, 2 ), filled( 64, 33, 3 ) };
+		Files.write( bankFile.toPath(), buildBank( samples ) );
+	}
+
+	@After
+	public void tearDown()
+	{
+		for ( File f : tempDir.listFiles() ) {
+			f.delete();
+		}
+		tempDir.delete();
+	}
+
+	@Test
+	public void testReplaceSampleAndRepack() throws IOException
+	{
+		byte[] replacement = filled( 50, 50, 9 );
+
+		try ( FMODPack pack = new FMODPack( bankFile, "r+" ) ) {
+			assertTrue( Arrays.equals( samples[1], readSample( pack, "bb" ) ) );
+
+			pack.replaceSample( "bb", new ByteArrayInputStream( buildFsb5( new long[] { 3 << 1 }, new byte[][] { replacement }, new String[] { "x" }, false ) ) );
+			assertTrue( Arrays.equals( replacement, readSample( pack, "bb" ) ) );
+
+			pack.repack();
+		}
+		assertFalse( new File( tempDir, bankFile.getName() + ".new" ).exists() );
+
+		// Sample data at 0, 64 (50 bytes, aligned up to 128), then 128.
+		long[] expectedOffsets = new long[] { 0, 64, 128 };
+		long dataSize = 192;
+
+		try ( FMODPack pack = new FMODPack( bankFile, "r" ) ) {
+			assertEquals( Arrays.asList( NAMES ), pack.list() );
+
+			assertTrue( Arrays.equals( samples[0], readSample( pack, "a" ) ) );
+			assertTrue( Arrays.equals( Arrays.copyOf( replacement, 64 ), readSample( pack, "bb" ) ) );
+			assertTrue( Arrays.equals( samples[2], readSample( pack, "ccc" ) ) );
+
+			List<FMODPack.SampleEntry> entries = pack.listMetadata();
+			long[] expectedModeBits = new long[] { MODE_BITS[0], 3 << 1, MODE_BITS[2] };
+			for ( int i = 0; i < entries.size(); i++ ) {
+				long mode = entries.get( i ).mode;
+				assertEquals( expectedOffsets[i] / 16, ( mode >>> 6 ) & 0x0FFFFFFFL );
+				assertEquals( expectedModeBits[i], mode & ~( 0x0FFFFFFFL << 6 ) );
+			}
+			assertTrue( Arrays.equals( EXTRA_CHUNK, entries.get( 0 ).extraChunks ) );
+			assertEquals( 0, entries.get( 1 ).extraChunks.length );
+		}
+
+		ByteBuffer bank = ByteBuffer.wrap( Files.readAllBytes( bankFile.toPath() ) ).order( ByteOrder.LITTLE_ENDIAN );
+		int fsbSize = FSB5_HEADER_SIZE + sampleHeadersSize() + nameTable( NAMES ).length + (int)dataSize;
+		int sndSize = SND_LEAD + fsbSize + 1;
+
+		int fmtOffset = 12;
+		int listOffset = fmtOffset + 8 + 4;
+		int sndOffset = listOffset + 12;
+		int tailOffset = sndOffset + 8 + sndSize + 1;
+
+		assertEquals( "RIFF", chunkId( bank, 0 ) );
+		assertEquals( bank.capacity() - 8, bank.getInt( 4 ) );
+		assertEquals( "LIST", chunkId( bank, listOffset ) );
+		assertEquals( 4 + 8 + sndSize + 1, bank.getInt( listOffset + 4 ) );
+		assertEquals( "SND ", chunkId( bank, sndOffset ) );
+		assertEquals( sndSize, bank.getInt( sndOffset + 4 ) );
+
+		int fsbOffset = sndOffset + 8 + SND_LEAD;
+		assertEquals( "FSB5", chunkId( bank, fsbOffset ) );
+		assertEquals( (int)dataSize, bank.getInt( fsbOffset + 20 ) );
+		assertEquals( (byte)0x55, bank.get( fsbOffset + fsbSize ) );  // The trailing byte.
+		assertEquals( (byte)0, bank.get( fsbOffset + fsbSize + 1 ) );  // Its padding.
+
+		assertEquals( "TAIL", chunkId( bank, tailOffset ) );
+		assertEquals( 3, bank.getInt( tailOffset + 4 ) );
+		assertEquals( tailOffset + 8 + 3 + 1, bank.capacity() );
+	}
+
+	@Test
+	public void testFailedRepackKeepsPack() throws IOException
+	{
+		byte[] original = Files.readAllBytes( bankFile.toPath() );
+
+		try ( FMODPack pack = new FMODPack( bankFile, "r+" ) ) {
+			pack.replaceSample( "bb", new ByteArrayInputStream( buildFsb5( new long[] { 3 << 1 }, new byte[][] { filled( 50, 50, 9 ) }, new String[] { "x" }, false ) ) );
+
+			// Pull the staged replacement out from under the pack.
+			for ( File f : tempDir.listFiles() ) {
+				if ( f.getName().endsWith( ".tmp" ) ) f.delete();
+			}
+
+			try {
+				pack.repack();
+				fail( "Expected repack() to fail without the staged sample" );
+			}
+			catch ( IOException e ) {
+				// Expected.
+			}
+			assertFalse( new File( tempDir, bankFile.getName() + ".new" ).exists() );
+
+			assertTrue( Arrays.equals( samples[0], readSample( pack, "a" ) ) );
+		}
+		assertTrue( Arrays.equals( original, Files.readAllBytes( bankFile.toPath() ) ) );
+	}
+
+
+	private static byte[] readSample( FMODPack pack, String innerPath ) throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try ( InputStream is = pack.getInputStream( innerPath ) ) {
+			byte[] buf = new byte[16];
+			int len;
+			while ( ( len = is.read( buf ) ) >= 0 ) {
+				os.write( buf, 0, len );
+			}
+		}
+		return os.toByteArray();
+	}
+
+	private static String chunkId( ByteBuffer buf, int offset )
+	{
+		return new String( buf.array(), offset, 4, StandardCharsets.US_ASCII );
+	}
+
+	/**
+	 * Returns a buffer whose first count bytes are non-zero.
+	 */
+	private static byte[] filled( int length, int count, int seed )
+	{
+		byte[] result = new byte[length];
+		for ( int i = 0; i < count; i++ ) {
+			result[i] = (byte)( seed * 31 + i + 1 );
+			if ( result[i] == 0 ) result[i] = 1;
+		}
+		return result;
+	}
+
+	private static int sampleHeadersSize()
+	{
+		return 8 * NAMES.length + EXTRA_CHUNK.length;
+	}
+
+	private static byte[] nameTable( String[] names )
+	{
+		ByteArrayOutputStream strings = new ByteArrayOutputStream();
+		ByteBuffer offsets = ByteBuffer.allocate( names.length * 4 ).order( ByteOrder.LITTLE_ENDIAN );
+		for ( String name : names ) {
+			offsets.putInt( offsets.capacity() + strings.size() );
+			byte[] nameBytes = name.getBytes( StandardCharsets.US_ASCII );
+			strings.write( nameBytes, 0, nameBytes.length );
+			strings.write( 0 );
+		}
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		result.write( offsets.array(), 0, offsets.capacity() );
+		byte[] stringBytes = strings.toByteArray();
+		result.write( stringBytes, 0, stringBytes.length );
+		return result.toByteArray();
+	}
+
+	/**
+	 * Builds an FSB5, with samples stored back to back (callers pre-pad them).
+	 */
+	private static byte[] buildFsb5( long[] modeBits, byte[][] sampleData, String[] names, boolean withExtraChunk )
+	{
+		byte[] nameBytes = nameTable( names );
+		int headersSize = 8 * sampleData.length + ( withExtraChunk ? EXTRA_CHUNK.length : 0 );
+		int dataSize = 0;
+		for ( byte[] data : sampleData ) {
+			dataSize += data.length;
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate( FSB5_HEADER_SIZE + headersSize + nameBytes.length + dataSize ).order( ByteOrder.LITTLE_ENDIAN );
+		buf.put( "FSB5".getBytes( StandardCharsets.US_ASCII ) );
+		buf.putInt( 1 );  // Version.
+		buf.putInt( sampleData.length );
+		buf.putInt( headersSize );
+		buf.putInt( nameBytes.length );
+		buf.putInt( dataSize );
+		buf.putInt( (int)CODEC );
+		buf.position( FSB5_HEADER_SIZE );
+
+		long dataOffset = 0;
+		for ( int i = 0; i < sampleData.length; i++ ) {
+			buf.putLong( modeBits[i] | ( ( dataOffset / 16 ) << 6 ) );
+			if ( withExtraChunk && ( modeBits[i] & 1 ) != 0 ) buf.put( EXTRA_CHUNK );
+			dataOffset += sampleData[i].length;
+		}
+		buf.put( nameBytes );
+		for ( byte[] data : sampleData ) {
+			buf.put( data );
+		}
+		return buf.array();
+	}
+
+	private static byte[] buildBank( byte[][] sampleData )
+	{
+		byte[] fsb = buildFsb5( MODE_BITS, sampleData, NAMES, true );
+		int sndSize = SND_LEAD + fsb.length + 1;
+
+		ByteBuffer snd = ByteBuffer.allocate( 8 + sndSize + 1 ).order( ByteOrder.LITTLE_ENDIAN );
+		snd.put( "SND ".getBytes( StandardCharsets.US_ASCII ) );
+		snd.putInt( sndSize );
+		snd.position( 8 + SND_LEAD );
+		snd.put( fsb );
+		snd.put( (byte)0x55 );  // Trailing byte; the pad byte after it stays 0.
+
+		ByteBuffer riff = ByteBuffer.allocate( 12 + 12 + 12 + snd.capacity() + 12 ).order( ByteOrder.LITTLE_ENDIAN );
+		riff.put( "RIFF".getBytes( StandardCharsets.US_ASCII ) );
+		riff.putInt( riff.capacity() - 8 );
+		riff.put( "FEV ".getBytes( StandardCharsets.US_ASCII ) );
+		riff.put( "FMT ".getBytes( StandardCharsets.US_ASCII ) );
+		riff.putInt( 4 );
+		riff.putInt( 0x11223344 );
+		riff.put( "LIST".getBytes( StandardCharsets.US_ASCII ) );
+		riff.putInt( 4 + snd.capacity() );
+		riff.put( "TEST".getBytes( StandardCharsets.US_ASCII ) );
+		riff.put( snd.array() );
+		riff.put( "TAIL".getBytes( StandardCharsets.US_ASCII ) );
+		riff.putInt( 3 );
+		riff.put( new byte[] { 1, 2, 3, 0 } );
+		return riff.array();
+	}
+}
@@ -0,0 +1,136 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks that FolderPack's index agrees with the disk.
+ */
+public class FolderPackTest
+{
+	private File tempDir;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tempDir = Files.createTempDirectory( "folderpack." ).toFile();
+		Files.createDirectories( tempDir.toPath().resolve( "data" ) );
+		Files.write( tempDir.toPath().resolve( "data/a.txt" ), new byte[] { 1, 2, 3 } );
+	}
+
+	@After
+	public void tearDown()
+	{
+		deleteTree( tempDir );
+	}
+
+	private static void deleteTree( File f )
+	{
+		// Don't descend into symlinks; delete the link itself.
+		if ( f.isDirectory() && !Files.isSymbolicLink( f.toPath() ) ) {
+			for ( File child : f.listFiles() ) {
+				deleteTree( child );
+			}
+		}
+		f.delete();
+	}
+
+	@Test
+	public void testAddExistingOnDiskThrows() throws IOException
+	{
+		FolderPack pack = new FolderPack( tempDir );
+		pack.list();  // Build the index first.
+
+		// Appears after indexing, behind the pack's back.
+		Files.write( tempDir.toPath().resolve( "data/b.txt" ), new byte[] { 4 } );
+
+		try {
+			pack.add( "data/b.txt", new ByteArrayInputStream( new byte[] { 5 } ) );
+			fail( "Expected add() to refuse an existing file" );
+		}
+		catch ( IOException e ) {
+			// Expected.
+		}
+		assertTrue( pack.contains( "data/b.txt" ) );
+		assertEquals( 1L, Files.size( tempDir.toPath().resolve( "data/b.txt" ) ) );
+	}
+
+	@Test
+	public void testOtherCaseFollowsFilesystem() throws IOException
+	{
+		FolderPack pack = new FolderPack( tempDir );
+
+		Path upperPath = tempDir.toPath().resolve( "data/A.txt" );
+		boolean caseInsensitive = Files.exists( upperPath );
+
+		assertEquals( caseInsensitive, pack.contains( "data/A.txt" ) );
+
+		if ( caseInsensitive ) {
+			try {
+				pack.add( "data/A.txt", new ByteArrayInputStream( new byte[] { 9 } ) );
+				fail( "Expected add() to refuse the same file in another case" );
+			}
+			catch ( IOException e ) {
+				// Expected.
+			}
+
+			pack.remove( "data/A.txt" );
+			assertFalse( pack.contains( "data/a.txt" ) );
+			assertFalse( pack.list().contains( "data/a.txt" ) );
+		}
+		else {
+			pack.add( "data/A.txt", new ByteArrayInputStream( new byte[] { 9 } ) );
+			assertTrue( pack.contains( "data/a.txt" ) );
+			assertTrue( pack.contains( "data/A.txt" ) );
+
+			pack.remove( "data/A.txt" );
+			assertTrue( pack.contains( "data/a.txt" ) );
+			assertFalse( pack.contains( "data/A.txt" ) );
+		}
+	}
+
+	@Test
+	public void testSymlinksAreFollowed() throws IOException
+	{
+		File outsideDir = Files.createTempDirectory( "folderpack.outside." ).toFile();
+		try {
+			Files.write( outsideDir.toPath().resolve( "c.txt" ), new byte[] { 7, 7 } );
+			try {
+				Files.createSymbolicLink( tempDir.toPath().resolve( "data/c.txt" ), outsideDir.toPath().resolve( "c.txt" ) );
+				Files.createSymbolicLink( tempDir.toPath().resolve( "linked" ), outsideDir.toPath() );
+				Files.createSymbolicLink( tempDir.toPath().resolve( "data/loop" ), tempDir.toPath().resolve( "data" ) );
+			}
+			catch ( UnsupportedOperationException | IOException e ) {
+				return;  // No symlinks here (eg. Windows without privileges).
+			}
+
+			FolderPack pack = new FolderPack( tempDir );
+			List<String> innerPaths = new ArrayList<>( pack.list() );
+			Collections.sort( innerPaths );
+
+			// The loop is skipped, not walked forever.
+			assertEquals( "[data/a.txt, data/c.txt, linked/c.txt]", innerPaths.toString() );
+			assertTrue( pack.contains( "data/c.txt" ) );
+		}
+		finally {
+			deleteTree( outsideDir );
+		}
+	}
+}
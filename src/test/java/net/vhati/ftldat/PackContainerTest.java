@@ -0,0 +1,81 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.kartoflane.itb.modmanager.util.RandomFragments;
+
+
+/**
+ * Checks PackContainer's innerPath tokenizer against the regex it replaced.
+ */
+public class PackContainerTest
+{
+	/** Groups: parentPath, root, fileName, extension. */
+	private static final Pattern OLD_PATH_PTN = Pattern.compile( "^(?:(([^/]+/)(?:.*/)?))?([^./]+\\.([^/]+))$" );
+
+	private static final String[] FRAGMENTS = {
+		"a", "b", "Z", "0", "_", " ", ".", "..", "/", "//",
+		"\n", "\r", "\u0085", " ", " ",
+		"img/", "data/", "scripts/", ".png", ".xml.append", ".lua", "file"
+	};
+
+
+	@Test
+	public void testKnownPaths()
+	{
+		String[] paths = {
+			// Empty, bare and dotted names, where the regex needs a dot after at least one char.
+			"", "/", "a", "a.", ".a", "a.b", "a.b.c",
+			// Roots, and paths that start or end with a slash.
+			"img/a.png", "img/sub/a.png", "/img/a.png", "img/", "a/b/c/d.e",
+			// Empty segments, and names that start with or double a dot.
+			"img//a.png", "img/.png", "img/a..png",
+			// Newlines, which "." in the regex doesn't match.
+			"img/s\nub/a.png", "im\ng/a.png", "img/a.p\nng"
+		};
+		for ( String path : paths ) {
+			assertMatchesOldPattern( path );
+		}
+	}
+
+	@Test
+	public void testRandomPaths()
+	{
+		Random random = new Random( 33 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			assertMatchesOldPattern( RandomFragments.build( random, FRAGMENTS, 7 ) );
+		}
+	}
+
+	/**
+	 * The patch loop skips paths that don't parse, or have no extension,
+	 * which is where the regex didn't match.
+	 */
+	private void assertMatchesOldPattern( String innerPath )
+	{
+		String desc = "parsePath( \"" + RandomFragments.escape( innerPath ) + "\" )";
+
+		Matcher m = OLD_PATH_PTN.matcher( innerPath );
+		PackContainer.ParsedPath parsedPath = PackContainer.parsePath( innerPath );
+		boolean accepted = parsedPath != null && parsedPath.extension != null;
+
+		assertEquals( desc, m.matches(), accepted );
+		if ( !accepted ) return;
+
+		assertNotNull( desc, parsedPath );
+		assertEquals( desc + ".parentPath", m.group( 1 ), parsedPath.parentPath );
+		assertEquals( desc + ".root", m.group( 2 ), parsedPath.root );
+		assertEquals( desc + ".fileName", m.group( 3 ), parsedPath.fileName );
+		assertEquals( desc + ".extension", m.group( 4 ), parsedPath.extension );
+		assertTrue( desc, innerPath == parsedPath.innerPath );
+	}
+}
@@ -0,0 +1,157 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks that PackConverter copies every entry intact, and refuses to
+ * overwrite its own source.
+ */
+public class PackConverterTest
+{
+	private File tempDir;
+	private File srcFile;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tempDir = Files.createTempDirectory( "packconverter." ).toFile();
+		srcFile = new File( tempDir, "resource.dat" );
+
+		try ( PkgPack pack = new PkgPack( srcFile, "w+" ) ) {
+			pack.add( "img/a.png", new ByteArrayInputStream( new byte[] { 1, 2, 3 } ) );
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		for ( File f : tempDir.listFiles() ) {
+			f.delete();
+		}
+		tempDir.delete();
+	}
+
+	@Test
+	public void testConvertIntoItself() throws IOException
+	{
+		byte[] originalBytes = Files.readAllBytes( srcFile.toPath() );
+
+		// The same file, spelled differently.
+		File dstFile = new File( new File( tempDir, "." ), srcFile.getName() );
+
+		PackConverter converter = new PackConverter( srcFile, dstFile, PackConverter.Format.FTL );
+		try {
+			converter.convert();
+			fail( "Converting a dat into itself should have failed" );
+		}
+		catch ( IOException e ) {
+			// Expected.
+		}
+
+		assertTrue( Arrays.equals( originalBytes, Files.readAllBytes( srcFile.toPath() ) ) );
+	}
+
+	@Test
+	public void testConvert() throws IOException
+	{
+		File dstFile = new File( tempDir, "converted.dat" );
+
+		int count = new PackConverter( srcFile, dstFile, PackConverter.Format.FTL ).convert();
+		assertEquals( 1, count );
+
+		try ( FTLPack pack = new FTLPack( dstFile, "r" ) ) {
+			assertEquals( 1, pack.list().size() );
+		}
+	}
+
+	@Test
+	public void testRoundTripCompressedInParallel() throws IOException
+	{
+		// More entries than the converter keeps in flight, in varied sizes.
+		Random random = new Random( 45 );
+		Map<String, byte[]> expected = new LinkedHashMap<>();
+		for ( int i = 0; i < 40; i++ ) {
+			byte[] data;
+			if ( i % 4 == 0 ) {
+				data = new byte[i == 0 ? 0 : 1 + random.nextInt( 300 )];  // Zeros, and one empty file.
+			}
+			else if ( i % 4 == 1 ) {
+				data = new byte[100000 + random.nextInt( 200000 )];  // Larger than the copy buffer.
+				for ( int j = 0; j < data.length; j++ ) {
+					data[j] = (byte)( j % 61 );
+				}
+			}
+			else {
+				data = new byte[random.nextInt( 5000 )];  // Incompressible.
+				random.nextBytes( data );
+			}
+			expected.put( String.format( "img/dir%d/file%d.png", i % 3, i ), data );
+		}
+
+		File ftlFile = new File( tempDir, "original.dat" );
+		try ( FTLPack pack = new FTLPack( ftlFile, "w+" ) ) {
+			for ( Map.Entry<String, byte[]> entry : expected.entrySet() ) {
+				pack.add( entry.getKey(), new ByteArrayInputStream( entry.getValue() ) );
+			}
+		}
+
+		File pkgFile = new File( tempDir, "compressed.dat" );
+		PackConverter toPkg = new PackConverter( ftlFile, pkgFile, PackConverter.Format.PKG );
+		toPkg.setCompress( true );
+		toPkg.setThreadCount( 3 );
+		assertEquals( expected.size(), toPkg.convert() );
+
+		try ( PkgPack pack = new PkgPack( pkgFile, "r" ) ) {
+			assertEntriesEqual( expected, pack );
+
+			int deflatedCount = 0;
+			for ( PkgPack.PkgEntry entry : pack.listMetadata() ) {
+				if ( entry != null && entry.dataDeflated ) deflatedCount++;
+			}
+			assertTrue( deflatedCount > 0 );
+		}
+
+		File roundTripFile = new File( tempDir, "roundtrip.dat" );
+		assertEquals( expected.size(), new PackConverter( pkgFile, roundTripFile, PackConverter.Format.FTL ).convert() );
+
+		try ( FTLPack pack = new FTLPack( roundTripFile, "r" ) ) {
+			assertEntriesEqual( expected, pack );
+		}
+	}
+
+	private static void assertEntriesEqual( Map<String, byte[]> expected, AbstractPack pack ) throws IOException
+	{
+		assertEquals( expected.size(), pack.list().size() );
+
+		for ( Map.Entry<String, byte[]> entry : expected.entrySet() ) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try ( InputStream is = pack.getInputStream( entry.getKey() ) ) {
+				byte[] buf = new byte[8192];
+				int len;
+				while ( ( len = is.read( buf ) ) >= 0 ) {
+					bytes.write( buf, 0, len );
+				}
+			}
+			assertTrue( entry.getKey(), Arrays.equals( entry.getValue(), bytes.toByteArray() ) );
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks that PackJournal rolls a dat back, and never replays a record that
+ * didn't reach the disk intact.
+ */
+public class PackJournalTest
+{
+	private File tempDir;
+	private File datFile;
+	private File journalFile;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		tempDir = Files.createTempDirectory( "packjournal." ).toFile();
+		datFile = new File( tempDir, "resource.dat" );
+		journalFile = PackJournal.getJournalFile( datFile );
+
+		byte[] bytes = new byte[1000];
+		for ( int i = 0; i < bytes.length; i++ ) {
+			bytes[i] = (byte)i;
+		}
+		Files.write( datFile.toPath(), bytes );
+	}
+
+	@After
+	public void tearDown()
+	{
+		for ( File f : tempDir.listFiles() ) {
+			f.delete();
+		}
+		tempDir.delete();
+	}
+
+	@Test
+	public void testRecover() throws IOException
+	{
+		byte[] original = Files.readAllBytes( datFile.toPath() );
+
+		try ( RandomAccessFile raf = new RandomAccessFile( datFile, "rw" ) ) {
+			PackJournal journal = new PackJournal( datFile, raf.getChannel() );
+			journal.recordRegion( 100, 50 );
+			journal.recordRegion( 900, 100 );
+
+			raf.seek( 100 );
+			raf.write( new byte[50] );
+			raf.setLength( 950 );
+			raf.seek( 950 );
+			raf.write( new byte[200] );  // Appended past the original length.
+			journal.close();  // Interrupted.
+
+			assertTrue( PackJournal.recover( datFile, raf ) );
+		}
+
+		assertTrue( Arrays.equals( original, Files.readAllBytes( datFile.toPath() ) ) );
+		assertFalse( journalFile.exists() );
+	}
+
+	@Test
+	public void testUnflushedRecordIsSkipped() throws IOException
+	{
+		byte[] original = Files.readAllBytes( datFile.toPath() );
+
+		try ( RandomAccessFile raf = new RandomAccessFile( datFile, "rw" ) ) {
+			PackJournal journal = new PackJournal( datFile, raf.getChannel() );
+			journal.recordRegion( 100, 50 );
+			long secondRecordStart = journalFile.length();
+			journal.recordRegion( 300, 50 );
+			journal.close();
+
+			// The second record's length made it to disk, but its bytes didn't.
+			try ( RandomAccessFile journalRaf = new RandomAccessFile( journalFile, "rw" ) ) {
+				journalRaf.seek( secondRecordStart + 8 + 8 );
+				journalRaf.write( new byte[50] );
+			}
+
+			// Only the first region had been overwritten.
+			raf.seek( 100 );
+			raf.write( new byte[50] );
+
+			assertTrue( PackJournal.recover( datFile, raf ) );
+		}
+
+		assertTrue( Arrays.equals( original, Files.readAllBytes( datFile.toPath() ) ) );
+	}
+
+	@Test
+	public void testReadOnlyOpenRecovers() throws IOException
+	{
+		try ( FTLPack pack = new FTLPack( datFile, "w+" ) ) {
+			pack.add( "img/a.png", new ByteArrayInputStream( new byte[] { 1, 2, 3 } ) );
+		}
+		byte[] original = Files.readAllBytes( datFile.toPath() );
+
+		try ( RandomAccessFile raf = new RandomAccessFile( datFile, "rw" ) ) {
+			PackJournal journal = new PackJournal( datFile, raf.getChannel() );
+			journal.recordRegion( 0, raf.length() );
+			raf.seek( 0 );
+			raf.write( new byte[(int)raf.length()] );
+			journal.close();
+		}
+
+		try ( FTLPack pack = new FTLPack( datFile, "r" ) ) {
+			assertEquals( Arrays.asList( "img/a.png" ), pack.list() );
+		}
+		assertTrue( Arrays.equals( original, Files.readAllBytes( datFile.toPath() ) ) );
+	}
+
+	@Test
+	public void testCreateDiscardsStaleJournal() throws IOException
+	{
+		try ( RandomAccessFile raf = new RandomAccessFile( datFile, "rw" ) ) {
+			new PackJournal( datFile, raf.getChannel() ).recordRegion( 0, 100 );
+		}
+		assertTrue( journalFile.exists() );
+
+		try ( FTLPack pack = new FTLPack( datFile, "w+" ) ) {
+			pack.add( "img/a.png", new ByteArrayInputStream( new byte[] { 1, 2, 3 } ) );
+		}
+		assertFalse( journalFile.exists() );
+
+		try ( FTLPack pack = new FTLPack( datFile, "r+" ) ) {
+			assertEquals( Arrays.asList( "img/a.png" ), pack.list() );
+		}
+	}
+}
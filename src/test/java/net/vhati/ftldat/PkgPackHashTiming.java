@@ -0,0 +1,178 @@
+package net.vhati.ftldat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Times PkgPack's path hashing and innerPath comparison against what they
+ * replaced.
+ *
+ * Not a unit test (the name keeps surefire from running it). Run it by hand,
+ * after "mvn test-compile":
+ *
+ *   java -cp target/classes:target/test-classes net.vhati.ftldat.PkgPackHashTiming [pathCount]
+ *
+ * Paths are shaped like the game's (20000 by default), and each round hashes
+ * or compares all of them. Hashes are checked against the old implementation
+ * along the way, so a fast but wrong result can't go unnoticed.
+ */
+public class PkgPackHashTiming
+{
+	private static final int DEFAULT_PATH_COUNT = 20000;
+
+	/** Rounds take well under a millisecond, so many are needed for the JIT to settle. */
+	private static final int WARMUP_ROUNDS = 200;
+	private static final int TIMED_ROUNDS = 101;
+
+	private static final String[] DIRS = {
+		"img/units/player/", "img/units/aliens/", "img/effects/", "img/combat/icons/", "img/weapons/",
+		"img/ui/", "scripts/", "scripts/missions/", "maps/", "fonts/", "sounds/"
+	};
+	private static final String[] NAMES = {
+		"Mech_Punch", "MechTank", "Firefly", "Hornet", "Scarab", "explo_fire", "icon_Shield",
+		"laser_R", "Prime_Shift", "deployment", "Burrower_Boss", "Spider1"
+	};
+	private static final String[] EXTENSIONS = { ".png", ".lua", ".map", ".xml", ".ogg" };
+
+	/** Keeps results live, so the JIT can't skip the work. */
+	private static volatile long sink = 0;
+
+
+	public static void main( String[] args ) throws IOException
+	{
+		int pathCount = ( args.length > 0 ? Integer.parseInt( args[0] ) : DEFAULT_PATH_COUNT );
+
+		final String[] paths = buildPaths( pathCount );
+
+		// The paths region, as readIndex sees it: null-terminated ASCII.
+		final int[] offsets = new int[paths.length];
+		int regionSize = 0;
+		for ( int i = 0; i < paths.length; i++ ) {
+			offsets[i] = regionSize;
+			regionSize += paths[i].length() + 1;
+		}
+		final byte[] region = new byte[regionSize];
+		for ( int i = 0; i < paths.length; i++ ) {
+			byte[] pathBytes = paths[i].getBytes( StandardCharsets.US_ASCII );
+			System.arraycopy( pathBytes, 0, region, offsets[i], pathBytes.length );
+		}
+		final ByteBuffer directRegion = ByteBuffer.allocateDirect( regionSize );
+		directRegion.put( region );
+
+		File datFile = File.createTempFile( "pkgpack-timing.", ".dat" );
+		try ( PkgPack pack = new PkgPack( datFile, "w+" ) ) {
+			for ( int i = 0; i < paths.length; i++ ) {
+				long expected = PkgPackTest.oldPathHash( paths[i] );
+				if ( pack.calculatePathHash( paths[i] ) != expected
+					|| pack.calculatePathHash( region, offsets[i], paths[i].length() ) != expected
+					|| pack.calculatePathHash( directRegion, offsets[i], paths[i].length() ) != expected ) {
+					throw new IllegalStateException( "Hash mismatch: " + paths[i] );
+				}
+			}
+
+			System.out.println( String.format( "Paths: %d (%d bytes)", paths.length, regionSize ) );
+			TimingRounds.printHeader();
+
+			long oldHashNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( String path : paths ) {
+					acc += PkgPackTest.oldPathHash( path );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+
+			long stringHashNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( String path : paths ) {
+					acc += pack.calculatePathHash( path );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+			TimingRounds.printComparison( "Hash String", oldHashNanos, stringHashNanos );
+
+			// The old readIndex decoded each innerPath and hashed the String.
+			long oldDecodeHashNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( int i = 0; i < paths.length; i++ ) {
+					String path = new String( region, offsets[i], paths[i].length(), StandardCharsets.US_ASCII );
+					acc += PkgPackTest.oldPathHash( path );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+
+			long byteHashNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( int i = 0; i < paths.length; i++ ) {
+					acc += pack.calculatePathHash( region, offsets[i], paths[i].length() );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+			TimingRounds.printComparison( "Hash region (byte[])", oldDecodeHashNanos, byteHashNanos );
+
+			long bufferHashNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( int i = 0; i < paths.length; i++ ) {
+					acc += pack.calculatePathHash( directRegion, offsets[i], paths[i].length() );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+			TimingRounds.printComparison( "Hash region (direct buffer)", oldDecodeHashNanos, bufferHashNanos );
+
+			// Neighbors share long prefixes, which is the expensive case for a comparison.
+			long oldCompareNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( int i = 1; i < paths.length; i++ ) {
+					acc += paths[i - 1].compareToIgnoreCase( paths[i] );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+
+			long compareNanos = TimingRounds.median( WARMUP_ROUNDS, TIMED_ROUNDS, () -> {
+				long start = System.nanoTime();
+				long acc = 0;
+				for ( int i = 1; i < paths.length; i++ ) {
+					acc += PkgPack.compareInnerPaths( paths[i - 1], paths[i] );
+				}
+				sink += acc;
+				return System.nanoTime() - start;
+			} );
+			TimingRounds.printComparison( "Compare innerPaths", oldCompareNanos, compareNanos );
+		}
+		finally {
+			datFile.delete();
+		}
+	}
+
+	/**
+	 * Returns distinct paths, sorted so that neighbors share prefixes.
+	 */
+	private static String[] buildPaths( int count )
+	{
+		List<String> result = new ArrayList<>( count );
+		for ( int i = 0; i < count; i++ ) {
+			String dir = DIRS[i % DIRS.length];
+			String name = NAMES[( i / DIRS.length ) % NAMES.length];
+			String ext = EXTENSIONS[i % EXTENSIONS.length];
+			result.add( String.format( "%s%s_%d%s", dir, name, i, ext ) );
+		}
+		result.sort( String::compareToIgnoreCase );
+		return result.toArray( new String[result.size()] );
+	}
+}
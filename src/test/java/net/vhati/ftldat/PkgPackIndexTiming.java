@@ -0,0 +1,188 @@
+package net.vhati.ftldat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Times reading and writing a large PkgPack index, field by field as it
+ * used to be done, against the bulk transfers that replaced that.
+ *
+ * Not a unit test (the name keeps surefire from running it). Run it by hand,
+ * after "mvn test-compile":
+ *
+ *   java -cp target/classes:target/test-classes net.vhati.ftldat.PkgPackIndexTiming [entryCount]
+ *
+ * A dat with entryCount small entries (50000 by default) is built in one
+ * batch, into an index created large enough for them, so the commit only
+ * writes the index.
+ *
+ * The entry table is then read and written both ways: one 4-byte
+ * RandomAccessFile call per field (five per entry), as readIndex() and
+ * writePkgEntry() did, and one call for the whole table, decoded or encoded
+ * in memory, as they do now. The decoded tables are compared, so both sides
+ * do the same work.
+ *
+ * Finally, the dat is reopened (readIndex) and repacked (writePkgEntries,
+ * and the paths region), for the current code's end-to-end times.
+ */
+public class PkgPackIndexTiming
+{
+	private static final int DEFAULT_ENTRY_COUNT = 50000;
+
+	/** PkgPack's private layout constants. */
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 20;
+	private static final int FIELDS_PER_ENTRY = ENTRY_SIZE / 4;
+
+
+	public static void main( String[] args ) throws IOException
+	{
+		int entryCount = ( args.length > 0 ? Integer.parseInt( args[0] ) : DEFAULT_ENTRY_COUNT );
+
+		File datFile = File.createTempFile( "pkgpack-timing.", ".dat" );
+		File scratchFile = File.createTempFile( "pkgpack-timing.", ".scratch" );
+		try {
+			System.out.println( String.format( "Entries: %d", entryCount ) );
+			buildDat( datFile, entryCount );
+			System.out.println( String.format( "Dat size: %d bytes", datFile.length() ) );
+			System.out.println();
+
+			final long[] fieldTable = new long[entryCount * FIELDS_PER_ENTRY];
+			final long[] bulkTable = new long[entryCount * FIELDS_PER_ENTRY];
+
+			TimingRounds.printHeader();
+			try (
+				RandomAccessFile datRaf = new RandomAccessFile( datFile, "r" );
+				RandomAccessFile scratchRaf = new RandomAccessFile( scratchFile, "rw" )
+			) {
+				long fieldReadNanos = TimingRounds.median( () -> readFieldByField( datRaf, fieldTable ) );
+				long bulkReadNanos = TimingRounds.median( () -> readInBulk( datRaf, bulkTable ) );
+				if ( !Arrays.equals( fieldTable, bulkTable ) ) {
+					throw new IllegalStateException( "The two reads decoded different tables" );
+				}
+				TimingRounds.printComparison( "Read entry table", fieldReadNanos, bulkReadNanos );
+
+				long fieldWriteNanos = TimingRounds.median( () -> writeFieldByField( scratchRaf, bulkTable ) );
+				long bulkWriteNanos = TimingRounds.median( () -> writeInBulk( scratchRaf, bulkTable ) );
+				TimingRounds.printComparison( "Write entry table", fieldWriteNanos, bulkWriteNanos );
+			}
+			System.out.println();
+
+			long openNanos = TimingRounds.median( () -> {
+				long start = System.nanoTime();
+				PkgPack pack = new PkgPack( datFile, "r" );
+				long result = System.nanoTime() - start;
+				pack.close();
+				return result;
+			} );
+
+			long repackNanos = TimingRounds.median( () -> {
+				try ( PkgPack pack = new PkgPack( datFile, "r+" ) ) {
+					long start = System.nanoTime();
+					pack.repack();
+					return System.nanoTime() - start;
+				}
+			} );
+
+			System.out.println( String.format( "Open (readIndex):    %8.2f ms (median of %d)", openNanos / 1e6, TimingRounds.DEFAULT_TIMED_ROUNDS ) );
+			System.out.println( String.format( "Repack (index only): %8.2f ms (median of %d)", repackNanos / 1e6, TimingRounds.DEFAULT_TIMED_ROUNDS ) );
+		}
+		finally {
+			datFile.delete();
+			scratchFile.delete();
+		}
+	}
+
+	/**
+	 * Reads the entry table as readIndex() used to: a 4-byte read per field.
+	 */
+	private static long readFieldByField( RandomAccessFile raf, long[] table ) throws IOException
+	{
+		long start = System.nanoTime();
+		ByteBuffer smallBuf = ByteBuffer.allocate( 4 );
+		raf.seek( HEADER_SIZE );
+		for ( int i = 0; i < table.length; i++ ) {
+			raf.readFully( smallBuf.array(), 0, 4 );
+			table[i] = smallBuf.getInt( 0 ) & 0x00000000FFFFFFFFL;
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Reads the entry table as readIndex() does now: one read, decoded in memory.
+	 */
+	private static long readInBulk( RandomAccessFile raf, long[] table ) throws IOException
+	{
+		long start = System.nanoTime();
+		ByteBuffer buf = ByteBuffer.allocate( table.length * 4 );
+		raf.seek( HEADER_SIZE );
+		raf.readFully( buf.array(), 0, buf.capacity() );
+		for ( int i = 0; i < table.length; i++ ) {
+			table[i] = buf.getInt() & 0x00000000FFFFFFFFL;
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Writes the entry table as writePkgEntry() used to: a 4-byte write per field.
+	 */
+	private static long writeFieldByField( RandomAccessFile raf, long[] table ) throws IOException
+	{
+		long start = System.nanoTime();
+		ByteBuffer smallBuf = ByteBuffer.allocate( 4 );
+		raf.seek( HEADER_SIZE );
+		for ( int i = 0; i < table.length; i++ ) {
+			smallBuf.putInt( 0, (int)table[i] );
+			raf.write( smallBuf.array(), 0, 4 );
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Writes the entry table as writePkgEntries() does now: encoded in memory, one write.
+	 */
+	private static long writeInBulk( RandomAccessFile raf, long[] table ) throws IOException
+	{
+		long start = System.nanoTime();
+		ByteBuffer buf = ByteBuffer.allocate( table.length * 4 );
+		for ( int i = 0; i < table.length; i++ ) {
+			buf.putInt( (int)table[i] );
+		}
+		raf.seek( HEADER_SIZE );
+		raf.write( buf.array(), 0, buf.position() );
+		return System.nanoTime() - start;
+	}
+
+	private static void buildDat( File datFile, int entryCount ) throws IOException
+	{
+		String pathFormat = "img/units/player/Mech_%06d.png";
+		int pathsRegionSize = entryCount * ( String.format( pathFormat, 0 ).length() + 1 );
+		byte[] data = new byte[256];
+
+		PkgPack pack = new PkgPack( datFile, "w+", entryCount, pathsRegionSize );
+		try {
+			long start = System.nanoTime();
+			pack.beginBatch();
+			for ( int i = 0; i < entryCount; i++ ) {
+				// Sizes vary, as real files' would.
+				pack.add( String.format( pathFormat, i ), new ByteArrayInputStream( data, 0, 1 + i % data.length ) );
+			}
+			long addNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			pack.commit( false );
+			long commitNanos = System.nanoTime() - start;
+
+			System.out.println( String.format( "Batch add:           %8.2f ms (once, not warmed up)", addNanos / 1e6 ) );
+			System.out.println( String.format( "Commit:              %8.2f ms (once, not warmed up)", commitNanos / 1e6 ) );
+		}
+		finally {
+			pack.close();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package net.vhati.ftldat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.kartoflane.itb.modmanager.util.RandomFragments;
+
+
+/**
+ * Checks PkgPack's path hashing against the implementation it replaced, the
+ * byte-oriented hashes against the String one, and innerPath comparison
+ * against String.compareToIgnoreCase().
+ */
+public class PkgPackTest
+{
+	/** ASCII fragments, biased toward the chars either side of 'A'-'Z' and 'a'-'z'. */
+	private static final String[] FRAGMENTS = {
+		"img/", "data/", "scripts/", "units/", "Mech_", "Vek", "ANIM", "_a", "0", "9",
+		".png", ".PNG", ".xml", ".lua", "/", "@", "[", "`", "{", "~", " ", "\t"
+	};
+
+	private File datFile;
+	private PkgPack pack;
+
+
+	@Before
+	public void setUp() throws IOException
+	{
+		datFile = File.createTempFile( "pkgpack.", ".dat" );
+		pack = new PkgPack( datFile, "w+" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		if ( pack != null ) pack.close();
+		datFile.delete();
+	}
+
+	/**
+	 * Every char, since Character.toLowerCase() is where the old hash and the new one could differ.
+	 */
+	@Test
+	public void testEveryChar()
+	{
+		for ( char c = 0; c < 0xFFFF; c++ ) {
+			String s = "a" + c + "Z";
+			assertEquals( s, oldPathHash( s ), pack.calculatePathHash( s ) );
+		}
+	}
+
+	@Test
+	public void testRandomStrings()
+	{
+		Random random = new Random( 44 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			// Long enough for the rotation to wrap around a few times.
+			String s = RandomFragments.build( random, FRAGMENTS, 20 );
+			assertEquals( s, oldPathHash( s ), pack.calculatePathHash( s ) );
+		}
+	}
+
+	@Test
+	public void testAsciiBytes()
+	{
+		Random random = new Random( 44 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			String s = RandomFragments.build( random, FRAGMENTS, 10 );
+
+			// Surrounded by junk, so the range is honored.
+			int offset = random.nextInt( 4 );
+			byte[] bytes = new byte[offset + s.length() + random.nextInt( 4 )];
+			for ( int j = 0; j < bytes.length; j++ ) {
+				bytes[j] = (byte)( 'A' + random.nextInt( 26 ) );
+			}
+			System.arraycopy( s.getBytes( StandardCharsets.US_ASCII ), 0, bytes, offset, s.length() );
+
+			assertEquals( s, pack.calculatePathHash( s ), pack.calculatePathHash( bytes, offset, s.length() ) );
+		}
+	}
+
+	@Test
+	public void testByteBuffers()
+	{
+		Random random = new Random( 44 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			String s = RandomFragments.build( random, FRAGMENTS, 10 );
+			byte[] bytes = s.getBytes( StandardCharsets.US_ASCII );
+			long expected = pack.calculatePathHash( s );
+
+			// Direct, so there's no backing array.
+			ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length + 8 );
+			direct.position( 3 );
+			direct.put( bytes );
+			assertEquals( s, expected, pack.calculatePathHash( direct, 3, bytes.length ) );
+
+			// A slice, whose backing array starts before the buffer does.
+			ByteBuffer heap = ByteBuffer.allocate( bytes.length + 8 );
+			heap.position( 5 );
+			heap.put( bytes );
+			heap.position( 2 );
+			ByteBuffer slice = heap.slice();
+			assertEquals( s, expected, pack.calculatePathHash( slice, 3, bytes.length ) );
+			assertEquals( 0, slice.position() );
+		}
+	}
+
+	/**
+	 * Every char against the letters and the chars beside them, since the
+	 * comparison folds ASCII itself.
+	 */
+	@Test
+	public void testCompareInnerPaths()
+	{
+		String[] others = { "", "a", "A", "z", "Z", "@", "[", "`", "{", "_", "/", "\u00e9", "\u00c9", "\u0130", "\u0131" };
+		for ( char c = 0; c < 0xFFFF; c++ ) {
+			String s = "img/" + c;
+			for ( String other : others ) {
+				String t = "img/" + other;
+				assertEquals( s + " vs " + t, Integer.signum( s.compareToIgnoreCase( t ) ), Integer.signum( PkgPack.compareInnerPaths( s, t ) ) );
+				assertEquals( t + " vs " + s, Integer.signum( t.compareToIgnoreCase( s ) ), Integer.signum( PkgPack.compareInnerPaths( t, s ) ) );
+			}
+		}
+
+		Random random = new Random( 44 );
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			String s = RandomFragments.build( random, FRAGMENTS, 6 );
+			String t = RandomFragments.build( random, FRAGMENTS, 6 );
+			assertEquals( s + " vs " + t, Integer.signum( s.compareToIgnoreCase( t ) ), Integer.signum( PkgPack.compareInnerPaths( s, t ) ) );
+		}
+	}
+
+	@Test
+	public void testReopenedHashes() throws IOException
+	{
+		String[] innerPaths = { "img/units/Mech_A.png", "data/TEXT.xml", "scripts/init.lua", "IMG/units/mech_a.PNG" };
+		for ( String innerPath : innerPaths ) {
+			pack.add( innerPath, new ByteArrayInputStream( innerPath.getBytes( StandardCharsets.US_ASCII ) ) );
+		}
+		pack.close();
+
+		pack = new PkgPack( datFile, "r" );
+		int found = 0;
+		for ( PkgPack.PkgEntry entry : pack.listMetadata() ) {
+			if ( entry == null ) continue;
+			assertNotNull( entry.innerPath );
+			assertEquals( entry.innerPath, pack.calculatePathHash( entry.innerPath ), entry.innerPathHash );
+			found++;
+		}
+		assertEquals( innerPaths.length, found );
+	}
+
+	/**
+	 * The hash as it was calculated before, one masked long step at a time.
+	 */
+	static long oldPathHash( String innerPath )
+	{
+		long hash = 0;
+		for ( int i = 0; i < innerPath.length(); i++ ) {
+			long n = (int)Character.toLowerCase( innerPath.charAt( i ) );
+			hash = hash << 27 | hash >>> 5;
+			hash ^= n;
+			hash = hash & 0x00000000FFFFFFFFL;
+		}
+		return hash;
+	}
+}
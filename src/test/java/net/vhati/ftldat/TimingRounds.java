@@ -0,0 +1,72 @@
+package net.vhati.ftldat;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Runs a measurement repeatedly for the timing harnesses, and prints
+ * results side by side.
+ *
+ * Output goes to stdout rather than the log, since the app's log4j config
+ * only lets errors through for loggers outside com.kartoflane.
+ */
+public final class TimingRounds
+{
+	public static final int DEFAULT_WARMUP_ROUNDS = 5;
+	public static final int DEFAULT_TIMED_ROUNDS = 15;
+
+
+	private TimingRounds()
+	{
+	}
+
+	/**
+	 * Returns the median of a round's nanos, after a few untimed rounds to warm up.
+	 */
+	public static long median( Round round ) throws IOException
+	{
+		return median( DEFAULT_WARMUP_ROUNDS, DEFAULT_TIMED_ROUNDS, round );
+	}
+
+	public static long median( int warmupRounds, int timedRounds, Round round ) throws IOException
+	{
+		for ( int i = 0; i < warmupRounds; i++ ) {
+			round.run();
+		}
+
+		long[] nanos = new long[timedRounds];
+		for ( int i = 0; i < timedRounds; i++ ) {
+			nanos[i] = round.run();
+		}
+		Arrays.sort( nanos );
+		return nanos[nanos.length / 2];
+	}
+
+	public static void printHeader()
+	{
+		System.out.println( String.format( "%-28s %12s %12s %8s", "", "before (ms)", "after (ms)", "speedup" ) );
+	}
+
+	public static void printComparison( String label, long beforeNanos, long afterNanos )
+	{
+		System.out.println(
+			String.format(
+				"%-28s %12.2f %12.2f %7.2fx",
+				label, beforeNanos / 1e6, afterNanos / 1e6, (double)beforeNanos / Math.max( 1, afterNanos )
+			)
+		);
+	}
+
+
+	/**
+	 * A single measurement.
+	 */
+	public interface Round
+	{
+		/**
+		 * Returns the nanos spent on the part being measured.
+		 */
+		public long run() throws IOException;
+	}
+}
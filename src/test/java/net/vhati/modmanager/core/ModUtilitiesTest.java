@@ -0,0 +1,63 @@
+package net.vhati.modmanager.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.kartoflane.itb.modmanager.util.RandomFragments;
+
+
+/**
+ * Checks the hand-written junk file classifier against the regex it replaced.
+ */
+public class ModUtilitiesTest
+{
+	private static final Pattern OLD_JUNK_FILE_PTN = Pattern.compile(
+		"[.]DS_Store$|(?:^|/)thumbs[.]db$|(?:^|/)[.]dropbox$|(?:^|/)~|~$|(?:^|/)#.+#$"
+	);
+
+	/** Fragments that names are built from, biased toward the ones the pattern looks for. */
+	private static final String[] FRAGMENTS = {
+		"a", "b", "Z", "0", "_", ".", "/", "~", "#", " ",
+		"\n", "\r", "\r\n", "\u0085", " ", " ",
+		".DS_Store", "DS_Store", "thumbs.db", "thumbs", ".db", ".dropbox", "dropbox",
+		"img/", "data/", ".png", ".xml"
+	};
+
+
+	@Test
+	public void testKnownNames()
+	{
+		String[] names = {
+			// Each alternative, at the start, after a slash, and mid-name.
+			"", "a", ".DS_Store", "img/.DS_Store", "x.DS_Store", "thumbs.db", "img/thumbs.db", "xthumbs.db",
+			".dropbox", "img/.dropbox", "x.dropbox", "~", "~a", "img/~a", "a~", "a~/b", "#a#", "img/#a#",
+			// "#.+#" needs a char between the hashes, and "." won't cross a line terminator.
+			"x#a#", "##", "#/#", "#\n#",
+			// "$" also matches before a final line terminator, including Unicode ones.
+			"thumbs.db\n", "thumbs.db\r\n", "thumbs.db\n\n", "a~ "
+		};
+		for ( String name : names ) {
+			assertMatchesOldPattern( name );
+		}
+	}
+
+	@Test
+	public void testRandomNames()
+	{
+		Random random = new Random( 33 );
+
+		for ( int i = 0; i < RandomFragments.COUNT; i++ ) {
+			assertMatchesOldPattern( RandomFragments.build( random, FRAGMENTS, 6 ) );
+		}
+	}
+
+	private void assertMatchesOldPattern( String innerPath )
+	{
+		boolean expected = OLD_JUNK_FILE_PTN.matcher( innerPath ).find();
+		assertEquals( "isJunkFile( \"" + RandomFragments.escape( innerPath ) + "\" )", expected, ModUtilities.isJunkFile( innerPath ) );
+	}
+}